@@ -0,0 +1,43 @@
+package io.leontyev.crawler;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Saved HTML pages under {@code src/jmh/resources/pages}. {@code index.txt} lists the result pages;
+ * drop more captures into the folder and the index to widen the corpus.
+ */
+public final class PageCorpus {
+
+    public static final String GOOGLE_RESULTS_PAGE = "google-results.html";
+
+    private PageCorpus() {
+    }
+
+    public static List<String> resultPages() {
+        return lines(read("index.txt"));
+    }
+
+    public static String read(String name) {
+        try (InputStream stream = PageCorpus.class.getResourceAsStream("/pages/" + name)) {
+            if (stream == null) {
+                throw new IllegalArgumentException("No such page: " + name);
+            }
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+                return reader.lines().collect(Collectors.joining("\n"));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static List<String> lines(String content) {
+        return content.lines().map(String::trim).filter(line -> !line.isEmpty()).collect(Collectors.toList());
+    }
+}
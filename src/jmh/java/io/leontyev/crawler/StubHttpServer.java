@@ -0,0 +1,96 @@
+package io.leontyev.crawler;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Local HTTP server for benchmarks. {@code /search} lists {@code links} result links pointing back at
+ * {@code /page/N}, every other path serves {@code page} after {@code latencyMillis}. It keeps track of
+ * the connections it accepted and of the peak number of requests served at once.
+ */
+public class StubHttpServer implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final Set<InetSocketAddress> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger activeRequests = new AtomicInteger();
+    private final AtomicInteger peakActiveRequests = new AtomicInteger();
+
+    public StubHttpServer(String page, int links, long latencyMillis) {
+        byte[] pageBytes = page.getBytes(StandardCharsets.UTF_8);
+        try {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        StringBuilder search = new StringBuilder("<html><body>");
+        for (int i = 0; i < links; i++) {
+            search.append("<div class=\"kCrYT\"><a href=\"").append(getBaseUrl()).append("/page/").append(i).append("\">result</a></div>");
+        }
+        byte[] searchBytes = search.append("</body></html>").toString().getBytes(StandardCharsets.UTF_8);
+
+        server.createContext("/search", exchange -> respond(exchange, searchBytes));
+        server.createContext("/", exchange -> {
+            peakActiveRequests.accumulateAndGet(activeRequests.incrementAndGet(), Math::max);
+            try {
+                TimeUnit.MILLISECONDS.sleep(latencyMillis);
+                respond(exchange, pageBytes);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                activeRequests.decrementAndGet();
+            }
+        });
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    public String getSearchUrl() {
+        return getBaseUrl() + "/search";
+    }
+
+    public int getConnections() {
+        return connections.size();
+    }
+
+    public int getPeakActiveRequests() {
+        return peakActiveRequests.get();
+    }
+
+    public void resetCounters() {
+        connections.clear();
+        peakActiveRequests.set(0);
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void respond(HttpExchange exchange, byte[] body) throws IOException {
+        connections.add(exchange.getRemoteAddress());
+        exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package io.leontyev.crawler.cluster;
+
+import com.sun.net.httpserver.HttpServer;
+import io.leontyev.crawler.CrawlerApp;
+import io.leontyev.crawler.PageCorpus;
+import io.leontyev.crawler.StubHttpServer;
+import io.leontyev.crawler.downloader.JsoupPageDownloadService;
+import io.leontyev.crawler.parser.GoogleHtmlPageParser;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Crawls {@code sites} slow pages, each on a local server of its own, with {@code workers} worker JVMs of
+ * {@code ioThreads} download threads each. Downloads dominate, so the time per crawl should drop almost in
+ * proportion to the workers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 10)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class ClusterBenchmark {
+
+    @Param({"1", "2", "4"})
+    public int workers;
+
+    @Param({"160"})
+    public int sites;
+
+    @Param({"100"})
+    public long latencyMillis;
+
+    @Param({"4"})
+    public int ioThreads;
+
+    private final List<StubHttpServer> siteServers = new ArrayList<>();
+    private final List<Process> processes = new ArrayList<>();
+    private HttpServer searchServer;
+    private ClusterCoordinator coordinator;
+
+    @Setup
+    public void setUp() throws IOException, InterruptedException {
+        String page = PageCorpus.read("saas-landing.html");
+        StringBuilder search = new StringBuilder("<html><body>");
+        for (int site = 0; site < sites; site++) {
+            StubHttpServer siteServer = new StubHttpServer(page, 1, latencyMillis);
+            siteServers.add(siteServer);
+            search.append("<div class=\"kCrYT\"><a href=\"").append(siteServer.getBaseUrl())
+                    .append("/page/0\">result</a></div>");
+        }
+        byte[] searchBytes = search.append("</body></html>").toString().getBytes(StandardCharsets.UTF_8);
+        searchServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        searchServer.createContext("/search", exchange -> {
+            exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+            exchange.sendResponseHeaders(200, searchBytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(searchBytes);
+            }
+        });
+        searchServer.start();
+
+        List<URI> workerUris = new ArrayList<>();
+        for (int worker = 0; worker < workers; worker++) {
+            workerUris.add(startWorkerProcess());
+        }
+        for (URI worker : workerUris) {
+            awaitHealthy(worker);
+        }
+        coordinator = new ClusterCoordinator(workerUris, new JsoupPageDownloadService(10_000),
+                new GoogleHtmlPageParser(), 60_000);
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        for (Process process : processes) {
+            process.destroy();
+        }
+        for (Process process : processes) {
+            if (!process.waitFor(10, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+            }
+        }
+        searchServer.stop(0);
+        siteServers.forEach(StubHttpServer::close);
+    }
+
+    @Benchmark
+    public ClusterCrawlReport crawl(Blackhole blackhole) {
+        ClusterCrawlReport report = coordinator.crawl(getSearchUrl(), 5,
+                keyValues -> keyValues.forEach(blackhole::consume));
+        if (report.getFailedWorkers() > 0 || report.getPages() != sites) {
+            throw new IllegalStateException("Incomplete crawl: " + report);
+        }
+        return report;
+    }
+
+    private String getSearchUrl() {
+        return "http://127.0.0.1:" + searchServer.getAddress().getPort() + "/search";
+    }
+
+    private URI startWorkerProcess() throws IOException {
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        Process process = new ProcessBuilder(
+                System.getProperty("java.home") + File.separator + "bin" + File.separator + "java",
+                "-cp", System.getProperty("java.class.path"),
+                "-Dcrawler.worker.port=" + port,
+                "-Dcrawler.io.threads=" + ioThreads,
+                CrawlerApp.class.getName())
+                .redirectOutput(ProcessBuilder.Redirect.DISCARD)
+                .redirectError(ProcessBuilder.Redirect.DISCARD)
+                .start();
+        processes.add(process);
+        return URI.create("http://127.0.0.1:" + port);
+    }
+
+    private static void awaitHealthy(URI worker) throws InterruptedException {
+        HttpClient client = HttpClient.newHttpClient();
+        HttpRequest request = HttpRequest.newBuilder(worker.resolve(WorkerProtocol.HEALTH_PATH)).build();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+        while (System.nanoTime() < deadline) {
+            try {
+                if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() == 200) {
+                    return;
+                }
+            } catch (IOException e) {
+                // not listening yet
+            }
+            TimeUnit.MILLISECONDS.sleep(100);
+        }
+        throw new IllegalStateException("Worker did not start: " + worker);
+    }
+}
@@ -0,0 +1,72 @@
+package io.leontyev.crawler.downloader;
+
+import io.leontyev.crawler.PageCorpus;
+import io.leontyev.crawler.parser.StreamingJavaScriptLibrariesHtmlPageParser;
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extracts the scripts of an in-memory body read through an {@link InputStreamReader}, as before, through
+ * the pooled reader, and through the pooled reader stopping 1 KiB after {@code </head>}. Compare their
+ * {@code gc.alloc.rate.norm} for the buffers saved per page; the {@code bytes} counter is the body bytes read.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BodyReadBenchmark {
+
+    @Param({"inputStreamReader", "pooled", "pooledHead"})
+    public String reader;
+
+    @Param({"news-portal.html", "online-shop.html"})
+    public String page;
+
+    private final StreamingJavaScriptLibrariesHtmlPageParser parser = new StreamingJavaScriptLibrariesHtmlPageParser();
+    private final ByteBufferPool pool = new ByteBufferPool(16 * 1024, 4);
+    private final BodyStats stats = new BodyStats(pool);
+    private String location;
+    private byte[] body;
+    private BodyLimits limits;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+
+        public long bytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytes = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        location = "https://www.example.com/" + page;
+        body = PageCorpus.read(page).getBytes(StandardCharsets.UTF_8);
+        limits = "pooledHead".equals(reader) ? new BodyLimits(BodyLimits.DEFAULT.getMaxBytes(), 1024)
+                : BodyLimits.DEFAULT;
+    }
+
+    @Benchmark
+    public HtmlPageScripts read(Counters counters) {
+        ByteArrayInputStream in = new ByteArrayInputStream(body);
+        Reader bodyReader = "inputStreamReader".equals(reader)
+                ? new InputStreamReader(in, StandardCharsets.UTF_8)
+                : new PooledBodyReader(in, StandardCharsets.UTF_8, body.length, limits, pool, stats);
+        try (PageStream stream = new PageStream(location, bodyReader)) {
+            HtmlPageScripts scripts = parser.parse(stream);
+            counters.bytes += body.length - in.available();
+            return scripts;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package io.leontyev.crawler.downloader;
+
+import io.leontyev.crawler.PageCorpus;
+import io.leontyev.crawler.StubHttpServer;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latency per page of the one-connection-per-fetch jsoup downloader against the pooled keep-alive
+ * {@link HttpClientPageDownloadService}. The {@code connections} counter shows how many TCP
+ * connections the server accepted during the iteration, next to the number of {@code pages} fetched.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PageDownloadServiceBenchmark {
+
+    @Param({"jsoup", "httpClient"})
+    public String downloader;
+
+    private StubHttpServer server;
+    private PageDownloadService downloadService;
+    private int nextPage;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+
+        public long pages;
+        public long connections;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            pages = 0;
+            connections = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        server = new StubHttpServer(PageCorpus.read("news-portal.html"), 0, 0);
+        downloadService = "httpClient".equals(downloader)
+                ? new HttpClientPageDownloadService(2000, 4)
+                : new JsoupPageDownloadService(2000);
+    }
+
+    @Setup(Level.Iteration)
+    public void resetConnections() {
+        server.resetCounters();
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.close();
+    }
+
+    @Benchmark
+    public Document download(Counters counters) {
+        Document document = downloadService.download(server.getBaseUrl() + "/page/" + nextPage++);
+        counters.pages++;
+        counters.connections = server.getConnections();
+        return document;
+    }
+}
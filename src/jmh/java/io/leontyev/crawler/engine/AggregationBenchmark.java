@@ -0,0 +1,110 @@
+package io.leontyev.crawler.engine;
+
+import io.leontyev.crawler.library.LibraryAggregator;
+import io.leontyev.crawler.library.LibraryInterner;
+import io.leontyev.crawler.library.LibraryNormalizer;
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Aggregates a batch of parsed pages the way a crawl does: every page is added to the crawl's
+ * aggregator, then the top results are selected. Library popularity follows a Zipf-like distribution
+ * over {@code cardinality} distinct libraries, each served from cdnjs, jsDelivr or a copy on the site.
+ * <p>
+ * {@code urls} is the raw URL counter, {@code libraries} counts normalized libraries with an interner
+ * that has already seen the corpus (a long-lived engine), {@code librariesColdInterner} pays for
+ * normalizing every distinct URL and {@code librariesHeavyHitters} counts within a fixed budget of
+ * {@value #HEAVY_HITTERS_BUDGET} libraries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AggregationBenchmark {
+
+    private static final int HEAVY_HITTERS_BUDGET = 4096;
+
+    @Param({"1000", "100000", "1000000"})
+    public int cardinality;
+
+    @Param({"10000"})
+    public int pages;
+
+    @Param({"20"})
+    public int scriptsPerPage;
+
+    private List<HtmlPageScripts> htmlPages;
+    private LibraryInterner warmInterner;
+
+    @Setup
+    public void setUp() {
+        htmlPages = syntheticPages(pages, scriptsPerPage, cardinality, 42);
+        warmInterner = new LibraryInterner(new LibraryNormalizer());
+        htmlPages.forEach(htmlPage -> htmlPage.getScriptUrls().forEach(warmInterner::intern));
+    }
+
+    @Benchmark
+    public void urls(Blackhole blackhole) {
+        aggregate(new ScriptUrlAggregator(), blackhole);
+    }
+
+    @Benchmark
+    public void libraries(Blackhole blackhole) {
+        aggregate(new LibraryAggregator(warmInterner), blackhole);
+    }
+
+    @Benchmark
+    public void librariesColdInterner(Blackhole blackhole) {
+        aggregate(new LibraryAggregator(new LibraryInterner(new LibraryNormalizer())), blackhole);
+    }
+
+    @Benchmark
+    public void librariesHeavyHitters(Blackhole blackhole) {
+        aggregate(new LibraryAggregator(warmInterner, HEAVY_HITTERS_BUDGET), blackhole);
+    }
+
+    private void aggregate(ScriptsAggregator aggregator, Blackhole blackhole) {
+        for (HtmlPageScripts htmlPage : htmlPages) {
+            aggregator.add(htmlPage);
+        }
+        aggregator.topResults(5).forEach(blackhole::consume);
+    }
+
+    static List<HtmlPageScripts> syntheticPages(int pages, int scriptsPerPage, int cardinality, long seed) {
+        Random random = new Random(seed);
+        List<HtmlPageScripts> result = new ArrayList<>(pages);
+        for (int page = 0; page < pages; page++) {
+            String site = "https://site" + (page % 1000) + ".example.com";
+            List<String> scripts = new ArrayList<>(scriptsPerPage);
+            for (int script = 0; script < scriptsPerPage; script++) {
+                int library = (int) Math.floor(Math.pow(cardinality, random.nextDouble())) - 1;
+                String name = "library-" + library;
+                String version = "1." + (library % 13) + ".0";
+                switch (random.nextInt(4)) {
+                    case 0:
+                        scripts.add("https://cdnjs.cloudflare.com/ajax/libs/" + name + "/" + version + "/" + name + ".min.js");
+                        break;
+                    case 1:
+                        scripts.add("https://cdn.jsdelivr.net/npm/" + name + "@" + version + "/dist/" + name + ".min.js");
+                        break;
+                    case 2:
+                        scripts.add(site + "/js/" + name + ".min.js?v=" + version);
+                        break;
+                    default:
+                        scripts.add(site + "/assets/" + name + "-" + version + ".js");
+                        break;
+                }
+            }
+            result.add(new HtmlPageScripts(scripts));
+        }
+        return result;
+    }
+}
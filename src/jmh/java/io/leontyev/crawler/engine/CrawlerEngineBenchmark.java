@@ -0,0 +1,103 @@
+package io.leontyev.crawler.engine;
+
+import io.leontyev.crawler.PageCorpus;
+import io.leontyev.crawler.downloader.PageDownloadService;
+import io.leontyev.crawler.downloader.PageStream;
+import io.leontyev.crawler.metrics.CrawlerMetrics;
+import io.leontyev.crawler.metrics.MeteredHtmlPageParser;
+import io.leontyev.crawler.metrics.MeteredPageDownloadService;
+import io.leontyev.crawler.metrics.SimpleMetricsRegistry;
+import io.leontyev.crawler.parser.GoogleHtmlPageParser;
+import io.leontyev.crawler.parser.JavaScriptLibrariesHtmlPageParser;
+import io.leontyev.crawler.parser.StreamingJavaScriptLibrariesHtmlPageParser;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end {@link CrawlerEngine#crawl} over an in-memory {@link PageDownloadService}, so only the
+ * engine, the parsers and the executors are measured. With {@code metrics=on} every stage is metered into
+ * a {@link SimpleMetricsRegistry}, which shows the cost of the instrumentation.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CrawlerEngineBenchmark {
+
+    static final String SEARCH_URL = "https://www.google.com/search?q=javascript+frameworks";
+
+    @Param({"document", "streaming"})
+    public String mode;
+
+    @Param({"off", "on"})
+    public String metrics;
+
+    private CrawlerEngine engine;
+
+    @Setup
+    public void setUp() {
+        CrawlerMetrics crawlerMetrics = "on".equals(metrics)
+                ? new CrawlerMetrics(new SimpleMetricsRegistry())
+                : CrawlerMetrics.NOOP;
+        PageDownloadService downloadService =
+                new MeteredPageDownloadService(new InMemoryPageDownloadService(), crawlerMetrics);
+        PageScriptsExtractor scriptsExtractor = "streaming".equals(mode)
+                ? new StreamingPageScriptsExtractor(downloadService, new MeteredHtmlPageParser<>(
+                        new StreamingJavaScriptLibrariesHtmlPageParser(), crawlerMetrics.getParse()))
+                : new DocumentPageScriptsExtractor(downloadService, new MeteredHtmlPageParser<>(
+                        new JavaScriptLibrariesHtmlPageParser(), crawlerMetrics.getParse()));
+        engine = CrawlerEngine.builder(downloadService, new GoogleHtmlPageParser())
+                .scriptsExtractor(scriptsExtractor)
+                .metrics(crawlerMetrics)
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.close();
+    }
+
+    @Benchmark
+    public void crawl(Blackhole blackhole) {
+        engine.crawl(SEARCH_URL, 5, keyValues -> keyValues.forEach(blackhole::consume));
+    }
+
+    /**
+     * Serves the Google results page of the corpus, and one corpus page per result link.
+     */
+    static class InMemoryPageDownloadService implements PageDownloadService {
+
+        private final Map<String, String> pages = new HashMap<>();
+
+        InMemoryPageDownloadService() {
+            String googlePage = PageCorpus.read(PageCorpus.GOOGLE_RESULTS_PAGE);
+            pages.put(SEARCH_URL, googlePage);
+
+            List<String> links = new GoogleHtmlPageParser().parse(Jsoup.parse(googlePage, SEARCH_URL)).getLinkUrls();
+            List<String> resultPages = PageCorpus.resultPages();
+            for (int i = 0; i < links.size(); i++) {
+                pages.put(links.get(i), PageCorpus.read(resultPages.get(i % resultPages.size())));
+            }
+        }
+
+        @Override
+        public Document download(String url) {
+            return Jsoup.parse(pages.get(url), url);
+        }
+
+        @Override
+        public PageStream open(String url) {
+            return new PageStream(url, new StringReader(pages.get(url)));
+        }
+    }
+}
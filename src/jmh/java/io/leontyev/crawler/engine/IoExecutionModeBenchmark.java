@@ -0,0 +1,83 @@
+package io.leontyev.crawler.engine;
+
+import io.leontyev.crawler.PageCorpus;
+import io.leontyev.crawler.StubHttpServer;
+import io.leontyev.crawler.downloader.JsoupPageDownloadService;
+import io.leontyev.crawler.parser.GoogleHtmlPageParser;
+import io.leontyev.crawler.parser.JavaScriptLibrariesHtmlPageParser;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Crawls a search page with {@code links} results against a local server where every page takes
+ * {@code latencyMillis} to answer, once with the fixed I/O pool and once with a virtual thread per
+ * download. The aux counters report how many downloads really ran in parallel and the JVM's peak
+ * platform thread count (server threads included, which are the same for both modes).
+ * {@code virtualThreads} needs a Java 21+ runtime.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IoExecutionModeBenchmark {
+
+    @Param({"threadPool", "virtualThreads"})
+    public String mode;
+
+    @Param({"500"})
+    public int links;
+
+    @Param({"100"})
+    public long latencyMillis;
+
+    @Param({"512"})
+    public int maxConcurrentDownloads;
+
+    private StubHttpServer server;
+    private CrawlerEngine engine;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+
+        public long concurrentDownloads;
+        public long peakPlatformThreads;
+    }
+
+    @Setup
+    public void setUp() {
+        server = new StubHttpServer(PageCorpus.read("saas-landing.html"), links, latencyMillis);
+        IoExecutionMode ioExecutionMode = "virtualThreads".equals(mode)
+                ? IoExecutionMode.virtualThreads(maxConcurrentDownloads)
+                : IoExecutionMode.threadPool(Runtime.getRuntime().availableProcessors() * 2);
+        engine = CrawlerEngine.builder(new JsoupPageDownloadService(10_000), new GoogleHtmlPageParser())
+                .scriptsExtractor(new DocumentPageScriptsExtractor(new JsoupPageDownloadService(10_000),
+                        new JavaScriptLibrariesHtmlPageParser()))
+                .ioExecutionMode(ioExecutionMode)
+                .build();
+    }
+
+    @TearDown
+    public void tearDown() {
+        engine.close();
+        server.close();
+    }
+
+    @Benchmark
+    public void crawl(Counters counters, Blackhole blackhole) {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        threads.resetPeakThreadCount();
+        server.resetCounters();
+
+        engine.crawl(server.getSearchUrl(), 5, keyValues -> keyValues.forEach(blackhole::consume));
+
+        counters.concurrentDownloads = server.getPeakActiveRequests();
+        counters.peakPlatformThreads = threads.getPeakThreadCount();
+    }
+}
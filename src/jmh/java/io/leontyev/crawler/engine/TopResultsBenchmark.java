@@ -0,0 +1,92 @@
+package io.leontyev.crawler.engine;
+
+import io.leontyev.crawler.library.LibraryAggregator;
+import io.leontyev.crawler.library.LibraryInterner;
+import io.leontyev.crawler.library.LibraryNormalizer;
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Selects the {@code k} most frequent of {@code cardinality} distinct scripts from an already aggregated
+ * crawl. {@code sortAll} is the former full sort of the occurrences map, the others use the bounded heap;
+ * {@code heavyHitters} reads the fixed-budget Space-Saving counters.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TopResultsBenchmark {
+
+    private static final int HEAVY_HITTERS_BUDGET = 4096;
+
+    @Param({"1000", "100000", "1000000"})
+    public int cardinality;
+
+    @Param({"5", "100", "1000"})
+    public int k;
+
+    private Map<String, Long> jsLibsOccurrences;
+    private ScriptUrlAggregator urls;
+    private ScriptsAggregator libraries;
+    private ScriptsAggregator heavyHitters;
+
+    @Setup
+    public void setUp() {
+        LibraryInterner interner = new LibraryInterner(new LibraryNormalizer());
+        urls = new ScriptUrlAggregator();
+        libraries = new LibraryAggregator(interner);
+        heavyHitters = new LibraryAggregator(interner, HEAVY_HITTERS_BUDGET);
+        jsLibsOccurrences = new HashMap<>();
+
+        List<String> scripts = new ArrayList<>();
+        for (int library = 0; library < cardinality; library++) {
+            String url = "https://cdn.example.com/lib-" + library + ".js";
+            long occurrences = 1 + 1000 / (library + 1);
+            jsLibsOccurrences.put(url, occurrences);
+            for (int i = 0; i < occurrences; i++) {
+                scripts.add(url);
+            }
+            if (scripts.size() >= 1000 || library == cardinality - 1) {
+                HtmlPageScripts htmlPage = new HtmlPageScripts(scripts);
+                urls.add(htmlPage);
+                libraries.add(htmlPage);
+                heavyHitters.add(htmlPage);
+                scripts.clear();
+            }
+        }
+    }
+
+    @Benchmark
+    public void sortAll(Blackhole blackhole) {
+        jsLibsOccurrences.entrySet().stream()
+                .sorted(Comparator.<Map.Entry<String, Long>>comparingLong(Map.Entry::getValue).reversed())
+                .limit(k)
+                .map(entry -> new KeyValue(entry.getKey(), entry.getValue()))
+                .forEach(blackhole::consume);
+    }
+
+    @Benchmark
+    public void heapUrls(Blackhole blackhole) {
+        urls.topResults(k).forEach(blackhole::consume);
+    }
+
+    @Benchmark
+    public void heapLibraries(Blackhole blackhole) {
+        libraries.topResults(k).forEach(blackhole::consume);
+    }
+
+    @Benchmark
+    public void heavyHitters(Blackhole blackhole) {
+        heavyHitters.topResults(k).forEach(blackhole::consume);
+    }
+}
@@ -0,0 +1,72 @@
+package io.leontyev.crawler.frontier;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frontier and seen-URL operations with every core hammering the same instance. The {@code frontier}
+ * group offers and polls links over a thousand hosts from half of the threads each; the seen-URL sets
+ * draw URLs from a fixed range, so that after warm-up most additions are repeats, as they are on a link
+ * graph. {@code concurrentHashSet} is the {@code HashSet<String>}-style baseline.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Xmx2g")
+@Threads(Threads.MAX)
+public class FrontierBenchmark {
+
+    private static final int URL_RANGE = 4_000_000;
+    private static final int HOSTS = 1000;
+
+    private HostFrontier frontier;
+    private SeenUrls hashedUrlSet;
+    private SeenUrls bloomUrlFilter;
+    private Set<String> concurrentHashSet;
+
+    @Setup
+    public void setUp() {
+        frontier = new HostFrontier();
+        hashedUrlSet = new HashedUrlSet(URL_RANGE);
+        bloomUrlFilter = new BloomUrlFilter(URL_RANGE, 0.01);
+        concurrentHashSet = ConcurrentHashMap.newKeySet(URL_RANGE);
+    }
+
+    @Benchmark
+    @Group("frontier")
+    public void offer() {
+        int id = ThreadLocalRandom.current().nextInt(URL_RANGE);
+        frontier.offer(new FrontierLink(url(id), 1));
+    }
+
+    @Benchmark
+    @Group("frontier")
+    public FrontierLink poll() {
+        return frontier.poll();
+    }
+
+    @Benchmark
+    public boolean hashedUrlSet() {
+        return hashedUrlSet.add(url(ThreadLocalRandom.current().nextInt(URL_RANGE)));
+    }
+
+    @Benchmark
+    public boolean bloomUrlFilter() {
+        return bloomUrlFilter.add(url(ThreadLocalRandom.current().nextInt(URL_RANGE)));
+    }
+
+    @Benchmark
+    public boolean concurrentHashSet() {
+        return concurrentHashSet.add(url(ThreadLocalRandom.current().nextInt(URL_RANGE)));
+    }
+
+    private static String url(int id) {
+        return "http://host" + (id % HOSTS) + ".com/page/" + id;
+    }
+}
@@ -0,0 +1,92 @@
+package io.leontyev.crawler.journal;
+
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code completed} is what every crawled page pays for being journaled: with {@code perPage} each record
+ * waits for its own fsync, with {@code batched} the sync thread commits a group every 100 ms or 256 KiB.
+ * {@code resume} is the restart of a crawl killed after
+ * {@code pages} completed pages: replaying the journal before the first download.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+public class CrawlJournalBenchmark {
+
+    @Param({"perPage", "batched"})
+    public String sync;
+
+    @Param({"10000"})
+    public int pages;
+
+    private Path directory;
+    private CrawlJournal journal;
+    private Path resumed;
+    private int page;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("journal-benchmark");
+        journal = new CrawlJournal(directory.resolve("completed.journal"));
+
+        resumed = directory.resolve("resumed.journal");
+        try (CrawlJournal killed = new CrawlJournal(resumed)) {
+            String[] frontier = new String[pages];
+            for (int i = 0; i < pages; i++) {
+                frontier[i] = url(i);
+            }
+            killed.frontier(Arrays.asList(frontier));
+            for (int i = 0; i < pages; i++) {
+                killed.completed(url(i), scripts(i));
+            }
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        journal.delete();
+        Files.deleteIfExists(resumed);
+        Files.delete(directory);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public void completed() {
+        int i = page++;
+        journal.completed(url(i), scripts(i));
+        if ("perPage".equals(sync)) {
+            journal.sync();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public int resume() {
+        try (CrawlJournal restarted = new CrawlJournal(resumed)) {
+            return restarted.getReplayedPages();
+        }
+    }
+
+    private static String url(int i) {
+        return "https://www.site" + i + ".example/";
+    }
+
+    private static HtmlPageScripts scripts(int i) {
+        return new HtmlPageScripts(Arrays.asList(
+                "https://code.jquery.com/jquery-3.5.1.min.js",
+                "https://www.googletagmanager.com/gtag/js?id=G-" + (i % 1000),
+                "https://www.site" + i + ".example/assets/app." + Integer.toHexString(i) + ".js"));
+    }
+}
@@ -0,0 +1,131 @@
+package io.leontyev.crawler.library;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pages of eight libraries, drawn from {@value #LIBRARIES} with a skew towards the popular ones, recorded
+ * by every core at once: {@code recordStriped} into a {@link PopularityTracker}, {@code recordLocked} into
+ * one counter per window behind a lock, which is what the tracker would be without its stripes and still
+ * keeps no buckets. The {@code top} benchmarks rank a tracker that has seen a page every second for a day.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PopularityTrackerBenchmark {
+
+    private static final int LIBRARIES = 1000;
+    private static final int SCRIPTS_PER_PAGE = 8;
+    private static final int PAGES = 1024;
+
+    private int[][] pages;
+    private PopularityTracker tracker;
+    private IntLongCounter[] lockedCounters;
+    private PopularityTracker dayOfPages;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+
+        private int next;
+    }
+
+    @Setup
+    public void setUp() {
+        LibraryInterner interner = new LibraryInterner(new LibraryNormalizer());
+        for (int library = 0; library < LIBRARIES; library++) {
+            interner.intern("https://cdn.example/lib" + library + ".js");
+        }
+        Random random = new Random(42);
+        pages = new int[PAGES][SCRIPTS_PER_PAGE];
+        for (int[] page : pages) {
+            for (int i = 0; i < page.length; i++) {
+                page[i] = (int) (LIBRARIES * Math.pow(random.nextDouble(), 3));
+            }
+        }
+
+        tracker = new PopularityTracker(interner);
+        lockedCounters = new IntLongCounter[PopularityWindow.values().length];
+        for (int i = 0; i < lockedCounters.length; i++) {
+            lockedCounters[i] = new IntLongCounter(LIBRARIES);
+        }
+
+        SteppingClock clock = new SteppingClock();
+        dayOfPages = new PopularityTracker(interner, 1 << 16, Runtime.getRuntime().availableProcessors(), clock);
+        for (int second = 0; second < TimeUnit.DAYS.toSeconds(1); second++) {
+            dayOfPages.record(pages[second % PAGES]);
+            clock.millis += TimeUnit.SECONDS.toMillis(1);
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Threads(Threads.MAX)
+    public void recordStriped(Cursor cursor) {
+        tracker.record(pages[cursor.next++ & (PAGES - 1)]);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    @Threads(Threads.MAX)
+    public void recordLocked(Cursor cursor) {
+        int[] page = pages[cursor.next++ & (PAGES - 1)];
+        for (IntLongCounter counter : lockedCounters) {
+            synchronized (counter) {
+                for (int id : page) {
+                    counter.increment(id);
+                }
+            }
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void topMinute(Blackhole blackhole) {
+        dayOfPages.topSliding(PopularityWindow.MINUTE, 10).forEach(blackhole::consume);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void topHour(Blackhole blackhole) {
+        dayOfPages.topSliding(PopularityWindow.HOUR, 10).forEach(blackhole::consume);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void topDay(Blackhole blackhole) {
+        dayOfPages.topSliding(PopularityWindow.DAY, 10).forEach(blackhole::consume);
+    }
+
+    private static class SteppingClock extends Clock {
+
+        private long millis = Instant.parse("2020-06-01T00:00:00Z").toEpochMilli();
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package io.leontyev.crawler.library;
+
+import io.leontyev.crawler.engine.PageScriptsExtractor;
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One query of {@code pages} result pages with eight scripts each, fingerprinted through a
+ * {@link ScriptBodyCache} whose source takes a millisecond per 32 KiB body. Scripts are drawn from 200 URLs
+ * with a skew towards the popular ones, as on real result pages. With {@code shared} the cache serves the
+ * same query over and over, as in server mode; {@code perQuery} starts every query cold. The counters are
+ * the bodies fetched and the fetches saved.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ScriptFingerprintBenchmark {
+
+    private static final int SCRIPT_URLS = 200;
+    private static final int SCRIPTS_PER_PAGE = 8;
+    private static final int BODY_BYTES = 32 * 1024;
+
+    @Param({"shared", "perQuery"})
+    public String cache;
+
+    @Param({"50"})
+    public int pages;
+
+    private final ScriptSource source = scriptUrl -> {
+        try {
+            TimeUnit.MILLISECONDS.sleep(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        byte[] body = new byte[BODY_BYTES];
+        byte[] banner = ("/*! " + scriptUrl.substring(scriptUrl.lastIndexOf('/') + 1) + " v1.0.0 */")
+                .getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(banner, 0, body, 0, banner.length);
+        return new ByteArrayInputStream(body);
+    };
+
+    private List<List<String>> pageScripts;
+    private ExecutorService ioExecutor;
+    private ScriptBodyCache sharedCache;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+
+        public long fetches;
+        public long savedFetches;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            fetches = 0;
+            savedFetches = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        pageScripts = new ArrayList<>();
+        for (int page = 0; page < pages; page++) {
+            String[] scripts = new String[SCRIPTS_PER_PAGE];
+            for (int i = 0; i < scripts.length; i++) {
+                int rank = (int) (SCRIPT_URLS * Math.pow(random.nextDouble(), 3));
+                scripts[i] = "https://cdn.example/lib" + rank + ".js";
+            }
+            pageScripts.add(Arrays.asList(scripts));
+        }
+        ioExecutor = Executors.newFixedThreadPool(16);
+        sharedCache = newCache();
+    }
+
+    @TearDown
+    public void tearDown() {
+        ioExecutor.shutdownNow();
+    }
+
+    @Benchmark
+    public int query(Counters counters) {
+        ScriptBodyCache queryCache = "shared".equals(cache) ? sharedCache : newCache();
+        ScriptCacheStats before = queryCache.getStats();
+        PageScriptsExtractor extractor = new FingerprintingPageScriptsExtractor((url, io, calc) ->
+                CompletableFuture.completedFuture(new HtmlPageScripts(pageScripts.get(Integer.parseInt(url)))),
+                queryCache);
+        CompletableFuture<?>[] results = new CompletableFuture<?>[pages];
+        for (int page = 0; page < pages; page++) {
+            results[page] = extractor.extract(Integer.toString(page), ioExecutor, Runnable::run);
+        }
+        CompletableFuture.allOf(results).join();
+        ScriptCacheStats after = queryCache.getStats();
+        counters.fetches += after.getFetches() - before.getFetches();
+        counters.savedFetches += after.getSavedFetches() - before.getSavedFetches();
+        return results.length;
+    }
+
+    private ScriptBodyCache newCache() {
+        return new ScriptBodyCache(source, new LibraryNormalizer(), 100_000, 100_000);
+    }
+}
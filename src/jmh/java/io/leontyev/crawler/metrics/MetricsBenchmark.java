@@ -0,0 +1,45 @@
+package io.leontyev.crawler.metrics;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of a single measurement on the hot path, against the no-op registry the engine uses by default.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MetricsBenchmark {
+
+    @Param({"noop", "simple"})
+    public String registry;
+
+    private CrawlerMetrics metrics;
+    private final Exception failure = new IllegalStateException("Wrong status: 503");
+    private long value;
+
+    @Setup
+    public void setUp() {
+        metrics = new CrawlerMetrics("simple".equals(registry) ? new SimpleMetricsRegistry() : MetricsRegistry.NOOP);
+    }
+
+    @Benchmark
+    public void timer() {
+        long start = System.nanoTime();
+        metrics.getParse().recordSince(start);
+    }
+
+    @Benchmark
+    public void histogram() {
+        metrics.getPageScripts().record(value++ & 63);
+    }
+
+    @Benchmark
+    public void failure() {
+        metrics.failure(failure);
+    }
+}
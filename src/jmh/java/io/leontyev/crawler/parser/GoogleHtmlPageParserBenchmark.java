@@ -0,0 +1,31 @@
+package io.leontyev.crawler.parser;
+
+import io.leontyev.crawler.PageCorpus;
+import io.leontyev.crawler.parser.page.HtmlPageLinks;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GoogleHtmlPageParserBenchmark {
+
+    private final GoogleHtmlPageParser parser = new GoogleHtmlPageParser();
+    private Document page;
+
+    @Setup
+    public void setUp() {
+        page = Jsoup.parse(PageCorpus.read(PageCorpus.GOOGLE_RESULTS_PAGE), "https://www.google.com/search?q=javascript+frameworks");
+    }
+
+    @Benchmark
+    public HtmlPageLinks parse() {
+        return parser.parse(page);
+    }
+}
@@ -0,0 +1,57 @@
+package io.leontyev.crawler.parser;
+
+import io.leontyev.crawler.PageCorpus;
+import io.leontyev.crawler.downloader.PageStream;
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code select} only measures the selector on an already built DOM. {@code documentPath} and
+ * {@code streamingPath} both start from the raw page, which is what a crawl pays per result page;
+ * compare their {@code gc.alloc.rate.norm} for allocation per page.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JavaScriptLibrariesHtmlPageParserBenchmark {
+
+    @Param({"news-portal.html", "online-shop.html", "blog.html", "saas-landing.html"})
+    public String page;
+
+    private final JavaScriptLibrariesHtmlPageParser documentParser = new JavaScriptLibrariesHtmlPageParser();
+    private final StreamingJavaScriptLibrariesHtmlPageParser streamingParser = new StreamingJavaScriptLibrariesHtmlPageParser();
+
+    private String location;
+    private String html;
+    private Document document;
+
+    @Setup
+    public void setUp() {
+        location = "https://www.example.com/" + page;
+        html = PageCorpus.read(page);
+        document = Jsoup.parse(html, location);
+    }
+
+    @Benchmark
+    public HtmlPageScripts select() {
+        return documentParser.parse(document);
+    }
+
+    @Benchmark
+    public HtmlPageScripts documentPath() {
+        return documentParser.parse(Jsoup.parse(html, location));
+    }
+
+    @Benchmark
+    public HtmlPageScripts streamingPath() {
+        return streamingParser.parse(new PageStream(location, new StringReader(html)));
+    }
+}
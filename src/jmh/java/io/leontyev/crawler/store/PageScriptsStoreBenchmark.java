@@ -0,0 +1,84 @@
+package io.leontyev.crawler.store;
+
+import io.leontyev.crawler.downloader.PageValidators;
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * {@code load} is the cold start of a store holding {@code urls} pages: mapping the segments and
+ * rebuilding the index. {@code get} is a single lookup on an open store, which is what every result
+ * link pays before it is downloaded.
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+public class PageScriptsStoreBenchmark {
+
+    @Param({"1000000"})
+    public int urls;
+
+    private Path directory;
+    private PageScriptsStore store;
+
+    @Setup
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("page-store-benchmark");
+        try (PageScriptsStore writer = new PageScriptsStore(directory)) {
+            for (int i = 0; i < urls; i++) {
+                writer.put(new StoredPage(url(i), new HtmlPageScripts(Arrays.asList(
+                        "https://code.jquery.com/jquery-3.5.1.min.js",
+                        "https://www.googletagmanager.com/gtag/js?id=G-" + (i % 1000),
+                        "https://www.site" + i + ".example/assets/app." + Integer.toHexString(i) + ".js")),
+                        System.currentTimeMillis(), PageValidators.NONE));
+            }
+        }
+        store = new PageScriptsStore(directory);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        store.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> {
+                try {
+                    Files.delete(path);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 2)
+    @Measurement(iterations = 5)
+    public int load() {
+        try (PageScriptsStore loaded = new PageScriptsStore(directory)) {
+            return loaded.size();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.AverageTime)
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    @Warmup(iterations = 3, time = 1)
+    @Measurement(iterations = 5, time = 1)
+    public StoredPage get() {
+        return store.get(url(ThreadLocalRandom.current().nextInt(urls)));
+    }
+
+    private static String url(int i) {
+        return "https://www.site" + i + ".example/some/article-" + i;
+    }
+}
@@ -1,52 +1,366 @@
 package io.leontyev.crawler;
 
+import io.leontyev.crawler.cache.CachingPageScriptsExtractor;
+import io.leontyev.crawler.cluster.ClusterCoordinator;
+import io.leontyev.crawler.cluster.CrawlWorker;
+import io.leontyev.crawler.engine.AdaptiveConcurrency;
 import io.leontyev.crawler.engine.CrawlerEngine;
+import io.leontyev.crawler.engine.DocumentPageScriptsExtractor;
+import io.leontyev.crawler.engine.HedgingPageScriptsExtractor;
+import io.leontyev.crawler.engine.IoExecutionMode;
 import io.leontyev.crawler.engine.KeyValue;
+import io.leontyev.crawler.engine.PageScriptsExtractor;
+import io.leontyev.crawler.engine.ScriptsAggregator;
+import io.leontyev.crawler.engine.SearchLimits;
+import io.leontyev.crawler.engine.SearchPages;
+import io.leontyev.crawler.engine.StreamingPageScriptsExtractor;
+import io.leontyev.crawler.downloader.BodyLimits;
+import io.leontyev.crawler.downloader.HttpClientPageDownloadService;
 import io.leontyev.crawler.downloader.JsoupPageDownloadService;
 import io.leontyev.crawler.downloader.PageDownloadService;
+import io.leontyev.crawler.downloader.PageStream;
+import io.leontyev.crawler.frontier.SeenUrls;
+import io.leontyev.crawler.journal.CrawlJournal;
+import io.leontyev.crawler.library.ContentLibraryNormalizer;
+import io.leontyev.crawler.library.FingerprintingPageScriptsExtractor;
+import io.leontyev.crawler.library.HttpScriptSource;
+import io.leontyev.crawler.library.LibraryAggregator;
+import io.leontyev.crawler.library.LibraryInterner;
+import io.leontyev.crawler.library.LibraryNormalizer;
+import io.leontyev.crawler.library.PopularityTracker;
+import io.leontyev.crawler.library.ScriptBodyCache;
+import io.leontyev.crawler.metrics.CrawlerMetrics;
+import io.leontyev.crawler.metrics.MeteredHtmlPageParser;
+import io.leontyev.crawler.metrics.MeteredPageDownloadService;
+import io.leontyev.crawler.metrics.MetricsHttpServer;
+import io.leontyev.crawler.metrics.PrometheusTextFormat;
+import io.leontyev.crawler.metrics.SimpleMetricsRegistry;
 import io.leontyev.crawler.parser.GoogleHtmlPageParser;
 import io.leontyev.crawler.parser.HtmlPageParser;
 import io.leontyev.crawler.parser.JavaScriptLibrariesHtmlPageParser;
+import io.leontyev.crawler.parser.StreamingJavaScriptLibrariesHtmlPageParser;
 import io.leontyev.crawler.parser.page.HtmlPageLinks;
 import io.leontyev.crawler.parser.page.HtmlPageScripts;
+import io.leontyev.crawler.politeness.PolitenessPolicy;
+import io.leontyev.crawler.politeness.PolitenessScheduler;
+import io.leontyev.crawler.server.CrawlerServer;
+import io.leontyev.crawler.server.ServerLimits;
+import io.leontyev.crawler.store.PageScriptsStore;
+import io.leontyev.crawler.store.PersistentPageScriptsExtractor;
 import org.jsoup.nodes.Document;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.UnsupportedEncodingException;
+import java.net.URI;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Optional;
 import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class CrawlerApp {
 
     private static final Logger LOG = LoggerFactory.getLogger(CrawlerApp.class);
     private static final String GOOGLE_QUERY = "http://www.google.com/search?&ie=utf-8&oe=utf-8&q=";
+    private static final String STORE_PROPERTY = "crawler.store";
+    private static final long STORE_MAX_AGE_MILLIS = TimeUnit.DAYS.toMillis(1);
+    private static final long STORE_RETAIN_MILLIS = TimeUnit.DAYS.toMillis(30);
+    private static final String CACHE_PROPERTY = "crawler.cache";
+    private static final long CACHE_TTL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final String POLITE_PROPERTY = "crawler.polite";
+    private static final PolitenessPolicy POLITENESS_POLICY =
+            new PolitenessPolicy("web-crawler", 1, 2, 2, TimeUnit.HOURS.toMillis(1));
+    private static final String BUDGET_PROPERTY = "crawler.budget";
+    private static final String HEDGE_PROPERTY = "crawler.hedge";
+    private static final String METRICS_PROPERTY = "crawler.metrics";
+    private static final String METRICS_PORT_PROPERTY = "crawler.metrics.port";
+    private static final String SERVER_PORT_PROPERTY = "crawler.server.port";
+    private static final ServerLimits SERVER_LIMITS = new ServerLimits(4, 64, 8, TimeUnit.SECONDS.toMillis(30));
+    private static final String WORKER_PORT_PROPERTY = "crawler.worker.port";
+    private static final String WORKERS_PROPERTY = "crawler.workers";
+    private static final long WORKER_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(2);
+    private static final String IO_THREADS_PROPERTY = "crawler.io.threads";
+    private static final String HEAD_TAIL_PROPERTY = "crawler.head.tail";
+    private static final String JOURNAL_PROPERTY = "crawler.journal";
+    private static final String ADAPTIVE_PROPERTY = "crawler.adaptive";
+    private static final String FINGERPRINT_PROPERTY = "crawler.fingerprint";
+    private static final int FINGERPRINTED_URLS = 100_000;
+    private static final String SEARCH_URL_PROPERTY = "crawler.search.url";
+    private static final String SEARCH_PAGES_PROPERTY = "crawler.search.pages";
+    private static final String SEARCH_LINKS_PROPERTY = "crawler.search.links";
+    private static final String SEARCH_STABLE_PROPERTY = "crawler.search.stable";
+    private static final String SEARCH_OFFSET_PROPERTY = "crawler.search.offset";
+    private static final String SEARCH_PAGE_SIZE_PROPERTY = "crawler.search.page.size";
+    private static final String POPULARITY_PROPERTY = "crawler.popularity";
 
     public static void main(String[] args) {
-        Optional<String> searchTerm = Arrays.stream(args).findFirst();
-        if (!searchTerm.isPresent()) {
-            Scanner sc = new Scanner(System.in);
-            System.out.println("Please enter a query searchTerm: ");
-            searchTerm = Optional.of(sc.nextLine());
-        }
+        Integer serverPort = Integer.getInteger(SERVER_PORT_PROPERTY);
+        Integer workerPort = Integer.getInteger(WORKER_PORT_PROPERTY);
+        String workers = System.getProperty(WORKERS_PROPERTY);
+        String searchUrl = System.getProperty(SEARCH_URL_PROPERTY, GOOGLE_QUERY);
+        String url = null;
+        if (serverPort == null && workerPort == null) {
+            Optional<String> searchTerm = Arrays.stream(args).findFirst();
+            if (!searchTerm.isPresent()) {
+                Scanner sc = new Scanner(System.in);
+                System.out.println("Please enter a query searchTerm: ");
+                searchTerm = Optional.of(sc.nextLine());
+            }
 
-        String userQuery = encodeUserQuery(searchTerm.get());
-        LOG.info("Requested: {}", userQuery);
+            String userQuery = encodeUserQuery(searchTerm.get());
+            LOG.info("Requested: {}", userQuery);
 
-        String url = GOOGLE_QUERY + userQuery;
-        PageDownloadService downloadService = new JsoupPageDownloadService(2000);
+            url = searchUrl + userQuery;
+        }
+        Integer searchPages = Integer.getInteger(SEARCH_PAGES_PROPERTY);
+        SearchPages searchPaging = searchPages == null ? null : searchPaging(searchUrl);
+        boolean polite = Boolean.getBoolean(POLITE_PROPERTY);
+        String userAgent = polite ? POLITENESS_POLICY.getUserAgent() : PageDownloadService.DEFAULT_USER_AGENT;
+        PageDownloadService downloadService = new JsoupPageDownloadService(2000,
+                (int) BodyLimits.DEFAULT.getMaxBytes(), userAgent);
         HtmlPageParser<HtmlPageLinks, Document> googleParser = new GoogleHtmlPageParser();
         HtmlPageParser<HtmlPageScripts, Document> jsLibsParser = new JavaScriptLibrariesHtmlPageParser();
 
-        try (CrawlerEngine engine = new CrawlerEngine(downloadService, googleParser, jsLibsParser)) {
+        if (workers != null) {
+            List<URI> workerUris = Arrays.stream(workers.split(","))
+                    .map(String::trim)
+                    .filter(worker -> !worker.isEmpty())
+                    .map(URI::create)
+                    .collect(Collectors.toList());
+            new ClusterCoordinator(workerUris, downloadService, googleParser, WORKER_TIMEOUT_MILLIS)
+                    .crawl(url, 5, keyValueStream -> keyValueStream.forEach(System.out::println));
+            return;
+        }
+
+        Integer metricsPort = Integer.getInteger(METRICS_PORT_PROPERTY);
+        SimpleMetricsRegistry metricsRegistry = null;
+        CrawlerMetrics metrics = CrawlerMetrics.NOOP;
+        MetricsHttpServer metricsServer = null;
+        if (Boolean.getBoolean(METRICS_PROPERTY) || metricsPort != null) {
+            metricsRegistry = new SimpleMetricsRegistry();
+            metrics = new CrawlerMetrics(metricsRegistry);
+            downloadService = new MeteredPageDownloadService(downloadService, metrics);
+            jsLibsParser = new MeteredHtmlPageParser<>(jsLibsParser, metrics.getParse());
+            if (metricsPort != null) {
+                metricsServer = new MetricsHttpServer(metricsRegistry, metricsPort);
+                LOG.info("Serving metrics on http://localhost:{}/metrics", metricsServer.getPort());
+            }
+        }
+
+        Integer maxDownloads = Integer.getInteger(ADAPTIVE_PROPERTY);
+        AdaptiveConcurrency adaptiveConcurrency = null;
+        PageDownloadService pageDownloadService = downloadService;
+        if (maxDownloads != null) {
+            adaptiveConcurrency = new AdaptiveConcurrency(maxDownloads);
+            metrics.executorLimit("io", adaptiveConcurrency::getIoLimit);
+            metrics.executorLimit("calc", adaptiveConcurrency::getCalcLimit);
+            pageDownloadService = adaptiveConcurrency.measure(downloadService);
+        }
+
+        PageScriptsExtractor scriptsExtractor = new DocumentPageScriptsExtractor(pageDownloadService, jsLibsParser);
+        HtmlPageParser<HtmlPageScripts, PageStream> streamingParser = new StreamingJavaScriptLibrariesHtmlPageParser();
+        if (metricsRegistry != null) {
+            streamingParser = new MeteredHtmlPageParser<>(streamingParser, metrics.getParse());
+        }
+
+        Long headTailBytes = Long.getLong(HEAD_TAIL_PROPERTY);
+        HttpClientPageDownloadService streamingDownloadService = null;
+        if (headTailBytes != null) {
+            streamingDownloadService = new HttpClientPageDownloadService(2000, 4,
+                    new BodyLimits(BodyLimits.DEFAULT.getMaxBytes(), headTailBytes), userAgent);
+            metrics.body(streamingDownloadService.getBodyStats());
+            pageDownloadService = streamingDownloadService;
+            if (metricsRegistry != null) {
+                pageDownloadService = new MeteredPageDownloadService(pageDownloadService, metrics);
+            }
+            if (adaptiveConcurrency != null) {
+                pageDownloadService = adaptiveConcurrency.measure(pageDownloadService);
+            }
+            scriptsExtractor = new StreamingPageScriptsExtractor(pageDownloadService, streamingParser);
+        }
+
+        String storeDirectory = System.getProperty(STORE_PROPERTY);
+        Long cacheMegabytes = Long.getLong(CACHE_PROPERTY);
+        PageScriptsStore store = null;
+        CachingPageScriptsExtractor pageCache = null;
+        if (storeDirectory != null) {
+            store = new PageScriptsStore(Paths.get(storeDirectory));
+            PersistentPageScriptsExtractor persistentExtractor = new PersistentPageScriptsExtractor(store,
+                    pageDownloadService, streamingParser, STORE_MAX_AGE_MILLIS);
+            LOG.info("Compacted the store, {} records dropped", persistentExtractor.compact(STORE_RETAIN_MILLIS));
+            scriptsExtractor = persistentExtractor;
+        } else if (cacheMegabytes != null) {
+            pageCache = new CachingPageScriptsExtractor(pageDownloadService, streamingParser,
+                    cacheMegabytes * 1024 * 1024, CACHE_TTL_MILLIS);
+            scriptsExtractor = pageCache;
+        }
+
+        PolitenessScheduler politenessScheduler = null;
+        if (polite) {
+            politenessScheduler = new PolitenessScheduler(POLITENESS_POLICY);
+            scriptsExtractor = politenessScheduler.throttleScripts(scriptsExtractor);
+        }
+
+        HedgingPageScriptsExtractor hedgingExtractor = null;
+        if (Boolean.getBoolean(HEDGE_PROPERTY)) {
+            hedgingExtractor = new HedgingPageScriptsExtractor(scriptsExtractor, 0.95, 50, 0.1);
+            scriptsExtractor = hedgingExtractor;
+        }
+        LibraryNormalizer normalizer = new LibraryNormalizer();
+        ScriptBodyCache scriptBodyCache = null;
+        if (Boolean.getBoolean(FINGERPRINT_PROPERTY)) {
+            scriptBodyCache = new ScriptBodyCache(new HttpScriptSource(2000, userAgent), normalizer,
+                    FINGERPRINTED_URLS, FINGERPRINTED_URLS);
+            scriptsExtractor = new FingerprintingPageScriptsExtractor(scriptsExtractor, scriptBodyCache);
+            normalizer = new ContentLibraryNormalizer(scriptBodyCache);
+        }
+        Long budgetMillis = Long.getLong(BUDGET_PROPERTY);
+        String journalDirectory = System.getProperty(JOURNAL_PROPERTY);
+
+        LibraryInterner interner = new LibraryInterner(normalizer);
+        PopularityTracker popularityTracker = null;
+        Supplier<ScriptsAggregator> aggregatorFactory = LibraryAggregator.factory(interner);
+        if (Boolean.getBoolean(POPULARITY_PROPERTY)) {
+            popularityTracker = new PopularityTracker(interner);
+            aggregatorFactory = LibraryAggregator.tracking(popularityTracker);
+        }
+        int ioThreads = Integer.getInteger(IO_THREADS_PROPERTY, Runtime.getRuntime().availableProcessors() * 2);
+        IoExecutionMode ioExecutionMode = IoExecutionMode.threadPool(ioThreads);
+
+        CrawlerEngine.Builder engineBuilder = CrawlerEngine.builder(downloadService, googleParser)
+                .scriptsExtractor(scriptsExtractor)
+                .aggregatorFactory(aggregatorFactory)
+                .metrics(metrics);
+        if (adaptiveConcurrency == null) {
+            engineBuilder.ioExecutionMode(ioExecutionMode);
+        } else {
+            engineBuilder.executors(adaptiveConcurrency.getIoExecutorService(),
+                    adaptiveConcurrency.getCalcExecutorService());
+        }
+
+        try (CrawlerEngine engine = engineBuilder.build()) {
             Consumer<Stream<KeyValue>> resultConsumer = keyValueStream -> keyValueStream.forEach(System.out::println);
-            engine.crawl(url, 5, resultConsumer);
+            if (serverPort != null) {
+                serve(new CrawlerServer(engine, searchUrl, serverPort, SERVER_LIMITS, popularityTracker));
+            } else if (workerPort != null) {
+                CrawlWorker worker = new CrawlWorker(engine, workerPort);
+                LOG.info("Crawl worker listening on port {}", worker.getPort());
+                serve(worker);
+            } else if (budgetMillis != null) {
+                engine.crawl(url, 5, budgetMillis, resultConsumer);
+            } else if (searchPages != null) {
+                engine.crawlSearchPages(url, 5, searchPaging, new SearchLimits(searchPages,
+                        Integer.getInteger(SEARCH_LINKS_PROPERTY, Integer.MAX_VALUE),
+                        Integer.getInteger(SEARCH_STABLE_PROPERTY, 0)), resultConsumer);
+            } else if (journalDirectory != null) {
+                crawlJournaled(engine, url, Paths.get(journalDirectory), resultConsumer);
+            } else {
+                engine.crawl(url, 5, resultConsumer);
+            }
+            if (metricsRegistry != null) {
+                System.out.print(PrometheusTextFormat.scrape(metricsRegistry));
+            }
+            if (streamingDownloadService != null) {
+                LOG.info("Result page bodies: {}", streamingDownloadService.getBodyStats());
+            }
+            if (scriptBodyCache != null) {
+                LOG.info("Script bodies: {}", scriptBodyCache.getStats());
+            }
+            if (pageCache != null) {
+                LOG.info("Page cache: {}", pageCache.getStats());
+            }
+            if (adaptiveConcurrency != null) {
+                LOG.info("Adapted to {} downloads and {} calc threads", adaptiveConcurrency.getIoLimit(),
+                        adaptiveConcurrency.getCalcLimit());
+            }
+        } finally {
+            if (adaptiveConcurrency != null) {
+                adaptiveConcurrency.close();
+            }
+            if (metricsServer != null) {
+                metricsServer.close();
+            }
+            if (hedgingExtractor != null) {
+                hedgingExtractor.close();
+            }
+            if (politenessScheduler != null) {
+                politenessScheduler.close();
+            }
+            if (store != null) {
+                store.close();
+            }
+        }
+    }
+
+    /**
+     * Answers requests until the JVM is asked to shut down, then drains the server before the engine and
+     * the rest are closed.
+     */
+    private static void serve(AutoCloseable server) {
+        CountDownLatch stopped = new CountDownLatch(1);
+        Thread mainThread = Thread.currentThread();
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            close(server);
+            stopped.countDown();
+            try {
+                mainThread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "server-shutdown"));
+        try {
+            stopped.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close(server);
+        }
+    }
+
+    /**
+     * Keeps a journal per query until its crawl completes, so a crawl that was killed resumes on the next run.
+     */
+    private static void crawlJournaled(CrawlerEngine engine, String url, Path directory,
+                                       Consumer<Stream<KeyValue>> resultConsumer) {
+        CrawlJournal journal = new CrawlJournal(directory.resolve(
+                Long.toHexString(SeenUrls.fingerprint(url)) + ".journal"));
+        try {
+            engine.crawl(url, 5, journal, resultConsumer);
+        } catch (RuntimeException e) {
+            journal.close();
+            throw e;
+        }
+        journal.delete();
+    }
+
+    private static void close(AutoCloseable server) {
+        try {
+            server.close();
+        } catch (Exception e) {
+            LOG.error("Failed to close {}", server, e);
+        }
+    }
+
+    /**
+     * The paging of the configured search engine: the offset parameter and page size passed, or the known
+     * paging of the engine the search URL points at.
+     */
+    private static SearchPages searchPaging(String searchUrl) {
+        String offsetParameter = System.getProperty(SEARCH_OFFSET_PROPERTY);
+        if (offsetParameter == null) {
+            return SearchPages.forUrl(searchUrl);
         }
+        return new SearchPages(offsetParameter,
+                Integer.getInteger(SEARCH_PAGE_SIZE_PROPERTY, SearchPages.GOOGLE.getResultsPerPage()));
     }
 
     private static String encodeUserQuery(String searchTerm) {
@@ -0,0 +1,157 @@
+package io.leontyev.crawler.cache;
+
+import io.leontyev.crawler.downloader.PageDownloadService;
+import io.leontyev.crawler.downloader.PageStream;
+import io.leontyev.crawler.downloader.PageValidators;
+import io.leontyev.crawler.parser.HtmlPageParser;
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+
+import java.time.Clock;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caches the extracted {@link HtmlPageScripts} of result pages, not the pages themselves, so entries
+ * stay small. The cache is bounded by an estimate of its heap footprint and evicts the least recently
+ * used entries first. Entries are served without any request until their TTL runs out; after that they
+ * are revalidated, and a {@code 304 Not Modified} simply extends the entry.
+ */
+public class CachingPageScriptsExtractor
+        extends RevalidatingPageScriptsExtractor<CachingPageScriptsExtractor.CacheEntry> {
+
+    private static final int ENTRY_OVERHEAD_BYTES = 96;
+    private static final int STRING_OVERHEAD_BYTES = 40;
+
+    private final long maxWeightBytes;
+    private final long ttlMillis;
+    private final Clock clock;
+
+    private final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long weightBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public CachingPageScriptsExtractor(PageDownloadService downloadService,
+                                       HtmlPageParser<HtmlPageScripts, PageStream> jsLibraryParser,
+                                       long maxWeightBytes,
+                                       long ttlMillis) {
+        this(downloadService, jsLibraryParser, maxWeightBytes, ttlMillis, Clock.systemUTC());
+    }
+
+    public CachingPageScriptsExtractor(PageDownloadService downloadService,
+                                       HtmlPageParser<HtmlPageScripts, PageStream> jsLibraryParser,
+                                       long maxWeightBytes,
+                                       long ttlMillis,
+                                       Clock clock) {
+        super(downloadService, jsLibraryParser);
+        this.maxWeightBytes = maxWeightBytes;
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+    }
+
+    @Override
+    protected CacheEntry lookup(String url) {
+        synchronized (entries) {
+            return entries.get(url);
+        }
+    }
+
+    @Override
+    protected boolean isFresh(CacheEntry entry) {
+        return entry.expiresAt > clock.millis();
+    }
+
+    @Override
+    protected void served(String url, CacheEntry entry) {
+        hits.increment();
+    }
+
+    @Override
+    protected void notModified(String url, CacheEntry entry, PageValidators validators) {
+        revalidations.increment();
+        put(url, new CacheEntry(entry.scripts, validators, clock.millis() + ttlMillis, entry.weight));
+    }
+
+    @Override
+    protected void parsed(String url, HtmlPageScripts scripts, PageValidators validators) {
+        misses.increment();
+        put(url, new CacheEntry(scripts, validators, clock.millis() + ttlMillis, weigh(url, scripts, validators)));
+    }
+
+    public PageCacheStats getStats() {
+        synchronized (entries) {
+            return new PageCacheStats(hits.sum(), misses.sum(), revalidations.sum(), evictions.sum(), entries.size(),
+                    weightBytes);
+        }
+    }
+
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+            weightBytes = 0;
+        }
+    }
+
+    private void put(String url, CacheEntry entry) {
+        if (entry.weight > maxWeightBytes) {
+            return;
+        }
+        synchronized (entries) {
+            CacheEntry previous = entries.put(url, entry);
+            if (previous != null) {
+                weightBytes -= previous.weight;
+            }
+            weightBytes += entry.weight;
+
+            Iterator<Map.Entry<String, CacheEntry>> eldest = entries.entrySet().iterator();
+            while (weightBytes > maxWeightBytes && eldest.hasNext()) {
+                weightBytes -= eldest.next().getValue().weight;
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    private static long weigh(String url, HtmlPageScripts scripts, PageValidators validators) {
+        long weight = ENTRY_OVERHEAD_BYTES + weigh(url)
+                + weigh(validators.getETag()) + weigh(validators.getLastModified());
+        for (String scriptUrl : scripts.getScriptUrls()) {
+            weight += weigh(scriptUrl) + Long.BYTES;
+        }
+        return weight;
+    }
+
+    private static long weigh(String value) {
+        return value == null ? 0 : STRING_OVERHEAD_BYTES + value.length();
+    }
+
+    static class CacheEntry implements RevalidatingPageScriptsExtractor.Entry {
+
+        private final HtmlPageScripts scripts;
+        private final PageValidators validators;
+        private final long expiresAt;
+        private final long weight;
+
+        CacheEntry(HtmlPageScripts scripts, PageValidators validators, long expiresAt, long weight) {
+            this.scripts = scripts;
+            this.validators = validators;
+            this.expiresAt = expiresAt;
+            this.weight = weight;
+        }
+
+        @Override
+        public HtmlPageScripts getScripts() {
+            return scripts;
+        }
+
+        @Override
+        public PageValidators getValidators() {
+            return validators;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package io.leontyev.crawler.cache;
+
+public class PageCacheStats {
+
+    private final long hits;
+    private final long misses;
+    private final long revalidations;
+    private final long evictions;
+    private final long entries;
+    private final long weightBytes;
+
+    public PageCacheStats(long hits, long misses, long revalidations, long evictions, long entries, long weightBytes) {
+        this.hits = hits;
+        this.misses = misses;
+        this.revalidations = revalidations;
+        this.evictions = evictions;
+        this.entries = entries;
+        this.weightBytes = weightBytes;
+    }
+
+    /**
+     * Lookups answered from a fresh entry without touching the network.
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Lookups that had to download and parse the page.
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Expired entries confirmed as current by a {@code 304 Not Modified}, so the page was not re-parsed.
+     */
+    public long getRevalidations() {
+        return revalidations;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
+    public long getEntries() {
+        return entries;
+    }
+
+    public long getWeightBytes() {
+        return weightBytes;
+    }
+
+    public double getHitRate() {
+        long lookups = hits + misses + revalidations;
+        return lookups == 0 ? 0 : (double) (hits + revalidations) / lookups;
+    }
+
+    @Override
+    public String toString() {
+        return "PageCacheStats{" +
+                "hits=" + hits +
+                ", misses=" + misses +
+                ", revalidations=" + revalidations +
+                ", evictions=" + evictions +
+                ", entries=" + entries +
+                ", weightBytes=" + weightBytes +
+                '}';
+    }
+}
@@ -0,0 +1,117 @@
+package io.leontyev.crawler.cache;
+
+import io.leontyev.crawler.downloader.PageDownloadService;
+import io.leontyev.crawler.downloader.PageStream;
+import io.leontyev.crawler.downloader.PageValidators;
+import io.leontyev.crawler.engine.PageScriptsExtractor;
+import io.leontyev.crawler.parser.HtmlPageParser;
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Serves the scripts of a page from a fresh entry without any request. A stale entry is revalidated with
+ * its {@code ETag}/{@code Last-Modified}: a {@code 304 Not Modified} keeps its scripts without parsing the
+ * page, anything else is parsed. Concurrent lookups that miss the same page share a single download.
+ * Subclasses decide where entries live and for how long they are fresh.
+ *
+ * @param <E> entries as kept by the subclass
+ */
+public abstract class RevalidatingPageScriptsExtractor<E extends RevalidatingPageScriptsExtractor.Entry>
+        implements PageScriptsExtractor {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RevalidatingPageScriptsExtractor.class);
+
+    private final PageDownloadService downloadService;
+    private final HtmlPageParser<HtmlPageScripts, PageStream> jsLibraryParser;
+    private final ConcurrentHashMap<String, CompletableFuture<HtmlPageScripts>> loads = new ConcurrentHashMap<>();
+
+    protected RevalidatingPageScriptsExtractor(PageDownloadService downloadService,
+                                               HtmlPageParser<HtmlPageScripts, PageStream> jsLibraryParser) {
+        this.downloadService = downloadService;
+        this.jsLibraryParser = jsLibraryParser;
+    }
+
+    @Override
+    public CompletableFuture<HtmlPageScripts> extract(String url, Executor ioExecutor, Executor calcExecutor) {
+        E entry = lookup(url);
+        if (entry != null && isFresh(entry)) {
+            served(url, entry);
+            return CompletableFuture.completedFuture(entry.getScripts());
+        }
+
+        CompletableFuture<HtmlPageScripts> load = new CompletableFuture<>();
+        CompletableFuture<HtmlPageScripts> inFlight = loads.putIfAbsent(url, load);
+        if (inFlight != null) {
+            LOG.debug("Joined: {}", url);
+            return inFlight;
+        }
+        try {
+            CompletableFuture.supplyAsync(() -> load(url, entry), ioExecutor).whenComplete((scripts, throwable) -> {
+                loads.remove(url, load);
+                if (throwable != null) {
+                    load.completeExceptionally(throwable);
+                } else {
+                    load.complete(scripts);
+                }
+            });
+        } catch (RuntimeException e) {
+            loads.remove(url, load);
+            throw e;
+        }
+        return load;
+    }
+
+    /**
+     * @return the entry kept for {@code url}, fresh or not, or {@code null}
+     */
+    protected abstract E lookup(String url);
+
+    protected abstract boolean isFresh(E entry);
+
+    /**
+     * Called when the server confirmed that {@code entry} is still current.
+     */
+    protected abstract void notModified(String url, E entry, PageValidators validators);
+
+    /**
+     * Called with the scripts of a page that was downloaded and parsed.
+     */
+    protected abstract void parsed(String url, HtmlPageScripts scripts, PageValidators validators);
+
+    /**
+     * Called when a fresh entry answers a lookup.
+     */
+    protected void served(String url, E entry) {
+        LOG.debug("Fresh: {}", url);
+    }
+
+    private HtmlPageScripts load(String url, E entry) {
+        PageValidators validators = entry == null ? PageValidators.NONE : entry.getValidators();
+        try (PageStream page = downloadService.open(url, validators)) {
+            if (page.isNotModified() && entry != null) {
+                LOG.debug("Not modified: {}", url);
+                notModified(url, entry, page.getValidators());
+                return entry.getScripts();
+            }
+
+            HtmlPageScripts scripts = jsLibraryParser.parse(page);
+            parsed(url, scripts, page.getValidators());
+            return scripts;
+        }
+    }
+
+    /**
+     * Extracted scripts together with the validators of the response they came from.
+     */
+    public interface Entry {
+
+        HtmlPageScripts getScripts();
+
+        PageValidators getValidators();
+    }
+}
@@ -0,0 +1,132 @@
+package io.leontyev.crawler.cluster;
+
+import io.leontyev.crawler.downloader.PageDownloadService;
+import io.leontyev.crawler.engine.KeyValue;
+import io.leontyev.crawler.engine.ScriptUrlAggregator;
+import io.leontyev.crawler.parser.HtmlPageParser;
+import io.leontyev.crawler.parser.page.HtmlPageLinks;
+import org.jsoup.nodes.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Spreads the pages of a search over {@link CrawlWorker}s and merges what they count. The search page is
+ * crawled here; its links are partitioned by host and port on a {@link ConsistentHashRing}, the unit the
+ * politeness rules apply to, so a site always lands on the same worker, and every worker gets its whole
+ * share in a single request. Workers answer with
+ * their counts already aggregated, which keeps the coordinator's work proportional to the number of
+ * distinct scripts rather than pages.
+ */
+public class ClusterCoordinator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ClusterCoordinator.class);
+
+    private static final int VIRTUAL_NODES = 128;
+
+    private final PageDownloadService downloadService;
+    private final HtmlPageParser<HtmlPageLinks, Document> googlePageParser;
+    private final ConsistentHashRing<URI> ring;
+    private final HttpClient httpClient;
+    private final Duration timeout;
+
+    /**
+     * @param workers base URLs of the workers, e.g. {@code http://10.0.0.2:7070}
+     * @param timeout how long a worker may take for its share
+     */
+    public ClusterCoordinator(List<URI> workers,
+                              PageDownloadService downloadService,
+                              HtmlPageParser<HtmlPageLinks, Document> googlePageParser,
+                              long timeout) {
+        this.downloadService = downloadService;
+        this.googlePageParser = googlePageParser;
+        this.ring = new ConsistentHashRing<>(workers, VIRTUAL_NODES);
+        this.httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofMillis(timeout)).build();
+        this.timeout = Duration.ofMillis(timeout);
+    }
+
+    public ClusterCrawlReport crawl(String url, int numResults, Consumer<Stream<KeyValue>> consumer) {
+        long start = System.nanoTime();
+        List<String> links = googlePageParser.parse(downloadService.download(url)).getLinkUrls();
+
+        ScriptUrlAggregator merged = new ScriptUrlAggregator();
+        AtomicLong pages = new AtomicLong();
+        AtomicInteger failedWorkers = new AtomicInteger();
+        Map<URI, List<String>> partitions = partition(links);
+
+        CompletableFuture<?>[] shares = partitions.entrySet().stream()
+                .map(share -> send(share.getKey(), share.getValue())
+                        .thenAccept(result -> {
+                            result.getCounts().forEach(merged::add);
+                            pages.addAndGet(result.getPages());
+                        })
+                        .exceptionally(throwable -> {
+                            failedWorkers.incrementAndGet();
+                            LOG.error("Worker {} failed: {}", share.getKey(), throwable.getMessage());
+                            return null;
+                        }))
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(shares).join();
+
+        ClusterCrawlReport report = new ClusterCrawlReport(partitions.size(), links.size(), pages.get(),
+                failedWorkers.get(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        LOG.info("Cluster crawl: {}", report);
+
+        consumer.accept(merged.topResults(numResults));
+        return report;
+    }
+
+    /**
+     * The links of every worker, in the order they were found.
+     */
+    Map<URI, List<String>> partition(List<String> links) {
+        Map<URI, List<String>> partitions = new LinkedHashMap<>();
+        for (String link : links) {
+            partitions.computeIfAbsent(ring.nodeFor(site(link)), worker -> new ArrayList<>()).add(link);
+        }
+        return partitions;
+    }
+
+    private CompletableFuture<WorkerProtocol.WorkerResult> send(URI worker, List<String> links) {
+        HttpRequest request = HttpRequest.newBuilder(worker.resolve(WorkerProtocol.EXTRACT_PATH))
+                .timeout(timeout)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(WorkerProtocol.encodeLinks(links)))
+                .build();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(response -> {
+                    if (response.statusCode() != 200) {
+                        throw new IllegalStateException("Wrong status: " + response.statusCode());
+                    }
+                    return WorkerProtocol.decodeCounts(response.body());
+                });
+    }
+
+    private static String site(String link) {
+        try {
+            URI uri = URI.create(link);
+            if (uri.getHost() == null) {
+                return link;
+            }
+            String host = uri.getHost().toLowerCase(Locale.ROOT);
+            return uri.getPort() < 0 ? host : host + ':' + uri.getPort();
+        } catch (IllegalArgumentException e) {
+            return link;
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package io.leontyev.crawler.cluster;
+
+public class ClusterCrawlReport {
+
+    private final int workers;
+    private final int links;
+    private final long pages;
+    private final int failedWorkers;
+    private final long wallTimeMillis;
+
+    public ClusterCrawlReport(int workers, int links, long pages, int failedWorkers, long wallTimeMillis) {
+        this.workers = workers;
+        this.links = links;
+        this.pages = pages;
+        this.failedWorkers = failedWorkers;
+        this.wallTimeMillis = wallTimeMillis;
+    }
+
+    /**
+     * Workers that were sent a share of the links.
+     */
+    public int getWorkers() {
+        return workers;
+    }
+
+    public int getLinks() {
+        return links;
+    }
+
+    /**
+     * Pages extracted by the workers that answered; failed pages are not counted.
+     */
+    public long getPages() {
+        return pages;
+    }
+
+    /**
+     * Workers that did not answer; their pages are missing from the results.
+     */
+    public int getFailedWorkers() {
+        return failedWorkers;
+    }
+
+    public long getWallTimeMillis() {
+        return wallTimeMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ClusterCrawlReport{" +
+                "workers=" + workers +
+                ", links=" + links +
+                ", pages=" + pages +
+                ", failedWorkers=" + failedWorkers +
+                ", wallTimeMillis=" + wallTimeMillis +
+                '}';
+    }
+}
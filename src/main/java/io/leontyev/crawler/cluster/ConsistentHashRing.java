@@ -0,0 +1,47 @@
+package io.leontyev.crawler.cluster;
+
+import io.leontyev.crawler.frontier.SeenUrls;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Maps keys to nodes so that adding or removing one of {@code n} nodes moves only about {@code 1/n} of the
+ * keys. Every node is placed at {@code virtualNodes} points of a 64-bit ring and a key belongs to the first
+ * node point at or after its own hash, which evens out the share of each node.
+ */
+class ConsistentHashRing<T> {
+
+    private final long[] points;
+    private final T[] owners;
+
+    @SuppressWarnings("unchecked")
+    ConsistentHashRing(List<T> nodes, int virtualNodes) {
+        if (nodes.isEmpty() || virtualNodes < 1) {
+            throw new IllegalArgumentException("A ring needs nodes and virtual nodes");
+        }
+        long[][] placed = new long[nodes.size() * virtualNodes][];
+        int point = 0;
+        for (int node = 0; node < nodes.size(); node++) {
+            for (int replica = 0; replica < virtualNodes; replica++) {
+                placed[point++] = new long[]{SeenUrls.fingerprint(nodes.get(node) + "#" + replica), node};
+            }
+        }
+        Arrays.sort(placed, (a, b) -> Long.compare(a[0], b[0]));
+
+        points = new long[placed.length];
+        owners = (T[]) new Object[placed.length];
+        for (int i = 0; i < placed.length; i++) {
+            points[i] = placed[i][0];
+            owners[i] = nodes.get((int) placed[i][1]);
+        }
+    }
+
+    T nodeFor(String key) {
+        int index = Arrays.binarySearch(points, SeenUrls.fingerprint(key));
+        if (index < 0) {
+            index = -index - 1;
+        }
+        return owners[index == points.length ? 0 : index];
+    }
+}
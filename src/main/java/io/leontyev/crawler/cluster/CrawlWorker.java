@@ -0,0 +1,117 @@
+package io.leontyev.crawler.cluster;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.leontyev.crawler.engine.CrawlerEngine;
+import io.leontyev.crawler.engine.KeyValue;
+import io.leontyev.crawler.engine.ScriptsAggregator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * One node of a crawl cluster: extracts the links a {@link ClusterCoordinator} sends it through its own
+ * engine and answers with the aggregated counts, see {@link WorkerProtocol}. Since the coordinator routes
+ * every host to the same worker, the worker's politeness state and caches cover all of that host's pages.
+ */
+public class CrawlWorker implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CrawlWorker.class);
+
+    private final CrawlerEngine engine;
+    private final HttpServer server;
+    private final ExecutorService httpExecutor;
+    private final AtomicLong extractedPages = new AtomicLong();
+
+    /**
+     * @param port port to listen on, 0 for any free port
+     */
+    public CrawlWorker(CrawlerEngine engine, int port) {
+        this.engine = engine;
+        try {
+            server = HttpServer.create(new InetSocketAddress(port), 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        AtomicInteger count = new AtomicInteger(1);
+        httpExecutor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "worker-http-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(httpExecutor);
+        server.createContext(WorkerProtocol.EXTRACT_PATH, this::extract);
+        server.createContext(WorkerProtocol.HEALTH_PATH, exchange -> respond(exchange, 200,
+                "ok".getBytes(StandardCharsets.UTF_8)));
+        server.start();
+        LOG.info("Worker listening on port {}", getPort());
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public long getExtractedPages() {
+        return extractedPages.get();
+    }
+
+    /**
+     * Stops listening; the engine belongs to the caller.
+     */
+    @Override
+    public void close() {
+        server.stop(0);
+        httpExecutor.shutdownNow();
+    }
+
+    private void extract(HttpExchange exchange) throws IOException {
+        if (!"POST".equals(exchange.getRequestMethod())) {
+            respond(exchange, 405, new byte[0]);
+            return;
+        }
+        List<String> links;
+        try {
+            links = WorkerProtocol.decodeLinks(WorkerProtocol.readRequest(exchange.getRequestBody()));
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Bad request: {}", e.getMessage());
+            respond(exchange, 400, new byte[0]);
+            return;
+        }
+        AtomicInteger pages = new AtomicInteger();
+        ScriptsAggregator aggregator;
+        try {
+            aggregator = engine.crawlLinks(links, scripts -> pages.incrementAndGet()).join();
+        } catch (RuntimeException e) {
+            LOG.error("Unable to extract {} links", links.size(), e);
+            respond(exchange, 500, new byte[0]);
+            return;
+        }
+        extractedPages.addAndGet(pages.get());
+        List<KeyValue> counts = aggregator.topResults(Integer.MAX_VALUE).collect(Collectors.toList());
+        respond(exchange, 200, WorkerProtocol.encodeCounts(pages.get(), counts));
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body) throws IOException {
+        try {
+            exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+            if (body.length > 0) {
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+}
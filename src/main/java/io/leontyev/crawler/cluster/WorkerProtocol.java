@@ -0,0 +1,149 @@
+package io.leontyev.crawler.cluster;
+
+import io.leontyev.crawler.engine.KeyValue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bodies exchanged between the coordinator and a worker, in {@link DataOutputStream} encoding with
+ * length-prefixed UTF-8 strings:
+ * <pre>
+ * POST /extract   request:  int links, links x string url
+ *                 response: int pages, int entries, entries x (string key, long count)
+ * </pre>
+ * Counts and string lengths are checked against the bytes left in the body before anything is allocated
+ * for them; a body that doesn't hold what it declares is rejected with an {@link IllegalArgumentException}.
+ */
+final class WorkerProtocol {
+
+    static final String EXTRACT_PATH = "/extract";
+    static final String HEALTH_PATH = "/health";
+
+    /**
+     * Largest request a worker reads, some hundred thousand links.
+     */
+    static final int MAX_REQUEST_BYTES = 16 * 1024 * 1024;
+
+    private WorkerProtocol() {
+    }
+
+    static byte[] encodeLinks(List<String> links) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(links.size());
+            for (String link : links) {
+                writeString(out, link);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Reads a request of at most {@link #MAX_REQUEST_BYTES}.
+     */
+    static byte[] readRequest(InputStream body) throws IOException {
+        byte[] bytes = body.readNBytes(MAX_REQUEST_BYTES + 1);
+        if (bytes.length > MAX_REQUEST_BYTES) {
+            throw new IllegalArgumentException("Request exceeds " + MAX_REQUEST_BYTES + " bytes");
+        }
+        return bytes;
+    }
+
+    static List<String> decodeLinks(byte[] body) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(body))) {
+            int size = readLength(in, Integer.BYTES);
+            List<String> links = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                links.add(readString(in));
+            }
+            return links;
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Truncated links", e);
+        }
+    }
+
+    static byte[] encodeCounts(int pages, List<KeyValue> counts) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(pages);
+            out.writeInt(counts.size());
+            for (KeyValue count : counts) {
+                writeString(out, count.getLibrary());
+                out.writeLong(count.getOccurrences());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static WorkerResult decodeCounts(byte[] body) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(body))) {
+            int pages = in.readInt();
+            int size = readLength(in, Integer.BYTES + Long.BYTES);
+            Map<String, Long> counts = new HashMap<>(size * 2);
+            for (int i = 0; i < size; i++) {
+                counts.put(readString(in), in.readLong());
+            }
+            return new WorkerResult(pages, counts);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[readLength(in, 1)];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * A count of items of at least {@code minBytes} each, which must fit in what is left of the body.
+     */
+    private static int readLength(DataInputStream in, int minBytes) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || (long) length * minBytes > in.available()) {
+            throw new IllegalArgumentException("Invalid length " + length + " with " + in.available()
+                    + " bytes left");
+        }
+        return length;
+    }
+
+    static class WorkerResult {
+
+        private final int pages;
+        private final Map<String, Long> counts;
+
+        WorkerResult(int pages, Map<String, Long> counts) {
+            this.pages = pages;
+            this.counts = counts;
+        }
+
+        int getPages() {
+            return pages;
+        }
+
+        Map<String, Long> getCounts() {
+            return counts;
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package io.leontyev.crawler.downloader;
+
+/**
+ * How much of a response body is read. Bodies are cut at {@code maxBytes}; when only the scripts of a page
+ * matter, reading can also stop {@code headTailBytes} after the first {@code </head>}, since most pages
+ * load their libraries in the head and the rest of the document is then transferred for nothing.
+ */
+public class BodyLimits {
+
+    /**
+     * The 2 MiB jsoup caps its own bodies at, reading every page to its end.
+     */
+    public static final BodyLimits DEFAULT = new BodyLimits(2 * 1024 * 1024, -1);
+
+    private final long maxBytes;
+    private final long headTailBytes;
+
+    /**
+     * @param maxBytes      decoded bytes read at most, 0 for no limit as with jsoup
+     * @param headTailBytes bytes read after {@code </head>}, or a negative value to read past it
+     */
+    public BodyLimits(long maxBytes, long headTailBytes) {
+        if (maxBytes < 0) {
+            throw new IllegalArgumentException("Max body size must not be negative: " + maxBytes);
+        }
+        this.maxBytes = maxBytes;
+        this.headTailBytes = headTailBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public long getHeadTailBytes() {
+        return headTailBytes;
+    }
+
+    public boolean isHeadOnly() {
+        return headTailBytes >= 0;
+    }
+
+    /**
+     * The same cap, reading the whole document: for pages whose body matters, such as search results.
+     */
+    public BodyLimits wholeDocument() {
+        return isHeadOnly() ? new BodyLimits(maxBytes, -1) : this;
+    }
+
+    @Override
+    public String toString() {
+        return "BodyLimits{" +
+                "maxBytes=" + maxBytes +
+                ", headTailBytes=" + headTailBytes +
+                '}';
+    }
+}
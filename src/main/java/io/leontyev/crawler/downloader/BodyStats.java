@@ -0,0 +1,71 @@
+package io.leontyev.crawler.downloader;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What the {@link BodyLimits} of a download service saved: bytes read, bytes of known length left unread,
+ * pages cut at the size cap or after their head, and buffer allocations avoided by the pool.
+ */
+public class BodyStats {
+
+    private final ByteBufferPool pool;
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesSkipped = new LongAdder();
+    private final LongAdder truncatedPages = new LongAdder();
+    private final LongAdder headOnlyPages = new LongAdder();
+
+    public BodyStats(ByteBufferPool pool) {
+        this.pool = pool;
+    }
+
+    void read(long bytes) {
+        bytesRead.add(bytes);
+    }
+
+    void skipped(long bytes) {
+        bytesSkipped.add(bytes);
+    }
+
+    void truncated() {
+        truncatedPages.increment();
+    }
+
+    void headOnly() {
+        headOnlyPages.increment();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.sum();
+    }
+
+    /**
+     * Bytes left unread of bodies that declared their length and were not compressed; the remainder of
+     * other bodies is unknown.
+     */
+    public long getBytesSkipped() {
+        return bytesSkipped.sum();
+    }
+
+    public long getTruncatedPages() {
+        return truncatedPages.sum();
+    }
+
+    public long getHeadOnlyPages() {
+        return headOnlyPages.sum();
+    }
+
+    public long getAllocationSavedBytes() {
+        return pool.getAllocationSavedBytes();
+    }
+
+    @Override
+    public String toString() {
+        return "BodyStats{" +
+                "bytesRead=" + getBytesRead() +
+                ", bytesSkipped=" + getBytesSkipped() +
+                ", truncatedPages=" + getTruncatedPages() +
+                ", headOnlyPages=" + getHeadOnlyPages() +
+                ", allocationSavedBytes=" + getAllocationSavedBytes() +
+                '}';
+    }
+}
@@ -0,0 +1,69 @@
+package io.leontyev.crawler.downloader;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed-size read buffers shared by all downloads, so a page costs no buffer allocation once the pool is
+ * warm. At most {@code maxPooled} idle buffers are kept; a burst beyond that allocates and the surplus is
+ * left to the collector when it is released.
+ * <p>
+ * The buffers live on the heap: bodies arrive as an {@link java.io.InputStream}, which can only fill a
+ * {@code byte[]}, so a direct buffer would cost one more copy per read instead of saving one.
+ */
+public class ByteBufferPool {
+
+    private final int bufferSize;
+    private final BlockingQueue<ByteBuffer> idle;
+    private final LongAdder allocated = new LongAdder();
+    private final LongAdder reused = new LongAdder();
+
+    public ByteBufferPool(int bufferSize, int maxPooled) {
+        if (bufferSize < 1 || maxPooled < 1) {
+            throw new IllegalArgumentException("Buffer size and pool size must be positive");
+        }
+        this.bufferSize = bufferSize;
+        this.idle = new ArrayBlockingQueue<>(maxPooled);
+    }
+
+    /**
+     * A cleared buffer of {@link #getBufferSize()} bytes, to be given back with {@link #release(ByteBuffer)}.
+     */
+    public ByteBuffer acquire() {
+        ByteBuffer buffer = idle.poll();
+        if (buffer == null) {
+            allocated.increment();
+            return ByteBuffer.allocate(bufferSize);
+        }
+        reused.increment();
+        return buffer;
+    }
+
+    public void release(ByteBuffer buffer) {
+        if (buffer.capacity() == bufferSize) {
+            buffer.clear();
+            idle.offer(buffer);
+        }
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public long getAllocated() {
+        return allocated.sum();
+    }
+
+    public long getReused() {
+        return reused.sum();
+    }
+
+    /**
+     * Bytes that would have been allocated without the pool.
+     */
+    public long getAllocationSavedBytes() {
+        return reused.sum() * bufferSize;
+    }
+}
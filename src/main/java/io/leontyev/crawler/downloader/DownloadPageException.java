@@ -2,16 +2,42 @@ package io.leontyev.crawler.downloader;
 
 public class DownloadPageException extends RuntimeException {
 
+    private static final long serialVersionUID = 1L;
+
+    private final int statusCode;
+
     public DownloadPageException(Exception e) {
         super(e);
+        this.statusCode = 0;
     }
 
     public DownloadPageException(String message) {
         super(message);
+        this.statusCode = 0;
     }
 
     public DownloadPageException(String message, Exception e) {
         super(message, e);
+        this.statusCode = 0;
+    }
+
+    /**
+     * A response that came with an unexpected status.
+     */
+    public DownloadPageException(int statusCode, Exception e) {
+        super("Wrong status: " + statusCode, e);
+        this.statusCode = statusCode;
+    }
+
+    public DownloadPageException(int statusCode) {
+        this(statusCode, null);
+    }
+
+    /**
+     * The HTTP status of the response, or 0 if the download failed before one came.
+     */
+    public int getStatusCode() {
+        return statusCode;
     }
 
 }
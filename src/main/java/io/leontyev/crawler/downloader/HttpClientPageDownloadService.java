@@ -0,0 +1,323 @@
+package io.leontyev.crawler.downloader;
+
+import org.brotli.dec.BrotliInputStream;
+import org.jsoup.UncheckedIOException;
+import org.jsoup.nodes.Document;
+import org.jsoup.parser.Parser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Downloads pages through a single shared {@link HttpClient}, so connections are kept alive and reused
+ * across fetches to the same host (and multiplexed over HTTP/2 where the server supports it). The
+ * number of requests in flight per host is capped, which also caps the connections opened to it.
+ * Compressed bodies are decoded here and jsoup is only used to parse the bytes.
+ * <p>
+ * Bodies are read through buffers of a shared {@link ByteBufferPool} and within {@link BodyLimits}: streamed
+ * pages, whose only use is their scripts, may stop shortly after their head, while downloaded documents are
+ * only cut at the size cap.
+ */
+public class HttpClientPageDownloadService implements PageDownloadService {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HttpClientPageDownloadService.class);
+
+    private static final String ACCEPT_ENCODING = "gzip, deflate, br";
+    private static final long MAX_DRAIN_BYTES = 16 * 1024;
+    private static final int BUFFER_SIZE = 16 * 1024;
+
+    private final HttpClient httpClient;
+    private final Duration timeout;
+    private final int maxConnectionsPerHost;
+    private final ConcurrentMap<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+    private final BodyLimits bodyLimits;
+    private final ByteBufferPool bufferPool;
+    private final BodyStats bodyStats;
+    private final String userAgent;
+
+    public HttpClientPageDownloadService(int timeout, int maxConnectionsPerHost) {
+        this(timeout, maxConnectionsPerHost, BodyLimits.DEFAULT);
+    }
+
+    public HttpClientPageDownloadService(int timeout, int maxConnectionsPerHost, BodyLimits bodyLimits) {
+        this(timeout, maxConnectionsPerHost, bodyLimits, DEFAULT_USER_AGENT);
+    }
+
+    public HttpClientPageDownloadService(int timeout, int maxConnectionsPerHost, BodyLimits bodyLimits,
+                                         String userAgent) {
+        this(HttpClient.newBuilder()
+                        .version(HttpClient.Version.HTTP_2)
+                        .followRedirects(HttpClient.Redirect.NORMAL)
+                        .connectTimeout(Duration.ofMillis(timeout))
+                        .build(),
+                timeout,
+                maxConnectionsPerHost,
+                bodyLimits,
+                new ByteBufferPool(BUFFER_SIZE, 256),
+                userAgent);
+    }
+
+    public HttpClientPageDownloadService(HttpClient httpClient, int timeout, int maxConnectionsPerHost) {
+        this(httpClient, timeout, maxConnectionsPerHost, BodyLimits.DEFAULT, new ByteBufferPool(BUFFER_SIZE, 256));
+    }
+
+    public HttpClientPageDownloadService(HttpClient httpClient, int timeout, int maxConnectionsPerHost,
+                                         BodyLimits bodyLimits, ByteBufferPool bufferPool) {
+        this(httpClient, timeout, maxConnectionsPerHost, bodyLimits, bufferPool, DEFAULT_USER_AGENT);
+    }
+
+    public HttpClientPageDownloadService(HttpClient httpClient, int timeout, int maxConnectionsPerHost,
+                                         BodyLimits bodyLimits, ByteBufferPool bufferPool, String userAgent) {
+        if (maxConnectionsPerHost < 1) {
+            throw new IllegalArgumentException("Max connections per host must be positive: " + maxConnectionsPerHost);
+        }
+        this.httpClient = httpClient;
+        this.timeout = Duration.ofMillis(timeout);
+        this.maxConnectionsPerHost = maxConnectionsPerHost;
+        this.bodyLimits = bodyLimits;
+        this.bufferPool = bufferPool;
+        this.bodyStats = new BodyStats(bufferPool);
+        this.userAgent = userAgent;
+    }
+
+    @Override
+    public Document download(String url) {
+        LOG.debug("Download page: {}", url);
+
+        Response response = send(url, PageValidators.NONE);
+        try (Reader body = new BufferedReader(reader(response, bodyLimits.wholeDocument()))) {
+            return Parser.htmlParser().parseInput(body, response.location);
+        } catch (IOException | UncheckedIOException e) {
+            throw new DownloadPageException("Unable to GET " + url, e);
+        }
+    }
+
+    @Override
+    public PageStream open(String url) {
+        return open(url, PageValidators.NONE);
+    }
+
+    @Override
+    public PageStream open(String url, PageValidators validators) {
+        LOG.debug("Open page: {}", url);
+
+        Response response = send(url, validators);
+        if (response.statusCode == 304) {
+            closeQuietly(response.body);
+            return PageStream.notModified(response.location, validators);
+        }
+        try {
+            PageValidators responseValidators = new PageValidators(
+                    response.headers.firstValue("ETag").orElse(null),
+                    response.headers.firstValue("Last-Modified").orElse(null));
+            return new PageStream(response.location, reader(response, bodyLimits), responseValidators);
+        } catch (IOException e) {
+            throw new DownloadPageException("Unable to GET " + url, e);
+        }
+    }
+
+    public BodyStats getBodyStats() {
+        return bodyStats;
+    }
+
+    private Reader reader(Response response, BodyLimits limits) throws IOException {
+        String charsetName = charsetOf(response.headers);
+        Charset charset = null;
+        try {
+            if (charsetName != null && Charset.isSupported(charsetName)) {
+                charset = Charset.forName(charsetName);
+            }
+        } catch (IllegalCharsetNameException e) {
+            LOG.debug("Illegal charset {}", charsetName);
+        }
+        boolean identity = response.headers.firstValue("Content-Encoding").orElse("").trim().isEmpty();
+        long contentLength = identity ? response.headers.firstValueAsLong("Content-Length").orElse(-1) : -1;
+        return new PooledBodyReader(decode(response), charset, contentLength, limits, bufferPool, bodyStats);
+    }
+
+    private Response send(String url, PageValidators validators) {
+        HttpRequest request;
+        try {
+            HttpRequest.Builder builder = HttpRequest.newBuilder(URI.create(url))
+                    .timeout(timeout)
+                    .header("User-Agent", userAgent)
+                    .header("Accept-Encoding", ACCEPT_ENCODING)
+                    .GET();
+            if (validators.getETag() != null) {
+                builder.header("If-None-Match", validators.getETag());
+            }
+            if (validators.getLastModified() != null) {
+                builder.header("If-Modified-Since", validators.getLastModified());
+            }
+            request = builder.build();
+        } catch (IllegalArgumentException e) {
+            throw new DownloadPageException("Detected malformed url: " + url, e);
+        }
+
+        Semaphore permits = hostPermits.computeIfAbsent(hostKey(request.uri()), host -> new Semaphore(maxConnectionsPerHost));
+        HttpResponse<InputStream> response;
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DownloadPageException("Interrupted while waiting for " + url, e);
+        }
+        try {
+            response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (IOException e) {
+            permits.release();
+            throw new DownloadPageException("Unable to GET " + url, e);
+        } catch (InterruptedException e) {
+            permits.release();
+            Thread.currentThread().interrupt();
+            throw new DownloadPageException("Interrupted while downloading " + url, e);
+        }
+
+        InputStream body = new ReleasingInputStream(response.body(), permits);
+        if (response.statusCode() == 304 && !validators.isEmpty()) {
+            return new Response(response.statusCode(), response.uri().toString(), response.headers(), body);
+        }
+        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+            closeQuietly(body);
+            throw new DownloadPageException(response.statusCode());
+        }
+        String contentType = response.headers().firstValue("Content-Type").orElse("");
+        if (!contentType.isEmpty() && !isHtml(contentType)) {
+            closeQuietly(body);
+            throw new DownloadPageException("Unsupported content type: " + contentType);
+        }
+
+        return new Response(response.statusCode(), response.uri().toString(), response.headers(), body);
+    }
+
+    private static InputStream decode(Response response) throws IOException {
+        String encoding = response.headers.firstValue("Content-Encoding").orElse("").trim().toLowerCase(Locale.ROOT);
+        InputStream body = response.body;
+        try {
+            switch (encoding) {
+                case "gzip":
+                case "x-gzip":
+                    return new GZIPInputStream(body);
+                case "deflate":
+                    return new InflaterInputStream(body);
+                case "br":
+                    return new BrotliInputStream(body);
+                default:
+                    return body;
+            }
+        } catch (IOException e) {
+            closeQuietly(body);
+            throw e;
+        }
+    }
+
+    private static String charsetOf(HttpHeaders headers) {
+        String contentType = headers.firstValue("Content-Type").orElse("");
+        int index = contentType.toLowerCase(Locale.ROOT).indexOf("charset=");
+        if (index < 0) {
+            return null;
+        }
+        String charset = contentType.substring(index + "charset=".length()).trim();
+        int end = charset.indexOf(';');
+        if (end >= 0) {
+            charset = charset.substring(0, end).trim();
+        }
+        charset = charset.replace("\"", "").replace("'", "");
+        return charset.isEmpty() ? null : charset;
+    }
+
+    private static boolean isHtml(String contentType) {
+        String type = contentType.toLowerCase(Locale.ROOT);
+        return type.startsWith("text/") || type.startsWith("application/xhtml+xml") || type.contains("/xml") || type.contains("+xml");
+    }
+
+    private static String hostKey(URI uri) {
+        return uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort();
+    }
+
+    private static void closeQuietly(InputStream stream) {
+        try {
+            stream.close();
+        } catch (IOException e) {
+            LOG.debug("Unable to close response body", e);
+        }
+    }
+
+    /**
+     * Gives the per-host permit back once the body has been closed. A connection only goes back to the
+     * pool when its body was read to the end, so a short unread remainder (e.g. a gzip trailer) is
+     * drained first; anything longer is cheaper to drop together with the connection. jsoup closes the
+     * body itself, so only the first close counts.
+     */
+    private static class ReleasingInputStream extends FilterInputStream {
+
+        private final Semaphore permits;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        ReleasingInputStream(InputStream in, Semaphore permits) {
+            super(in);
+            this.permits = permits;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                drain();
+                super.close();
+            } finally {
+                permits.release();
+            }
+        }
+
+        private void drain() {
+            byte[] buffer = new byte[1024];
+            long remaining = MAX_DRAIN_BYTES;
+            try {
+                int read;
+                while (remaining > 0 && (read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining))) >= 0) {
+                    remaining -= read;
+                }
+            } catch (IOException e) {
+                LOG.debug("Unable to drain response body", e);
+            }
+        }
+    }
+
+    private static class Response {
+
+        private final int statusCode;
+        private final String location;
+        private final HttpHeaders headers;
+        private final InputStream body;
+
+        Response(int statusCode, String location, HttpHeaders headers, InputStream body) {
+            this.statusCode = statusCode;
+            this.location = location;
+            this.headers = headers;
+            this.body = body;
+        }
+    }
+}
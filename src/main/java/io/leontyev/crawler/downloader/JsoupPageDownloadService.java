@@ -1,5 +1,6 @@
 package io.leontyev.crawler.downloader;
 
+import org.jsoup.Connection;
 import org.jsoup.HttpStatusException;
 import org.jsoup.Jsoup;
 import org.jsoup.nodes.Document;
@@ -7,15 +8,33 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 
 public class JsoupPageDownloadService implements PageDownloadService {
 
     private static final Logger LOG = LoggerFactory.getLogger(JsoupPageDownloadService.class);
 
     private final int timeout;
+    private final int maxBodyBytes;
+    private final String userAgent;
 
     public JsoupPageDownloadService(int timeout) {
+        this(timeout, (int) BodyLimits.DEFAULT.getMaxBytes());
+    }
+
+    /**
+     * @param maxBodyBytes bytes read of a body at most, 0 for no limit
+     */
+    public JsoupPageDownloadService(int timeout, int maxBodyBytes) {
+        this(timeout, maxBodyBytes, DEFAULT_USER_AGENT);
+    }
+
+    public JsoupPageDownloadService(int timeout, int maxBodyBytes, String userAgent) {
         this.timeout = timeout;
+        this.maxBodyBytes = maxBodyBytes;
+        this.userAgent = userAgent;
     }
 
     @Override
@@ -23,19 +42,66 @@ public class JsoupPageDownloadService implements PageDownloadService {
         return downloadPage(url);
     }
 
+    @Override
+    public PageStream open(String url) {
+        return open(url, PageValidators.NONE);
+    }
+
+    @Override
+    public PageStream open(String url, PageValidators validators) {
+        LOG.debug("Open page: {}", url);
+
+        Connection.Response response;
+        try {
+            Connection connection = Jsoup.connect(url).userAgent(userAgent).timeout(timeout).maxBodySize(maxBodyBytes);
+            if (validators.getETag() != null) {
+                connection.header("If-None-Match", validators.getETag());
+            }
+            if (validators.getLastModified() != null) {
+                connection.header("If-Modified-Since", validators.getLastModified());
+            }
+            response = connection.execute();
+        } catch (IllegalArgumentException e) {
+            throw new DownloadPageException("Detected malformed url: " + url, e);
+        } catch (HttpStatusException e) {
+            throw new DownloadPageException(e.getStatusCode(), e);
+        } catch (IOException e) {
+            throw new DownloadPageException("Unable to GET " + url, e);
+        }
+        if (response.statusCode() == 304) {
+            return PageStream.notModified(response.url().toExternalForm(), validators);
+        }
+        PageValidators responseValidators = new PageValidators(response.header("ETag"), response.header("Last-Modified"));
+        return new PageStream(response.url().toExternalForm(),
+                new InputStreamReader(response.bodyStream(), charsetOf(response)), responseValidators);
+    }
+
     private Document downloadPage(String url) {
-        LOG.info("Download page: {}", url);
+        LOG.debug("Download page: {}", url);
 
         Document doc;
         try {
-            doc = Jsoup.connect(url).userAgent("Mozilla").timeout(timeout).get();
+            doc = Jsoup.connect(url).userAgent(userAgent).timeout(timeout).maxBodySize(maxBodyBytes).get();
         } catch (IllegalArgumentException e) {
             throw new DownloadPageException("Detected malformed url: " + url, e);
         } catch (HttpStatusException e) {
-            throw new DownloadPageException("Wrong status: " + e.getStatusCode(), e);
+            throw new DownloadPageException(e.getStatusCode(), e);
         } catch (IOException e) {
             throw new DownloadPageException("Unable to GET " + url, e);
         }
         return doc;
     }
+
+    private static Charset charsetOf(Connection.Response response) {
+        String charsetName = response.charset();
+        if (charsetName == null) {
+            return StandardCharsets.UTF_8;
+        }
+        try {
+            return Charset.forName(charsetName);
+        } catch (IllegalArgumentException e) {
+            LOG.warn("Unsupported charset {}, falling back to UTF-8", charsetName);
+            return StandardCharsets.UTF_8;
+        }
+    }
 }
@@ -2,8 +2,34 @@ package io.leontyev.crawler.downloader;
 
 import org.jsoup.nodes.Document;
 
+import java.io.StringReader;
+
 public interface PageDownloadService {
 
+    /**
+     * {@code User-Agent} sent when the crawl does not identify itself by its own product token.
+     */
+    String DEFAULT_USER_AGENT = "Mozilla";
+
     Document download(String url);
 
+    /**
+     * Opens the page body as a character stream so it can be tokenized while it arrives, without
+     * building a {@link Document}. The caller is responsible for closing the returned stream.
+     * The default implementation falls back to {@link #download(String)}.
+     */
+    default PageStream open(String url) {
+        Document document = download(url);
+        return new PageStream(document.location(), new StringReader(document.outerHtml()));
+    }
+
+    /**
+     * Conditional variant of {@link #open(String)}: when the server confirms that the copy described by
+     * {@code validators} is still current, the returned stream is {@link PageStream#isNotModified()}.
+     * The default implementation ignores the validators and always opens the full page.
+     */
+    default PageStream open(String url, PageValidators validators) {
+        return open(url);
+    }
+
 }
@@ -0,0 +1,67 @@
+package io.leontyev.crawler.downloader;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+public class PageStream implements Closeable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PageStream.class);
+
+    private final String location;
+    private final Reader reader;
+    private final PageValidators validators;
+    private final boolean notModified;
+
+    public PageStream(String location, Reader reader) {
+        this(location, reader, PageValidators.NONE);
+    }
+
+    public PageStream(String location, Reader reader, PageValidators validators) {
+        this(location, reader, validators, false);
+    }
+
+    private PageStream(String location, Reader reader, PageValidators validators, boolean notModified) {
+        this.location = location;
+        this.reader = reader;
+        this.validators = validators;
+        this.notModified = notModified;
+    }
+
+    /**
+     * A bodiless answer to a conditional request: the copy described by {@code validators} is still current.
+     */
+    public static PageStream notModified(String location, PageValidators validators) {
+        return new PageStream(location, new StringReader(""), validators, true);
+    }
+
+    public String getLocation() {
+        return location;
+    }
+
+    public Reader getReader() {
+        return reader;
+    }
+
+    public PageValidators getValidators() {
+        return validators;
+    }
+
+    public boolean isNotModified() {
+        return notModified;
+    }
+
+    @Override
+    public void close() {
+        try {
+            reader.close();
+        } catch (IOException e) {
+            LOG.warn("Unable to close page stream: {}", location, e);
+        }
+    }
+
+}
@@ -0,0 +1,38 @@
+package io.leontyev.crawler.downloader;
+
+/**
+ * HTTP cache validators of a response, sent back as {@code If-None-Match}/{@code If-Modified-Since}
+ * to revalidate a cached page.
+ */
+public class PageValidators {
+
+    public static final PageValidators NONE = new PageValidators(null, null);
+
+    private final String eTag;
+    private final String lastModified;
+
+    public PageValidators(String eTag, String lastModified) {
+        this.eTag = eTag;
+        this.lastModified = lastModified;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+
+    public String getLastModified() {
+        return lastModified;
+    }
+
+    public boolean isEmpty() {
+        return eTag == null && lastModified == null;
+    }
+
+    @Override
+    public String toString() {
+        return "PageValidators{" +
+                "eTag='" + eTag + '\'' +
+                ", lastModified='" + lastModified + '\'' +
+                '}';
+    }
+}
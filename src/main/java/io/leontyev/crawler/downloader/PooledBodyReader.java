@@ -0,0 +1,301 @@
+package io.leontyev.crawler.downloader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes a response body from a pooled buffer straight into the caller's {@code char[]}, reading no more
+ * than its {@link BodyLimits} allow. The charset is taken from a byte order mark, then the
+ * {@code Content-Type} header, then a {@code <meta charset>} within the first kilobyte, and defaults to
+ * UTF-8; the meta tag is looked up in the bytes already buffered, so sniffing copies nothing.
+ * <p>
+ * {@code </head>} is matched on the raw bytes, which works for every ASCII compatible charset. In UTF-16
+ * the tag is never matched and the body is read up to the size cap.
+ */
+class PooledBodyReader extends Reader {
+
+    private static final int SNIFF_BYTES = 1024;
+    private static final byte[] HEAD_END = {'<', '/', 'h', 'e', 'a', 'd'};
+    private static final byte[] CHARSET = {'c', 'h', 'a', 'r', 's', 'e', 't'};
+    private static final byte[] META = {'m', 'e', 't', 'a'};
+
+    private final InputStream in;
+    private final Charset declared;
+    private final long contentLength;
+    private final long headTailBytes;
+    private final ByteBufferPool pool;
+    private final BodyStats stats;
+
+    private ByteBuffer buffer;
+    private CharsetDecoder decoder;
+    private long limit;
+    private long read;
+    private int headMatched;
+    private boolean headFound;
+    private boolean headLimited;
+    private boolean endOfInput;
+    private boolean stoppedEarly;
+    private boolean flushed;
+    private int pendingChar = -1;
+
+    /**
+     * @param declared      charset of the {@code Content-Type} header, or {@code null}
+     * @param contentLength length of the undecoded body when known, or -1
+     */
+    PooledBodyReader(InputStream in, Charset declared, long contentLength, BodyLimits limits, ByteBufferPool pool,
+                     BodyStats stats) {
+        this.in = in;
+        this.declared = declared;
+        this.contentLength = contentLength;
+        this.headTailBytes = limits.getHeadTailBytes();
+        this.limit = limits.getMaxBytes() == 0 ? Long.MAX_VALUE : limits.getMaxBytes();
+        this.pool = pool;
+        this.stats = stats;
+        this.buffer = pool.acquire();
+        buffer.flip();
+    }
+
+    @Override
+    public int read(char[] chars, int offset, int length) throws IOException {
+        if (buffer == null) {
+            throw new IOException("Stream closed");
+        }
+        if (length == 0) {
+            return 0;
+        }
+        if (pendingChar >= 0) {
+            chars[offset] = (char) pendingChar;
+            pendingChar = -1;
+            return 1;
+        }
+        if (decoder == null) {
+            start();
+        }
+        if (flushed) {
+            return -1;
+        }
+        CharBuffer out = CharBuffer.wrap(chars, offset, length);
+        while (true) {
+            CoderResult result = decoder.decode(buffer, out, endOfInput);
+            if (out.position() > offset) {
+                return out.position() - offset;
+            }
+            if (result.isOverflow()) {
+                return readSurrogatePair(chars, offset);
+            }
+            if (endOfInput) {
+                flushed = true;
+                decoder.flush(out);
+                return out.position() > offset ? out.position() - offset : -1;
+            }
+            fill();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+        pool.release(buffer);
+        buffer = null;
+        if (stoppedEarly) {
+            if (headLimited) {
+                stats.headOnly();
+            } else {
+                stats.truncated();
+            }
+            if (contentLength >= 0) {
+                stats.skipped(Math.max(0, contentLength - read));
+            }
+        }
+        in.close();
+    }
+
+    /**
+     * Buffers the first kilobyte, or the whole body if shorter, and picks the charset from it.
+     */
+    private void start() throws IOException {
+        while (!endOfInput && buffer.remaining() < SNIFF_BYTES) {
+            fill();
+        }
+        Charset charset = byteOrderMark();
+        if (charset == null) {
+            charset = declared != null ? declared : metaCharset();
+        }
+        decoder = (charset == null ? StandardCharsets.UTF_8 : charset).newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Reads as much as the buffer takes and the limits still allow.
+     */
+    private void fill() throws IOException {
+        buffer.compact();
+        try {
+            long budget = limit - read;
+            if (budget <= 0) {
+                endOfInput = true;
+                stoppedEarly = contentLength < 0 || read < contentLength;
+                return;
+            }
+            int start = buffer.position();
+            int count = in.read(buffer.array(), buffer.arrayOffset() + start,
+                    (int) Math.min(buffer.remaining(), budget));
+            if (count < 0) {
+                endOfInput = true;
+                return;
+            }
+            buffer.position(start + count);
+            if (headTailBytes >= 0 && !headFound) {
+                findHeadEnd(buffer.arrayOffset() + start, count);
+            }
+            read += count;
+            stats.read(count);
+        } finally {
+            buffer.flip();
+        }
+    }
+
+    /**
+     * Looks for {@code </head} followed by {@code >} or whitespace in the bytes just read, carrying a partial
+     * match over from the previous read; {@code </header} does not match.
+     */
+    private void findHeadEnd(int from, int count) {
+        byte[] bytes = buffer.array();
+        for (int i = 0; i < count; i++) {
+            int b = lowerCase(bytes[from + i]);
+            if (headMatched == HEAD_END.length && (b == '>' || isWhitespace(bytes[from + i]))) {
+                headFound = true;
+                long headLimit = Math.max(read + i + 1 + headTailBytes, read + count);
+                if (headLimit < limit) {
+                    limit = headLimit;
+                    headLimited = true;
+                }
+                return;
+            }
+            if (headMatched < HEAD_END.length && b == HEAD_END[headMatched]) {
+                headMatched++;
+            } else {
+                headMatched = b == '<' ? 1 : 0;
+            }
+        }
+    }
+
+    private Charset byteOrderMark() {
+        int position = buffer.position();
+        if (buffer.remaining() >= 3 && (buffer.get(position) & 0xFF) == 0xEF
+                && (buffer.get(position + 1) & 0xFF) == 0xBB && (buffer.get(position + 2) & 0xFF) == 0xBF) {
+            buffer.position(position + 3);
+            return StandardCharsets.UTF_8;
+        }
+        if (buffer.remaining() >= 2) {
+            int first = buffer.get(position) & 0xFF;
+            int second = buffer.get(position + 1) & 0xFF;
+            if (first == 0xFE && second == 0xFF) {
+                buffer.position(position + 2);
+                return StandardCharsets.UTF_16BE;
+            }
+            if (first == 0xFF && second == 0xFE) {
+                buffer.position(position + 2);
+                return StandardCharsets.UTF_16LE;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The {@code charset} of a {@code <meta charset>} or {@code <meta http-equiv content>} tag, if supported.
+     */
+    private Charset metaCharset() {
+        byte[] bytes = buffer.array();
+        int from = buffer.arrayOffset() + buffer.position();
+        int to = from + Math.min(buffer.remaining(), SNIFF_BYTES);
+        int tagStart = -1;
+        for (int i = from; i + CHARSET.length < to; i++) {
+            if (bytes[i] == '<') {
+                tagStart = i;
+            } else if (bytes[i] == '>') {
+                tagStart = -1;
+            } else if (tagStart >= 0 && matches(bytes, tagStart + 1, META) && matches(bytes, i, CHARSET)) {
+                int j = i + CHARSET.length;
+                while (j < to && isWhitespace(bytes[j])) {
+                    j++;
+                }
+                if (j == to || bytes[j] != '=') {
+                    continue;
+                }
+                j++;
+                while (j < to && (isWhitespace(bytes[j]) || bytes[j] == '"' || bytes[j] == '\'')) {
+                    j++;
+                }
+                int nameStart = j;
+                while (j < to && isCharsetNameChar(bytes[j])) {
+                    j++;
+                }
+                return charset(new String(bytes, nameStart, j - nameStart, StandardCharsets.US_ASCII));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A one-char read that met a supplementary character: hands out the high surrogate and keeps the low one.
+     */
+    private int readSurrogatePair(char[] chars, int offset) throws IOException {
+        CharBuffer pair = CharBuffer.allocate(2);
+        CoderResult result = decoder.decode(buffer, pair, endOfInput);
+        if (result.isError()) {
+            result.throwException();
+        }
+        pair.flip();
+        chars[offset] = pair.get();
+        if (pair.hasRemaining()) {
+            pendingChar = pair.get();
+        }
+        return 1;
+    }
+
+    private static Charset charset(String name) {
+        try {
+            return name.isEmpty() || !Charset.isSupported(name) ? null : Charset.forName(name);
+        } catch (IllegalCharsetNameException e) {
+            return null;
+        }
+    }
+
+    private static boolean matches(byte[] bytes, int from, byte[] lowerCase) {
+        if (from + lowerCase.length > bytes.length) {
+            return false;
+        }
+        for (int i = 0; i < lowerCase.length; i++) {
+            if (lowerCase(bytes[from + i]) != lowerCase[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int lowerCase(byte b) {
+        return b >= 'A' && b <= 'Z' ? b + ('a' - 'A') : b;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r' || b == '\f';
+    }
+
+    private static boolean isCharsetNameChar(byte b) {
+        return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9')
+                || b == '-' || b == '_' || b == '.' || b == ':';
+    }
+}
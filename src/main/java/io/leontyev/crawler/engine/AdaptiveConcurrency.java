@@ -0,0 +1,230 @@
+package io.leontyev.crawler.engine;
+
+import io.leontyev.crawler.downloader.DownloadPageException;
+import io.leontyev.crawler.downloader.PageDownloadService;
+import io.leontyev.crawler.downloader.PageStream;
+import io.leontyev.crawler.downloader.PageValidators;
+import org.jsoup.nodes.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Owns the io and calc executors of a {@link CrawlerEngine} and keeps resizing them, instead of fixing them
+ * at twice and once the number of processors.
+ * <p>
+ * The io pool is as large as an {@link AimdLimit} on concurrent downloads, fed by every download of the
+ * service returned by {@link #measure}: it grows while latency stays near its no-load value and shrinks when
+ * latency climbs or downloads time out, are refused or answered with 429 or 5xx. Other failures, such as a
+ * 404, say nothing about load and are ignored. For a streamed page the latency is the time to open it.
+ * <p>
+ * The calc pool is tuned on a timer: it gains a thread while tasks are queued and the process leaves CPU
+ * unused, as parsing then waits on something other than the processors, and it loses one while two threads
+ * are idle with nothing queued.
+ */
+public class AdaptiveConcurrency implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(AdaptiveConcurrency.class);
+
+    private static final double LATENCY_TOLERANCE = 1.5;
+    private static final double BACKOFF = 0.75;
+    private static final double MAX_ERROR_RATE = 0.1;
+    private static final double TARGET_CPU_LOAD = 0.9;
+    private static final long TUNE_INTERVAL_MILLIS = 500;
+
+    private final AimdLimit ioLimit;
+    private final ThreadPoolExecutor ioExecutor;
+    private final ThreadPoolExecutor calcExecutor;
+    private final int minCalcThreads;
+    private final int maxCalcThreads;
+    private final DoubleSupplier cpuLoad;
+    private final ScheduledExecutorService tuner;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    /**
+     * Starts at the former fixed sizes, lets downloads range from 1 to {@code maxDownloads} and parsing
+     * from 1 to twice the number of processors, and reads the CPU load of this process.
+     */
+    public AdaptiveConcurrency(int maxDownloads) {
+        this(Runtime.getRuntime().availableProcessors() * 2, 1, maxDownloads,
+                1, Runtime.getRuntime().availableProcessors() * 2, AdaptiveConcurrency::processCpuLoad,
+                Executors.newSingleThreadScheduledExecutor(daemon("concurrency-tuner")), TUNE_INTERVAL_MILLIS);
+    }
+
+    /**
+     * @param cpuLoad          CPU load of the process within [0, 1], negative when unknown
+     * @param tuneIntervalMillis how often the calc pool is tuned on {@code tuner}
+     */
+    public AdaptiveConcurrency(int initialDownloads, int minDownloads, int maxDownloads,
+                               int minCalcThreads, int maxCalcThreads, DoubleSupplier cpuLoad,
+                               ScheduledExecutorService tuner, long tuneIntervalMillis) {
+        this.ioLimit = new AimdLimit(initialDownloads, minDownloads, maxDownloads,
+                LATENCY_TOLERANCE, BACKOFF, MAX_ERROR_RATE);
+        this.minCalcThreads = minCalcThreads;
+        this.maxCalcThreads = maxCalcThreads;
+        this.cpuLoad = cpuLoad;
+        this.tuner = tuner;
+
+        int ioThreads = ioLimit.getLimit();
+        this.ioExecutor = new ThreadPoolExecutor(ioThreads, ioThreads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), named("io-adaptive"));
+        int calcThreads = Math.max(minCalcThreads, Math.min(maxCalcThreads,
+                Runtime.getRuntime().availableProcessors()));
+        this.calcExecutor = new ThreadPoolExecutor(calcThreads, calcThreads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), named("calc-adaptive"));
+
+        tuner.scheduleWithFixedDelay(this::tune, tuneIntervalMillis, tuneIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public ExecutorService getIoExecutorService() {
+        return ioExecutor;
+    }
+
+    public ExecutorService getCalcExecutorService() {
+        return calcExecutor;
+    }
+
+    /**
+     * Downloads allowed at the same time, which is the size of the io pool.
+     */
+    public int getIoLimit() {
+        return ioLimit.getLimit();
+    }
+
+    /**
+     * Threads of the calc pool.
+     */
+    public int getCalcLimit() {
+        return calcExecutor.getCorePoolSize();
+    }
+
+    /**
+     * Wraps the service whose downloads run on the io pool, so their latencies and failures drive its size.
+     */
+    public PageDownloadService measure(PageDownloadService delegate) {
+        return new PageDownloadService() {
+            @Override
+            public Document download(String url) {
+                return sample(() -> delegate.download(url));
+            }
+
+            @Override
+            public PageStream open(String url) {
+                return sample(() -> delegate.open(url));
+            }
+
+            @Override
+            public PageStream open(String url, PageValidators validators) {
+                return sample(() -> delegate.open(url, validators));
+            }
+        };
+    }
+
+    /**
+     * Stops tuning; the executors are shut down by the engine that runs on them.
+     */
+    @Override
+    public void close() {
+        tuner.shutdownNow();
+    }
+
+    /**
+     * One step of the calc pool: at most one thread more or less.
+     */
+    void tune() {
+        try {
+            int threads = calcExecutor.getCorePoolSize();
+            int queued = calcExecutor.getQueue().size();
+            double load = cpuLoad.getAsDouble();
+            if (queued > 0 && threads < maxCalcThreads && load < TARGET_CPU_LOAD) {
+                resize(calcExecutor, threads + 1);
+            } else if (queued == 0 && calcExecutor.getActiveCount() + 2 <= threads && threads > minCalcThreads) {
+                resize(calcExecutor, threads - 1);
+            }
+        } catch (RuntimeException e) {
+            LOG.error("Unable to tune the calc pool", e);
+        }
+    }
+
+    private <T> T sample(Supplier<T> download) {
+        int concurrent = inFlight.incrementAndGet();
+        long start = System.nanoTime();
+        boolean overload = false;
+        try {
+            return download.get();
+        } catch (RuntimeException e) {
+            overload = isOverload(e);
+            throw e;
+        } finally {
+            inFlight.decrementAndGet();
+            if (ioLimit.record(System.nanoTime() - start, concurrent, overload)) {
+                LOG.debug("Download limit now {}", ioLimit);
+                resize(ioExecutor, ioLimit.getLimit());
+            }
+        }
+    }
+
+    /**
+     * Core and maximum size move together, in the order the executor accepts; threads over a smaller size
+     * leave once their task is done.
+     */
+    private static void resize(ThreadPoolExecutor executor, int threads) {
+        synchronized (executor) {
+            if (threads > executor.getMaximumPoolSize()) {
+                executor.setMaximumPoolSize(threads);
+                executor.setCorePoolSize(threads);
+            } else {
+                executor.setCorePoolSize(threads);
+                executor.setMaximumPoolSize(threads);
+            }
+        }
+    }
+
+    static boolean isOverload(Throwable throwable) {
+        if (!(throwable instanceof DownloadPageException)) {
+            return false;
+        }
+        Throwable cause = throwable.getCause();
+        if (cause instanceof SocketTimeoutException || cause instanceof HttpTimeoutException
+                || cause instanceof ConnectException) {
+            return true;
+        }
+        int statusCode = ((DownloadPageException) throwable).getStatusCode();
+        return statusCode == 429 || statusCode >= 500;
+    }
+
+    private static double processCpuLoad() {
+        java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuLoad();
+        }
+        return -1;
+    }
+
+    private static ThreadFactory named(String name) {
+        AtomicInteger count = new AtomicInteger(1);
+        return runnable -> new Thread(runnable, name + "-" + count.getAndIncrement());
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
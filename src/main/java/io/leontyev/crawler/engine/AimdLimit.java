@@ -0,0 +1,111 @@
+package io.leontyev.crawler.engine;
+
+/**
+ * Additive-increase, multiplicative-decrease limit on concurrent downloads, decided once per window of
+ * {@code limit} completed downloads, which is about one round trip of every download in flight.
+ * <p>
+ * A window whose share of overload errors exceeds {@code maxErrorRate}, or whose mean latency exceeds
+ * {@code tolerance} times the no-load latency, multiplies the limit by {@code backoff}. A window that kept
+ * at least half of the limit busy and saw neither raises it by one; a window that did not has nothing to
+ * say about a higher limit. The no-load latency is the lowest window mean over the current and the previous
+ * horizon of {@link #HORIZON_WINDOWS} windows, so a network that got slower for good is not taken for
+ * overload forever.
+ */
+class AimdLimit {
+
+    static final int HORIZON_WINDOWS = 100;
+
+    private static final int MIN_WINDOW = 4;
+
+    private final int min;
+    private final int max;
+    private final double tolerance;
+    private final double backoff;
+    private final double maxErrorRate;
+
+    private int limit;
+    private int samples;
+    private int errors;
+    private int latencies;
+    private long latencySum;
+    private int maxInFlight;
+
+    private int windows;
+    private long noLoadNanos = Long.MAX_VALUE;
+    private long horizonNoLoadNanos = Long.MAX_VALUE;
+
+    AimdLimit(int initial, int min, int max, double tolerance, double backoff, double maxErrorRate) {
+        if (min < 1 || max < min) {
+            throw new IllegalArgumentException("Invalid limit range: " + min + ".." + max);
+        }
+        this.limit = Math.max(min, Math.min(max, initial));
+        this.min = min;
+        this.max = max;
+        this.tolerance = tolerance;
+        this.backoff = backoff;
+        this.maxErrorRate = maxErrorRate;
+    }
+
+    synchronized int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @param inFlight downloads in flight when this one started, itself included
+     * @param overload whether the download failed in a way that blames the load, such as a timeout
+     * @return whether the limit changed
+     */
+    synchronized boolean record(long latencyNanos, int inFlight, boolean overload) {
+        samples++;
+        maxInFlight = Math.max(maxInFlight, inFlight);
+        if (overload) {
+            errors++;
+        } else {
+            latencies++;
+            latencySum += latencyNanos;
+        }
+        if (samples < Math.max(MIN_WINDOW, limit)) {
+            return false;
+        }
+
+        int previous = limit;
+        long mean = latencies == 0 ? -1 : latencySum / latencies;
+        if (mean >= 0) {
+            noLoadNanos = Math.min(noLoadNanos, mean);
+            horizonNoLoadNanos = Math.min(horizonNoLoadNanos, mean);
+        }
+        if ((double) errors / samples > maxErrorRate || (mean >= 0 && mean > tolerance * noLoadNanos)) {
+            limit = Math.max(min, (int) (limit * backoff));
+        } else if (maxInFlight * 2 >= limit) {
+            limit = Math.min(max, limit + 1);
+        }
+        if (++windows % HORIZON_WINDOWS == 0) {
+            noLoadNanos = horizonNoLoadNanos;
+            horizonNoLoadNanos = Long.MAX_VALUE;
+        }
+
+        samples = 0;
+        errors = 0;
+        latencies = 0;
+        latencySum = 0;
+        maxInFlight = 0;
+        return limit != previous;
+    }
+
+    /**
+     * The mean latency of a window without load, or -1 before the first window.
+     */
+    synchronized long getNoLoadNanos() {
+        return noLoadNanos == Long.MAX_VALUE ? -1 : noLoadNanos;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "AimdLimit{" +
+                "limit=" + limit +
+                ", min=" + min +
+                ", max=" + max +
+                ", noLoadNanos=" + getNoLoadNanos() +
+                '}';
+    }
+}
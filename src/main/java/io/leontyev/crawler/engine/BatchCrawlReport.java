@@ -0,0 +1,50 @@
+package io.leontyev.crawler.engine;
+
+public class BatchCrawlReport {
+
+    private final int queries;
+    private final long pageRequests;
+    private final long uniquePages;
+    private final long wallTimeMillis;
+
+    public BatchCrawlReport(int queries, long pageRequests, long uniquePages, long wallTimeMillis) {
+        this.queries = queries;
+        this.pageRequests = pageRequests;
+        this.uniquePages = uniquePages;
+        this.wallTimeMillis = wallTimeMillis;
+    }
+
+    public int getQueries() {
+        return queries;
+    }
+
+    public long getPageRequests() {
+        return pageRequests;
+    }
+
+    public long getUniquePages() {
+        return uniquePages;
+    }
+
+    public long getWallTimeMillis() {
+        return wallTimeMillis;
+    }
+
+    /**
+     * Share of result links that were served by an extraction already started for another query.
+     */
+    public double getDedupHitRate() {
+        return pageRequests == 0 ? 0 : (double) (pageRequests - uniquePages) / pageRequests;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchCrawlReport{" +
+                "queries=" + queries +
+                ", pageRequests=" + pageRequests +
+                ", uniquePages=" + uniquePages +
+                ", dedupHitRate=" + getDedupHitRate() +
+                ", wallTimeMillis=" + wallTimeMillis +
+                '}';
+    }
+}
@@ -0,0 +1,71 @@
+package io.leontyev.crawler.engine;
+
+import io.leontyev.crawler.frontier.BloomUrlFilter;
+import io.leontyev.crawler.frontier.HashedUrlSet;
+import io.leontyev.crawler.frontier.SeenUrls;
+
+/**
+ * Bounds of a recursive crawl. Depth {@code 1} is the search results themselves, every further level
+ * follows the links of the previous one; no more than {@code maxPages} pages are crawled in total.
+ */
+public class CrawlLimits {
+
+    private final int maxDepth;
+    private final int maxPages;
+    private final int maxPagesInFlight;
+    private final double falsePositiveRate;
+
+    public CrawlLimits(int maxDepth, int maxPages) {
+        this(maxDepth, maxPages, 64, 0);
+    }
+
+    /**
+     * @param maxPagesInFlight pages extracted at the same time
+     * @param falsePositiveRate when positive, seen URLs are kept in a Bloom filter with this rate of wrongly
+     *                          skipped URLs instead of an exact fingerprint set
+     */
+    public CrawlLimits(int maxDepth, int maxPages, int maxPagesInFlight, double falsePositiveRate) {
+        if (maxDepth < 1 || maxPages < 1 || maxPagesInFlight < 1) {
+            throw new IllegalArgumentException("Crawl limits must be positive");
+        }
+        this.maxDepth = maxDepth;
+        this.maxPages = maxPages;
+        this.maxPagesInFlight = maxPagesInFlight;
+        this.falsePositiveRate = falsePositiveRate;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public int getMaxPages() {
+        return maxPages;
+    }
+
+    public int getMaxPagesInFlight() {
+        return maxPagesInFlight;
+    }
+
+    public double getFalsePositiveRate() {
+        return falsePositiveRate;
+    }
+
+    /**
+     * Links stop being recorded once the page budget is spent, so the set holds about {@code maxPages} URLs,
+     * give or take the pages finishing at that moment.
+     */
+    SeenUrls newSeenUrls() {
+        long expectedUrls = (long) maxPages + maxPagesInFlight;
+        return falsePositiveRate > 0 ? new BloomUrlFilter(expectedUrls, falsePositiveRate) : new HashedUrlSet(expectedUrls);
+    }
+
+    @Override
+    public String toString() {
+        return "CrawlLimits{" +
+                "maxDepth=" + maxDepth +
+                ", maxPages=" + maxPages +
+                ", maxPagesInFlight=" + maxPagesInFlight +
+                ", falsePositiveRate=" + falsePositiveRate +
+                '}';
+    }
+}
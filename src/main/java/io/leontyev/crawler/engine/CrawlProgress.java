@@ -0,0 +1,62 @@
+package io.leontyev.crawler.engine;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * How far a single query has got, readable while its pages are still being extracted. Once closed, pages
+ * that complete are neither counted nor aggregated, so a crawl cut short is ranked on what it had.
+ */
+class CrawlProgress {
+
+    private final AtomicInteger pages = new AtomicInteger();
+    private final AtomicInteger completedPages = new AtomicInteger();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile boolean closed;
+
+    void found(int links) {
+        pages.addAndGet(links);
+    }
+
+    /**
+     * Runs the aggregation of a completed page and counts it, unless the progress is closed. Pages complete
+     * concurrently with each other, but not with {@link #close()}.
+     */
+    void completed(Runnable aggregation) {
+        lock.readLock().lock();
+        try {
+            if (closed) {
+                return;
+            }
+            aggregation.run();
+            completedPages.incrementAndGet();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stops counting pages; returns once no page is being aggregated any more.
+     */
+    void close() {
+        lock.writeLock().lock();
+        try {
+            closed = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    int getPages() {
+        return pages.get();
+    }
+
+    int getCompletedPages() {
+        return completedPages.get();
+    }
+}
@@ -0,0 +1,210 @@
+package io.leontyev.crawler.engine;
+
+import io.leontyev.crawler.metrics.CrawlerMetrics;
+import io.leontyev.crawler.parser.page.HtmlPageLinks;
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Publishes a crawl page by page. Every subscriber gets a crawl of its own, started by its first request.
+ * <p>
+ * A page is only started while the subscriber has demand for it: pages in flight plus pages finished but
+ * not yet delivered never exceed the outstanding requests. A slow subscriber therefore holds back the
+ * downloads rather than having finished pages pile up. Failed pages are logged and skipped, and free
+ * their slot for the next link. Signals to the subscriber are serialized by a drain loop that whichever
+ * thread has something to do runs.
+ * <p>
+ * The ranking is only computed for a page the subscriber is left waiting after: when several finished pages
+ * are delivered at once, only the last of them is ranked.
+ */
+class CrawlPublisher implements Flow.Publisher<CrawlUpdate> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CrawlPublisher.class);
+
+    private final Supplier<CompletableFuture<HtmlPageLinks>> searchResults;
+    private final Function<String, CompletableFuture<HtmlPageScripts>> pageLoader;
+    private final Supplier<ScriptsAggregator> aggregatorFactory;
+    private final int numResults;
+    private final CrawlerMetrics metrics;
+
+    CrawlPublisher(Supplier<CompletableFuture<HtmlPageLinks>> searchResults,
+                   Function<String, CompletableFuture<HtmlPageScripts>> pageLoader,
+                   Supplier<ScriptsAggregator> aggregatorFactory,
+                   int numResults,
+                   CrawlerMetrics metrics) {
+        this.searchResults = searchResults;
+        this.pageLoader = pageLoader;
+        this.aggregatorFactory = aggregatorFactory;
+        this.numResults = numResults;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super CrawlUpdate> subscriber) {
+        Objects.requireNonNull(subscriber);
+        subscriber.onSubscribe(new PageSubscription(subscriber, aggregatorFactory.get()));
+    }
+
+    private class PageSubscription implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super CrawlUpdate> subscriber;
+        private final ScriptsAggregator aggregator;
+
+        private final AtomicInteger work = new AtomicInteger();
+        private final AtomicLong requested = new AtomicLong();
+        private final AtomicInteger pending = new AtomicInteger();
+        private final Queue<String> links = new ConcurrentLinkedQueue<>();
+        private final Queue<FinishedPage> finished = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean started = new AtomicBoolean();
+        private volatile boolean linksKnown;
+        private volatile boolean cancelled;
+        private volatile Throwable error;
+
+        private boolean terminated;
+        private int pages;
+
+        PageSubscription(Flow.Subscriber<? super CrawlUpdate> subscriber, ScriptsAggregator aggregator) {
+            this.subscriber = subscriber;
+            this.aggregator = aggregator;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("Request must be positive: " + n);
+                drain();
+                return;
+            }
+            requested.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            if (started.compareAndSet(false, true)) {
+                searchResults.get().whenComplete((googleResults, throwable) -> {
+                    if (throwable != null) {
+                        error = throwable;
+                    } else {
+                        links.addAll(googleResults.getLinkUrls());
+                        linksKnown = true;
+                    }
+                    drain();
+                });
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+
+        private void drain() {
+            if (work.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                drainOnce();
+                missed = work.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void drainOnce() {
+            if (terminated) {
+                return;
+            }
+            if (cancelled) {
+                terminated = true;
+                links.clear();
+                finished.clear();
+                return;
+            }
+            if (error != null) {
+                terminated = true;
+                subscriber.onError(error);
+                return;
+            }
+
+            long demand = requested.get();
+            long emitted = 0;
+            FinishedPage page;
+            while (emitted < demand && (page = finished.poll()) != null) {
+                pending.decrementAndGet();
+                long start = System.nanoTime();
+                aggregator.add(page.scripts);
+                metrics.getAggregate().recordSince(start);
+                metrics.getPageScripts().record(page.scripts.getScriptUrls().size());
+
+                List<KeyValue> topResults = finished.isEmpty()
+                        ? aggregator.topResults(numResults).collect(Collectors.toList())
+                        : null;
+                subscriber.onNext(new CrawlUpdate(page.url, page.scripts, topResults, ++pages));
+                emitted++;
+                if (cancelled) {
+                    return;
+                }
+            }
+            if (emitted > 0 && demand != Long.MAX_VALUE) {
+                requested.addAndGet(-emitted);
+            }
+
+            String link;
+            while (pending.get() < requested.get() && (link = links.poll()) != null) {
+                pending.incrementAndGet();
+                load(link);
+            }
+
+            if (linksKnown && links.isEmpty() && pending.get() == 0) {
+                terminated = true;
+                subscriber.onComplete();
+            }
+        }
+
+        private void load(String link) {
+            CompletableFuture<HtmlPageScripts> page;
+            try {
+                page = pageLoader.apply(link);
+            } catch (RuntimeException e) {
+                page = CompletableFuture.failedFuture(e);
+            }
+            page.whenComplete((scripts, throwable) -> {
+                if (throwable != null) {
+                    metrics.failure(throwable);
+                    LOG.error("Error: {}", throwable.getMessage());
+                }
+                if (scripts == null) {
+                    pending.decrementAndGet();
+                } else {
+                    finished.add(new FinishedPage(link, scripts));
+                }
+                drain();
+            });
+        }
+    }
+
+    /**
+     * A page extracted and waiting to be delivered.
+     */
+    private static class FinishedPage {
+
+        private final String url;
+        private final HtmlPageScripts scripts;
+
+        FinishedPage(String url, HtmlPageScripts scripts) {
+            this.url = url;
+            this.scripts = scripts;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package io.leontyev.crawler.engine;
+
+public class CrawlReport {
+
+    private final boolean partial;
+    private final int pages;
+    private final int completedPages;
+    private final long wallTimeMillis;
+
+    public CrawlReport(boolean partial, int pages, int completedPages, long wallTimeMillis) {
+        this.partial = partial;
+        this.pages = pages;
+        this.completedPages = completedPages;
+        this.wallTimeMillis = wallTimeMillis;
+    }
+
+    /**
+     * Whether the latency budget ran out before every page was extracted, so that the ranking only counts
+     * the pages completed by then.
+     */
+    public boolean isPartial() {
+        return partial;
+    }
+
+    /**
+     * Result links found on the search page, zero if the budget ran out before it was parsed.
+     */
+    public int getPages() {
+        return pages;
+    }
+
+    /**
+     * Pages extracted or failed within the budget.
+     */
+    public int getCompletedPages() {
+        return completedPages;
+    }
+
+    public long getWallTimeMillis() {
+        return wallTimeMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "CrawlReport{" +
+                "partial=" + partial +
+                ", pages=" + pages +
+                ", completedPages=" + completedPages +
+                ", wallTimeMillis=" + wallTimeMillis +
+                '}';
+    }
+}
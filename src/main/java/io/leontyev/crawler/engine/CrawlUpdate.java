@@ -0,0 +1,67 @@
+package io.leontyev.crawler.engine;
+
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of a published crawl: its scripts and, when ranked, the ranking of all pages published so far,
+ * this one included.
+ */
+public class CrawlUpdate {
+
+    private final String url;
+    private final HtmlPageScripts scripts;
+    private final List<KeyValue> topResults;
+    private final int pages;
+
+    /**
+     * @param topResults the running ranking, or null if this update is not ranked
+     */
+    public CrawlUpdate(String url, HtmlPageScripts scripts, List<KeyValue> topResults, int pages) {
+        this.url = url;
+        this.scripts = scripts;
+        this.topResults = topResults == null ? null : Collections.unmodifiableList(topResults);
+        this.pages = pages;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public HtmlPageScripts getScripts() {
+        return scripts;
+    }
+
+    /**
+     * Empty if the update is not ranked.
+     */
+    public List<KeyValue> getTopResults() {
+        return topResults == null ? Collections.emptyList() : topResults;
+    }
+
+    /**
+     * Whether the update carries the ranking. An update is left unranked when the next page was already
+     * waiting to be delivered; the last update of a crawl is always ranked.
+     */
+    public boolean isRanked() {
+        return topResults != null;
+    }
+
+    /**
+     * Pages published so far, this one included.
+     */
+    public int getPages() {
+        return pages;
+    }
+
+    @Override
+    public String toString() {
+        return "CrawlUpdate{" +
+                "url='" + url + '\'' +
+                ", topResults=" + topResults +
+                ", pages=" + pages +
+                '}';
+    }
+}
@@ -1,6 +1,8 @@
 package io.leontyev.crawler.engine;
 
 import io.leontyev.crawler.downloader.PageDownloadService;
+import io.leontyev.crawler.journal.CrawlJournal;
+import io.leontyev.crawler.metrics.CrawlerMetrics;
 import io.leontyev.crawler.parser.HtmlPageParser;
 import io.leontyev.crawler.parser.page.HtmlPageLinks;
 import io.leontyev.crawler.parser.page.HtmlPageScripts;
@@ -10,8 +12,11 @@ import org.slf4j.LoggerFactory;
 
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -21,74 +26,276 @@ public class CrawlerEngine implements AutoCloseable {
 
     private final PageDownloadService downloadService;
     private final HtmlPageParser<HtmlPageLinks, Document> googlePageParser;
-    private final HtmlPageParser<HtmlPageScripts, Document> jsLibraryParser;
+    private final PageScriptsExtractor scriptsExtractor;
     private final ExecutorService ioExecutorService;
     private final ExecutorService calcExecutorService;
+    private final Supplier<ScriptsAggregator> aggregatorFactory;
+    private final CrawlerMetrics metrics;
 
     public CrawlerEngine(PageDownloadService downloadService,
                          HtmlPageParser<HtmlPageLinks, Document> googlePageParser,
                          HtmlPageParser<HtmlPageScripts, Document> jsLibraryParser) {
-        this(downloadService,
-                googlePageParser,
-                jsLibraryParser,
-
-                Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 2, new ThreadFactory() {
-                    int count = 1;
+        this(builder(downloadService, googlePageParser)
+                .scriptsExtractor(new DocumentPageScriptsExtractor(downloadService, jsLibraryParser)));
+    }
 
-                    @Override
-                    public Thread newThread(Runnable runnable) {
-                        return new Thread(runnable, "io-executor-" + count++);
-                    }
-                }),
+    public CrawlerEngine(PageDownloadService downloadService,
+                         HtmlPageParser<HtmlPageLinks, Document> googlePageParser,
+                         HtmlPageParser<HtmlPageScripts, Document> jsLibraryParser,
+                         ExecutorService ioExecutorService,
+                         ExecutorService calcExecutorService) {
+        this(builder(downloadService, googlePageParser)
+                .scriptsExtractor(new DocumentPageScriptsExtractor(downloadService, jsLibraryParser))
+                .executors(ioExecutorService, calcExecutorService));
+    }
 
-                Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
+    private CrawlerEngine(Builder builder) {
+        if (builder.scriptsExtractor == null) {
+            throw new IllegalStateException("No scripts extractor");
+        }
+        this.downloadService = builder.downloadService;
+        this.googlePageParser = builder.googlePageParser;
+        this.scriptsExtractor = builder.scriptsExtractor;
+        this.ioExecutorService = builder.ioExecutorService != null
+                ? builder.ioExecutorService
+                : builder.ioExecutionMode.createExecutorService();
+        this.calcExecutorService = builder.calcExecutorService != null
+                ? builder.calcExecutorService
+                : Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), new ThreadFactory() {
                     int count = 1;
 
                     @Override
                     public Thread newThread(Runnable runnable) {
                         return new Thread(runnable, "calc-executor-" + count++);
                     }
-                }));
-    }
+                });
+        this.aggregatorFactory = builder.aggregatorFactory;
+        this.metrics = builder.metrics;
 
-    public CrawlerEngine(PageDownloadService downloadService,
-                         HtmlPageParser<HtmlPageLinks, Document> googlePageParser,
-                         HtmlPageParser<HtmlPageScripts, Document> jsLibraryParser,
-                         ExecutorService ioExecutorService,
-                         ExecutorService calcExecutorService) {
+        metrics.executor("io", () -> queued(ioExecutorService), () -> active(ioExecutorService));
+        metrics.executor("calc", () -> queued(calcExecutorService), () -> active(calcExecutorService));
+    }
 
-        this.downloadService = downloadService;
-        this.googlePageParser = googlePageParser;
-        this.jsLibraryParser = jsLibraryParser;
-        this.ioExecutorService = ioExecutorService;
-        this.calcExecutorService = calcExecutorService;
+    /**
+     * Starts an engine with everything but the download service and the search page parser left to defaults:
+     * a thread pool of twice the processors for I/O, one of the processors for parsing, counting by script URL
+     * and no metrics. Only the scripts extractor must be given.
+     */
+    public static Builder builder(PageDownloadService downloadService,
+                                  HtmlPageParser<HtmlPageLinks, Document> googlePageParser) {
+        return new Builder(downloadService, googlePageParser);
     }
 
+    /**
+     * Blocks until every page is crawled and hands the final ranking to the consumer; a subscriber of
+     * {@link #publish} with unbounded demand.
+     */
     public void crawl(String url, int numResults, Consumer<Stream<KeyValue>> consumer) {
-        CompletableFuture<Map<String, Long>> processor = requestGooglePage(url)
-                .thenComposeAsync(this::findGoogleResults)
-                .thenComposeAsync(this::downloadPages)
-                .thenComposeAsync(this::parsePages)
-                .thenComposeAsync(this::groupResults)
-                .exceptionally(throwable -> {
-                    LOG.error(throwable.getMessage(), throwable);
-                    return Collections.emptyMap();
-                });
+        LastRankingSubscriber subscriber = new LastRankingSubscriber();
+        publish(url, numResults).subscribe(subscriber);
+
+        consumer.accept(await(subscriber.done).stream());
+    }
 
-        Map<String, Long> jsLibsOccurrences;
+    /**
+     * Publishes the crawl page by page as pages complete, each update carrying the page's scripts and, unless
+     * the next page is already waiting, the running top {@code numResults}. Pages are started only against
+     * the subscriber's demand, so a slow subscriber slows the downloads down. Every subscription crawls anew;
+     * a failure of the search page is signalled with {@code onError}, failed result pages are skipped.
+     */
+    public Flow.Publisher<CrawlUpdate> publish(String url, int numResults) {
+        return new CrawlPublisher(() -> requestGooglePage(url).thenComposeAsync(this::findGoogleResults),
+                this::extractPage, aggregatorFactory, numResults, metrics);
+    }
+
+    /**
+     * Crawls within a latency budget. Once {@code budgetMillis} have passed, the consumer gets the ranking of
+     * the pages extracted so far and the report is marked partial; pages still in flight are left to finish
+     * in the background but are no longer aggregated, and no page is started after the deadline.
+     */
+    public CrawlReport crawl(String url, int numResults, long budgetMillis, Consumer<Stream<KeyValue>> consumer) {
+        long start = System.nanoTime();
+        ScriptsAggregator aggregator = aggregatorFactory.get();
+        CrawlProgress progress = new CrawlProgress();
+        CompletableFuture<ScriptsAggregator> processor = processQuery(url, this::extractPage, aggregator, progress);
+
+        boolean partial = false;
         try {
-            jsLibsOccurrences = processor.get();
+            processor.get(budgetMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            partial = true;
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new IllegalStateException(e);
         } catch (ExecutionException e) {
             throw new IllegalStateException(e.getCause());
         }
+        progress.close();
+
+        CrawlReport report = new CrawlReport(partial, progress.getPages(), progress.getCompletedPages(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        if (partial) {
+            LOG.warn("Crawl budget of {} ms exhausted: {}", budgetMillis, report);
+        }
+
+        consumer.accept(aggregator.topResults(numResults));
+        return report;
+    }
+
+    /**
+     * Crawls with a write-ahead {@link CrawlJournal}: the result links and every completed page are journaled
+     * as the crawl goes, and what a journal kept from a run that died is reused, so only the pages that run
+     * had not completed are fetched. Once its links are journaled, the search page is not requested again.
+     * Failed pages are not journaled and are retried by the next run.
+     */
+    public JournaledCrawlReport crawl(String url, int numResults, CrawlJournal journal,
+                                      Consumer<Stream<KeyValue>> consumer) {
+        long start = System.nanoTime();
+        ScriptsAggregator aggregator = aggregatorFactory.get();
+        CrawlProgress progress = new CrawlProgress();
+        AtomicLong resumed = new AtomicLong();
+        AtomicLong fetched = new AtomicLong();
+
+        Function<String, CompletableFuture<HtmlPageScripts>> pageLoader = link -> {
+            HtmlPageScripts completed = journal.getCompleted(link);
+            if (completed != null) {
+                resumed.incrementAndGet();
+                return CompletableFuture.completedFuture(completed);
+            }
+            return extractPage(link).thenApply(scripts -> {
+                journal.completed(link, scripts);
+                fetched.incrementAndGet();
+                return scripts;
+            });
+        };
+
+        List<String> frontier = journal.getFrontier();
+        CompletableFuture<HtmlPageLinks> links = frontier.isEmpty()
+                ? requestGooglePage(url)
+                        .thenComposeAsync(this::findGoogleResults)
+                        .thenApply(googleResults -> {
+                            journal.frontier(googleResults.getLinkUrls());
+                            return googleResults;
+                        })
+                : CompletableFuture.completedFuture(new HtmlPageLinks(frontier));
+
+        await(links.thenComposeAsync(googleResults -> extractPages(googleResults, pageLoader, aggregator, progress))
+                .exceptionally(throwable -> {
+                    LOG.error(throwable.getMessage(), throwable);
+                    return aggregator;
+                }));
+        journal.sync();
+
+        JournaledCrawlReport report = new JournaledCrawlReport(progress.getPages(), resumed.get(), fetched.get(),
+                journal.getReplayMillis(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        LOG.info("Journaled crawl: {}", report);
+
+        consumer.accept(aggregator.topResults(numResults));
+        return report;
+    }
+
+    /**
+     * Extracts the given pages, without a search page, and completes with their aggregated scripts once
+     * every page is done; failed pages are logged and left out.
+     */
+    public CompletableFuture<ScriptsAggregator> crawlLinks(List<String> links) {
+        return crawlLinks(links, scripts -> { });
+    }
+
+    /**
+     * Like {@link #crawlLinks(List)}, telling {@code extracted} about every page that was extracted.
+     */
+    public CompletableFuture<ScriptsAggregator> crawlLinks(List<String> links, Consumer<HtmlPageScripts> extracted) {
+        Function<String, CompletableFuture<HtmlPageScripts>> pageLoader = link -> extractPage(link)
+                .thenApply(scripts -> {
+                    extracted.accept(scripts);
+                    return scripts;
+                });
+        return extractPages(new HtmlPageLinks(links), pageLoader, aggregatorFactory.get(), new CrawlProgress());
+    }
+
+    /**
+     * Crawls several search pages at once. Every distinct result link is downloaded and parsed only once
+     * for the whole batch: queries that share a link share its in-flight extraction. Each query still
+     * gets its own ranking, handed to the consumer in the order of {@code urls} once the batch is done.
+     */
+    public BatchCrawlReport crawlBatch(List<String> urls, int numResults, BiConsumer<String, Stream<KeyValue>> consumer) {
+        long start = System.nanoTime();
+        ConcurrentMap<String, CompletableFuture<HtmlPageScripts>> sharedPages = new ConcurrentHashMap<>();
+        AtomicLong pageRequests = new AtomicLong();
+
+        Function<String, CompletableFuture<HtmlPageScripts>> pageLoader = link -> {
+            pageRequests.incrementAndGet();
+            return sharedPages.computeIfAbsent(link, this::extractPage);
+        };
+
+        List<CompletableFuture<ScriptsAggregator>> processors = urls.stream()
+                .map(url -> processQuery(url, pageLoader, aggregatorFactory.get(), new CrawlProgress()))
+                .collect(Collectors.toList());
+
+        await(CompletableFuture.allOf(processors.toArray(new CompletableFuture<?>[0])));
+
+        BatchCrawlReport report = new BatchCrawlReport(urls.size(), pageRequests.get(), sharedPages.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        LOG.info("Batch crawl: {}", report);
+
+        for (int i = 0; i < urls.size(); i++) {
+            consumer.accept(urls.get(i), processors.get(i).join().topResults(numResults));
+        }
+        return report;
+    }
+
+    /**
+     * Crawls the first {@link SearchLimits#getSearchPages()} pages of a search, all requested at once. The
+     * links of each search page are extracted as soon as it is parsed, each distinct link once, until the
+     * target number of links is taken; the crawl ends early once the top {@code numResults} have not changed
+     * over {@link SearchLimits#getStablePages()} result pages. A failed search page only loses its links.
+     */
+    public SearchCrawlReport crawlSearchPages(String url, int numResults, SearchPages searchPages, SearchLimits limits,
+                                              Consumer<Stream<KeyValue>> consumer) {
+        long start = System.nanoTime();
+        SearchCrawl crawl = new SearchCrawl(limits, numResults, this::extractPage, aggregatorFactory.get(), metrics);
+
+        List<CompletableFuture<HtmlPageLinks>> searchResults = new ArrayList<>(limits.getSearchPages());
+        for (int page = 0; page < limits.getSearchPages(); page++) {
+            searchResults.add(requestGooglePage(searchPages.url(url, page)).thenComposeAsync(this::findGoogleResults));
+        }
+        ScriptsAggregator aggregator = await(crawl.start(searchResults));
+
+        SearchCrawlReport report = crawl.report(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        LOG.info("Search crawl: {}", report);
 
-        consumer.accept(jsLibsOccurrences.entrySet().stream()
-                .sorted(Comparator.<Map.Entry<String, Long>>comparingLong(Map.Entry::getValue).reversed())
-                .limit(numResults)
-                .map(entry -> new KeyValue(entry.getKey(), entry.getValue())));
+        consumer.accept(aggregator.topResults(numResults));
+        return report;
+    }
+
+    /**
+     * Crawls the search results and then follows their links, level by level up to the depth and page budget
+     * of {@code limits}, ranking the scripts of every page crawled. Pages are taken round-robin across hosts
+     * and each URL is crawled at most once.
+     */
+    public RecursiveCrawlReport crawlRecursive(String url, int numResults, CrawlLimits limits,
+                                               LinkedPageExtractor pageExtractor,
+                                               Consumer<Stream<KeyValue>> consumer) {
+        long start = System.nanoTime();
+        RecursiveCrawl crawl = new RecursiveCrawl(limits, pageExtractor, aggregatorFactory.get(),
+                ioExecutorService, calcExecutorService, metrics);
+
+        CompletableFuture<ScriptsAggregator> processor = requestGooglePage(url)
+                .thenComposeAsync(this::findGoogleResults)
+                .thenCompose(crawl::start)
+                .exceptionally(throwable -> {
+                    LOG.error(throwable.getMessage(), throwable);
+                    return crawl.getAggregator();
+                });
+
+        ScriptsAggregator aggregator = await(processor);
+
+        RecursiveCrawlReport report = crawl.report(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        LOG.info("Recursive crawl: {}", report);
+
+        consumer.accept(aggregator.topResults(numResults));
+        return report;
     }
 
     @Override
@@ -114,6 +321,30 @@ public class CrawlerEngine implements AutoCloseable {
         }
     }
 
+    private CompletableFuture<ScriptsAggregator> processQuery(String url,
+                                                              Function<String, CompletableFuture<HtmlPageScripts>> pageLoader,
+                                                              ScriptsAggregator aggregator,
+                                                              CrawlProgress progress) {
+        return requestGooglePage(url)
+                .thenComposeAsync(this::findGoogleResults)
+                .thenComposeAsync(googleResults -> extractPages(googleResults, pageLoader, aggregator, progress))
+                .exceptionally(throwable -> {
+                    LOG.error(throwable.getMessage(), throwable);
+                    return aggregator;
+                });
+    }
+
+    private static <T> T await(CompletableFuture<T> processor) {
+        try {
+            return processor.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
     private CompletableFuture<Document> requestGooglePage(String url) {
         return CompletableFuture
                 .supplyAsync(() -> downloadService.download(url), ioExecutorService)
@@ -128,41 +359,157 @@ public class CrawlerEngine implements AutoCloseable {
         return CompletableFuture.supplyAsync(() -> googlePageParser.parse(googlePage), calcExecutorService);
     }
 
-    private CompletableFuture<List<Document>> downloadPages(HtmlPageLinks googleResults) {
-        List<CompletableFuture<Document>> documents = googleResults.getLinkUrls().stream()
-                .map(link -> CompletableFuture
-                        .supplyAsync(() -> downloadService.download(link), ioExecutorService)
+    /**
+     * Every page flows from download to parse to aggregation on its own, so a slow site only delays
+     * its own page and no page outlives its parse step.
+     */
+    private CompletableFuture<ScriptsAggregator> extractPages(HtmlPageLinks googleResults,
+                                                              Function<String, CompletableFuture<HtmlPageScripts>> pageLoader,
+                                                              ScriptsAggregator aggregator,
+                                                              CrawlProgress progress) {
+        if (progress.isClosed()) {
+            return CompletableFuture.completedFuture(aggregator);
+        }
+        progress.found(googleResults.getLinkUrls().size());
+
+        CompletableFuture<?>[] pages = googleResults.getLinkUrls().stream()
+                .map(link -> pageLoader.apply(link)
+                        .thenAccept(page -> progress.completed(() -> aggregate(aggregator, page)))
                         .exceptionally(throwable -> {
+                            metrics.failure(throwable);
                             LOG.error("Error: {}", throwable.getMessage());
+                            progress.completed(() -> { });
                             return null;
                         })
-                ).collect(Collectors.toList());
+                ).toArray(CompletableFuture[]::new);
 
-        CompletableFuture<Void> allFutures = CompletableFuture.allOf(documents.toArray(new CompletableFuture[0]));
+        return CompletableFuture.allOf(pages).thenApply(future -> aggregator);
+    }
 
-        return allFutures.thenApply(future -> documents.stream()
-                .map(CompletableFuture::join)
-                .collect(Collectors.toList()));
+    private void aggregate(ScriptsAggregator aggregator, HtmlPageScripts page) {
+        long start = System.nanoTime();
+        aggregator.add(page);
+        metrics.getAggregate().recordSince(start);
+        metrics.getPageScripts().record(page.getScriptUrls().size());
     }
 
-    private CompletableFuture<List<HtmlPageScripts>> parsePages(List<Document> pageResults) {
-        List<CompletableFuture<HtmlPageScripts>> pages = pageResults.stream()
-                .filter(Objects::nonNull)
-                .map(document -> CompletableFuture.supplyAsync(() -> jsLibraryParser.parse(document), calcExecutorService)).collect(Collectors.toList());
+    private static long queued(ExecutorService executorService) {
+        if (executorService instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executorService).getQueue().size();
+        }
+        if (executorService instanceof BoundedExecutorService) {
+            return ((BoundedExecutorService) executorService).getWaiting();
+        }
+        if (executorService instanceof ForkJoinPool) {
+            return ((ForkJoinPool) executorService).getQueuedSubmissionCount();
+        }
+        return 0;
+    }
 
-        CompletableFuture<Void> allPages = CompletableFuture.allOf(pages.toArray(new CompletableFuture[0]));
+    private static long active(ExecutorService executorService) {
+        if (executorService instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executorService).getActiveCount();
+        }
+        if (executorService instanceof BoundedExecutorService) {
+            return ((BoundedExecutorService) executorService).getActive();
+        }
+        if (executorService instanceof ForkJoinPool) {
+            return ((ForkJoinPool) executorService).getActiveThreadCount();
+        }
+        return 0;
+    }
+
+    private CompletableFuture<HtmlPageScripts> extractPage(String link) {
+        return scriptsExtractor.extract(link, ioExecutorService, calcExecutorService);
+    }
+
+    private static class LastRankingSubscriber implements Flow.Subscriber<CrawlUpdate> {
+
+        private final CompletableFuture<List<KeyValue>> done = new CompletableFuture<>();
+        private List<KeyValue> topResults = Collections.emptyList();
 
-        return allPages.thenApply(future -> pages.stream()
-                .map(CompletableFuture::join)
-                .collect(Collectors.toList()));
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            subscription.request(Long.MAX_VALUE);
+        }
+
+        @Override
+        public void onNext(CrawlUpdate update) {
+            if (update.isRanked()) {
+                topResults = update.getTopResults();
+            }
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            LOG.error(throwable.getMessage(), throwable);
+            done.complete(topResults);
+        }
+
+        @Override
+        public void onComplete() {
+            done.complete(topResults);
+        }
     }
 
-    private CompletableFuture<Map<String, Long>> groupResults(List<HtmlPageScripts> htmlPages) {
-        return CompletableFuture.supplyAsync(() ->
-                        htmlPages.stream()
-                                .filter(Objects::nonNull)
-                                .flatMap(htmlPage -> htmlPage.getScriptUrls().stream())
-                                .collect(Collectors.groupingBy(Function.identity(), Collectors.counting()))
-                , calcExecutorService);
+    public static class Builder {
+
+        private final PageDownloadService downloadService;
+        private final HtmlPageParser<HtmlPageLinks, Document> googlePageParser;
+        private PageScriptsExtractor scriptsExtractor;
+        private IoExecutionMode ioExecutionMode =
+                IoExecutionMode.threadPool(Runtime.getRuntime().availableProcessors() * 2);
+        private ExecutorService ioExecutorService;
+        private ExecutorService calcExecutorService;
+        private Supplier<ScriptsAggregator> aggregatorFactory = ScriptUrlAggregator::new;
+        private CrawlerMetrics metrics = CrawlerMetrics.NOOP;
+
+        private Builder(PageDownloadService downloadService, HtmlPageParser<HtmlPageLinks, Document> googlePageParser) {
+            this.downloadService = downloadService;
+            this.googlePageParser = googlePageParser;
+        }
+
+        public Builder scriptsExtractor(PageScriptsExtractor scriptsExtractor) {
+            this.scriptsExtractor = scriptsExtractor;
+            return this;
+        }
+
+        /**
+         * How the engine creates its I/O executor; ignored when {@link #executors} are given.
+         */
+        public Builder ioExecutionMode(IoExecutionMode ioExecutionMode) {
+            this.ioExecutionMode = ioExecutionMode;
+            return this;
+        }
+
+        /**
+         * Executors to run on instead of creating them; the engine shuts them down when it is closed.
+         */
+        public Builder executors(ExecutorService ioExecutorService, ExecutorService calcExecutorService) {
+            this.ioExecutorService = ioExecutorService;
+            this.calcExecutorService = calcExecutorService;
+            return this;
+        }
+
+        /**
+         * @param aggregatorFactory creates the counter of script occurrences for every crawled query
+         */
+        public Builder aggregatorFactory(Supplier<ScriptsAggregator> aggregatorFactory) {
+            this.aggregatorFactory = aggregatorFactory;
+            return this;
+        }
+
+        /**
+         * @param metrics records the aggregation and the failures of every page, and reports the queue depth and
+         *                active threads of both executors
+         */
+        public Builder metrics(CrawlerMetrics metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        public CrawlerEngine build() {
+            return new CrawlerEngine(this);
+        }
     }
 }
@@ -0,0 +1,37 @@
+package io.leontyev.crawler.engine;
+
+import io.leontyev.crawler.downloader.PageDownloadService;
+import io.leontyev.crawler.parser.HtmlPageParser;
+import io.leontyev.crawler.parser.page.HtmlPageLinks;
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+import org.jsoup.nodes.Document;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Downloads the full {@link Document} on the I/O executor and runs both parsers over it on the
+ * calculation executor.
+ */
+public class DocumentLinkedPageExtractor implements LinkedPageExtractor {
+
+    private final PageDownloadService downloadService;
+    private final HtmlPageParser<HtmlPageScripts, Document> jsLibraryParser;
+    private final HtmlPageParser<HtmlPageLinks, Document> linksParser;
+
+    public DocumentLinkedPageExtractor(PageDownloadService downloadService,
+                                       HtmlPageParser<HtmlPageScripts, Document> jsLibraryParser,
+                                       HtmlPageParser<HtmlPageLinks, Document> linksParser) {
+        this.downloadService = downloadService;
+        this.jsLibraryParser = jsLibraryParser;
+        this.linksParser = linksParser;
+    }
+
+    @Override
+    public CompletableFuture<LinkedPage> extract(String url, Executor ioExecutor, Executor calcExecutor) {
+        return CompletableFuture
+                .supplyAsync(() -> downloadService.download(url), ioExecutor)
+                .thenApplyAsync(document -> new LinkedPage(jsLibraryParser.parse(document), linksParser.parse(document)),
+                        calcExecutor);
+    }
+}
@@ -0,0 +1,31 @@
+package io.leontyev.crawler.engine;
+
+import io.leontyev.crawler.downloader.PageDownloadService;
+import io.leontyev.crawler.parser.HtmlPageParser;
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+import org.jsoup.nodes.Document;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Downloads the full {@link Document} on the I/O executor and parses it on the calculation executor.
+ */
+public class DocumentPageScriptsExtractor implements PageScriptsExtractor {
+
+    private final PageDownloadService downloadService;
+    private final HtmlPageParser<HtmlPageScripts, Document> jsLibraryParser;
+
+    public DocumentPageScriptsExtractor(PageDownloadService downloadService,
+                                        HtmlPageParser<HtmlPageScripts, Document> jsLibraryParser) {
+        this.downloadService = downloadService;
+        this.jsLibraryParser = jsLibraryParser;
+    }
+
+    @Override
+    public CompletableFuture<HtmlPageScripts> extract(String url, Executor ioExecutor, Executor calcExecutor) {
+        return CompletableFuture
+                .supplyAsync(() -> downloadService.download(url), ioExecutor)
+                .thenApplyAsync(jsLibraryParser::parse, calcExecutor);
+    }
+}
@@ -0,0 +1,147 @@
+package io.leontyev.crawler.engine;
+
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends a second, hedged request for a page that is still not extracted once it is slower than the given
+ * percentile of recent extractions, and takes whichever answer comes first. A page served slowly by a
+ * stalled connection or an overloaded replica then costs about the percentile plus a typical extraction
+ * instead of its own tail latency.
+ * <p>
+ * Hedges are capped to a share of all requests, so a site that is slow across the board is not hit twice
+ * as hard. No hedging happens until enough latencies are known to put a threshold on. The slower request
+ * is not cancelled: a download cannot be interrupted halfway, and its latency still feeds the threshold.
+ * A page fails only when every request sent for it failed.
+ */
+public class HedgingPageScriptsExtractor implements PageScriptsExtractor, AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HedgingPageScriptsExtractor.class);
+
+    private static final int LATENCY_SAMPLES = 1024;
+    private static final int MIN_SAMPLES = 20;
+
+    private final PageScriptsExtractor delegate;
+    private final ScheduledExecutorService timer;
+    private final LatencyRecorder latencies;
+    private final long minHedgeDelayMillis;
+    private final double maxHedgeRatio;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+
+    /**
+     * Hedges on a daemon timer thread of its own.
+     */
+    public HedgingPageScriptsExtractor(PageScriptsExtractor delegate, double percentile, long minHedgeDelayMillis,
+                                       double maxHedgeRatio) {
+        this(delegate, Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "hedging-timer");
+            thread.setDaemon(true);
+            return thread;
+        }), percentile, minHedgeDelayMillis, maxHedgeRatio);
+    }
+
+    /**
+     * @param percentile          latency percentile after which a page gets a hedged request, e.g. 0.95
+     * @param minHedgeDelayMillis lower bound of the hedge delay, however fast recent pages were
+     * @param maxHedgeRatio       at most this share of requests is hedged, e.g. 0.1
+     */
+    public HedgingPageScriptsExtractor(PageScriptsExtractor delegate, ScheduledExecutorService timer,
+                                       double percentile, long minHedgeDelayMillis, double maxHedgeRatio) {
+        this.delegate = delegate;
+        this.timer = timer;
+        this.latencies = new LatencyRecorder(LATENCY_SAMPLES, percentile, MIN_SAMPLES);
+        this.minHedgeDelayMillis = minHedgeDelayMillis;
+        this.maxHedgeRatio = maxHedgeRatio;
+    }
+
+    @Override
+    public CompletableFuture<HtmlPageScripts> extract(String url, Executor ioExecutor, Executor calcExecutor) {
+        requests.incrementAndGet();
+        CompletableFuture<HtmlPageScripts> result = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+
+        send(url, ioExecutor, calcExecutor, result, pending, false);
+
+        long threshold = latencies.getThreshold();
+        if (threshold >= 0 && !result.isDone()) {
+            ScheduledFuture<?> hedge = timer.schedule(() -> hedge(url, ioExecutor, calcExecutor, result, pending),
+                    Math.max(threshold, minHedgeDelayMillis), TimeUnit.MILLISECONDS);
+            result.whenComplete((scripts, throwable) -> hedge.cancel(false));
+        }
+        return result;
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getHedges() {
+        return hedges.get();
+    }
+
+    /**
+     * Hedged requests that answered before the request they duplicated.
+     */
+    public long getHedgeWins() {
+        return hedgeWins.get();
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+
+    private void hedge(String url, Executor ioExecutor, Executor calcExecutor,
+                       CompletableFuture<HtmlPageScripts> result, AtomicInteger pending) {
+        if (result.isDone() || hedges.get() >= maxHedgeRatio * requests.get()) {
+            return;
+        }
+        int attempts;
+        do {
+            attempts = pending.get();
+            if (attempts == 0) {
+                return;
+            }
+        } while (!pending.compareAndSet(attempts, attempts + 1));
+
+        hedges.incrementAndGet();
+        LOG.debug("Hedging {}", url);
+        send(url, ioExecutor, calcExecutor, result, pending, true);
+    }
+
+    private void send(String url, Executor ioExecutor, Executor calcExecutor,
+                      CompletableFuture<HtmlPageScripts> result, AtomicInteger pending, boolean hedged) {
+        long start = System.nanoTime();
+        CompletableFuture<HtmlPageScripts> response;
+        try {
+            response = delegate.extract(url, ioExecutor, calcExecutor);
+        } catch (RuntimeException e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+        response.whenComplete((scripts, throwable) -> {
+            if (throwable == null) {
+                if (!hedged) {
+                    latencies.record(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+                }
+                if (result.complete(scripts) && hedged) {
+                    hedgeWins.incrementAndGet();
+                }
+            } else if (pending.decrementAndGet() == 0) {
+                result.completeExceptionally(throwable);
+            }
+        });
+    }
+}
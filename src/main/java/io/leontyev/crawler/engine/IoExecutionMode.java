@@ -0,0 +1,95 @@
+package io.leontyev.crawler.engine;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Decides how {@link CrawlerEngine} builds the executor that runs downloads.
+ * <p>
+ * {@link #threadPool(int)} is the classic fixed pool of platform threads. {@link #virtualThreads(int)}
+ * starts a virtual thread per download and caps the number of downloads in flight with a semaphore
+ * instead of a thread count. Virtual threads need a Java 21+ runtime; the lookup is reflective so the
+ * project keeps compiling for older targets.
+ */
+public final class IoExecutionMode {
+
+    private final String name;
+    private final int concurrency;
+    private final boolean virtual;
+
+    private IoExecutionMode(String name, int concurrency, boolean virtual) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("Concurrency must be positive: " + concurrency);
+        }
+        this.name = name;
+        this.concurrency = concurrency;
+        this.virtual = virtual;
+    }
+
+    public static IoExecutionMode threadPool(int threads) {
+        return new IoExecutionMode("thread-pool", threads, false);
+    }
+
+    public static IoExecutionMode virtualThreads(int maxConcurrentDownloads) {
+        return new IoExecutionMode("virtual-threads", maxConcurrentDownloads, true);
+    }
+
+    public static boolean isVirtualThreadsSupported() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    ExecutorService createExecutorService() {
+        if (!virtual) {
+            return Executors.newFixedThreadPool(concurrency, new ThreadFactory() {
+                int count = 1;
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    return new Thread(runnable, "io-executor-" + count++);
+                }
+            });
+        }
+        return new BoundedExecutorService(newVirtualThreadPerTaskExecutor(), concurrency);
+    }
+
+    private static ExecutorService newVirtualThreadPerTaskExecutor() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Class<?> builderType = Class.forName("java.lang.Thread$Builder");
+            builder = builderType.getMethod("name", String.class, long.class).invoke(builder, "io-virtual-", 1L);
+            ThreadFactory threadFactory = (ThreadFactory) builderType.getMethod("factory").invoke(builder);
+
+            Method newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService) newThreadPerTaskExecutor.invoke(null, threadFactory);
+        } catch (NoSuchMethodException | ClassNotFoundException e) {
+            throw new IllegalStateException("Virtual threads require Java 21 or newer, running on "
+                    + System.getProperty("java.version"), e);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Unable to create virtual thread executor", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "IoExecutionMode{" +
+                "name='" + name + '\'' +
+                ", concurrency=" + concurrency +
+                '}';
+    }
+}
@@ -0,0 +1,61 @@
+package io.leontyev.crawler.engine;
+
+public class JournaledCrawlReport {
+
+    private final int pages;
+    private final long resumedPages;
+    private final long fetchedPages;
+    private final long replayMillis;
+    private final long wallTimeMillis;
+
+    public JournaledCrawlReport(int pages, long resumedPages, long fetchedPages, long replayMillis,
+                                long wallTimeMillis) {
+        this.pages = pages;
+        this.resumedPages = resumedPages;
+        this.fetchedPages = fetchedPages;
+        this.replayMillis = replayMillis;
+        this.wallTimeMillis = wallTimeMillis;
+    }
+
+    public int getPages() {
+        return pages;
+    }
+
+    /**
+     * Pages answered from the journal of an earlier run.
+     */
+    public long getResumedPages() {
+        return resumedPages;
+    }
+
+    public long getFetchedPages() {
+        return fetchedPages;
+    }
+
+    public long getFailedPages() {
+        return pages - resumedPages - fetchedPages;
+    }
+
+    /**
+     * Time it took to replay the journal when it was opened.
+     */
+    public long getReplayMillis() {
+        return replayMillis;
+    }
+
+    public long getWallTimeMillis() {
+        return wallTimeMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "JournaledCrawlReport{" +
+                "pages=" + pages +
+                ", resumedPages=" + resumedPages +
+                ", fetchedPages=" + fetchedPages +
+                ", failedPages=" + getFailedPages() +
+                ", replayMillis=" + replayMillis +
+                ", wallTimeMillis=" + wallTimeMillis +
+                '}';
+    }
+}
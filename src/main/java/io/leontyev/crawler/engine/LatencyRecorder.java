@@ -0,0 +1,55 @@
+package io.leontyev.crawler.engine;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent latencies in a ring buffer and answers percentiles over them. The percentile is
+ * recomputed only every {@link #REFRESH_INTERVAL} samples, so reading it stays cheap on the request path.
+ */
+class LatencyRecorder {
+
+    private static final int REFRESH_INTERVAL = 16;
+
+    private final long[] samples;
+    private final double percentile;
+    private final int minSamples;
+    private int next;
+    private int size;
+    private int sinceRefresh;
+    private volatile long threshold = -1;
+
+    LatencyRecorder(int capacity, double percentile, int minSamples) {
+        if (percentile <= 0 || percentile >= 1) {
+            throw new IllegalArgumentException("Percentile must be within (0, 1): " + percentile);
+        }
+        this.samples = new long[capacity];
+        this.percentile = percentile;
+        this.minSamples = Math.min(minSamples, capacity);
+    }
+
+    synchronized void record(long millis) {
+        samples[next] = millis;
+        next = (next + 1) % samples.length;
+        size = Math.min(size + 1, samples.length);
+        if (size >= minSamples && (threshold < 0 || ++sinceRefresh >= REFRESH_INTERVAL)) {
+            sinceRefresh = 0;
+            threshold = percentile(Arrays.copyOf(samples, size), percentile);
+        }
+    }
+
+    /**
+     * The configured percentile of the recent latencies, or -1 until enough samples have been recorded.
+     */
+    long getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Nearest-rank percentile of {@code values}, which are sorted in place.
+     */
+    static long percentile(long[] values, double percentile) {
+        Arrays.sort(values);
+        int index = (int) Math.ceil(percentile * values.length) - 1;
+        return values[Math.max(0, Math.min(index, values.length - 1))];
+    }
+}
@@ -0,0 +1,26 @@
+package io.leontyev.crawler.engine;
+
+import io.leontyev.crawler.parser.page.HtmlPageLinks;
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+
+/**
+ * Scripts and outgoing links of one page, parsed from a single download.
+ */
+public class LinkedPage {
+
+    private final HtmlPageScripts scripts;
+    private final HtmlPageLinks links;
+
+    public LinkedPage(HtmlPageScripts scripts, HtmlPageLinks links) {
+        this.scripts = scripts;
+        this.links = links;
+    }
+
+    public HtmlPageScripts getScripts() {
+        return scripts;
+    }
+
+    public HtmlPageLinks getLinks() {
+        return links;
+    }
+}
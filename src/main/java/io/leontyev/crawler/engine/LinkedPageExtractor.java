@@ -0,0 +1,12 @@
+package io.leontyev.crawler.engine;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Turns a page URL into its scripts and outgoing links for a recursive crawl.
+ */
+public interface LinkedPageExtractor {
+
+    CompletableFuture<LinkedPage> extract(String url, Executor ioExecutor, Executor calcExecutor);
+}
@@ -0,0 +1,16 @@
+package io.leontyev.crawler.engine;
+
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Turns a result link into the scripts it references. Implementations decide how the work is split
+ * between the engine's I/O and calculation executors.
+ */
+public interface PageScriptsExtractor {
+
+    CompletableFuture<HtmlPageScripts> extract(String url, Executor ioExecutor, Executor calcExecutor);
+
+}
@@ -0,0 +1,138 @@
+package io.leontyev.crawler.engine;
+
+import io.leontyev.crawler.frontier.FrontierLink;
+import io.leontyev.crawler.frontier.HostFrontier;
+import io.leontyev.crawler.frontier.SeenUrls;
+import io.leontyev.crawler.metrics.CrawlerMetrics;
+import io.leontyev.crawler.parser.page.HtmlPageLinks;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * State of one recursive crawl. Links are admitted once, while the page budget lasts, into a per-host
+ * frontier; up to {@link CrawlLimits#getMaxPagesInFlight()} pages are extracted at a time and every
+ * finished page dispatches the next ones. The crawl is done when nothing is in flight and the frontier
+ * is empty.
+ * <p>
+ * A dispatcher counts itself in flight before polling the frontier, so whoever sees the count drop to
+ * zero with an empty frontier knows no other thread is about to add to it.
+ */
+class RecursiveCrawl {
+
+    private static final Logger LOG = LoggerFactory.getLogger(RecursiveCrawl.class);
+
+    private final CrawlLimits limits;
+    private final LinkedPageExtractor pageExtractor;
+    private final ScriptsAggregator aggregator;
+    private final Executor ioExecutor;
+    private final Executor calcExecutor;
+    private final CrawlerMetrics metrics;
+
+    private final HostFrontier frontier = new HostFrontier();
+    private final SeenUrls seenUrls;
+    private final AtomicInteger admitted = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong pages = new AtomicLong();
+    private final AtomicLong failedPages = new AtomicLong();
+    private final AtomicLong discoveredLinks = new AtomicLong();
+    private final AtomicInteger maxDepthReached = new AtomicInteger();
+    private final CompletableFuture<ScriptsAggregator> done = new CompletableFuture<>();
+
+    RecursiveCrawl(CrawlLimits limits, LinkedPageExtractor pageExtractor, ScriptsAggregator aggregator,
+                   Executor ioExecutor, Executor calcExecutor, CrawlerMetrics metrics) {
+        this.limits = limits;
+        this.pageExtractor = pageExtractor;
+        this.aggregator = aggregator;
+        this.ioExecutor = ioExecutor;
+        this.calcExecutor = calcExecutor;
+        this.metrics = metrics;
+        this.seenUrls = limits.newSeenUrls();
+    }
+
+    CompletableFuture<ScriptsAggregator> start(HtmlPageLinks googleResults) {
+        admit(googleResults.getLinkUrls(), 1);
+        dispatch();
+        return done;
+    }
+
+    ScriptsAggregator getAggregator() {
+        return aggregator;
+    }
+
+    RecursiveCrawlReport report(long wallTimeMillis) {
+        return new RecursiveCrawlReport(pages.get(), failedPages.get(), discoveredLinks.get(), maxDepthReached.get(),
+                frontier.hosts(), wallTimeMillis);
+    }
+
+    private void admit(List<String> links, int depth) {
+        discoveredLinks.addAndGet(links.size());
+        for (String link : links) {
+            if (admitted.get() >= limits.getMaxPages()) {
+                return;
+            }
+            if (seenUrls.add(link) && admitted.incrementAndGet() <= limits.getMaxPages()) {
+                frontier.offer(new FrontierLink(link, depth));
+            }
+        }
+    }
+
+    private void dispatch() {
+        while (true) {
+            if (inFlight.incrementAndGet() > limits.getMaxPagesInFlight()) {
+                if (inFlight.decrementAndGet() > 0) {
+                    return;
+                }
+                continue;
+            }
+            FrontierLink link = frontier.poll();
+            if (link == null) {
+                if (inFlight.decrementAndGet() > 0) {
+                    return;
+                }
+                if (frontier.isEmpty()) {
+                    done.complete(aggregator);
+                    return;
+                }
+                continue;
+            }
+            extract(link);
+        }
+    }
+
+    private void extract(FrontierLink link) {
+        CompletableFuture<LinkedPage> page;
+        try {
+            page = pageExtractor.extract(link.getUrl(), ioExecutor, calcExecutor);
+        } catch (RuntimeException e) {
+            page = CompletableFuture.failedFuture(e);
+        }
+        page.whenCompleteAsync((linkedPage, throwable) -> {
+            try {
+                pages.incrementAndGet();
+                if (throwable != null) {
+                    failedPages.incrementAndGet();
+                    metrics.failure(throwable);
+                    LOG.error("Error: {}", throwable.getMessage());
+                } else {
+                    long start = System.nanoTime();
+                    aggregator.add(linkedPage.getScripts());
+                    metrics.getAggregate().recordSince(start);
+                    metrics.getPageScripts().record(linkedPage.getScripts().getScriptUrls().size());
+                    maxDepthReached.accumulateAndGet(link.getDepth(), Math::max);
+                    if (link.getDepth() < limits.getMaxDepth()) {
+                        admit(linkedPage.getLinks().getLinkUrls(), link.getDepth() + 1);
+                    }
+                }
+            } finally {
+                inFlight.decrementAndGet();
+                dispatch();
+            }
+        }, calcExecutor);
+    }
+}
@@ -0,0 +1,63 @@
+package io.leontyev.crawler.engine;
+
+public class RecursiveCrawlReport {
+
+    private final long pages;
+    private final long failedPages;
+    private final long discoveredLinks;
+    private final int maxDepthReached;
+    private final int hosts;
+    private final long wallTimeMillis;
+
+    public RecursiveCrawlReport(long pages, long failedPages, long discoveredLinks, int maxDepthReached, int hosts,
+                                long wallTimeMillis) {
+        this.pages = pages;
+        this.failedPages = failedPages;
+        this.discoveredLinks = discoveredLinks;
+        this.maxDepthReached = maxDepthReached;
+        this.hosts = hosts;
+        this.wallTimeMillis = wallTimeMillis;
+    }
+
+    /**
+     * Pages extracted, including the failed ones.
+     */
+    public long getPages() {
+        return pages;
+    }
+
+    public long getFailedPages() {
+        return failedPages;
+    }
+
+    /**
+     * Links found on crawled pages, before deduplication and limits.
+     */
+    public long getDiscoveredLinks() {
+        return discoveredLinks;
+    }
+
+    public int getMaxDepthReached() {
+        return maxDepthReached;
+    }
+
+    public int getHosts() {
+        return hosts;
+    }
+
+    public long getWallTimeMillis() {
+        return wallTimeMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "RecursiveCrawlReport{" +
+                "pages=" + pages +
+                ", failedPages=" + failedPages +
+                ", discoveredLinks=" + discoveredLinks +
+                ", maxDepthReached=" + maxDepthReached +
+                ", hosts=" + hosts +
+                ", wallTimeMillis=" + wallTimeMillis +
+                '}';
+    }
+}
@@ -0,0 +1,34 @@
+package io.leontyev.crawler.engine;
+
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.stream.Stream;
+
+/**
+ * Counts every distinct script URL as it was found on the page.
+ */
+public class ScriptUrlAggregator implements ScriptsAggregator {
+
+    private final ConcurrentMap<String, Long> jsLibsOccurrences = new ConcurrentHashMap<>();
+
+    @Override
+    public void add(HtmlPageScripts htmlPage) {
+        htmlPage.getScriptUrls().forEach(scriptUrl -> jsLibsOccurrences.merge(scriptUrl, 1L, Long::sum));
+    }
+
+    /**
+     * Adds counts aggregated elsewhere, e.g. by another node of a cluster.
+     */
+    public void add(String scriptUrl, long occurrences) {
+        jsLibsOccurrences.merge(scriptUrl, occurrences, Long::sum);
+    }
+
+    @Override
+    public Stream<KeyValue> topResults(int numResults) {
+        TopKeyValues topResults = new TopKeyValues(Math.min(numResults, jsLibsOccurrences.size()));
+        jsLibsOccurrences.forEach(topResults::offer);
+        return topResults.stream();
+    }
+}
@@ -0,0 +1,16 @@
+package io.leontyev.crawler.engine;
+
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+
+import java.util.stream.Stream;
+
+/**
+ * Counts script occurrences for a single crawl. Pages are added concurrently from the executors as
+ * they finish parsing; the ranking is asked for once, after every page has been added.
+ */
+public interface ScriptsAggregator {
+
+    void add(HtmlPageScripts htmlPage);
+
+    Stream<KeyValue> topResults(int numResults);
+}
@@ -0,0 +1,178 @@
+package io.leontyev.crawler.engine;
+
+import io.leontyev.crawler.metrics.CrawlerMetrics;
+import io.leontyev.crawler.parser.page.HtmlPageLinks;
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * State of one crawl over several search pages. Each search page hands its links to extraction as soon as
+ * it is parsed, so the first result pages download while later search pages are still on their way. Links
+ * are taken once, up to the target; the crawl is done when the target is reached or every search page is
+ * parsed, and no result page is in flight, or as soon as the ranking is stable.
+ * <p>
+ * A search page stays pending until its links are admitted, and a link counts in flight before it counts as
+ * admitted, so whoever sees the target reached or no pending search page, and then nothing in flight, knows
+ * nothing is left. Pages are aggregated under the crawl's lock,
+ * so that no page finishing after a stable ranking ended the crawl slips into it.
+ */
+class SearchCrawl {
+
+    private static final Logger LOG = LoggerFactory.getLogger(SearchCrawl.class);
+
+    private final SearchLimits limits;
+    private final int numResults;
+    private final Function<String, CompletableFuture<HtmlPageScripts>> pageLoader;
+    private final ScriptsAggregator aggregator;
+    private final CrawlerMetrics metrics;
+
+    private final Set<String> seenLinks = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger admitted = new AtomicInteger();
+    private final AtomicInteger pendingSearchPages = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger searchPages = new AtomicInteger();
+    private final AtomicInteger failedSearchPages = new AtomicInteger();
+    private final CompletableFuture<ScriptsAggregator> done = new CompletableFuture<>();
+
+    private int pages;
+    private List<String> lastTopKeys = Collections.emptyList();
+    private int unchangedPages;
+    private SearchCrawlReport.Stop stop;
+
+    SearchCrawl(SearchLimits limits, int numResults, Function<String, CompletableFuture<HtmlPageScripts>> pageLoader,
+                ScriptsAggregator aggregator, CrawlerMetrics metrics) {
+        this.limits = limits;
+        this.numResults = numResults;
+        this.pageLoader = pageLoader;
+        this.aggregator = aggregator;
+        this.metrics = metrics;
+    }
+
+    CompletableFuture<ScriptsAggregator> start(List<CompletableFuture<HtmlPageLinks>> searchResults) {
+        pendingSearchPages.set(searchResults.size());
+        for (CompletableFuture<HtmlPageLinks> searchResult : searchResults) {
+            searchResult.whenComplete((links, throwable) -> {
+                try {
+                    if (throwable != null) {
+                        failedSearchPages.incrementAndGet();
+                        LOG.error("Search page failed: {}", throwable.getMessage());
+                    } else {
+                        admit(links.getLinkUrls());
+                    }
+                } finally {
+                    searchPages.incrementAndGet();
+                    pendingSearchPages.decrementAndGet();
+                    finishIfIdle();
+                }
+            });
+        }
+        return done;
+    }
+
+    synchronized SearchCrawlReport report(long wallTimeMillis) {
+        return new SearchCrawlReport(searchPages.get(), failedSearchPages.get(),
+                Math.min(admitted.get(), limits.getTargetLinks()), pages, stop, wallTimeMillis);
+    }
+
+    private void admit(List<String> links) {
+        for (String link : links) {
+            if (done.isDone() || admitted.get() >= limits.getTargetLinks()) {
+                return;
+            }
+            if (!seenLinks.add(link)) {
+                continue;
+            }
+            inFlight.incrementAndGet();
+            if (admitted.incrementAndGet() > limits.getTargetLinks()) {
+                inFlight.decrementAndGet();
+                return;
+            }
+            extract(link);
+        }
+    }
+
+    private void extract(String link) {
+        CompletableFuture<HtmlPageScripts> page;
+        try {
+            page = pageLoader.apply(link);
+        } catch (RuntimeException e) {
+            page = CompletableFuture.failedFuture(e);
+        }
+        page.whenComplete((scripts, throwable) -> {
+            try {
+                completed(scripts, throwable);
+            } finally {
+                inFlight.decrementAndGet();
+                finishIfIdle();
+            }
+        });
+    }
+
+    private void completed(HtmlPageScripts scripts, Throwable throwable) {
+        synchronized (this) {
+            if (stop != null) {
+                return;
+            }
+            pages++;
+            if (throwable != null) {
+                metrics.failure(throwable);
+                LOG.error("Error: {}", throwable.getMessage());
+                return;
+            }
+            long start = System.nanoTime();
+            aggregator.add(scripts);
+            metrics.getAggregate().recordSince(start);
+            metrics.getPageScripts().record(scripts.getScriptUrls().size());
+            if (!isStable()) {
+                return;
+            }
+            stop = SearchCrawlReport.Stop.STABLE_RANKING;
+        }
+        LOG.debug("Top results stable over {} pages: {}", limits.getStablePages(), lastTopKeys);
+        done.complete(aggregator);
+    }
+
+    /**
+     * Whether the top results, in order, are the same as over the last {@code stablePages} extracted pages.
+     */
+    private boolean isStable() {
+        if (limits.getStablePages() == 0) {
+            return false;
+        }
+        List<String> topKeys = aggregator.topResults(numResults).map(KeyValue::getLibrary).collect(Collectors.toList());
+        if (topKeys.equals(lastTopKeys)) {
+            unchangedPages++;
+        } else {
+            lastTopKeys = topKeys;
+            unchangedPages = 0;
+        }
+        return !topKeys.isEmpty() && unchangedPages >= limits.getStablePages();
+    }
+
+    /**
+     * Search pages still on their way don't hold up a crawl that has reached its target.
+     */
+    private void finishIfIdle() {
+        boolean targetReached = admitted.get() >= limits.getTargetLinks();
+        if ((!targetReached && pendingSearchPages.get() > 0) || inFlight.get() > 0) {
+            return;
+        }
+        synchronized (this) {
+            if (stop != null) {
+                return;
+            }
+            stop = targetReached ? SearchCrawlReport.Stop.TARGET_LINKS : SearchCrawlReport.Stop.EXHAUSTED;
+        }
+        done.complete(aggregator);
+    }
+}
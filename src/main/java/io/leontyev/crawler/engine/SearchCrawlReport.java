@@ -0,0 +1,78 @@
+package io.leontyev.crawler.engine;
+
+public class SearchCrawlReport {
+
+    /**
+     * Why the crawl ended.
+     */
+    public enum Stop {
+        /** every link of every search page was crawled */
+        EXHAUSTED,
+        /** the target number of distinct links was reached and those links were crawled */
+        TARGET_LINKS,
+        /** the top results stopped changing; pages still in flight were left out */
+        STABLE_RANKING
+    }
+
+    private final int searchPages;
+    private final int failedSearchPages;
+    private final int links;
+    private final int pages;
+    private final Stop stop;
+    private final long wallTimeMillis;
+
+    public SearchCrawlReport(int searchPages, int failedSearchPages, int links, int pages, Stop stop,
+                             long wallTimeMillis) {
+        this.searchPages = searchPages;
+        this.failedSearchPages = failedSearchPages;
+        this.links = links;
+        this.pages = pages;
+        this.stop = stop;
+        this.wallTimeMillis = wallTimeMillis;
+    }
+
+    /**
+     * Search pages parsed by the time the crawl ended, including the failed ones.
+     */
+    public int getSearchPages() {
+        return searchPages;
+    }
+
+    public int getFailedSearchPages() {
+        return failedSearchPages;
+    }
+
+    /**
+     * Distinct result links taken into the crawl.
+     */
+    public int getLinks() {
+        return links;
+    }
+
+    /**
+     * Result pages counted in the ranking, extracted or failed.
+     */
+    public int getPages() {
+        return pages;
+    }
+
+    public Stop getStop() {
+        return stop;
+    }
+
+    public long getWallTimeMillis() {
+        return wallTimeMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchCrawlReport{" +
+                "searchPages=" + searchPages +
+                ", failedSearchPages=" + failedSearchPages +
+                ", links=" + links +
+                ", pages=" + pages +
+                ", stop=" + stop +
+                ", wallTimeMillis=" + wallTimeMillis +
+                '}';
+    }
+}
@@ -0,0 +1,54 @@
+package io.leontyev.crawler.engine;
+
+/**
+ * Bounds of a crawl over several search pages. All {@code searchPages} pages are requested at once; the
+ * crawl takes no more result links once it has {@code targetLinks} distinct ones, and stops as soon as the
+ * top results have stayed the same over {@code stablePages} consecutive result pages.
+ */
+public class SearchLimits {
+
+    private final int searchPages;
+    private final int targetLinks;
+    private final int stablePages;
+
+    /**
+     * Every link of every search page, without a stability stop.
+     */
+    public SearchLimits(int searchPages) {
+        this(searchPages, Integer.MAX_VALUE, 0);
+    }
+
+    /**
+     * @param stablePages result pages after which an unchanged ranking ends the crawl, {@code 0} for never
+     */
+    public SearchLimits(int searchPages, int targetLinks, int stablePages) {
+        if (searchPages < 1 || targetLinks < 1 || stablePages < 0) {
+            throw new IllegalArgumentException("Invalid search limits: " + searchPages + ", " + targetLinks + ", "
+                    + stablePages);
+        }
+        this.searchPages = searchPages;
+        this.targetLinks = targetLinks;
+        this.stablePages = stablePages;
+    }
+
+    public int getSearchPages() {
+        return searchPages;
+    }
+
+    public int getTargetLinks() {
+        return targetLinks;
+    }
+
+    public int getStablePages() {
+        return stablePages;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchLimits{" +
+                "searchPages=" + searchPages +
+                ", targetLinks=" + targetLinks +
+                ", stablePages=" + stablePages +
+                '}';
+    }
+}
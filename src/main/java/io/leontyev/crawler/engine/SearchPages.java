@@ -0,0 +1,63 @@
+package io.leontyev.crawler.engine;
+
+import java.net.URI;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * How the pages of a search are addressed: the first page is the query URL itself, page {@code n} adds an
+ * offset parameter of {@code n} times the results per page, as Google's {@code &start=10}.
+ */
+public class SearchPages {
+
+    public static final SearchPages GOOGLE = new SearchPages("start", 10);
+
+    private static final Pattern GOOGLE_HOST = Pattern.compile("(.+\\.)?google(\\.[a-z]{2,3}){1,2}");
+
+    private final String offsetParameter;
+    private final int resultsPerPage;
+
+    public SearchPages(String offsetParameter, int resultsPerPage) {
+        if (resultsPerPage < 1) {
+            throw new IllegalArgumentException("Results per page must be positive: " + resultsPerPage);
+        }
+        this.offsetParameter = offsetParameter;
+        this.resultsPerPage = resultsPerPage;
+    }
+
+    /**
+     * The paging of the search engine {@code queryUrl} belongs to.
+     *
+     * @throws IllegalArgumentException if the engine's paging is unknown
+     */
+    public static SearchPages forUrl(String queryUrl) {
+        String host = URI.create(queryUrl).getHost();
+        if (host != null && GOOGLE_HOST.matcher(host.toLowerCase(Locale.ROOT)).matches()) {
+            return GOOGLE;
+        }
+        throw new IllegalArgumentException("Unknown search paging: " + queryUrl);
+    }
+
+    /**
+     * @param page zero-based page of the search
+     */
+    public String url(String queryUrl, int page) {
+        if (page == 0) {
+            return queryUrl;
+        }
+        char separator = queryUrl.indexOf('?') < 0 ? '?' : '&';
+        return queryUrl + separator + offsetParameter + '=' + (long) page * resultsPerPage;
+    }
+
+    public int getResultsPerPage() {
+        return resultsPerPage;
+    }
+
+    @Override
+    public String toString() {
+        return "SearchPages{" +
+                "offsetParameter='" + offsetParameter + '\'' +
+                ", resultsPerPage=" + resultsPerPage +
+                '}';
+    }
+}
@@ -0,0 +1,34 @@
+package io.leontyev.crawler.engine;
+
+import io.leontyev.crawler.downloader.PageDownloadService;
+import io.leontyev.crawler.downloader.PageStream;
+import io.leontyev.crawler.parser.HtmlPageParser;
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Tokenizes the response on the I/O executor while it arrives, so no {@link org.jsoup.nodes.Document}
+ * is ever built for result pages.
+ */
+public class StreamingPageScriptsExtractor implements PageScriptsExtractor {
+
+    private final PageDownloadService downloadService;
+    private final HtmlPageParser<HtmlPageScripts, PageStream> jsLibraryParser;
+
+    public StreamingPageScriptsExtractor(PageDownloadService downloadService,
+                                         HtmlPageParser<HtmlPageScripts, PageStream> jsLibraryParser) {
+        this.downloadService = downloadService;
+        this.jsLibraryParser = jsLibraryParser;
+    }
+
+    @Override
+    public CompletableFuture<HtmlPageScripts> extract(String url, Executor ioExecutor, Executor calcExecutor) {
+        return CompletableFuture.supplyAsync(() -> {
+            try (PageStream page = downloadService.open(url)) {
+                return jsLibraryParser.parse(page);
+            }
+        }, ioExecutor);
+    }
+}
@@ -0,0 +1,86 @@
+package io.leontyev.crawler.engine;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Keeps the {@code k} keys with the highest counts seen so far in a bounded min-heap, so selecting the top
+ * results of {@code n} keys costs {@code O(n log k)} and allocates only the {@code k} survivors.
+ * Not thread-safe.
+ */
+class TopKeyValues {
+
+    private final String[] keys;
+    private final long[] counts;
+    private int size;
+
+    TopKeyValues(int k) {
+        keys = new String[Math.max(0, k)];
+        counts = new long[Math.max(0, k)];
+    }
+
+    void offer(String key, long count) {
+        if (size < keys.length) {
+            keys[size] = key;
+            counts[size] = count;
+            siftUp(size++);
+        } else if (size > 0 && count > counts[0]) {
+            keys[0] = key;
+            counts[0] = count;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * The kept keys, highest count first.
+     */
+    Stream<KeyValue> stream() {
+        List<KeyValue> results = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            results.add(new KeyValue(keys[i], counts[i]));
+        }
+        results.sort(Comparator.comparingLong(KeyValue::getOccurrences).reversed());
+        return results.stream();
+    }
+
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (counts[parent] <= counts[index]) {
+                return;
+            }
+            swap(parent, index);
+            index = parent;
+        }
+    }
+
+    private void siftDown(int index) {
+        while (true) {
+            int smallest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < size && counts[left] < counts[smallest]) {
+                smallest = left;
+            }
+            if (right < size && counts[right] < counts[smallest]) {
+                smallest = right;
+            }
+            if (smallest == index) {
+                return;
+            }
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        String key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        long count = counts[i];
+        counts[i] = counts[j];
+        counts[j] = count;
+    }
+}
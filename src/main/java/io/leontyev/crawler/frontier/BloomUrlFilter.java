@@ -0,0 +1,73 @@
+package io.leontyev.crawler.frontier;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Approximate set for very large crawls: a Bloom filter over URL fingerprints, about 1.2 bytes per URL
+ * at a 1% false positive rate. A false positive makes the crawl skip a URL it has not visited, it never
+ * visits one twice. Bits are set with a CAS, so concurrent additions of the same URL report it new once
+ * at most in the common case and never lose a bit.
+ */
+public class BloomUrlFilter implements SeenUrls {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashes;
+    private final AtomicLong size = new AtomicLong();
+
+    public BloomUrlFilter(long expectedUrls, double falsePositiveRate) {
+        if (falsePositiveRate <= 0 || falsePositiveRate >= 1) {
+            throw new IllegalArgumentException("False positive rate must be in (0, 1): " + falsePositiveRate);
+        }
+        double ln2 = Math.log(2);
+        long optimalBits = (long) Math.ceil(-Math.max(1, expectedUrls) * Math.log(falsePositiveRate) / (ln2 * ln2));
+        int words = (int) Math.min(Integer.MAX_VALUE, (optimalBits + 63) >>> 6);
+        bits = new AtomicLongArray(words);
+        bitCount = (long) words << 6;
+        hashes = Math.max(1, (int) Math.round((double) bitCount / Math.max(1, expectedUrls) * ln2));
+    }
+
+    @Override
+    public boolean add(String url) {
+        long fingerprint = SeenUrls.fingerprint(url);
+        int first = (int) fingerprint;
+        int second = (int) (fingerprint >>> 32);
+        boolean added = false;
+        for (int i = 0; i < hashes; i++) {
+            long combined = (first + (long) i * second) & Long.MAX_VALUE;
+            long bit = combined % bitCount;
+            added |= set(bit);
+        }
+        if (added) {
+            size.incrementAndGet();
+        }
+        return added;
+    }
+
+    /**
+     * Approximate number of distinct URLs added, counting those that were new to the filter.
+     */
+    @Override
+    public long size() {
+        return size.get();
+    }
+
+    int getHashes() {
+        return hashes;
+    }
+
+    private boolean set(long bit) {
+        int word = (int) (bit >>> 6);
+        long mask = 1L << bit;
+        while (true) {
+            long current = bits.get(word);
+            if ((current & mask) != 0) {
+                return false;
+            }
+            if (bits.compareAndSet(word, current, current | mask)) {
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package io.leontyev.crawler.frontier;
+
+/**
+ * A link waiting to be crawled, with the number of hops from the search results that led to it.
+ */
+public class FrontierLink {
+
+    private final String url;
+    private final int depth;
+
+    public FrontierLink(String url, int depth) {
+        this.url = url;
+        this.depth = depth;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    @Override
+    public String toString() {
+        return "FrontierLink{" +
+                "url='" + url + '\'' +
+                ", depth=" + depth +
+                '}';
+    }
+}
@@ -0,0 +1,62 @@
+package io.leontyev.crawler.frontier;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free open-addressing set of 64-bit URL fingerprints, claimed with a CAS, 16 bytes per expected URL
+ * at most. It is exact unless two URLs share a fingerprint, a few in a million chance across ten million URLs.
+ * Fingerprint {@code 0} marks an empty slot, so a URL hashing to it is stored as {@code 1}.
+ * <p>
+ * The table does not grow; it is sized for the expected number of URLs and rejects additions past it.
+ */
+public class HashedUrlSet implements SeenUrls {
+
+    private static final float MAX_LOAD = 0.5f;
+
+    private final AtomicLongArray table;
+    private final long maxSize;
+    private final AtomicLong size = new AtomicLong();
+
+    public HashedUrlSet(long expectedUrls) {
+        long capacity = Long.highestOneBit(Math.max(16, (long) (expectedUrls / MAX_LOAD)) - 1) << 1;
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Too many expected URLs: " + expectedUrls);
+        }
+        table = new AtomicLongArray((int) capacity);
+        maxSize = (long) (capacity * MAX_LOAD);
+    }
+
+    @Override
+    public boolean add(String url) {
+        long fingerprint = SeenUrls.fingerprint(url);
+        if (fingerprint == 0) {
+            fingerprint = 1;
+        }
+        int mask = table.length() - 1;
+        for (int slot = (int) fingerprint & mask; ; slot = (slot + 1) & mask) {
+            long current = table.get(slot);
+            if (current == fingerprint) {
+                return false;
+            }
+            if (current == 0) {
+                if (size.incrementAndGet() > maxSize) {
+                    size.decrementAndGet();
+                    throw new IllegalStateException("Seen URL set is full: " + maxSize);
+                }
+                if (table.compareAndSet(slot, 0, fingerprint)) {
+                    return true;
+                }
+                size.decrementAndGet();
+                if (table.get(slot) == fingerprint) {
+                    return false;
+                }
+            }
+        }
+    }
+
+    @Override
+    public long size() {
+        return size.get();
+    }
+}
@@ -0,0 +1,93 @@
+package io.leontyev.crawler.frontier;
+
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free queue of links to crawl, kept per host and handed out round-robin across hosts, so that one
+ * link-heavy site does not fill the pipeline while others wait.
+ * <p>
+ * A host sits in the ready queue exactly when it has links and no poller is currently taking one of them:
+ * the offer that moves its count from zero enqueues it, and the poller re-enqueues it while links remain.
+ */
+public class HostFrontier {
+
+    private final ConcurrentMap<String, HostQueue> hosts = new ConcurrentHashMap<>();
+    private final Queue<HostQueue> readyHosts = new ConcurrentLinkedQueue<>();
+    private final AtomicLong size = new AtomicLong();
+
+    public void offer(FrontierLink link) {
+        HostQueue hostQueue = hosts.computeIfAbsent(host(link.getUrl()), HostQueue::new);
+        hostQueue.links.offer(link);
+        size.incrementAndGet();
+        if (hostQueue.size.getAndIncrement() == 0) {
+            readyHosts.offer(hostQueue);
+        }
+    }
+
+    /**
+     * @return the next link of the next host in turn, or {@code null} when no link is waiting
+     */
+    public FrontierLink poll() {
+        HostQueue hostQueue = readyHosts.poll();
+        if (hostQueue == null) {
+            return null;
+        }
+        FrontierLink link = hostQueue.links.poll();
+        size.decrementAndGet();
+        if (hostQueue.size.decrementAndGet() > 0) {
+            readyHosts.offer(hostQueue);
+        }
+        return link;
+    }
+
+    public boolean isEmpty() {
+        return size.get() == 0;
+    }
+
+    public long size() {
+        return size.get();
+    }
+
+    /**
+     * Number of hosts seen so far, including those with no links left.
+     */
+    public int hosts() {
+        return hosts.size();
+    }
+
+    static String host(String url) {
+        int start = url.indexOf("//");
+        start = start < 0 ? 0 : start + 2;
+        int end = start;
+        while (end < url.length()) {
+            char c = url.charAt(end);
+            if (c == '/' || c == '?' || c == '#') {
+                break;
+            }
+            end++;
+        }
+        return url.substring(start, end).toLowerCase(Locale.ROOT);
+    }
+
+    private static class HostQueue {
+
+        private final String host;
+        private final Queue<FrontierLink> links = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+
+        private HostQueue(String host) {
+            this.host = host;
+        }
+
+        @Override
+        public String toString() {
+            return host;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package io.leontyev.crawler.frontier;
+
+/**
+ * URLs already admitted to a crawl. Implementations keep a fixed-size fingerprint per URL instead of the
+ * URL itself and are safe for concurrent use.
+ */
+public interface SeenUrls {
+
+    /**
+     * @return {@code true} if the URL was not seen before and has now been recorded
+     */
+    boolean add(String url);
+
+    long size();
+
+    /**
+     * 64-bit FNV-1a of the URL's chars with a final avalanche, so that both halves are usable as hashes.
+     */
+    static long fingerprint(String url) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < url.length(); i++) {
+            hash ^= url.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,366 @@
+package io.leontyev.crawler.journal;
+
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead journal of one crawl: the result links once the search page is parsed, then a record per
+ * completed page with its scripts. Opening a journal left behind by a crawl that died replays it, so the
+ * resumed crawl neither requests the search page again nor any page that was completed.
+ * <p>
+ * Records are laid out as {@code length, crc32, type, payload}, like those of the page store, and a torn
+ * record at the end is truncated on open. Appending only copies the record into a buffer; the buffer is
+ * written and fsynced every {@code syncIntervalMillis}, or as soon as {@code batchBytes} are pending, so a
+ * single fsync covers a whole batch of pages. A crash loses at most the pages completed since the last
+ * sync, which the resumed crawl fetches again.
+ */
+public class CrawlJournal implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CrawlJournal.class);
+
+    public static final long DEFAULT_SYNC_INTERVAL_MILLIS = 100;
+    public static final int DEFAULT_BATCH_BYTES = 256 * 1024;
+
+    private static final int MAGIC = 0x434A_524E;
+    private static final int HEADER_SIZE = Integer.BYTES;
+    private static final int RECORD_HEADER_SIZE = Integer.BYTES + Integer.BYTES;
+    private static final byte FRONTIER = 1;
+    private static final byte COMPLETED = 2;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final int batchBytes;
+    private final ScheduledExecutorService syncer;
+
+    private final List<String> frontier = new ArrayList<>();
+    private final ConcurrentMap<String, HtmlPageScripts> completed = new ConcurrentHashMap<>();
+    private final int replayedPages;
+    private final long replayMillis;
+
+    private final Object writeLock = new Object();
+    private ByteBuffer pending;
+    private ByteBuffer writing;
+    private long synced;
+    private boolean syncRequested;
+    private boolean closed;
+    private final AtomicLong syncs = new AtomicLong();
+
+    public CrawlJournal(Path file) {
+        this(file, DEFAULT_SYNC_INTERVAL_MILLIS, DEFAULT_BATCH_BYTES);
+    }
+
+    public CrawlJournal(Path file, long syncIntervalMillis, int batchBytes) {
+        if (syncIntervalMillis <= 0 || batchBytes <= 0) {
+            throw new IllegalArgumentException("Sync interval and batch size must be positive");
+        }
+        this.file = file;
+        this.batchBytes = batchBytes;
+        this.pending = ByteBuffer.allocate(batchBytes);
+        this.writing = ByteBuffer.allocate(batchBytes);
+
+        long start = System.nanoTime();
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            replay();
+        } catch (IOException e) {
+            throw new JournalException("Unable to open journal " + file, e);
+        }
+        replayedPages = completed.size();
+        replayMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (replayedPages > 0 || !frontier.isEmpty()) {
+            LOG.info("Replayed journal {}: {} links, {} completed pages in {} ms", file, frontier.size(),
+                    replayedPages, replayMillis);
+        }
+
+        syncer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "journal-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        syncer.scheduleWithFixedDelay(this::syncQuietly, syncIntervalMillis, syncIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The result links of the crawl, empty until they are journaled.
+     */
+    public List<String> getFrontier() {
+        synchronized (frontier) {
+            return new ArrayList<>(frontier);
+        }
+    }
+
+    /**
+     * The scripts of a page completed by this crawl or a previous run of it, or {@code null}.
+     */
+    public HtmlPageScripts getCompleted(String url) {
+        return completed.get(url);
+    }
+
+    public int getCompletedPages() {
+        return completed.size();
+    }
+
+    /**
+     * Pages found completed when the journal was opened.
+     */
+    public int getReplayedPages() {
+        return replayedPages;
+    }
+
+    public long getReplayMillis() {
+        return replayMillis;
+    }
+
+    public long getSyncs() {
+        return syncs.get();
+    }
+
+    public void frontier(List<String> links) {
+        synchronized (frontier) {
+            frontier.addAll(links);
+        }
+        append(FRONTIER, encodeStrings(null, links));
+    }
+
+    public void completed(String url, HtmlPageScripts scripts) {
+        completed.put(url, scripts);
+        append(COMPLETED, encodeStrings(url, scripts.getScriptUrls()));
+    }
+
+    /**
+     * Writes and fsyncs every record appended so far. A batch that failed to sync is kept and written
+     * again, at the same offset, by the next sync.
+     */
+    public void sync() {
+        synchronized (writeLock) {
+            synchronized (this) {
+                syncRequested = false;
+                if (writing.position() == 0) {
+                    if (pending.position() == 0) {
+                        return;
+                    }
+                    ByteBuffer batch = pending;
+                    pending = writing;
+                    writing = batch;
+                } else if (pending.position() > 0) {
+                    pending.flip();
+                    if (writing.remaining() < pending.remaining()) {
+                        writing = grow(writing, pending.remaining());
+                    }
+                    writing.put(pending);
+                    pending.clear();
+                }
+            }
+            writing.flip();
+            try {
+                long position = synced;
+                while (writing.hasRemaining()) {
+                    position += channel.write(writing, position);
+                }
+                channel.force(false);
+                synced = position;
+                syncs.incrementAndGet();
+                writing.clear();
+            } catch (IOException e) {
+                writing.position(writing.limit());
+                writing.limit(writing.capacity());
+                throw new JournalException("Unable to sync journal " + file, e);
+            }
+        }
+    }
+
+    /**
+     * Syncs what is pending and closes the file; the journal is kept for the next run.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        syncer.shutdownNow();
+        try {
+            sync();
+        } finally {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOG.warn("Unable to close journal {}", file, e);
+            }
+        }
+    }
+
+    /**
+     * Closes and removes the journal of a crawl that completed.
+     */
+    public void delete() {
+        close();
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            throw new JournalException("Unable to delete journal " + file, e);
+        }
+    }
+
+    private void append(byte type, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(type);
+        crc.update(payload);
+        int length = 1 + payload.length;
+        boolean requestSync;
+        synchronized (this) {
+            if (closed) {
+                throw new JournalException("Journal is closed: " + file);
+            }
+            if (pending.remaining() < RECORD_HEADER_SIZE + length) {
+                pending = grow(pending, RECORD_HEADER_SIZE + length);
+            }
+            pending.putInt(length).putInt((int) crc.getValue()).put(type).put(payload);
+            requestSync = pending.position() >= batchBytes && !syncRequested;
+            syncRequested |= requestSync;
+        }
+        if (requestSync) {
+            syncer.execute(this::syncQuietly);
+        }
+    }
+
+    private void syncQuietly() {
+        try {
+            sync();
+        } catch (JournalException e) {
+            LOG.error(e.getMessage(), e);
+        }
+    }
+
+    private void replay() throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(0, MAGIC);
+            channel.write(header, 0);
+            channel.force(false);
+            synced = HEADER_SIZE;
+            return;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new JournalException("Journal is too large: " + file);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) size);
+        while (buffer.hasRemaining() && channel.read(buffer, buffer.position()) >= 0) {
+            // read it all
+        }
+        if (size < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new JournalException("Not a crawl journal: " + file);
+        }
+
+        CRC32 crc = new CRC32();
+        int offset = HEADER_SIZE;
+        while (offset + RECORD_HEADER_SIZE <= size) {
+            int length = buffer.getInt(offset);
+            if (length <= 0 || offset + RECORD_HEADER_SIZE + length > size) {
+                break;
+            }
+            ByteBuffer record = buffer.duplicate();
+            record.limit(offset + RECORD_HEADER_SIZE + length).position(offset + RECORD_HEADER_SIZE);
+            crc.reset();
+            crc.update(record.duplicate());
+            if ((int) crc.getValue() != buffer.getInt(offset + Integer.BYTES)) {
+                break;
+            }
+            apply(record);
+            offset += RECORD_HEADER_SIZE + length;
+        }
+        if (offset < size) {
+            LOG.warn("Dropping {} bytes of a torn record at the end of {}", size - offset, file);
+            channel.truncate(offset);
+            channel.force(false);
+        }
+        synced = offset;
+    }
+
+    private void apply(ByteBuffer record) {
+        byte type = record.get();
+        String url = readString(record);
+        int count = record.getInt();
+        List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            values.add(readString(record));
+        }
+        if (type == FRONTIER) {
+            frontier.addAll(values);
+        } else if (type == COMPLETED) {
+            completed.put(url, new HtmlPageScripts(values));
+        } else {
+            LOG.warn("Skipping journal record of unknown type {} in {}", type, file);
+        }
+    }
+
+    private static byte[] encodeStrings(String key, List<String> values) {
+        List<byte[]> encoded = new ArrayList<>(values.size());
+        byte[] keyBytes = key == null ? null : key.getBytes(StandardCharsets.UTF_8);
+        int length = sizeOf(keyBytes) + Integer.BYTES;
+        for (String value : values) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            encoded.add(bytes);
+            length += sizeOf(bytes);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        writeString(buffer, keyBytes);
+        buffer.putInt(encoded.size());
+        encoded.forEach(bytes -> writeString(buffer, bytes));
+        return buffer.array();
+    }
+
+    private static ByteBuffer grow(ByteBuffer buffer, int required) {
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + required));
+        buffer.flip();
+        return grown.put(buffer);
+    }
+
+    private static int sizeOf(byte[] value) {
+        return Integer.BYTES + (value == null ? 0 : value.length);
+    }
+
+    private static void writeString(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(value.length);
+            buffer.put(value);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+}
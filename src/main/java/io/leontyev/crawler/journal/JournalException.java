@@ -0,0 +1,15 @@
+package io.leontyev.crawler.journal;
+
+public class JournalException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public JournalException(String message) {
+        super(message);
+    }
+
+    public JournalException(String message, Exception e) {
+        super(message, e);
+    }
+
+}
@@ -0,0 +1,26 @@
+package io.leontyev.crawler.library;
+
+/**
+ * Names a script after what its body was fingerprinted as, and after its URL when it was not fingerprinted.
+ * Only the fingerprinted name is settled: a script whose body could not be fetched, or whose fingerprint
+ * was evicted, is fingerprinted again later.
+ */
+public class ContentLibraryNormalizer extends LibraryNormalizer {
+
+    private final ScriptBodyCache cache;
+
+    public ContentLibraryNormalizer(ScriptBodyCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public LibraryIdentity normalize(String scriptUrl) {
+        LibraryIdentity identity = cache.getIdentity(scriptUrl);
+        return identity != null ? identity : super.normalize(scriptUrl);
+    }
+
+    @Override
+    public LibraryIdentity settled(String scriptUrl) {
+        return cache.getIdentity(scriptUrl);
+    }
+}
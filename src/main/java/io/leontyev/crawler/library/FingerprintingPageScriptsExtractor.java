@@ -0,0 +1,34 @@
+package io.leontyev.crawler.library;
+
+import io.leontyev.crawler.engine.PageScriptsExtractor;
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+/**
+ * Fingerprints the scripts of every extracted page before handing the page on, so that by the time it is
+ * aggregated a {@link ContentLibraryNormalizer} over the same {@link ScriptBodyCache} knows what its scripts
+ * are. Bodies are fetched on the io executor; a script that cannot be fetched is named after its URL.
+ */
+public class FingerprintingPageScriptsExtractor implements PageScriptsExtractor {
+
+    private final PageScriptsExtractor delegate;
+    private final ScriptBodyCache cache;
+
+    public FingerprintingPageScriptsExtractor(PageScriptsExtractor delegate, ScriptBodyCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public CompletableFuture<HtmlPageScripts> extract(String url, Executor ioExecutor, Executor calcExecutor) {
+        return delegate.extract(url, ioExecutor, calcExecutor).thenCompose(page -> {
+            CompletableFuture<?>[] fingerprints = page.getScriptUrls().stream()
+                    .distinct()
+                    .map(scriptUrl -> cache.fingerprint(scriptUrl, ioExecutor))
+                    .toArray(CompletableFuture[]::new);
+            return CompletableFuture.allOf(fingerprints).thenApply(done -> page);
+        });
+    }
+}
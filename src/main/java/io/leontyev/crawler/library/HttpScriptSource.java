@@ -0,0 +1,85 @@
+package io.leontyev.crawler.library;
+
+import io.leontyev.crawler.downloader.DownloadPageException;
+import io.leontyev.crawler.downloader.PageDownloadService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+/**
+ * Fetches script bodies through a shared {@link HttpClient} and hands out the response stream as it
+ * arrives. No {@code Accept-Encoding} is sent, so the bytes are those of the file as published.
+ */
+public class HttpScriptSource implements ScriptSource {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HttpScriptSource.class);
+
+    private final HttpClient httpClient;
+    private final Duration timeout;
+    private final String userAgent;
+
+    public HttpScriptSource(int timeout) {
+        this(timeout, PageDownloadService.DEFAULT_USER_AGENT);
+    }
+
+    public HttpScriptSource(int timeout, String userAgent) {
+        this(HttpClient.newBuilder()
+                        .followRedirects(HttpClient.Redirect.NORMAL)
+                        .connectTimeout(Duration.ofMillis(timeout))
+                        .build(),
+                timeout,
+                userAgent);
+    }
+
+    public HttpScriptSource(HttpClient httpClient, int timeout) {
+        this(httpClient, timeout, PageDownloadService.DEFAULT_USER_AGENT);
+    }
+
+    public HttpScriptSource(HttpClient httpClient, int timeout, String userAgent) {
+        this.httpClient = httpClient;
+        this.timeout = Duration.ofMillis(timeout);
+        this.userAgent = userAgent;
+    }
+
+    @Override
+    public InputStream open(String scriptUrl) {
+        LOG.debug("Fetch script: {}", scriptUrl);
+
+        HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder(URI.create(scriptUrl))
+                    .timeout(timeout)
+                    .header("User-Agent", userAgent)
+                    .GET()
+                    .build();
+        } catch (IllegalArgumentException e) {
+            throw new DownloadPageException("Detected malformed url: " + scriptUrl, e);
+        }
+
+        HttpResponse<InputStream> response;
+        try {
+            response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (IOException e) {
+            throw new DownloadPageException("Unable to GET " + scriptUrl, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new DownloadPageException("Interrupted while downloading " + scriptUrl, e);
+        }
+        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+            try {
+                response.body().close();
+            } catch (IOException e) {
+                LOG.debug("Unable to close {}", scriptUrl, e);
+            }
+            throw new DownloadPageException(response.statusCode());
+        }
+        return response.body();
+    }
+}
@@ -0,0 +1,105 @@
+package io.leontyev.crawler.library;
+
+/**
+ * Open-addressing hash table counting occurrences of non-negative int keys, kept in two primitive
+ * arrays so that counting allocates nothing but the occasional resize. Slots store {@code key + 1},
+ * leaving {@code 0} as the empty slot. Not thread-safe.
+ */
+class IntLongCounter implements OccurrenceCounter {
+
+    private static final float MAX_LOAD = 0.6f;
+
+    private int[] keys;
+    private long[] counts;
+    private int size;
+
+    IntLongCounter(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(16, (int) (expectedSize / MAX_LOAD)) - 1) << 1;
+        keys = new int[capacity];
+        counts = new long[capacity];
+    }
+
+    @Override
+    public void increment(int key) {
+        add(key, 1L);
+    }
+
+    void add(int key, long delta) {
+        if (size + 1 > keys.length * MAX_LOAD) {
+            resize(keys.length << 1);
+        }
+        int stored = key + 1;
+        int mask = keys.length - 1;
+        for (int slot = mix(stored) & mask; ; slot = (slot + 1) & mask) {
+            int current = keys[slot];
+            if (current == stored) {
+                counts[slot] += delta;
+                return;
+            }
+            if (current == 0) {
+                keys[slot] = stored;
+                counts[slot] = delta;
+                size++;
+                return;
+            }
+        }
+    }
+
+    long get(int key) {
+        int stored = key + 1;
+        int mask = keys.length - 1;
+        for (int slot = mix(stored) & mask; ; slot = (slot + 1) & mask) {
+            int current = keys[slot];
+            if (current == stored) {
+                return counts[slot];
+            }
+            if (current == 0) {
+                return 0L;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    @Override
+    public long[] top(int k) {
+        TopRanks topRanks = new TopRanks(Math.min(k, size));
+        forEach(topRanks::offer);
+        return topRanks.sorted();
+    }
+
+    /**
+     * Visits every key with its count, in no particular order.
+     */
+    void forEach(Visitor visitor) {
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (keys[slot] != 0) {
+                visitor.visit(keys[slot] - 1, counts[slot]);
+            }
+        }
+    }
+
+    private void resize(int capacity) {
+        int[] oldKeys = keys;
+        long[] oldCounts = counts;
+        keys = new int[capacity];
+        counts = new long[capacity];
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                add(oldKeys[i] - 1, oldCounts[i]);
+            }
+        }
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    interface Visitor {
+        void visit(int key, long count);
+    }
+}
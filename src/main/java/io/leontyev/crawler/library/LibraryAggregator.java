@@ -0,0 +1,98 @@
+package io.leontyev.crawler.library;
+
+import io.leontyev.crawler.engine.KeyValue;
+import io.leontyev.crawler.engine.ScriptsAggregator;
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Counts libraries rather than URLs. Script URLs are interned to library ids outside of any lock, the
+ * counts live in a primitive int to long table and only the final top results become {@link KeyValue}s.
+ * <p>
+ * With a fixed budget of tracked libraries the counts are approximate instead: see
+ * {@link SpaceSavingCounter} for what is guaranteed.
+ * <p>
+ * Aggregators made by {@link #tracking(PopularityTracker)} also record every page in the tracker, so the
+ * ids interned for the crawl feed the popularity windows as well.
+ */
+public class LibraryAggregator implements ScriptsAggregator {
+
+    private static final int EXPECTED_LIBRARIES = 256;
+
+    private final LibraryInterner interner;
+    private final OccurrenceCounter occurrences;
+    private final PopularityTracker tracker;
+
+    public LibraryAggregator(LibraryInterner interner) {
+        this(interner, new IntLongCounter(EXPECTED_LIBRARIES), null);
+    }
+
+    /**
+     * @param maxTrackedLibraries number of libraries counted at any time, the memory budget of the crawl
+     */
+    public LibraryAggregator(LibraryInterner interner, int maxTrackedLibraries) {
+        this(interner, new SpaceSavingCounter(maxTrackedLibraries), null);
+    }
+
+    private LibraryAggregator(LibraryInterner interner, OccurrenceCounter occurrences, PopularityTracker tracker) {
+        this.interner = interner;
+        this.occurrences = occurrences;
+        this.tracker = tracker;
+    }
+
+    /**
+     * Aggregators for an engine, all sharing one interner.
+     */
+    public static Supplier<ScriptsAggregator> factory(LibraryInterner interner) {
+        return () -> new LibraryAggregator(interner);
+    }
+
+    /**
+     * Approximate aggregators for an engine, each tracking at most {@code maxTrackedLibraries} libraries.
+     */
+    public static Supplier<ScriptsAggregator> heavyHitters(LibraryInterner interner, int maxTrackedLibraries) {
+        return () -> new LibraryAggregator(interner, maxTrackedLibraries);
+    }
+
+    /**
+     * Aggregators for an engine sharing the interner of {@code tracker}, each recording its pages there too.
+     */
+    public static Supplier<ScriptsAggregator> tracking(PopularityTracker tracker) {
+        return () -> new LibraryAggregator(tracker.getInterner(), new IntLongCounter(EXPECTED_LIBRARIES), tracker);
+    }
+
+    @Override
+    public void add(HtmlPageScripts htmlPage) {
+        List<String> scriptUrls = htmlPage.getScriptUrls();
+        int[] ids = new int[scriptUrls.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = interner.intern(scriptUrls.get(i));
+        }
+        synchronized (occurrences) {
+            for (int id : ids) {
+                occurrences.increment(id);
+            }
+        }
+        if (tracker != null) {
+            tracker.record(ids);
+        }
+    }
+
+    @Override
+    public Stream<KeyValue> topResults(int numResults) {
+        long[] ranks;
+        synchronized (occurrences) {
+            ranks = occurrences.top(numResults);
+        }
+
+        List<KeyValue> results = new ArrayList<>(ranks.length);
+        for (long rank : ranks) {
+            results.add(new KeyValue(interner.key(TopRanks.id(rank)), TopRanks.count(rank)));
+        }
+        return results.stream();
+    }
+}
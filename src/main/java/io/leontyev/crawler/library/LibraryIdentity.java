@@ -0,0 +1,54 @@
+package io.leontyev.crawler.library;
+
+import java.util.Objects;
+
+/**
+ * Canonical name of a JavaScript library as it is served, whatever the CDN, file name variant or
+ * cache-busting query. The version is {@code null} when the URL does not carry one.
+ */
+public class LibraryIdentity {
+
+    private final String name;
+    private final String version;
+
+    public LibraryIdentity(String name, String version) {
+        this.name = name;
+        this.version = version;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    /**
+     * @param withVersion whether versions of the same library count as different libraries
+     */
+    public String getKey(boolean withVersion) {
+        return withVersion && version != null ? name + '@' + version : name;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        LibraryIdentity that = (LibraryIdentity) o;
+        return name.equals(that.name) && Objects.equals(version, that.version);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, version);
+    }
+
+    @Override
+    public String toString() {
+        return "LibraryIdentity{" +
+                "name='" + name + '\'' +
+                ", version='" + version + '\'' +
+                '}';
+    }
+}
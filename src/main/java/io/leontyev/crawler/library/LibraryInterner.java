@@ -0,0 +1,75 @@
+package io.leontyev.crawler.library;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Assigns a dense int id to every library key and remembers the id of script URLs seen so far, so that a
+ * URL is normalized once per engine rather than once per page. Shared by all crawls of an engine; safe for
+ * concurrent use. Past {@value #MAX_REMEMBERED_URLS} URLs new ones are normalized on every lookup instead,
+ * as are URLs whose identity is not {@linkplain LibraryNormalizer#settled settled} yet.
+ */
+public class LibraryInterner {
+
+    static final int MAX_REMEMBERED_URLS = 1 << 20;
+
+    private final LibraryNormalizer normalizer;
+    private final boolean withVersion;
+    private final ConcurrentMap<String, Integer> urlIds = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Integer> keyIds = new ConcurrentHashMap<>();
+    private final List<String> keys = new ArrayList<>();
+
+    public LibraryInterner(LibraryNormalizer normalizer) {
+        this(normalizer, false);
+    }
+
+    /**
+     * @param withVersion whether versions of the same library count as different libraries
+     */
+    public LibraryInterner(LibraryNormalizer normalizer, boolean withVersion) {
+        this.normalizer = normalizer;
+        this.withVersion = withVersion;
+    }
+
+    public int intern(String scriptUrl) {
+        Integer id = urlIds.get(scriptUrl);
+        if (id != null) {
+            return id;
+        }
+        LibraryIdentity settled = normalizer.settled(scriptUrl);
+        if (settled == null) {
+            return id(normalizer.normalize(scriptUrl));
+        }
+        id = id(settled);
+        if (urlIds.size() < MAX_REMEMBERED_URLS) {
+            urlIds.putIfAbsent(scriptUrl, id);
+        }
+        return id;
+    }
+
+    public String key(int id) {
+        synchronized (keys) {
+            return keys.get(id);
+        }
+    }
+
+    /**
+     * Number of distinct library keys.
+     */
+    public int size() {
+        return keyIds.size();
+    }
+
+    private int id(LibraryIdentity identity) {
+        return keyIds.computeIfAbsent(identity.getKey(withVersion), this::register);
+    }
+
+    private int register(String key) {
+        synchronized (keys) {
+            keys.add(key);
+            return keys.size() - 1;
+        }
+    }
+}
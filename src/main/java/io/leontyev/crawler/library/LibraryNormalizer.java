@@ -0,0 +1,236 @@
+package io.leontyev.crawler.library;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Maps a script URL to the library it serves, so that {@code jquery.min.js?v=3}, the cdnjs copy and a
+ * self-hosted {@code jquery-3.5.1.js} all count as {@code jquery}.
+ * <p>
+ * Well-known CDN layouts ({@code /ajax/libs/<name>/<version>/} on cdnjs and Google Hosted Libraries,
+ * {@code <package>@<version>} on jsDelivr, unpkg and friends) are read directly. Anything else is named
+ * after its file, with build variants ({@code .min}, {@code .slim}, {@code .bundle}, ...), content hashes
+ * and versions stripped; the version is then taken from the file name, a {@code ?ver=} style parameter
+ * or a version directory. Files with a generic name such as {@code app.js} or {@code main.3f2a9c.js} belong
+ * to their site rather than to a library and keep their host and directory in the name.
+ */
+public class LibraryNormalizer {
+
+    private static final Set<String> NPM_CDN_HOSTS = new HashSet<>(Arrays.asList(
+            "unpkg.com", "esm.sh", "cdn.skypack.dev", "esm.run"));
+
+    private static final Set<String> BUILD_SUFFIXES = new HashSet<>(Arrays.asList(
+            "min", "slim", "prod", "production", "dev", "development", "umd", "esm", "cjs", "iife",
+            "bundle", "bundled", "pack", "packed", "compressed", "full", "dist", "js"));
+
+    private static final Set<String> GENERIC_NAMES = new HashSet<>(Arrays.asList(
+            "", "app", "main", "index", "bundle", "vendor", "vendors", "chunk-vendors", "runtime", "polyfills",
+            "script", "scripts", "common", "commons", "custom", "site", "global", "theme", "frontend", "js",
+            "api", "sdk", "loader", "init", "embed", "widget", "widgets", "analytics", "default", "all"));
+
+    private static final Set<String> VERSION_PARAMETERS = new HashSet<>(Arrays.asList("ver", "v", "version"));
+
+    private static final Pattern VERSIONED_NAME =
+            Pattern.compile("(.+?)[-._@](v?\\d+(?:\\.\\d+)+(?:-[0-9a-z]+)?|v\\d+)");
+    private static final Pattern VERSION = Pattern.compile("v?\\d+(?:\\.[0-9a-z-]+)*");
+    private static final Pattern VERSION_DIRECTORY = Pattern.compile("v?\\d+(?:\\.\\d+)+");
+
+    public LibraryIdentity normalize(String scriptUrl) {
+        String url = scriptUrl.toLowerCase(Locale.ROOT);
+        int fragment = url.indexOf('#');
+        if (fragment >= 0) {
+            url = url.substring(0, fragment);
+        }
+        String query = "";
+        int queryStart = url.indexOf('?');
+        if (queryStart >= 0) {
+            query = url.substring(queryStart + 1);
+            url = url.substring(0, queryStart);
+        }
+
+        String host = "";
+        String path = url;
+        int authority = url.indexOf("//");
+        if (authority >= 0) {
+            int pathStart = url.indexOf('/', authority + 2);
+            host = pathStart < 0 ? url.substring(authority + 2) : url.substring(authority + 2, pathStart);
+            path = pathStart < 0 ? "" : url.substring(pathStart);
+        }
+        host = stripHost(host);
+
+        List<String> segments = new ArrayList<>();
+        for (String segment : path.split("/")) {
+            if (!segment.isEmpty()) {
+                segments.add(segment);
+            }
+        }
+
+        LibraryIdentity identity = fromCdnPath(host, segments);
+        return identity != null ? identity : fromFileName(host, segments, query);
+    }
+
+    /**
+     * The identity of {@code scriptUrl} if {@link #normalize} will keep returning it, so that it can be
+     * remembered, or {@code null} while it may still change.
+     */
+    public LibraryIdentity settled(String scriptUrl) {
+        return normalize(scriptUrl);
+    }
+
+    private static LibraryIdentity fromCdnPath(String host, List<String> segments) {
+        int size = segments.size();
+        if (size >= 3 && segments.get(0).equals("ajax") && segments.get(1).equals("libs")) {
+            String version = size > 3 && VERSION.matcher(segments.get(3)).matches() ? segments.get(3) : null;
+            return new LibraryIdentity(packageName(segments.get(2)), version(version));
+        }
+        if (host.equals("cdn.jsdelivr.net") && size >= 2 && segments.get(0).equals("npm")) {
+            return fromPackage(segments, 1);
+        }
+        if (host.equals("cdn.jsdelivr.net") && size >= 3 && segments.get(0).equals("gh")) {
+            return fromPackage(segments, 2);
+        }
+        if (NPM_CDN_HOSTS.contains(host) && size >= 1) {
+            return fromPackage(segments, 0);
+        }
+        return null;
+    }
+
+    /**
+     * Reads {@code <package>@<version>} or {@code @<scope>/<package>@<version>} starting at {@code from}.
+     */
+    private static LibraryIdentity fromPackage(List<String> segments, int from) {
+        String specifier = segments.get(from);
+        if (specifier.startsWith("@") && from + 1 < segments.size()) {
+            specifier = specifier + '/' + segments.get(from + 1);
+        }
+        int at = specifier.lastIndexOf('@');
+        if (at <= 0) {
+            return new LibraryIdentity(packageName(specifier), null);
+        }
+        String version = specifier.substring(at + 1);
+        return new LibraryIdentity(packageName(specifier.substring(0, at)),
+                VERSION.matcher(version).matches() ? version(version) : null);
+    }
+
+    private static LibraryIdentity fromFileName(String host, List<String> segments, String query) {
+        String name = segments.isEmpty() ? "" : stripExtension(segments.get(segments.size() - 1));
+        String version = null;
+
+        boolean stripped = true;
+        while (stripped && !name.isEmpty()) {
+            stripped = false;
+            int separator = Math.max(name.lastIndexOf('.'), name.lastIndexOf('-'));
+            String token = name.substring(separator + 1);
+            if (separator > 0 && (BUILD_SUFFIXES.contains(token) || isContentHash(token))) {
+                name = name.substring(0, separator);
+                stripped = true;
+                continue;
+            }
+            Matcher matcher = VERSIONED_NAME.matcher(name);
+            if (matcher.matches()) {
+                name = matcher.group(1);
+                if (version == null) {
+                    version = version(matcher.group(2));
+                }
+                stripped = true;
+            }
+        }
+
+        if (version == null) {
+            version = versionFromQuery(query);
+        }
+        List<String> directories = new ArrayList<>();
+        for (int i = 0; i < segments.size() - 1; i++) {
+            String directory = segments.get(i);
+            if (VERSION_DIRECTORY.matcher(directory).matches()) {
+                version = version == null ? version(directory) : version;
+            } else {
+                directories.add(directory);
+            }
+        }
+
+        if (GENERIC_NAMES.contains(name) || isContentHash(name)) {
+            StringBuilder qualified = new StringBuilder(host);
+            for (String directory : directories) {
+                qualified.append('/').append(directory);
+            }
+            name = qualified.append('/').append(name).toString();
+        }
+        return new LibraryIdentity(name, version);
+    }
+
+    private static String versionFromQuery(String query) {
+        if (query.isEmpty()) {
+            return null;
+        }
+        for (String parameter : query.split("&")) {
+            int equals = parameter.indexOf('=');
+            if (equals > 0 && VERSION_PARAMETERS.contains(parameter.substring(0, equals))) {
+                String value = parameter.substring(equals + 1);
+                if (VERSION.matcher(value).matches()) {
+                    return version(value);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Build tools append an 8 to 20 character hash of the content, in hex or base 36. A hash has both digits
+     * and letters; real names may too ({@code html5shiv}), so a token that is not hex needs two digits.
+     */
+    private static boolean isContentHash(String token) {
+        if (token.length() < 8 || token.length() > 20) {
+            return false;
+        }
+        int digits = 0;
+        int letters = 0;
+        boolean hex = true;
+        for (int i = 0; i < token.length(); i++) {
+            char c = token.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits++;
+            } else if (c >= 'a' && c <= 'z') {
+                letters++;
+                hex &= c <= 'f';
+            } else {
+                return false;
+            }
+        }
+        return letters > 0 && (hex ? digits > 0 : digits > 1);
+    }
+
+    private static String stripExtension(String fileName) {
+        for (String extension : new String[]{".js", ".mjs", ".cjs"}) {
+            if (fileName.endsWith(extension)) {
+                return fileName.substring(0, fileName.length() - extension.length());
+            }
+        }
+        return fileName;
+    }
+
+    private static String stripHost(String host) {
+        int port = host.indexOf(':');
+        if (port >= 0) {
+            host = host.substring(0, port);
+        }
+        return host.startsWith("www.") ? host.substring(4) : host;
+    }
+
+    /**
+     * npm and cdnjs spell some packages after their file, {@code chart.js} and {@code popper.js}.
+     */
+    private static String packageName(String name) {
+        return name.endsWith(".js") && name.length() > 3 ? name.substring(0, name.length() - 3) : name;
+    }
+
+    private static String version(String version) {
+        return version != null && version.startsWith("v") ? version.substring(1) : version;
+    }
+}
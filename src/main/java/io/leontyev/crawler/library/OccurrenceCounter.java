@@ -0,0 +1,14 @@
+package io.leontyev.crawler.library;
+
+/**
+ * Counts occurrences of library ids for one crawl. Not thread-safe.
+ */
+interface OccurrenceCounter {
+
+    void increment(int id);
+
+    /**
+     * The {@code k} most frequent ids as ranks, see {@link TopRanks}, highest first.
+     */
+    long[] top(int k);
+}
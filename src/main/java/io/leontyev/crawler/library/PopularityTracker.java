@@ -0,0 +1,249 @@
+package io.leontyev.crawler.library;
+
+import io.leontyev.crawler.engine.KeyValue;
+
+import java.time.Clock;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Library popularity over every crawl of a long-lived engine, for the last minute, hour and day and for the
+ * current minute, hour and day of the UTC calendar. Fed by the {@link LibraryAggregator}s of
+ * {@link LibraryAggregator#tracking(PopularityTracker)}.
+ * <p>
+ * Each {@link PopularityWindow} is a ring of buckets. A bucket counts library ids in striped cells, much as a
+ * {@link LongAdder} spreads one counter: a thread always increments its own stripe, so crawls recording at the
+ * same time neither share cache lines nor retry each other's CAS. Cells are allocated in chunks of
+ * {@value #CHUNK_SIZE} ids as ids come up. Once a bucket is two periods old its stripes are folded into a
+ * plain array and dropped, so a query sums the arrays of past buckets and the stripes of only the newest two.
+ * <p>
+ * Ids from {@code maxLibraries} on are not counted, see {@link #getUntracked()}. A thread stalled between
+ * reading the clock and incrementing for longer than a bucket may lose its increments.
+ */
+public class PopularityTracker {
+
+    private static final int DEFAULT_MAX_LIBRARIES = 1 << 16;
+    private static final int CHUNK_BITS = 8;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+    private final LibraryInterner interner;
+    private final int maxLibraries;
+    private final int chunks;
+    private final int stripes;
+    private final Clock clock;
+    private final Ring[] rings;
+    private final LongAdder untracked = new LongAdder();
+
+    public PopularityTracker(LibraryInterner interner) {
+        this(interner, DEFAULT_MAX_LIBRARIES, Runtime.getRuntime().availableProcessors(), Clock.systemUTC());
+    }
+
+    /**
+     * @param concurrency threads expected to record at the same time, there are four stripes for each
+     */
+    public PopularityTracker(LibraryInterner interner, int maxLibraries, int concurrency, Clock clock) {
+        if (maxLibraries <= 0 || concurrency <= 0) {
+            throw new IllegalArgumentException("Invalid tracker size: " + maxLibraries + ", " + concurrency);
+        }
+        this.interner = interner;
+        this.maxLibraries = maxLibraries;
+        this.chunks = (maxLibraries + CHUNK_SIZE - 1) >>> CHUNK_BITS;
+        this.stripes = Integer.highestOneBit(concurrency * 4 - 1) << 1;
+        this.clock = clock;
+        PopularityWindow[] windows = PopularityWindow.values();
+        this.rings = new Ring[windows.length];
+        for (PopularityWindow window : windows) {
+            rings[window.ordinal()] = new Ring(window);
+        }
+    }
+
+    /**
+     * Counts the libraries of one page, ids as given by the interner.
+     */
+    public void record(int[] ids) {
+        long now = clock.millis();
+        int stripe = mix(Long.hashCode(Thread.currentThread().getId())) & (stripes - 1);
+        for (Ring ring : rings) {
+            Bucket bucket = ring.bucket(now / ring.window.getBucketMillis());
+            for (int id : ids) {
+                if (id < maxLibraries) {
+                    bucket.increment(id, stripe);
+                }
+            }
+        }
+        for (int id : ids) {
+            if (id >= maxLibraries) {
+                untracked.increment();
+            }
+        }
+    }
+
+    /**
+     * The top libraries of the last {@link PopularityWindow#getDurationMillis()}, to within a bucket.
+     */
+    public Stream<KeyValue> topSliding(PopularityWindow window, int numResults) {
+        long period = clock.millis() / window.getBucketMillis();
+        return top(window, period - window.getBuckets() + 1, period, numResults);
+    }
+
+    /**
+     * The top libraries since the current minute, hour or day of the UTC calendar began.
+     */
+    public Stream<KeyValue> topTumbling(PopularityWindow window, int numResults) {
+        long now = clock.millis();
+        long start = now - Math.floorMod(now, window.getDurationMillis());
+        return top(window, start / window.getBucketMillis(), now / window.getBucketMillis(), numResults);
+    }
+
+    /**
+     * Occurrences of libraries past {@code maxLibraries}, which no window counts.
+     */
+    public long getUntracked() {
+        return untracked.sum();
+    }
+
+    LibraryInterner getInterner() {
+        return interner;
+    }
+
+    private Stream<KeyValue> top(PopularityWindow window, long fromPeriod, long toPeriod, int numResults) {
+        long[] counts = new long[Math.min(maxLibraries, interner.size())];
+        AtomicReferenceArray<Bucket> buckets = rings[window.ordinal()].buckets;
+        for (int slot = 0; slot < buckets.length(); slot++) {
+            Bucket bucket = buckets.get(slot);
+            if (bucket == null || bucket.period < fromPeriod || bucket.period > toPeriod) {
+                continue;
+            }
+            if (bucket.period < toPeriod - 1) {
+                bucket.fold();
+            }
+            bucket.addTo(counts);
+        }
+
+        TopRanks topRanks = new TopRanks(numResults);
+        for (int id = 0; id < counts.length; id++) {
+            if (counts[id] > 0) {
+                topRanks.offer(id, counts[id]);
+            }
+        }
+        long[] ranks = topRanks.sorted();
+        List<KeyValue> results = new ArrayList<>(ranks.length);
+        for (long rank : ranks) {
+            results.add(new KeyValue(interner.key(TopRanks.id(rank)), TopRanks.count(rank)));
+        }
+        return results.stream();
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private class Ring {
+
+        private final PopularityWindow window;
+        private final AtomicReferenceArray<Bucket> buckets;
+
+        private Ring(PopularityWindow window) {
+            this.window = window;
+            this.buckets = new AtomicReferenceArray<>(window.getBuckets());
+        }
+
+        /**
+         * The bucket of {@code period}, replacing the one a full ring older. A caller whose clock lags behind
+         * one that already moved on gets the newer bucket.
+         */
+        private Bucket bucket(long period) {
+            int slot = (int) Math.floorMod(period, (long) buckets.length());
+            Bucket bucket = buckets.get(slot);
+            while (bucket == null || bucket.period < period) {
+                Bucket fresh = new Bucket(period);
+                if (buckets.compareAndSet(slot, bucket, fresh)) {
+                    Bucket closed = buckets.get((int) Math.floorMod(period - 2, (long) buckets.length()));
+                    if (closed != null && closed.period == period - 2) {
+                        closed.fold();
+                    }
+                    return fresh;
+                }
+                bucket = buckets.get(slot);
+            }
+            return bucket;
+        }
+    }
+
+    private class Bucket {
+
+        private final long period;
+        private volatile AtomicReferenceArray<AtomicLongArray> cells;
+        private volatile long[] totals;
+
+        private Bucket(long period) {
+            this.period = period;
+            this.cells = new AtomicReferenceArray<>(chunks * stripes);
+        }
+
+        private void increment(int id, int stripe) {
+            AtomicReferenceArray<AtomicLongArray> cells = this.cells;
+            if (cells == null) {
+                return;
+            }
+            int index = (id >>> CHUNK_BITS) * stripes + stripe;
+            AtomicLongArray chunk = cells.get(index);
+            if (chunk == null) {
+                cells.compareAndSet(index, null, new AtomicLongArray(CHUNK_SIZE));
+                chunk = cells.get(index);
+            }
+            chunk.getAndIncrement(id & (CHUNK_SIZE - 1));
+        }
+
+        /**
+         * Sums the stripes into totals and drops them. The totals are published before the stripes are dropped,
+         * so a reader that finds no stripes finds the totals.
+         */
+        private synchronized void fold() {
+            AtomicReferenceArray<AtomicLongArray> cells = this.cells;
+            if (cells == null) {
+                return;
+            }
+            int used = 0;
+            for (int index = cells.length() - 1; index >= 0 && used == 0; index--) {
+                if (cells.get(index) != null) {
+                    used = index / stripes + 1;
+                }
+            }
+            long[] sums = new long[used * CHUNK_SIZE];
+            addTo(cells, sums);
+            totals = sums;
+            this.cells = null;
+        }
+
+        private void addTo(long[] counts) {
+            AtomicReferenceArray<AtomicLongArray> cells = this.cells;
+            if (cells != null) {
+                addTo(cells, counts);
+                return;
+            }
+            long[] totals = this.totals;
+            for (int id = 0; id < Math.min(totals.length, counts.length); id++) {
+                counts[id] += totals[id];
+            }
+        }
+
+        private void addTo(AtomicReferenceArray<AtomicLongArray> cells, long[] counts) {
+            for (int index = 0; index < cells.length(); index++) {
+                AtomicLongArray chunk = cells.get(index);
+                if (chunk == null) {
+                    continue;
+                }
+                int base = index / stripes * CHUNK_SIZE;
+                for (int offset = 0; offset < CHUNK_SIZE && base + offset < counts.length; offset++) {
+                    counts[base + offset] += chunk.get(offset);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package io.leontyev.crawler.library;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time windows over which a {@link PopularityTracker} ranks libraries, each kept as a ring of buckets. A
+ * sliding window is accurate to one bucket: the last minute is the current second and the 59 before it.
+ */
+public enum PopularityWindow {
+
+    MINUTE(TimeUnit.SECONDS.toMillis(1), 60),
+    HOUR(TimeUnit.MINUTES.toMillis(1), 60),
+    DAY(TimeUnit.HOURS.toMillis(1), 24);
+
+    private final long bucketMillis;
+    private final int buckets;
+
+    PopularityWindow(long bucketMillis, int buckets) {
+        this.bucketMillis = bucketMillis;
+        this.buckets = buckets;
+    }
+
+    public long getBucketMillis() {
+        return bucketMillis;
+    }
+
+    public int getBuckets() {
+        return buckets;
+    }
+
+    public long getDurationMillis() {
+        return bucketMillis * buckets;
+    }
+}
@@ -0,0 +1,259 @@
+package io.leontyev.crawler.library;
+
+import io.leontyev.crawler.downloader.DownloadPageException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Tells which library a script is by its body rather than its URL, so a self-hosted or renamed copy counts
+ * as the library it is. Shared by all pages and queries of an engine; safe for concurrent use.
+ * <p>
+ * Every script URL is fetched once: its body is streamed through SHA-256 and only the first
+ * {@value #BANNER_BYTES} bytes are kept, to look for a {@code /*! jQuery v3.5.1} style banner. A body is
+ * identified by a hash seen before under another URL, else by its banner, else by its URL as
+ * {@link LibraryNormalizer} reads it. Whatever a body was identified as, other than a site's own
+ * {@code app.js}, is remembered for its hash, so an unbannered copy on a CDN names its renamed copies.
+ * <p>
+ * Both the URLs and the hashes are kept in least recently used order up to a number of entries. Concurrent
+ * requests for a URL being fetched wait for that fetch.
+ */
+public class ScriptBodyCache {
+
+    private static final Logger LOG = LoggerFactory.getLogger(ScriptBodyCache.class);
+
+    static final int BANNER_BYTES = 2048;
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+    private static final long MAX_BODY_BYTES = 16 * 1024 * 1024;
+    private static final Pattern BANNER = Pattern.compile(
+            "^\\s*(?:/\\*[*!]?|//!?)\\s*(?:\\*\\s*)?(?:@license\\s+)?"
+                    + "([A-Za-z][A-Za-z0-9.\\-]*(?: [A-Z][A-Za-z0-9.\\-]*)?)\\s+(?:-\\s+)?v?(\\d+\\.\\d+(?:\\.\\d+)?(?:-[0-9A-Za-z.]+)?)\\b");
+
+    private final ScriptSource source;
+    private final LibraryNormalizer normalizer;
+    private final int maxUrls;
+    private final int maxHashes;
+
+    private final LinkedHashMap<String, ScriptFingerprint> urls = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<String, LibraryIdentity> hashes = new LinkedHashMap<>(16, 0.75f, true);
+    private final ConcurrentMap<String, CompletableFuture<ScriptFingerprint>> inFlight = new ConcurrentHashMap<>();
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder fetches = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder fetchedBytes = new LongAdder();
+    private final LongAdder savedBytes = new LongAdder();
+    private final LongAdder identifiedByHash = new LongAdder();
+    private final LongAdder identifiedByBanner = new LongAdder();
+
+    /**
+     * @param maxUrls   script URLs whose fingerprint is kept
+     * @param maxHashes body hashes whose library is kept
+     */
+    public ScriptBodyCache(ScriptSource source, LibraryNormalizer normalizer, int maxUrls, int maxHashes) {
+        this.source = source;
+        this.normalizer = normalizer;
+        this.maxUrls = maxUrls;
+        this.maxHashes = maxHashes;
+    }
+
+    /**
+     * The fingerprint of the script, fetched on {@code ioExecutor} unless known or being fetched already.
+     * Completes with {@code null} when the body could not be fetched; such URLs are tried again next time.
+     */
+    public CompletableFuture<ScriptFingerprint> fingerprint(String scriptUrl, Executor ioExecutor) {
+        lookups.increment();
+        ScriptFingerprint cached = get(scriptUrl);
+        if (cached != null) {
+            savedBytes.add(cached.getBytes());
+            return CompletableFuture.completedFuture(cached);
+        }
+
+        CompletableFuture<ScriptFingerprint> fetch = new CompletableFuture<>();
+        CompletableFuture<ScriptFingerprint> pending = inFlight.putIfAbsent(scriptUrl, fetch);
+        if (pending != null) {
+            return pending.thenApply(fingerprint -> {
+                if (fingerprint != null) {
+                    savedBytes.add(fingerprint.getBytes());
+                }
+                return fingerprint;
+            });
+        }
+        cached = get(scriptUrl);
+        if (cached != null) {
+            inFlight.remove(scriptUrl);
+            fetch.complete(cached);
+            return fetch;
+        }
+
+        CompletableFuture.runAsync(() -> {
+            ScriptFingerprint fingerprint = null;
+            try {
+                fingerprint = read(scriptUrl);
+                put(scriptUrl, fingerprint);
+            } catch (RuntimeException e) {
+                failures.increment();
+                LOG.debug("Unable to fingerprint {}: {}", scriptUrl, e.getMessage());
+            } finally {
+                inFlight.remove(scriptUrl);
+                fetch.complete(fingerprint);
+            }
+        }, ioExecutor);
+        return fetch;
+    }
+
+    /**
+     * The library of a script fingerprinted before, or {@code null}.
+     */
+    public LibraryIdentity getIdentity(String scriptUrl) {
+        ScriptFingerprint fingerprint = get(scriptUrl);
+        return fingerprint == null ? null : fingerprint.getIdentity();
+    }
+
+    /**
+     * Names every body with this SHA-256 hash, in lower case hex, from now on.
+     */
+    public void register(String sha256, LibraryIdentity identity) {
+        learn(sha256.toLowerCase(Locale.ROOT), identity);
+    }
+
+    public ScriptCacheStats getStats() {
+        int urlEntries;
+        int hashEntries;
+        synchronized (urls) {
+            urlEntries = urls.size();
+        }
+        synchronized (hashes) {
+            hashEntries = hashes.size();
+        }
+        return new ScriptCacheStats(lookups.sum(), fetches.sum(), failures.sum(), fetchedBytes.sum(), savedBytes.sum(),
+                identifiedByHash.sum(), identifiedByBanner.sum(), urlEntries, hashEntries);
+    }
+
+    /**
+     * The library named by a banner comment at the start of a script, or {@code null}.
+     */
+    static LibraryIdentity banner(String head) {
+        Matcher matcher = BANNER.matcher(head);
+        if (!matcher.find()) {
+            return null;
+        }
+        String name = matcher.group(1).toLowerCase(Locale.ROOT);
+        if (name.endsWith(".js") && name.length() > 3) {
+            name = name.substring(0, name.length() - 3);
+        }
+        return new LibraryIdentity(name.replace(' ', '-'), matcher.group(2));
+    }
+
+    private ScriptFingerprint read(String scriptUrl) {
+        fetches.increment();
+        MessageDigest digest = sha256();
+        byte[] buffer = new byte[BUFFER_SIZE];
+        byte[] head = new byte[BANNER_BYTES];
+        int headLength = 0;
+        long bytes = 0;
+        try (InputStream body = source.open(scriptUrl)) {
+            int count;
+            while ((count = body.read(buffer)) >= 0) {
+                if (headLength < head.length) {
+                    int copied = Math.min(count, head.length - headLength);
+                    System.arraycopy(buffer, 0, head, headLength, copied);
+                    headLength += copied;
+                }
+                digest.update(buffer, 0, count);
+                bytes += count;
+                fetchedBytes.add(count);
+                if (bytes > MAX_BODY_BYTES) {
+                    throw new DownloadPageException("Script is larger than " + MAX_BODY_BYTES + " bytes: " + scriptUrl);
+                }
+            }
+        } catch (IOException e) {
+            throw new DownloadPageException("Unable to read " + scriptUrl, e);
+        }
+        String sha256 = hex(digest.digest());
+
+        LibraryIdentity known = getLibrary(sha256);
+        if (known != null) {
+            identifiedByHash.increment();
+            return new ScriptFingerprint(sha256, bytes, known, ScriptFingerprint.Source.HASH);
+        }
+        LibraryIdentity bannered = banner(new String(head, 0, headLength, StandardCharsets.ISO_8859_1));
+        if (bannered != null) {
+            identifiedByBanner.increment();
+            learn(sha256, bannered);
+            return new ScriptFingerprint(sha256, bytes, bannered, ScriptFingerprint.Source.BANNER);
+        }
+        LibraryIdentity named = normalizer.normalize(scriptUrl);
+        if (named.getName().indexOf('/') < 0) {
+            learn(sha256, named);
+        }
+        return new ScriptFingerprint(sha256, bytes, named, ScriptFingerprint.Source.URL);
+    }
+
+    private ScriptFingerprint get(String scriptUrl) {
+        synchronized (urls) {
+            return urls.get(scriptUrl);
+        }
+    }
+
+    private void put(String scriptUrl, ScriptFingerprint fingerprint) {
+        synchronized (urls) {
+            urls.put(scriptUrl, fingerprint);
+            evict(urls, maxUrls);
+        }
+    }
+
+    private LibraryIdentity getLibrary(String sha256) {
+        synchronized (hashes) {
+            return hashes.get(sha256);
+        }
+    }
+
+    private void learn(String sha256, LibraryIdentity identity) {
+        synchronized (hashes) {
+            hashes.putIfAbsent(sha256, identity);
+            evict(hashes, maxHashes);
+        }
+    }
+
+    private static void evict(LinkedHashMap<String, ?> entries, int maxEntries) {
+        Iterator<String> eldest = entries.keySet().iterator();
+        while (entries.size() > maxEntries && eldest.hasNext()) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String hex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = Character.forDigit((bytes[i] >> 4) & 0xF, 16);
+            chars[2 * i + 1] = Character.forDigit(bytes[i] & 0xF, 16);
+        }
+        return new String(chars);
+    }
+}
@@ -0,0 +1,95 @@
+package io.leontyev.crawler.library;
+
+public class ScriptCacheStats {
+
+    private final long lookups;
+    private final long fetches;
+    private final long failures;
+    private final long fetchedBytes;
+    private final long savedBytes;
+    private final long identifiedByHash;
+    private final long identifiedByBanner;
+    private final long urls;
+    private final long hashes;
+
+    public ScriptCacheStats(long lookups, long fetches, long failures, long fetchedBytes, long savedBytes,
+                            long identifiedByHash, long identifiedByBanner, long urls, long hashes) {
+        this.lookups = lookups;
+        this.fetches = fetches;
+        this.failures = failures;
+        this.fetchedBytes = fetchedBytes;
+        this.savedBytes = savedBytes;
+        this.identifiedByHash = identifiedByHash;
+        this.identifiedByBanner = identifiedByBanner;
+        this.urls = urls;
+        this.hashes = hashes;
+    }
+
+    /**
+     * Scripts asked for, once per script of every page.
+     */
+    public long getLookups() {
+        return lookups;
+    }
+
+    /**
+     * Script bodies downloaded and hashed.
+     */
+    public long getFetches() {
+        return fetches;
+    }
+
+    public long getFailures() {
+        return failures;
+    }
+
+    /**
+     * Lookups answered without a download of their own, from the cache or by joining a fetch in flight.
+     */
+    public long getSavedFetches() {
+        return lookups - fetches;
+    }
+
+    public long getFetchedBytes() {
+        return fetchedBytes;
+    }
+
+    /**
+     * Body bytes the saved fetches would have downloaded.
+     */
+    public long getSavedBytes() {
+        return savedBytes;
+    }
+
+    public long getIdentifiedByHash() {
+        return identifiedByHash;
+    }
+
+    public long getIdentifiedByBanner() {
+        return identifiedByBanner;
+    }
+
+    public long getUrls() {
+        return urls;
+    }
+
+    public long getHashes() {
+        return hashes;
+    }
+
+    @Override
+    public String toString() {
+        return "ScriptCacheStats{" +
+                "lookups=" + lookups +
+                ", fetches=" + fetches +
+                ", failures=" + failures +
+                ", savedFetches=" + getSavedFetches() +
+                ", fetchedBytes=" + fetchedBytes +
+                ", savedBytes=" + savedBytes +
+                ", identifiedByHash=" + identifiedByHash +
+                ", identifiedByBanner=" + identifiedByBanner +
+                ", urls=" + urls +
+                ", hashes=" + hashes +
+                '}';
+    }
+}
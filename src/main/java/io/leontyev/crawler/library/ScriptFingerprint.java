@@ -0,0 +1,57 @@
+package io.leontyev.crawler.library;
+
+/**
+ * What a script body was found to be: its SHA-256, its size and the library it was identified as.
+ */
+public class ScriptFingerprint {
+
+    private final String sha256;
+    private final long bytes;
+    private final LibraryIdentity identity;
+    private final Source source;
+
+    /**
+     * How the library of a body was told.
+     */
+    public enum Source {
+        /** the hash of a body identified before, under any URL */
+        HASH,
+        /** a {@code /*! name vX.Y.Z} style comment at the top of the body */
+        BANNER,
+        /** the URL alone, as without fingerprinting */
+        URL
+    }
+
+    public ScriptFingerprint(String sha256, long bytes, LibraryIdentity identity, Source source) {
+        this.sha256 = sha256;
+        this.bytes = bytes;
+        this.identity = identity;
+        this.source = source;
+    }
+
+    public String getSha256() {
+        return sha256;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public LibraryIdentity getIdentity() {
+        return identity;
+    }
+
+    public Source getSource() {
+        return source;
+    }
+
+    @Override
+    public String toString() {
+        return "ScriptFingerprint{" +
+                "sha256='" + sha256 + '\'' +
+                ", bytes=" + bytes +
+                ", identity=" + identity +
+                ", source=" + source +
+                '}';
+    }
+}
@@ -0,0 +1,16 @@
+package io.leontyev.crawler.library;
+
+import io.leontyev.crawler.downloader.DownloadPageException;
+
+import java.io.InputStream;
+
+/**
+ * Where script bodies come from. The caller closes the stream.
+ */
+public interface ScriptSource {
+
+    /**
+     * @throws DownloadPageException if the body cannot be fetched
+     */
+    InputStream open(String scriptUrl);
+}
@@ -0,0 +1,151 @@
+package io.leontyev.crawler.library;
+
+/**
+ * Space-Saving heavy hitters (Metwally et al.) over a fixed number of counters, so memory stays the same
+ * however many distinct libraries a crawl meets. When every counter is taken, the least counted id is
+ * replaced by the new one, which inherits its count plus one. Any id occurring more than
+ * {@code total / capacity} times is guaranteed to be kept, and a kept count overestimates the true one by
+ * at most the count of the id it replaced.
+ * <p>
+ * The counters form a min-heap ordered by count, indexed by a small open-addressing table from id to heap
+ * position. Not thread-safe.
+ */
+class SpaceSavingCounter implements OccurrenceCounter {
+
+    private final int[] heapIds;
+    private final long[] heapCounts;
+    private int size;
+
+    private final int[] slotIds;
+    private final int[] slotPositions;
+
+    SpaceSavingCounter(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        heapIds = new int[capacity];
+        heapCounts = new long[capacity];
+        int tableSize = Integer.highestOneBit(Math.max(16, capacity * 2) - 1) << 1;
+        slotIds = new int[tableSize];
+        slotPositions = new int[tableSize];
+    }
+
+    @Override
+    public void increment(int id) {
+        int slot = find(id);
+        if (slotIds[slot] != 0) {
+            int position = slotPositions[slot];
+            heapCounts[position]++;
+            siftDown(position);
+            return;
+        }
+        if (size < heapIds.length) {
+            int position = size++;
+            heapIds[position] = id;
+            heapCounts[position] = 1;
+            insert(slot, id, position);
+            siftUp(position);
+            return;
+        }
+        remove(heapIds[0]);
+        heapIds[0] = id;
+        heapCounts[0]++;
+        insert(find(id), id, 0);
+        siftDown(0);
+    }
+
+    @Override
+    public long[] top(int k) {
+        TopRanks topRanks = new TopRanks(Math.min(k, size));
+        for (int position = 0; position < size; position++) {
+            topRanks.offer(heapIds[position], heapCounts[position]);
+        }
+        return topRanks.sorted();
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void siftUp(int position) {
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (heapCounts[parent] <= heapCounts[position]) {
+                return;
+            }
+            swap(parent, position);
+            position = parent;
+        }
+    }
+
+    private void siftDown(int position) {
+        while (true) {
+            int smallest = position;
+            int left = 2 * position + 1;
+            int right = left + 1;
+            if (left < size && heapCounts[left] < heapCounts[smallest]) {
+                smallest = left;
+            }
+            if (right < size && heapCounts[right] < heapCounts[smallest]) {
+                smallest = right;
+            }
+            if (smallest == position) {
+                return;
+            }
+            swap(position, smallest);
+            position = smallest;
+        }
+    }
+
+    private void swap(int i, int j) {
+        int id = heapIds[i];
+        heapIds[i] = heapIds[j];
+        heapIds[j] = id;
+        long count = heapCounts[i];
+        heapCounts[i] = heapCounts[j];
+        heapCounts[j] = count;
+        slotPositions[find(heapIds[i])] = i;
+        slotPositions[find(heapIds[j])] = j;
+    }
+
+    /**
+     * The slot holding {@code id}, or the empty slot where it would be inserted.
+     */
+    private int find(int id) {
+        int stored = id + 1;
+        int mask = slotIds.length - 1;
+        int slot = mix(stored) & mask;
+        while (slotIds[slot] != 0 && slotIds[slot] != stored) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void insert(int slot, int id, int position) {
+        slotIds[slot] = id + 1;
+        slotPositions[slot] = position;
+    }
+
+    /**
+     * Backward-shift deletion, so that probe sequences stay unbroken without tombstones.
+     */
+    private void remove(int id) {
+        int mask = slotIds.length - 1;
+        int hole = find(id);
+        slotIds[hole] = 0;
+        for (int slot = (hole + 1) & mask; slotIds[slot] != 0; slot = (slot + 1) & mask) {
+            int home = mix(slotIds[slot]) & mask;
+            if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+                slotIds[hole] = slotIds[slot];
+                slotPositions[hole] = slotPositions[slot];
+                slotIds[slot] = 0;
+                hole = slot;
+            }
+        }
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,81 @@
+package io.leontyev.crawler.library;
+
+import java.util.Arrays;
+
+/**
+ * Bounded min-heap keeping the {@code k} highest ranked ids. A rank packs the count in the high half and
+ * the inverted id in the low half of a long, so comparing ranks orders by count and breaks ties in favour
+ * of the library seen first. Not thread-safe.
+ */
+class TopRanks {
+
+    private final long[] heap;
+    private int size;
+
+    TopRanks(int k) {
+        heap = new long[Math.max(0, k)];
+    }
+
+    void offer(int id, long count) {
+        long rank = Math.min(count, Integer.MAX_VALUE) << 32 | (~id & 0xFFFFFFFFL);
+        if (size < heap.length) {
+            heap[size] = rank;
+            siftUp(size++);
+        } else if (size > 0 && rank > heap[0]) {
+            heap[0] = rank;
+            siftDown(0);
+        }
+    }
+
+    /**
+     * The kept ranks, highest first.
+     */
+    long[] sorted() {
+        long[] ranks = Arrays.copyOf(heap, size);
+        Arrays.sort(ranks);
+        for (int i = 0, j = ranks.length - 1; i < j; i++, j--) {
+            long rank = ranks[i];
+            ranks[i] = ranks[j];
+            ranks[j] = rank;
+        }
+        return ranks;
+    }
+
+    static int id(long rank) {
+        return (int) ~rank;
+    }
+
+    static long count(long rank) {
+        return rank >>> 32;
+    }
+
+    private void siftUp(int index) {
+        long rank = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heap[parent] <= rank) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = rank;
+    }
+
+    private void siftDown(int index) {
+        long rank = heap[index];
+        int half = size >>> 1;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < size && heap[child + 1] < heap[child]) {
+                child++;
+            }
+            if (rank <= heap[child]) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = rank;
+    }
+}
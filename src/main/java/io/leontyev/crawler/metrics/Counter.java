@@ -0,0 +1,14 @@
+package io.leontyev.crawler.metrics;
+
+public interface Counter {
+
+    Counter NOOP = amount -> {
+    };
+
+    default void increment() {
+        increment(1);
+    }
+
+    void increment(long amount);
+
+}
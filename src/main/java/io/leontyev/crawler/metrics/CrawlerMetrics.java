@@ -0,0 +1,137 @@
+package io.leontyev.crawler.metrics;
+
+import io.leontyev.crawler.downloader.BodyStats;
+import io.leontyev.crawler.downloader.DownloadPageException;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.net.http.HttpTimeoutException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.function.LongSupplier;
+
+/**
+ * The meters of the crawl pipeline, one per stage, on top of a {@link MetricsRegistry}:
+ * <ul>
+ * <li>{@code crawler.download}, {@code crawler.parse} and {@code crawler.aggregate} time the stages of a page,</li>
+ * <li>{@code crawler.page.chars} and {@code crawler.page.scripts} are the size and script count of a page,</li>
+ * <li>{@code crawler.failures} counts failed pages by {@code cause},</li>
+ * <li>{@code crawler.executor.queued} and {@code crawler.executor.active} are gauges per {@code executor}, and so
+ * is {@code crawler.executor.limit} when the executors are sized adaptively,</li>
+ * <li>{@code crawler.body.*} are gauges of the bytes a download service read, skipped and saved allocating.</li>
+ * </ul>
+ */
+public class CrawlerMetrics {
+
+    public static final CrawlerMetrics NOOP = new CrawlerMetrics(MetricsRegistry.NOOP);
+
+    private final MetricsRegistry registry;
+    private final Timer download;
+    private final Timer parse;
+    private final Timer aggregate;
+    private final Histogram pageChars;
+    private final Histogram pageScripts;
+    private final ConcurrentMap<String, Counter> failures = new ConcurrentHashMap<>();
+
+    public CrawlerMetrics(MetricsRegistry registry) {
+        this.registry = registry;
+        this.download = registry.timer("crawler.download");
+        this.parse = registry.timer("crawler.parse");
+        this.aggregate = registry.timer("crawler.aggregate");
+        this.pageChars = registry.histogram("crawler.page.chars");
+        this.pageScripts = registry.histogram("crawler.page.scripts");
+    }
+
+    public Timer getDownload() {
+        return download;
+    }
+
+    public Timer getParse() {
+        return parse;
+    }
+
+    public Timer getAggregate() {
+        return aggregate;
+    }
+
+    public Histogram getPageChars() {
+        return pageChars;
+    }
+
+    public Histogram getPageScripts() {
+        return pageScripts;
+    }
+
+    public void failure(Throwable throwable) {
+        failures.computeIfAbsent(cause(throwable), cause -> registry.counter("crawler.failures", "cause", cause))
+                .increment();
+    }
+
+    public void executor(String name, LongSupplier queued, LongSupplier active) {
+        registry.gauge("crawler.executor.queued", queued, "executor", name);
+        registry.gauge("crawler.executor.active", active, "executor", name);
+    }
+
+    public void executorLimit(String name, LongSupplier limit) {
+        registry.gauge("crawler.executor.limit", limit, "executor", name);
+    }
+
+    public void body(BodyStats stats) {
+        registry.gauge("crawler.body.read.bytes", stats::getBytesRead);
+        registry.gauge("crawler.body.skipped.bytes", stats::getBytesSkipped);
+        registry.gauge("crawler.body.truncated.pages", stats::getTruncatedPages);
+        registry.gauge("crawler.body.head.only.pages", stats::getHeadOnlyPages);
+        registry.gauge("crawler.body.allocation.saved.bytes", stats::getAllocationSavedBytes);
+    }
+
+    /**
+     * A short, bounded name for why a page failed: {@code timeout}, {@code connect}, {@code unknown_host},
+     * {@code io}, {@code status_4xx}, {@code status_5xx}, {@code malformed_url}, {@code content_type},
+     * {@code robots}, {@code interrupted}, or the exception class for anything else.
+     */
+    static String cause(Throwable throwable) {
+        while ((throwable instanceof CompletionException || throwable instanceof ExecutionException)
+                && throwable.getCause() != null) {
+            throwable = throwable.getCause();
+        }
+        if (throwable instanceof DownloadPageException) {
+            int statusCode = ((DownloadPageException) throwable).getStatusCode();
+            if (statusCode > 0) {
+                return "status_" + statusCode / 100 + "xx";
+            }
+            Throwable cause = throwable.getCause();
+            if (cause instanceof SocketTimeoutException || cause instanceof HttpTimeoutException) {
+                return "timeout";
+            }
+            if (cause instanceof ConnectException) {
+                return "connect";
+            }
+            if (cause instanceof UnknownHostException) {
+                return "unknown_host";
+            }
+            if (cause instanceof InterruptedException || cause instanceof InterruptedIOException) {
+                return "interrupted";
+            }
+            if (cause instanceof IllegalArgumentException) {
+                return "malformed_url";
+            }
+            if (cause instanceof IOException) {
+                return "io";
+            }
+            String message = throwable.getMessage() == null ? "" : throwable.getMessage();
+            if (message.startsWith("Unsupported content type")) {
+                return "content_type";
+            }
+            if (message.startsWith("Disallowed by robots.txt")) {
+                return "robots";
+            }
+            return "download";
+        }
+        return throwable.getClass().getSimpleName();
+    }
+}
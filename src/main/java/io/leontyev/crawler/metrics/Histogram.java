@@ -0,0 +1,13 @@
+package io.leontyev.crawler.metrics;
+
+/**
+ * Distribution of non-negative values, such as sizes or counts per page.
+ */
+public interface Histogram {
+
+    Histogram NOOP = value -> {
+    };
+
+    void record(long value);
+
+}
@@ -0,0 +1,24 @@
+package io.leontyev.crawler.metrics;
+
+import io.leontyev.crawler.parser.HtmlPageParser;
+
+public class MeteredHtmlPageParser<T, V> implements HtmlPageParser<T, V> {
+
+    private final HtmlPageParser<T, V> delegate;
+    private final Timer timer;
+
+    public MeteredHtmlPageParser(HtmlPageParser<T, V> delegate, Timer timer) {
+        this.delegate = delegate;
+        this.timer = timer;
+    }
+
+    @Override
+    public T parse(V result) {
+        long start = System.nanoTime();
+        try {
+            return delegate.parse(result);
+        } finally {
+            timer.recordSince(start);
+        }
+    }
+}
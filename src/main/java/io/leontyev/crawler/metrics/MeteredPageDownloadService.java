@@ -0,0 +1,97 @@
+package io.leontyev.crawler.metrics;
+
+import io.leontyev.crawler.downloader.PageDownloadService;
+import io.leontyev.crawler.downloader.PageStream;
+import io.leontyev.crawler.downloader.PageValidators;
+import org.jsoup.nodes.Document;
+
+import java.io.FilterReader;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Times every download, failed ones included. A streamed page is timed until its body starts to arrive,
+ * since the rest of it is read by the parser, and its size is counted as it is read and recorded when the
+ * stream is closed. A {@link Document} does not keep the size of the page it was parsed from, so full
+ * downloads only add to the timer.
+ */
+public class MeteredPageDownloadService implements PageDownloadService {
+
+    private final PageDownloadService delegate;
+    private final CrawlerMetrics metrics;
+
+    public MeteredPageDownloadService(PageDownloadService delegate, CrawlerMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public Document download(String url) {
+        long start = System.nanoTime();
+        try {
+            return delegate.download(url);
+        } finally {
+            metrics.getDownload().recordSince(start);
+        }
+    }
+
+    @Override
+    public PageStream open(String url) {
+        return open(url, PageValidators.NONE);
+    }
+
+    @Override
+    public PageStream open(String url, PageValidators validators) {
+        long start = System.nanoTime();
+        PageStream page;
+        try {
+            page = delegate.open(url, validators);
+        } finally {
+            metrics.getDownload().recordSince(start);
+        }
+        if (page.isNotModified()) {
+            return page;
+        }
+        return new PageStream(page.getLocation(), new CountingReader(page.getReader(), metrics.getPageChars()),
+                page.getValidators());
+    }
+
+    private static class CountingReader extends FilterReader {
+
+        private final Histogram pageChars;
+        private long count;
+        private boolean closed;
+
+        CountingReader(Reader in, Histogram pageChars) {
+            super(in);
+            this.pageChars = pageChars;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int c = in.read();
+            if (c >= 0) {
+                count++;
+            }
+            return c;
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            int read = in.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                pageChars.record(count);
+            }
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package io.leontyev.crawler.metrics;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Creates and keeps the meters of the crawler. Asking twice for the same name and tags returns the same
+ * meter. Tags are given as alternating keys and values, e.g. {@code counter("crawler.failures", "cause", "timeout")}.
+ * <p>
+ * {@link SimpleMetricsRegistry} keeps everything in memory for {@link PrometheusTextFormat}; an adapter to
+ * another metrics library only has to implement this interface.
+ */
+public interface MetricsRegistry {
+
+    MetricsRegistry NOOP = new MetricsRegistry() {
+
+        @Override
+        public Counter counter(String name, String... tags) {
+            return Counter.NOOP;
+        }
+
+        @Override
+        public Timer timer(String name, String... tags) {
+            return Timer.NOOP;
+        }
+
+        @Override
+        public Histogram histogram(String name, String... tags) {
+            return Histogram.NOOP;
+        }
+
+        @Override
+        public void gauge(String name, LongSupplier value, String... tags) {
+        }
+    };
+
+    Counter counter(String name, String... tags);
+
+    Timer timer(String name, String... tags);
+
+    Histogram histogram(String name, String... tags);
+
+    /**
+     * Registers a value that is read only when the registry is exported, e.g. the length of a queue.
+     * Registering the same name and tags again replaces the value.
+     */
+    void gauge(String name, LongSupplier value, String... tags);
+
+}
@@ -0,0 +1,129 @@
+package io.leontyev.crawler.metrics;
+
+import io.leontyev.crawler.metrics.SimpleMetricsRegistry.AdderCounter;
+import io.leontyev.crawler.metrics.SimpleMetricsRegistry.Distribution;
+import io.leontyev.crawler.metrics.SimpleMetricsRegistry.Gauge;
+import io.leontyev.crawler.metrics.SimpleMetricsRegistry.Meter;
+import io.leontyev.crawler.metrics.SimpleMetricsRegistry.MeterType;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+
+/**
+ * Writes a {@link SimpleMetricsRegistry} in the Prometheus text exposition format. Dots in names become
+ * underscores, counters get a {@code _total} suffix and timers are exported in seconds. Distributions
+ * become histograms with their power-of-two buckets, up to the highest bucket in use, followed by a
+ * separate {@code _max} gauge family, since a histogram family cannot carry it.
+ */
+public final class PrometheusTextFormat {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final double NANOS_PER_SECOND = 1e9;
+
+    private PrometheusTextFormat() {
+    }
+
+    public static String scrape(SimpleMetricsRegistry registry) {
+        StringBuilder out = new StringBuilder();
+        write(registry, out);
+        return out.toString();
+    }
+
+    public static void write(SimpleMetricsRegistry registry, Appendable out) {
+        try {
+            String previous = null;
+            StringBuilder maxima = new StringBuilder();
+            for (Meter meter : registry.getMeters()) {
+                String name = name(meter);
+                if (!name.equals(previous)) {
+                    writeMaxima(out, previous, maxima);
+                    out.append("# TYPE ").append(name).append(' ').append(type(meter.type)).append('\n');
+                    previous = name;
+                }
+                switch (meter.type) {
+                    case COUNTER:
+                        sample(out, name, meter.labels, Long.toString(((AdderCounter) meter).count()));
+                        break;
+                    case GAUGE:
+                        sample(out, name, meter.labels, Long.toString(((Gauge) meter).value()));
+                        break;
+                    default:
+                        Distribution distribution = (Distribution) meter;
+                        writeDistribution(out, name, distribution);
+                        sample(maxima, name + "_max", distribution.labels,
+                                format(distribution.max(), distribution.type == MeterType.TIMER));
+                }
+            }
+            writeMaxima(out, previous, maxima);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeDistribution(Appendable out, String name, Distribution distribution) throws IOException {
+        boolean timer = distribution.type == MeterType.TIMER;
+        long[] buckets = distribution.buckets();
+        int highest = buckets.length - 1;
+        while (highest > 0 && buckets[highest] == 0) {
+            highest--;
+        }
+        long cumulative = 0;
+        for (int bucket = 0; bucket <= highest; bucket++) {
+            cumulative += buckets[bucket];
+            long inclusiveBound = Distribution.upperBound(bucket) - 1;
+            sample(out, name + "_bucket", withLabel(distribution.labels, "le", format(inclusiveBound, timer)),
+                    Long.toString(cumulative));
+        }
+        sample(out, name + "_bucket", withLabel(distribution.labels, "le", "+Inf"), Long.toString(cumulative));
+        sample(out, name + "_count", distribution.labels, Long.toString(cumulative));
+        sample(out, name + "_sum", distribution.labels, format(distribution.sum(), timer));
+    }
+
+    /**
+     * Writes the maxima collected for the histogram family {@code name}, if any, and clears them.
+     */
+    private static void writeMaxima(Appendable out, String name, StringBuilder maxima) throws IOException {
+        if (maxima.length() == 0) {
+            return;
+        }
+        out.append("# TYPE ").append(name).append("_max gauge\n").append(maxima);
+        maxima.setLength(0);
+    }
+
+    private static void sample(Appendable out, String name, String labels, String value) throws IOException {
+        out.append(name).append(labels).append(' ').append(value).append('\n');
+    }
+
+    private static String withLabel(String labels, String key, String value) {
+        String label = key + "=\"" + value + '"';
+        return labels.isEmpty() ? '{' + label + '}' : labels.substring(0, labels.length() - 1) + ',' + label + '}';
+    }
+
+    private static String format(long value, boolean nanos) {
+        return nanos ? Double.toString(value / NANOS_PER_SECOND) : Long.toString(value);
+    }
+
+    private static String name(Meter meter) {
+        String name = meter.name.replace('.', '_').replace('-', '_');
+        switch (meter.type) {
+            case COUNTER:
+                return name + "_total";
+            case TIMER:
+                return name + "_seconds";
+            default:
+                return name;
+        }
+    }
+
+    private static String type(MeterType type) {
+        switch (type) {
+            case COUNTER:
+                return "counter";
+            case GAUGE:
+                return "gauge";
+            default:
+                return "histogram";
+        }
+    }
+}
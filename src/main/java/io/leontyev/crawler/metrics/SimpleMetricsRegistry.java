@@ -0,0 +1,185 @@
+package io.leontyev.crawler.metrics;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps meters in memory. Counters are {@link LongAdder}s and distributions count into power-of-two
+ * buckets, so recording never locks and never allocates; the buckets are precise to a factor of two,
+ * which is plenty to tell a 20 ms page from a 2 s one.
+ */
+public class SimpleMetricsRegistry implements MetricsRegistry {
+
+    private final ConcurrentMap<String, Meter> meters = new ConcurrentHashMap<>();
+
+    @Override
+    public Counter counter(String name, String... tags) {
+        return (Counter) register(name, tags, MeterType.COUNTER, null);
+    }
+
+    @Override
+    public Timer timer(String name, String... tags) {
+        return (Timer) register(name, tags, MeterType.TIMER, null);
+    }
+
+    @Override
+    public Histogram histogram(String name, String... tags) {
+        return (Histogram) register(name, tags, MeterType.HISTOGRAM, null);
+    }
+
+    @Override
+    public void gauge(String name, LongSupplier value, String... tags) {
+        register(name, tags, MeterType.GAUGE, value);
+    }
+
+    /**
+     * All meters, ordered by name and then by tags.
+     */
+    List<Meter> getMeters() {
+        List<Meter> sorted = new ArrayList<>(meters.values());
+        sorted.sort(Comparator.comparing((Meter meter) -> meter.name).thenComparing(meter -> meter.labels));
+        return sorted;
+    }
+
+    private Meter register(String name, String[] tags, MeterType type, LongSupplier gauge) {
+        if (tags.length % 2 != 0) {
+            throw new IllegalArgumentException("Tags must be key and value pairs: " + String.join(",", tags));
+        }
+        String labels = labels(tags);
+        return meters.compute(name + labels, (key, registered) -> {
+            if (registered != null && registered.type != type) {
+                throw new IllegalArgumentException(name + labels + " is already registered as a " + registered.type);
+            }
+            if (type == MeterType.GAUGE) {
+                return new Gauge(name, labels, gauge);
+            }
+            if (registered != null) {
+                return registered;
+            }
+            return type == MeterType.COUNTER ? new AdderCounter(name, labels) : new Distribution(name, labels, type);
+        });
+    }
+
+    private static String labels(String[] tags) {
+        if (tags.length == 0) {
+            return "";
+        }
+        StringBuilder labels = new StringBuilder("{");
+        for (int i = 0; i < tags.length; i += 2) {
+            if (i > 0) {
+                labels.append(',');
+            }
+            labels.append(tags[i]).append("=\"")
+                    .append(tags[i + 1].replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                    .append('"');
+        }
+        return labels.append('}').toString();
+    }
+
+    enum MeterType {
+        COUNTER, GAUGE, HISTOGRAM, TIMER
+    }
+
+    abstract static class Meter {
+
+        final String name;
+        final String labels;
+        final MeterType type;
+
+        Meter(String name, String labels, MeterType type) {
+            this.name = name;
+            this.labels = labels;
+            this.type = type;
+        }
+    }
+
+    static class AdderCounter extends Meter implements Counter {
+
+        private final LongAdder count = new LongAdder();
+
+        AdderCounter(String name, String labels) {
+            super(name, labels, MeterType.COUNTER);
+        }
+
+        @Override
+        public void increment(long amount) {
+            count.add(amount);
+        }
+
+        long count() {
+            return count.sum();
+        }
+    }
+
+    static class Gauge extends Meter {
+
+        private final LongSupplier value;
+
+        Gauge(String name, String labels, LongSupplier value) {
+            super(name, labels, MeterType.GAUGE);
+            this.value = value;
+        }
+
+        long value() {
+            return value.getAsLong();
+        }
+    }
+
+    /**
+     * Bucket {@code i} counts the values below {@code 2^i} that did not fit a smaller bucket.
+     */
+    static class Distribution extends Meter implements Timer, Histogram {
+
+        static final int BUCKETS = 64;
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+        private final LongAdder sum = new LongAdder();
+        private final AtomicLong max = new AtomicLong();
+
+        Distribution(String name, String labels, MeterType type) {
+            super(name, labels, type);
+        }
+
+        @Override
+        public void record(long value) {
+            if (value < 0) {
+                value = 0;
+            }
+            buckets.incrementAndGet(Math.min(BUCKETS - 1, Long.SIZE - Long.numberOfLeadingZeros(value)));
+            sum.add(value);
+            if (value > max.get()) {
+                max.accumulateAndGet(value, Math::max);
+            }
+        }
+
+        long[] buckets() {
+            long[] counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets.get(i);
+            }
+            return counts;
+        }
+
+        long sum() {
+            return sum.sum();
+        }
+
+        long max() {
+            return max.get();
+        }
+
+        /**
+         * Exclusive upper bound of bucket {@code i}.
+         */
+        static long upperBound(int bucket) {
+            return bucket >= Long.SIZE - 1 ? Long.MAX_VALUE : 1L << bucket;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package io.leontyev.crawler.metrics;
+
+/**
+ * Distribution of durations. Callers take {@link System#nanoTime()} themselves, so a disabled timer costs
+ * one clock read and an empty call.
+ */
+public interface Timer {
+
+    Timer NOOP = nanos -> {
+    };
+
+    void record(long nanos);
+
+    default void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+}
@@ -16,7 +16,7 @@ public class GoogleHtmlPageParser implements HtmlPageParser<HtmlPageLinks, Docum
 
     @Override
     public HtmlPageLinks parse(Document result) {
-        LOG.info("Parse: {}", result.location());
+        LOG.debug("Parse: {}", result.location());
 
         Elements selectedLinks = result.select(HREF_SELECTOR);
         List<String> parsedLinks = selectedLinks.stream()
@@ -18,7 +18,7 @@ public class JavaScriptLibrariesHtmlPageParser implements HtmlPageParser<HtmlPag
 
     @Override
     public HtmlPageScripts parse(Document result) {
-        LOG.info("Parse: {}", result.location());
+        LOG.debug("Parse: {}", result.location());
 
         Elements scriptElements = result.select(SCRIPT_ELEMENT_SELECTOR);
 
@@ -0,0 +1,42 @@
+package io.leontyev.crawler.parser;
+
+import io.leontyev.crawler.parser.page.HtmlPageLinks;
+import org.jsoup.nodes.Document;
+import org.jsoup.select.Elements;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Collects the distinct http(s) links of any page, without their fragment, for following them.
+ */
+public class OutgoingLinksHtmlPageParser implements HtmlPageParser<HtmlPageLinks, Document> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(OutgoingLinksHtmlPageParser.class);
+
+    private static final String LINK_ELEMENT_SELECTOR = "a[href]";
+    private static final String ABSOLUTE_HREF_ATTRIBUTE = "abs:href";
+
+    @Override
+    public HtmlPageLinks parse(Document result) {
+        LOG.debug("Parse links: {}", result.location());
+
+        Elements linkElements = result.select(LINK_ELEMENT_SELECTOR);
+
+        List<String> links = linkElements.stream()
+                .map(element -> element.attr(ABSOLUTE_HREF_ATTRIBUTE))
+                .filter(link -> link.startsWith("http://") || link.startsWith("https://"))
+                .map(OutgoingLinksHtmlPageParser::stripFragment)
+                .distinct()
+                .collect(Collectors.toList());
+
+        return new HtmlPageLinks(links);
+    }
+
+    private static String stripFragment(String link) {
+        int fragment = link.indexOf('#');
+        return fragment < 0 ? link : link.substring(0, fragment);
+    }
+}
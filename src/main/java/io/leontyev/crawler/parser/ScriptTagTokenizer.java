@@ -0,0 +1,271 @@
+package io.leontyev.crawler.parser;
+
+import org.jsoup.parser.Parser;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Minimal forward-only HTML tokenizer that only understands as much markup as is needed to find
+ * {@code <script src>} and {@code <base href>} values: tags, attributes, comments and raw text
+ * elements. Everything else is skipped without being materialized.
+ */
+class ScriptTagTokenizer {
+
+    private static final int EOF = -1;
+
+    private static final String SCRIPT_TAG = "script";
+    private static final String BASE_TAG = "base";
+    private static final String SRC_ATTRIBUTE = "src";
+    private static final String HREF_ATTRIBUTE = "href";
+    private static final String[] RAW_TEXT_TAGS = {"script", "style", "textarea", "title", "xmp", "iframe", "noembed", "noframes"};
+
+    private final Reader reader;
+    private final char[] buffer = new char[8192];
+    private int position;
+    private int limit;
+
+    private final StringBuilder tagName = new StringBuilder();
+    private final StringBuilder attributeName = new StringBuilder();
+    private final StringBuilder attributeValue = new StringBuilder();
+
+    private final List<String> scriptSources = new ArrayList<>();
+    private String baseHref;
+
+    ScriptTagTokenizer(Reader reader) {
+        this.reader = reader;
+    }
+
+    void run() throws IOException {
+        int c;
+        while ((c = read()) != EOF) {
+            if (c == '<') {
+                readMarkup();
+            }
+        }
+    }
+
+    List<String> getScriptSources() {
+        return scriptSources;
+    }
+
+    String getBaseHref() {
+        return baseHref;
+    }
+
+    private void readMarkup() throws IOException {
+        int c = read();
+        if (c == '!') {
+            readDeclaration();
+        } else if (c == '/' || c == '?') {
+            skipPast('>');
+        } else if (isLetter(c)) {
+            readStartTag(c);
+        } else if (c != EOF) {
+            unread();
+        }
+    }
+
+    private void readDeclaration() throws IOException {
+        int c = read();
+        if (c == '-') {
+            c = read();
+            if (c == '-') {
+                skipComment();
+                return;
+            }
+        }
+        if (c != '>' && c != EOF) {
+            skipPast('>');
+        }
+    }
+
+    private void skipComment() throws IOException {
+        int dashes = 0;
+        int c;
+        while ((c = read()) != EOF) {
+            if (c == '-') {
+                dashes++;
+            } else if (c == '>' && dashes >= 2) {
+                return;
+            } else {
+                dashes = 0;
+            }
+        }
+    }
+
+    private void readStartTag(int first) throws IOException {
+        tagName.setLength(0);
+        int c = first;
+        while (c != EOF && !isWhitespace(c) && c != '/' && c != '>') {
+            tagName.append(Character.toLowerCase((char) c));
+            c = read();
+        }
+
+        boolean script = equals(tagName, SCRIPT_TAG);
+        boolean base = equals(tagName, BASE_TAG);
+        String value = null;
+
+        while (c != EOF && c != '>') {
+            if (isWhitespace(c) || c == '/') {
+                c = read();
+                continue;
+            }
+
+            attributeName.setLength(0);
+            while (c != EOF && !isWhitespace(c) && c != '/' && c != '>' && c != '=') {
+                attributeName.append(Character.toLowerCase((char) c));
+                c = read();
+            }
+            while (isWhitespace(c)) {
+                c = read();
+            }
+
+            boolean wanted = value == null
+                    && (script && equals(attributeName, SRC_ATTRIBUTE) || base && equals(attributeName, HREF_ATTRIBUTE));
+            if (c == '=') {
+                c = readAttributeValue(wanted);
+            } else {
+                attributeValue.setLength(0);
+            }
+            if (wanted) {
+                value = decode(attributeValue);
+            }
+        }
+
+        if (c != '>') {
+            return;
+        }
+
+        if (script && value != null) {
+            scriptSources.add(value);
+        } else if (base && value != null && baseHref == null && !value.trim().isEmpty()) {
+            baseHref = value;
+        }
+
+        if (isRawText(tagName)) {
+            skipRawText(tagName.toString());
+        }
+    }
+
+    /**
+     * Reads an attribute value after '=' and returns the first character following it.
+     */
+    private int readAttributeValue(boolean keep) throws IOException {
+        attributeValue.setLength(0);
+        int c = read();
+        while (isWhitespace(c)) {
+            c = read();
+        }
+        if (c == '"' || c == '\'') {
+            int quote = c;
+            while ((c = read()) != EOF && c != quote) {
+                if (keep) {
+                    attributeValue.append((char) c);
+                }
+            }
+            return c == EOF ? EOF : read();
+        }
+        while (c != EOF && !isWhitespace(c) && c != '>') {
+            if (keep) {
+                attributeValue.append((char) c);
+            }
+            c = read();
+        }
+        return c;
+    }
+
+    private void skipRawText(String tag) throws IOException {
+        int c;
+        while ((c = read()) != EOF) {
+            if (c != '<') {
+                continue;
+            }
+            c = read();
+            if (c != '/') {
+                if (c != EOF) {
+                    unread();
+                }
+                continue;
+            }
+            int matched = 0;
+            while (matched < tag.length() && (c = read()) != EOF && Character.toLowerCase((char) c) == tag.charAt(matched)) {
+                matched++;
+            }
+            if (matched < tag.length()) {
+                if (c != EOF) {
+                    unread();
+                }
+                continue;
+            }
+            c = read();
+            if (c == '>' || c == EOF) {
+                return;
+            }
+            if (isWhitespace(c) || c == '/') {
+                skipPast('>');
+                return;
+            }
+            unread();
+        }
+    }
+
+    private void skipPast(char target) throws IOException {
+        int c;
+        while ((c = read()) != EOF && c != target) {
+            // skip
+        }
+    }
+
+    private int read() throws IOException {
+        if (position == limit) {
+            limit = reader.read(buffer, 0, buffer.length);
+            position = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return EOF;
+            }
+        }
+        return buffer[position++];
+    }
+
+    private void unread() {
+        position--;
+    }
+
+    private static String decode(StringBuilder value) {
+        String result = value.toString();
+        return result.indexOf('&') >= 0 ? Parser.unescapeEntities(result, true) : result;
+    }
+
+    private static boolean isRawText(StringBuilder tag) {
+        for (String rawTextTag : RAW_TEXT_TAGS) {
+            if (equals(tag, rawTextTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean equals(StringBuilder builder, String value) {
+        if (builder.length() != value.length()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (builder.charAt(i) != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isLetter(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isWhitespace(int c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f';
+    }
+}
@@ -0,0 +1,49 @@
+package io.leontyev.crawler.parser;
+
+import io.leontyev.crawler.downloader.DownloadPageException;
+import io.leontyev.crawler.downloader.PageStream;
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+import org.jsoup.internal.StringUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Extracts {@code <script src>} links straight from the response stream, without building a jsoup
+ * {@link org.jsoup.nodes.Document}. Relative links are resolved the same way {@code abs:src} does:
+ * against the first {@code <base href>} of the page, or the page location otherwise.
+ */
+public class StreamingJavaScriptLibrariesHtmlPageParser implements HtmlPageParser<HtmlPageScripts, PageStream> {
+
+    private static final Logger LOG = LoggerFactory.getLogger(StreamingJavaScriptLibrariesHtmlPageParser.class);
+
+    @Override
+    public HtmlPageScripts parse(PageStream result) {
+        LOG.debug("Parse: {}", result.getLocation());
+
+        ScriptTagTokenizer tokenizer = new ScriptTagTokenizer(result.getReader());
+        try {
+            tokenizer.run();
+        } catch (IOException e) {
+            throw new DownloadPageException("Unable to read " + result.getLocation(), e);
+        }
+
+        String baseUri = result.getLocation();
+        if (tokenizer.getBaseHref() != null) {
+            String baseHref = StringUtil.resolve(baseUri, tokenizer.getBaseHref());
+            if (!baseHref.isEmpty()) {
+                baseUri = baseHref;
+            }
+        }
+        String resolveAgainst = baseUri;
+
+        List<String> scriptLinks = tokenizer.getScriptSources().stream()
+                .map(src -> StringUtil.resolve(resolveAgainst, src))
+                .collect(Collectors.toList());
+
+        return new HtmlPageScripts(scriptLinks);
+    }
+}
@@ -0,0 +1,70 @@
+package io.leontyev.crawler.politeness;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+/**
+ * Fetches robots.txt over plain HTTP. A missing file (any 4xx) allows everything, as does a file that
+ * cannot be fetched at all: an unreachable host fails on the page request anyway. A server error
+ * disallows everything until the file is fetched again, as RFC 9309 asks.
+ */
+public class HttpRobotsTxtFetcher implements RobotsTxtFetcher {
+
+    private static final Logger LOG = LoggerFactory.getLogger(HttpRobotsTxtFetcher.class);
+
+    private final HttpClient httpClient;
+    private final String userAgent;
+    private final Duration timeout;
+
+    public HttpRobotsTxtFetcher(String userAgent, int timeout) {
+        this(HttpClient.newBuilder()
+                        .followRedirects(HttpClient.Redirect.NORMAL)
+                        .connectTimeout(Duration.ofMillis(timeout))
+                        .build(),
+                userAgent,
+                timeout);
+    }
+
+    public HttpRobotsTxtFetcher(HttpClient httpClient, String userAgent, int timeout) {
+        this.httpClient = httpClient;
+        this.userAgent = userAgent;
+        this.timeout = Duration.ofMillis(timeout);
+    }
+
+    @Override
+    public RobotsTxt fetch(String robotsUrl) {
+        LOG.info("Download robots.txt: {}", robotsUrl);
+        try {
+            HttpRequest request = HttpRequest.newBuilder(URI.create(robotsUrl))
+                    .timeout(timeout)
+                    .header("User-Agent", userAgent)
+                    .GET()
+                    .build();
+            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() == 200) {
+                return RobotsTxt.parse(response.body(), userAgent);
+            }
+            if (response.statusCode() >= 500) {
+                LOG.warn("Server error {} on robots.txt, disallowing the site: {}", response.statusCode(), robotsUrl);
+                return RobotsTxt.DISALLOW_ALL;
+            }
+            if (response.statusCode() < 400) {
+                LOG.warn("Unexpected robots.txt status {}: {}", response.statusCode(), robotsUrl);
+            }
+            return RobotsTxt.ALLOW_ALL;
+        } catch (IOException | IllegalArgumentException e) {
+            LOG.warn("Unable to fetch {}: {}", robotsUrl, e.getMessage());
+            return RobotsTxt.ALLOW_ALL;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return RobotsTxt.ALLOW_ALL;
+        }
+    }
+}
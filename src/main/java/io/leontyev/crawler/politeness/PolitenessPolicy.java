@@ -0,0 +1,63 @@
+package io.leontyev.crawler.politeness;
+
+/**
+ * How hard a single host may be hit. A host's {@code Crawl-delay} from robots.txt lowers the rate further
+ * and removes the burst.
+ */
+public class PolitenessPolicy {
+
+    private final String userAgent;
+    private final double requestsPerSecond;
+    private final int burst;
+    private final int maxConcurrentPerHost;
+    private final long robotsTtlMillis;
+
+    /**
+     * @param userAgent         product token matched against the {@code User-agent} groups of robots.txt
+     * @param requestsPerSecond sustained request rate per host
+     * @param burst             requests a quiet host may receive at once
+     * @param robotsTtlMillis   how long a fetched robots.txt is trusted
+     */
+    public PolitenessPolicy(String userAgent, double requestsPerSecond, int burst, int maxConcurrentPerHost,
+                            long robotsTtlMillis) {
+        if (requestsPerSecond <= 0 || burst < 1 || maxConcurrentPerHost < 1) {
+            throw new IllegalArgumentException("Politeness limits must be positive");
+        }
+        this.userAgent = userAgent;
+        this.requestsPerSecond = requestsPerSecond;
+        this.burst = burst;
+        this.maxConcurrentPerHost = maxConcurrentPerHost;
+        this.robotsTtlMillis = robotsTtlMillis;
+    }
+
+    public String getUserAgent() {
+        return userAgent;
+    }
+
+    public double getRequestsPerSecond() {
+        return requestsPerSecond;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    public int getMaxConcurrentPerHost() {
+        return maxConcurrentPerHost;
+    }
+
+    public long getRobotsTtlMillis() {
+        return robotsTtlMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "PolitenessPolicy{" +
+                "userAgent='" + userAgent + '\'' +
+                ", requestsPerSecond=" + requestsPerSecond +
+                ", burst=" + burst +
+                ", maxConcurrentPerHost=" + maxConcurrentPerHost +
+                ", robotsTtlMillis=" + robotsTtlMillis +
+                '}';
+    }
+}
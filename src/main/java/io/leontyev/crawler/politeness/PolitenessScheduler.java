@@ -0,0 +1,278 @@
+package io.leontyev.crawler.politeness;
+
+import io.leontyev.crawler.downloader.DownloadPageException;
+import io.leontyev.crawler.engine.LinkedPageExtractor;
+import io.leontyev.crawler.engine.PageScriptsExtractor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.time.Clock;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Sits between the engine and the downloads and keeps every host within its {@link PolitenessPolicy} and
+ * robots.txt. Requests wait in a queue per host and are started only when the host has a token in its
+ * bucket and a free concurrency slot, so no I/O thread is ever parked on a throttled host: while one host
+ * waits for its next token, requests for other hosts keep the pipeline busy. A host that ran out of
+ * tokens gets a single timer wake-up for the moment its next token is due.
+ * <p>
+ * A host follows the {@code Crawl-delay} of the robots.txt its latest request was checked against, and is
+ * forgotten once it is idle with a full bucket, which is exactly the state a new host starts in.
+ * <p>
+ * Requests for paths disallowed by robots.txt fail with a {@link DownloadPageException}.
+ */
+public class PolitenessScheduler implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PolitenessScheduler.class);
+
+    private static final long EVICTION_INTERVAL_MILLIS = 60_000;
+
+    private final PolitenessPolicy policy;
+    private final RobotsTxtCache robotsTxtCache;
+    private final ScheduledExecutorService timer;
+    private final Clock clock;
+    private final ConcurrentMap<String, Host> hosts = new ConcurrentHashMap<>();
+    private final AtomicLong nextEviction;
+
+    /**
+     * Fetches robots.txt over HTTP on a pool of daemon threads of its own.
+     */
+    public PolitenessScheduler(PolitenessPolicy policy) {
+        this(policy,
+                new RobotsTxtCache(new HttpRobotsTxtFetcher(policy.getUserAgent(), 2000),
+                        Executors.newCachedThreadPool(daemon("robots-fetcher")),
+                        policy.getRobotsTtlMillis(), Clock.systemUTC()),
+                Executors.newSingleThreadScheduledExecutor(daemon("politeness-timer")),
+                Clock.systemUTC());
+    }
+
+    public PolitenessScheduler(PolitenessPolicy policy, RobotsTxtCache robotsTxtCache, ScheduledExecutorService timer,
+                               Clock clock) {
+        this.policy = policy;
+        this.robotsTxtCache = robotsTxtCache;
+        this.timer = timer;
+        this.clock = clock;
+        this.nextEviction = new AtomicLong(clock.millis() + EVICTION_INTERVAL_MILLIS);
+    }
+
+    /**
+     * Starts {@code request} once robots.txt allows the URL and its host has a token and a free slot. The host
+     * slot is held until the request's future completes.
+     */
+    public <T> CompletableFuture<T> schedule(String url, Supplier<CompletableFuture<T>> request) {
+        URI uri;
+        try {
+            uri = URI.create(url);
+        } catch (IllegalArgumentException e) {
+            return CompletableFuture.failedFuture(new DownloadPageException("Invalid URL: " + url, e));
+        }
+        if (uri.getHost() == null) {
+            return CompletableFuture.failedFuture(new DownloadPageException("Invalid URL: " + url));
+        }
+        String origin = origin(uri);
+        String path = uri.getRawPath() == null || uri.getRawPath().isEmpty() ? "/" : uri.getRawPath();
+        String pathAndQuery = uri.getRawQuery() == null ? path : path + '?' + uri.getRawQuery();
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        robotsTxtCache.get(origin).whenComplete((robotsTxt, throwable) -> {
+            RobotsTxt rules = throwable == null ? robotsTxt : RobotsTxt.ALLOW_ALL;
+            if (!rules.isAllowed(pathAndQuery)) {
+                LOG.info("Disallowed by robots.txt: {}", url);
+                result.completeExceptionally(new DownloadPageException("Disallowed by robots.txt: " + url));
+                return;
+            }
+            long now = clock.millis();
+            evictIdleHosts(now);
+            while (true) {
+                Host host = hosts.computeIfAbsent(origin, key -> new Host(key, rules, now));
+                synchronized (host) {
+                    if (host.evicted) {
+                        continue;
+                    }
+                    host.follow(rules, now);
+                    host.waiting.add(() -> start(host, request, result));
+                }
+                drain(host);
+                return;
+            }
+        });
+        return result;
+    }
+
+    public PageScriptsExtractor throttleScripts(PageScriptsExtractor extractor) {
+        return (url, ioExecutor, calcExecutor) -> schedule(url, () -> extractor.extract(url, ioExecutor, calcExecutor));
+    }
+
+    public LinkedPageExtractor throttleLinkedPages(LinkedPageExtractor extractor) {
+        return (url, ioExecutor, calcExecutor) -> schedule(url, () -> extractor.extract(url, ioExecutor, calcExecutor));
+    }
+
+    /**
+     * Requests waiting for a token or a slot, over all hosts.
+     */
+    public int getWaiting() {
+        int waiting = 0;
+        for (Host host : hosts.values()) {
+            synchronized (host) {
+                waiting += host.waiting.size();
+            }
+        }
+        return waiting;
+    }
+
+    /**
+     * Hosts with requests in flight, waiting, or a bucket still refilling.
+     */
+    public int getHosts() {
+        return hosts.size();
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+
+    /**
+     * Re-examines every host, as the timer does for a single one.
+     */
+    void pump() {
+        hosts.values().forEach(this::drain);
+    }
+
+    private <T> void start(Host host, Supplier<CompletableFuture<T>> request, CompletableFuture<T> result) {
+        CompletableFuture<T> response;
+        try {
+            response = request.get();
+        } catch (RuntimeException e) {
+            response = CompletableFuture.failedFuture(e);
+        }
+        response.whenComplete((value, throwable) -> {
+            synchronized (host) {
+                host.active--;
+            }
+            drain(host);
+            if (throwable != null) {
+                result.completeExceptionally(throwable);
+            } else {
+                result.complete(value);
+            }
+        });
+    }
+
+    private void drain(Host host) {
+        List<Runnable> ready = new ArrayList<>();
+        synchronized (host) {
+            long now = clock.millis();
+            while (!host.waiting.isEmpty() && host.active < policy.getMaxConcurrentPerHost()) {
+                long wait = host.bucket.tryAcquire(now);
+                if (wait > 0) {
+                    if (!host.wakeUpScheduled) {
+                        host.wakeUpScheduled = true;
+                        timer.schedule(() -> wakeUp(host), wait, TimeUnit.MILLISECONDS);
+                    }
+                    break;
+                }
+                host.active++;
+                ready.add(host.waiting.poll());
+            }
+        }
+        ready.forEach(Runnable::run);
+    }
+
+    private void evictIdleHosts(long now) {
+        long due = nextEviction.get();
+        if (now < due || !nextEviction.compareAndSet(due, now + EVICTION_INTERVAL_MILLIS)) {
+            return;
+        }
+        for (Host host : hosts.values()) {
+            synchronized (host) {
+                if (host.active == 0 && host.waiting.isEmpty() && !host.wakeUpScheduled && host.bucket.isFull(now)) {
+                    host.evicted = true;
+                    hosts.remove(host.origin, host);
+                }
+            }
+        }
+    }
+
+    private void wakeUp(Host host) {
+        synchronized (host) {
+            host.wakeUpScheduled = false;
+        }
+        drain(host);
+    }
+
+    private static ThreadFactory daemon(String name) {
+        AtomicInteger count = new AtomicInteger(1);
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static String origin(URI uri) {
+        String scheme = uri.getScheme() == null ? "http" : uri.getScheme().toLowerCase(Locale.ROOT);
+        String host = uri.getHost().toLowerCase(Locale.ROOT);
+        return uri.getPort() < 0 ? scheme + "://" + host : scheme + "://" + host + ':' + uri.getPort();
+    }
+
+    private class Host {
+
+        private final String origin;
+        private final Queue<Runnable> waiting = new ArrayDeque<>();
+        private TokenBucket bucket;
+        private long crawlDelay;
+        private int active;
+        private boolean wakeUpScheduled;
+        private boolean evicted;
+
+        /**
+         * A crawl delay turns the bucket into one request per delay, without burst.
+         */
+        private Host(String origin, RobotsTxt robotsTxt, long nowMillis) {
+            this.origin = origin;
+            this.crawlDelay = robotsTxt.getCrawlDelayMillis();
+            this.bucket = crawlDelay > 0
+                    ? new TokenBucket(delayedRate(), 1, nowMillis)
+                    : new TokenBucket(policy.getRequestsPerSecond(), policy.getBurst(), nowMillis);
+        }
+
+        /**
+         * Re-rates the bucket when a refreshed robots.txt changed the crawl delay.
+         */
+        private void follow(RobotsTxt robotsTxt, long nowMillis) {
+            if (robotsTxt.getCrawlDelayMillis() == crawlDelay) {
+                return;
+            }
+            LOG.debug("Crawl delay of {} is now {} ms", origin, robotsTxt.getCrawlDelayMillis());
+            crawlDelay = robotsTxt.getCrawlDelayMillis();
+            bucket = crawlDelay > 0
+                    ? bucket.withRate(delayedRate(), 1, nowMillis)
+                    : bucket.withRate(policy.getRequestsPerSecond(), policy.getBurst(), nowMillis);
+        }
+
+        private double delayedRate() {
+            return Math.min(policy.getRequestsPerSecond(), 1000.0 / crawlDelay);
+        }
+
+        @Override
+        public String toString() {
+            return origin;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package io.leontyev.crawler.politeness;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The rules of one robots.txt group: the group naming our user agent, or {@code *} when none does.
+ * The longest matching rule wins and {@code Allow} wins a tie; {@code *} and a trailing {@code $} are
+ * honoured in paths.
+ */
+public class RobotsTxt {
+
+    public static final RobotsTxt ALLOW_ALL = new RobotsTxt(Collections.emptyList(), 0);
+    public static final RobotsTxt DISALLOW_ALL = new RobotsTxt(Collections.singletonList(new Rule("/", false)), 0);
+
+    private final List<Rule> rules;
+    private final long crawlDelayMillis;
+
+    private RobotsTxt(List<Rule> rules, long crawlDelayMillis) {
+        this.rules = rules;
+        this.crawlDelayMillis = crawlDelayMillis;
+    }
+
+    public static RobotsTxt parse(String content, String userAgent) {
+        String agent = userAgent.toLowerCase(Locale.ROOT);
+        Group own = null;
+        Group any = null;
+
+        Group current = null;
+        boolean readingAgents = false;
+        for (String rawLine : content.split("\r?\n|\r")) {
+            int comment = rawLine.indexOf('#');
+            String line = (comment >= 0 ? rawLine.substring(0, comment) : rawLine).trim();
+            int colon = line.indexOf(':');
+            if (colon < 0) {
+                continue;
+            }
+            String field = line.substring(0, colon).trim().toLowerCase(Locale.ROOT);
+            String value = line.substring(colon + 1).trim();
+
+            if (field.equals("user-agent")) {
+                if (!readingAgents) {
+                    current = new Group();
+                    readingAgents = true;
+                }
+                String groupAgent = value.toLowerCase(Locale.ROOT);
+                if (groupAgent.equals("*") && any == null) {
+                    any = current;
+                } else if (!groupAgent.isEmpty() && agent.contains(groupAgent) && own == null) {
+                    own = current;
+                }
+                continue;
+            }
+            readingAgents = false;
+            if (current == null) {
+                continue;
+            }
+            if (field.equals("allow") || field.equals("disallow")) {
+                if (!value.isEmpty()) {
+                    current.rules.add(new Rule(value, field.equals("allow")));
+                }
+            } else if (field.equals("crawl-delay")) {
+                try {
+                    current.crawlDelayMillis = (long) (Double.parseDouble(value) * 1000);
+                } catch (NumberFormatException e) {
+                    // an unreadable delay is no delay
+                }
+            }
+        }
+
+        Group group = own != null ? own : any;
+        return group == null ? ALLOW_ALL : new RobotsTxt(group.rules, group.crawlDelayMillis);
+    }
+
+    /**
+     * @param path the path and query of a URL, starting with {@code /}
+     */
+    public boolean isAllowed(String path) {
+        Rule winner = null;
+        for (Rule rule : rules) {
+            if (rule.matches(path) && (winner == null || rule.length() > winner.length()
+                    || rule.length() == winner.length() && rule.allow)) {
+                winner = rule;
+            }
+        }
+        return winner == null || winner.allow;
+    }
+
+    /**
+     * {@code 0} when the host asks for no delay.
+     */
+    public long getCrawlDelayMillis() {
+        return crawlDelayMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "RobotsTxt{" +
+                "rules=" + rules.size() +
+                ", crawlDelayMillis=" + crawlDelayMillis +
+                '}';
+    }
+
+    private static class Group {
+
+        private final List<Rule> rules = new ArrayList<>();
+        private long crawlDelayMillis;
+    }
+
+    private static class Rule {
+
+        private final String pattern;
+        private final boolean allow;
+
+        private Rule(String pattern, boolean allow) {
+            this.pattern = pattern;
+            this.allow = allow;
+        }
+
+        int length() {
+            return pattern.length();
+        }
+
+        boolean matches(String path) {
+            boolean anchored = pattern.endsWith("$");
+            String body = anchored ? pattern.substring(0, pattern.length() - 1) : pattern;
+            return matches(body, 0, path, 0, anchored);
+        }
+
+        private static boolean matches(String pattern, int p, String path, int i, boolean anchored) {
+            while (p < pattern.length()) {
+                char c = pattern.charAt(p);
+                if (c == '*') {
+                    for (int next = i; next <= path.length(); next++) {
+                        if (matches(pattern, p + 1, path, next, anchored)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                }
+                if (i >= path.length() || path.charAt(i) != c) {
+                    return false;
+                }
+                p++;
+                i++;
+            }
+            return !anchored || i == path.length();
+        }
+    }
+}
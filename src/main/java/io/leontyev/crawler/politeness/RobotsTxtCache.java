@@ -0,0 +1,56 @@
+package io.leontyev.crawler.politeness;
+
+import java.time.Clock;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+
+/**
+ * robots.txt per origin, fetched once on the given executor and shared by every request waiting for it,
+ * then trusted for a fixed time.
+ */
+public class RobotsTxtCache {
+
+    private final RobotsTxtFetcher fetcher;
+    private final Executor executor;
+    private final long ttlMillis;
+    private final Clock clock;
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public RobotsTxtCache(RobotsTxtFetcher fetcher, Executor executor, long ttlMillis, Clock clock) {
+        this.fetcher = fetcher;
+        this.executor = executor;
+        this.ttlMillis = ttlMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * @param origin {@code scheme://host[:port]}
+     */
+    public CompletableFuture<RobotsTxt> get(String origin) {
+        long now = clock.millis();
+        Entry entry = entries.compute(origin, (key, current) ->
+                current != null && current.expiresAt > now ? current : new Entry(fetch(key), now + ttlMillis));
+        return entry.robotsTxt;
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private CompletableFuture<RobotsTxt> fetch(String origin) {
+        return CompletableFuture.supplyAsync(() -> fetcher.fetch(origin + "/robots.txt"), executor);
+    }
+
+    private static class Entry {
+
+        private final CompletableFuture<RobotsTxt> robotsTxt;
+        private final long expiresAt;
+
+        private Entry(CompletableFuture<RobotsTxt> robotsTxt, long expiresAt) {
+            this.robotsTxt = robotsTxt;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,9 @@
+package io.leontyev.crawler.politeness;
+
+public interface RobotsTxtFetcher {
+
+    /**
+     * @param robotsUrl {@code scheme://host[:port]/robots.txt}
+     */
+    RobotsTxt fetch(String robotsUrl);
+}
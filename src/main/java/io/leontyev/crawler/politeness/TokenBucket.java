@@ -0,0 +1,58 @@
+package io.leontyev.crawler.politeness;
+
+/**
+ * Classic token bucket over wall-clock milliseconds. Not thread-safe.
+ */
+class TokenBucket {
+
+    private final double tokensPerMilli;
+    private final double capacity;
+    private double tokens;
+    private long refilledAt;
+
+    TokenBucket(double requestsPerSecond, int burst, long nowMillis) {
+        this.tokensPerMilli = requestsPerSecond / 1000;
+        this.capacity = burst;
+        this.tokens = burst;
+        this.refilledAt = nowMillis;
+    }
+
+    /**
+     * Takes a token if one is available.
+     *
+     * @return {@code 0} when a token was taken, otherwise the milliseconds until the next one
+     */
+    long tryAcquire(long nowMillis) {
+        refill(nowMillis);
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return Math.max(1, (long) Math.ceil((1 - tokens) / tokensPerMilli));
+    }
+
+    /**
+     * A bucket with another rate that keeps the tokens left in this one, up to its own burst.
+     */
+    TokenBucket withRate(double requestsPerSecond, int burst, long nowMillis) {
+        refill(nowMillis);
+        TokenBucket bucket = new TokenBucket(requestsPerSecond, burst, nowMillis);
+        bucket.tokens = Math.min(tokens, burst);
+        return bucket;
+    }
+
+    /**
+     * A full bucket is no different from a new one.
+     */
+    boolean isFull(long nowMillis) {
+        refill(nowMillis);
+        return tokens >= capacity;
+    }
+
+    private void refill(long nowMillis) {
+        if (nowMillis > refilledAt) {
+            tokens = Math.min(capacity, tokens + (nowMillis - refilledAt) * tokensPerMilli);
+            refilledAt = nowMillis;
+        }
+    }
+}
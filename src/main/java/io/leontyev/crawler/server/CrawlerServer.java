@@ -0,0 +1,386 @@
+package io.leontyev.crawler.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.leontyev.crawler.engine.CrawlUpdate;
+import io.leontyev.crawler.engine.CrawlerEngine;
+import io.leontyev.crawler.engine.KeyValue;
+import io.leontyev.crawler.library.PopularityTracker;
+import io.leontyev.crawler.library.PopularityWindow;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Serves queries over one long-lived {@link CrawlerEngine}, so its thread pools, caches and compiled
+ * parsers stay warm from one query to the next.
+ * <p>
+ * {@code GET /crawl?q=<query>[&n=<results>]} answers with the top libraries as JSON:
+ * <pre>
+ * {"query":"angular","pages":10,"millis":812,"results":[{"library":"jquery","occurrences":7}]}
+ * </pre>
+ * At most {@link ServerLimits#getMaxConcurrentQueries()} queries are crawled at a time and
+ * {@link ServerLimits#getQueueCapacity()} more wait for a slot; beyond that, and once the server is
+ * closing, queries are turned away with {@code 503} and a {@code Retry-After} header rather than queued
+ * without bound. Each query asks the engine for at most {@link ServerLimits#getMaxPagesPerQuery()} pages
+ * at a time, so one query cannot take over the I/O pool.
+ * <p>
+ * With a {@link PopularityTracker}, {@code GET /popular?window=<minute|hour|day>[&n=<results>][&tumbling=true]}
+ * answers with the top libraries over all queries of the last minute, hour or day, or of the current one:
+ * <pre>
+ * {"window":"hour","tumbling":false,"results":[{"library":"jquery","occurrences":1290}]}
+ * </pre>
+ */
+public class CrawlerServer implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(CrawlerServer.class);
+
+    private static final int DEFAULT_RESULTS = 5;
+    private static final int MAX_RESULTS = 100;
+
+    private final CrawlerEngine engine;
+    private final String searchUrl;
+    private final ServerLimits limits;
+    private final PopularityTracker tracker;
+    private final HttpServer server;
+    private final ExecutorService httpExecutor;
+    private final ThreadPoolExecutor queryExecutor;
+
+    private final AtomicLong completedQueries = new AtomicLong();
+    private final AtomicLong rejectedQueries = new AtomicLong();
+    private final AtomicInteger activeQueries = new AtomicInteger();
+    private volatile boolean closing;
+
+    /**
+     * @param searchUrl prefix the URL-encoded query is appended to
+     * @param port      port to listen on, 0 for any free port
+     */
+    public CrawlerServer(CrawlerEngine engine, String searchUrl, int port, ServerLimits limits) {
+        this(engine, searchUrl, port, limits, null);
+    }
+
+    /**
+     * @param tracker popularity fed by the engine's aggregators, or {@code null} to serve no {@code /popular}
+     */
+    public CrawlerServer(CrawlerEngine engine, String searchUrl, int port, ServerLimits limits,
+                         PopularityTracker tracker) {
+        this.engine = engine;
+        this.searchUrl = searchUrl;
+        this.limits = limits;
+        this.tracker = tracker;
+
+        AtomicInteger queryThreads = new AtomicInteger(1);
+        this.queryExecutor = new ThreadPoolExecutor(limits.getMaxConcurrentQueries(), limits.getMaxConcurrentQueries(),
+                0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(limits.getQueueCapacity()),
+                runnable -> new Thread(runnable, "query-executor-" + queryThreads.getAndIncrement()));
+
+        try {
+            server = HttpServer.create(new InetSocketAddress(port), 0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        httpExecutor = Executors.newSingleThreadExecutor(runnable -> new Thread(runnable, "http-dispatcher"));
+        server.setExecutor(httpExecutor);
+        server.createContext("/crawl", this::handle);
+        if (tracker != null) {
+            server.createContext("/popular", this::popular);
+        }
+        server.start();
+        LOG.info("Serving queries on port {}: {}", getPort(), limits);
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public long getCompletedQueries() {
+        return completedQueries.get();
+    }
+
+    public long getRejectedQueries() {
+        return rejectedQueries.get();
+    }
+
+    /**
+     * Queries waiting for a free slot.
+     */
+    public int getQueuedQueries() {
+        return queryExecutor.getQueue().size();
+    }
+
+    public int getActiveQueries() {
+        return activeQueries.get();
+    }
+
+    /**
+     * Stops admitting queries and waits up to the drain timeout for the admitted ones to be answered, then
+     * stops listening. The engine is left open, it belongs to the caller.
+     */
+    @Override
+    public void close() {
+        closing = true;
+        queryExecutor.shutdown();
+        try {
+            if (!queryExecutor.awaitTermination(limits.getDrainTimeoutMillis(), TimeUnit.MILLISECONDS)) {
+                LOG.warn("Interrupting {} queries still running after {} ms", activeQueries.get(),
+                        limits.getDrainTimeoutMillis());
+                queryExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queryExecutor.shutdownNow();
+        }
+        server.stop(0);
+        httpExecutor.shutdown();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            respond(exchange, 405, error("Only GET is supported"));
+            return;
+        }
+        Map<String, String> parameters = parameters(exchange.getRequestURI().getRawQuery());
+        String query = parameters.get("q");
+        if (query == null || query.isEmpty()) {
+            respond(exchange, 400, error("Missing query parameter q"));
+            return;
+        }
+        int numResults;
+        try {
+            numResults = Math.min(MAX_RESULTS, Integer.parseInt(parameters.getOrDefault("n", "" + DEFAULT_RESULTS)));
+        } catch (NumberFormatException e) {
+            respond(exchange, 400, error("Parameter n must be a number"));
+            return;
+        }
+        if (numResults < 1) {
+            respond(exchange, 400, error("Parameter n must be positive"));
+            return;
+        }
+
+        try {
+            if (closing) {
+                throw new RejectedExecutionException("Closing");
+            }
+            queryExecutor.execute(() -> crawl(exchange, query, numResults));
+        } catch (RejectedExecutionException e) {
+            rejectedQueries.incrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            respond(exchange, 503, error(closing ? "Server is shutting down" : "Too many queries"));
+        }
+    }
+
+    /**
+     * Answered on the dispatcher thread: a query of the tracker takes well under a millisecond.
+     */
+    private void popular(HttpExchange exchange) throws IOException {
+        if (!"GET".equals(exchange.getRequestMethod())) {
+            respond(exchange, 405, error("Only GET is supported"));
+            return;
+        }
+        Map<String, String> parameters = parameters(exchange.getRequestURI().getRawQuery());
+        PopularityWindow window;
+        int numResults;
+        try {
+            window = PopularityWindow.valueOf(parameters.getOrDefault("window", "hour").toUpperCase(Locale.ROOT));
+            numResults = Math.min(MAX_RESULTS, Integer.parseInt(parameters.getOrDefault("n", "" + DEFAULT_RESULTS)));
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, error("Parameter window must be minute, hour or day and n a number"));
+            return;
+        }
+        if (numResults < 1) {
+            respond(exchange, 400, error("Parameter n must be positive"));
+            return;
+        }
+        boolean tumbling = Boolean.parseBoolean(parameters.get("tumbling"));
+        List<KeyValue> results = (tumbling ? tracker.topTumbling(window, numResults)
+                : tracker.topSliding(window, numResults)).collect(Collectors.toList());
+
+        StringBuilder json = new StringBuilder("{\"window\":");
+        quote(json, window.name().toLowerCase(Locale.ROOT));
+        json.append(",\"tumbling\":").append(tumbling).append(",\"results\":");
+        results(json, results);
+        respond(exchange, 200, json.append('}').toString());
+    }
+
+    private void crawl(HttpExchange exchange, String query, int numResults) {
+        activeQueries.incrementAndGet();
+        long start = System.nanoTime();
+        try {
+            QuerySubscriber subscriber = new QuerySubscriber(limits.getMaxPagesPerQuery());
+            engine.publish(searchUrl + URLEncoder.encode(query, StandardCharsets.UTF_8), numResults)
+                    .subscribe(subscriber);
+            CrawlUpdate last = subscriber.done.get();
+
+            List<KeyValue> results = last == null ? Collections.emptyList() : last.getTopResults();
+            int pages = last == null ? 0 : last.getPages();
+            completedQueries.incrementAndGet();
+            respond(exchange, 200, json(query, pages, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), results));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            respondQuietly(exchange, 503, error("Server is shutting down"));
+        } catch (ExecutionException e) {
+            LOG.error("Query {} failed", query, e.getCause());
+            respondQuietly(exchange, 502, error("Search page failed: " + e.getCause().getMessage()));
+        } catch (IOException | RuntimeException e) {
+            LOG.error("Query {} failed", query, e);
+            respondQuietly(exchange, 500, error(String.valueOf(e.getMessage())));
+        } finally {
+            activeQueries.decrementAndGet();
+        }
+    }
+
+    private static void respondQuietly(HttpExchange exchange, int status, String body) {
+        try {
+            respond(exchange, status, body);
+        } catch (IOException | RuntimeException e) {
+            LOG.debug("Unable to respond", e);
+        }
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(status, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static Map<String, String> parameters(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null) {
+            return parameters;
+        }
+        for (String parameter : rawQuery.split("&")) {
+            int equals = parameter.indexOf('=');
+            if (equals > 0) {
+                parameters.put(URLDecoder.decode(parameter.substring(0, equals), StandardCharsets.UTF_8),
+                        URLDecoder.decode(parameter.substring(equals + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+
+    private static String json(String query, int pages, long millis, List<KeyValue> results) {
+        StringBuilder json = new StringBuilder("{\"query\":");
+        quote(json, query);
+        json.append(",\"pages\":").append(pages).append(",\"millis\":").append(millis).append(",\"results\":");
+        results(json, results);
+        return json.append('}').toString();
+    }
+
+    private static void results(StringBuilder json, List<KeyValue> results) {
+        json.append('[');
+        for (int i = 0; i < results.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"library\":");
+            quote(json, results.get(i).getLibrary());
+            json.append(",\"occurrences\":").append(results.get(i).getOccurrences()).append('}');
+        }
+        json.append(']');
+    }
+
+    private static String error(String message) {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        quote(json, message);
+        return json.append('}').toString();
+    }
+
+    private static void quote(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"':
+                    json.append("\\\"");
+                    break;
+                case '\\':
+                    json.append("\\\\");
+                    break;
+                case '\n':
+                    json.append("\\n");
+                    break;
+                case '\r':
+                    json.append("\\r");
+                    break;
+                case '\t':
+                    json.append("\\t");
+                    break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+
+    /**
+     * Keeps {@code maxPages} pages of demand outstanding, asking for one more as each arrives.
+     */
+    private static class QuerySubscriber implements Flow.Subscriber<CrawlUpdate> {
+
+        private final int maxPages;
+        private final CompletableFuture<CrawlUpdate> done = new CompletableFuture<>();
+        private Flow.Subscription subscription;
+        private CrawlUpdate last;
+
+        QuerySubscriber(int maxPages) {
+            this.maxPages = maxPages;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            subscription.request(maxPages);
+        }
+
+        @Override
+        public void onNext(CrawlUpdate update) {
+            last = update;
+            subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            done.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+            done.complete(last);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package io.leontyev.crawler.server;
+
+/**
+ * Admission bounds of a {@link CrawlerServer}.
+ */
+public class ServerLimits {
+
+    private final int maxConcurrentQueries;
+    private final int queueCapacity;
+    private final int maxPagesPerQuery;
+    private final long drainTimeoutMillis;
+
+    /**
+     * @param maxConcurrentQueries queries crawled at the same time
+     * @param queueCapacity        queries waiting for a free slot; any more are turned away with a 503
+     * @param maxPagesPerQuery     result pages of one query extracted at the same time
+     * @param drainTimeoutMillis   how long {@link CrawlerServer#close()} waits for admitted queries
+     */
+    public ServerLimits(int maxConcurrentQueries, int queueCapacity, int maxPagesPerQuery, long drainTimeoutMillis) {
+        if (maxConcurrentQueries < 1 || queueCapacity < 1 || maxPagesPerQuery < 1 || drainTimeoutMillis < 0) {
+            throw new IllegalArgumentException("Server limits must be positive");
+        }
+        this.maxConcurrentQueries = maxConcurrentQueries;
+        this.queueCapacity = queueCapacity;
+        this.maxPagesPerQuery = maxPagesPerQuery;
+        this.drainTimeoutMillis = drainTimeoutMillis;
+    }
+
+    public int getMaxConcurrentQueries() {
+        return maxConcurrentQueries;
+    }
+
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    public int getMaxPagesPerQuery() {
+        return maxPagesPerQuery;
+    }
+
+    public long getDrainTimeoutMillis() {
+        return drainTimeoutMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "ServerLimits{" +
+                "maxConcurrentQueries=" + maxConcurrentQueries +
+                ", queueCapacity=" + queueCapacity +
+                ", maxPagesPerQuery=" + maxPagesPerQuery +
+                ", drainTimeoutMillis=" + drainTimeoutMillis +
+                '}';
+    }
+}
@@ -0,0 +1,403 @@
+package io.leontyev.crawler.store;
+
+import io.leontyev.crawler.downloader.PageValidators;
+import io.leontyev.crawler.frontier.SeenUrls;
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent per-URL store of extracted scripts and fetch metadata.
+ * <p>
+ * Records are appended to fixed-size segment files that are read (and written) through memory-mapped
+ * buffers. The only heap structure is a primitive index from a 64-bit URL hash to the segment and
+ * offset of the latest record; the URL stored in the record resolves hash collisions. A record is laid
+ * out as {@code length, crc32, urlHash, fetchedAt, url, eTag, lastModified, scriptCount, scripts...},
+ * and a zero length marks the end of a segment, so a torn write after a crash is detected by its
+ * checksum and dropped on the next open. Superseded and expired records are only removed by
+ * {@link #compact(long)}.
+ */
+public class PageScriptsStore implements AutoCloseable {
+
+    private static final Logger LOG = LoggerFactory.getLogger(PageScriptsStore.class);
+
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+    private static final int SEGMENT_MAGIC = 0x4A53_5331;
+    private static final int SEGMENT_HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = Integer.BYTES + Integer.BYTES + Long.BYTES;
+    private static final int NULL_STRING = -1;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private final List<Segment> segments = new ArrayList<>();
+    private LongLongIndex index;
+    private int records;
+
+    public PageScriptsStore(Path directory) {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    public PageScriptsStore(Path directory, int segmentSize) {
+        if (segmentSize <= SEGMENT_HEADER_SIZE + RECORD_HEADER_SIZE) {
+            throw new IllegalArgumentException("Segment size is too small: " + segmentSize);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        load();
+    }
+
+    public StoredPage get(String url) {
+        long hash = hash(url);
+        lock.readLock().lock();
+        try {
+            long location = index.get(hash);
+            if (location == LongLongIndex.MISSING) {
+                return null;
+            }
+            StoredPage page = read(segments.get(segmentOf(location)), offsetOf(location));
+            return page.getUrl().equals(url) ? page : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void put(StoredPage page) {
+        byte[] record = encode(page);
+        if (record.length + SEGMENT_HEADER_SIZE + Integer.BYTES > segmentSize) {
+            LOG.warn("Page is too large to store: {}", page.getUrl());
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            append(hash(page.getUrl()), record);
+        } catch (IOException e) {
+            throw new PageStoreException("Unable to store " + page.getUrl(), e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Number of distinct URLs in the store.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Rewrites the latest record of every URL fetched after {@code minFetchedAt} into fresh segments and
+     * deletes the old ones, dropping superseded and expired records. The new segments and index are built
+     * aside and swapped in only once complete, so a failed compaction leaves the store as it was.
+     *
+     * @return number of records dropped
+     */
+    public int compact(long minFetchedAt) {
+        lock.writeLock().lock();
+        try {
+            int nextId = segments.isEmpty() ? 1 : segments.get(segments.size() - 1).id + 1;
+            List<Segment> newSegments = new ArrayList<>();
+            LongLongIndex newIndex = new LongLongIndex(index.size());
+            int newRecords = 0;
+            try {
+                newSegments.add(createSegment(nextId));
+                for (int segmentIndex = 0; segmentIndex < segments.size(); segmentIndex++) {
+                    Segment segment = segments.get(segmentIndex);
+                    ByteBuffer buffer = segment.buffer.duplicate();
+                    int offset = SEGMENT_HEADER_SIZE;
+                    while (offset < segment.writePosition) {
+                        int length = buffer.getInt(offset);
+                        long hash = buffer.getLong(offset + 2 * Integer.BYTES);
+                        long fetchedAt = buffer.getLong(offset + RECORD_HEADER_SIZE);
+                        if (index.get(hash) == locationOf(segmentIndex, offset) && fetchedAt >= minFetchedAt) {
+                            byte[] record = new byte[length];
+                            buffer.position(offset + RECORD_HEADER_SIZE);
+                            buffer.get(record);
+                            append(newSegments, newIndex, hash, record);
+                            newRecords++;
+                        }
+                        offset += RECORD_HEADER_SIZE + length;
+                    }
+                }
+                for (Segment segment : newSegments) {
+                    segment.buffer.force();
+                }
+            } catch (IOException | RuntimeException e) {
+                for (Segment segment : newSegments) {
+                    deleteQuietly(segment.path);
+                }
+                throw e;
+            }
+
+            List<Segment> oldSegments = new ArrayList<>(segments);
+            int dropped = records - newRecords;
+            segments.clear();
+            segments.addAll(newSegments);
+            index = newIndex;
+            records = newRecords;
+            for (Segment segment : oldSegments) {
+                deleteQuietly(segment.path);
+            }
+
+            LOG.info("Compacted page store {}: {} records kept, {} dropped", directory, records, dropped);
+            return dropped;
+        } catch (IOException e) {
+            throw new PageStoreException("Unable to compact " + directory, e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.writeLock().lock();
+        try {
+            for (Segment segment : segments) {
+                segment.buffer.force();
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void load() {
+        long start = System.nanoTime();
+        try {
+            Files.createDirectories(directory);
+            List<Path> paths;
+            try (Stream<Path> files = Files.list(directory)) {
+                paths = files.filter(path -> path.getFileName().toString().startsWith(SEGMENT_PREFIX)
+                        && path.getFileName().toString().endsWith(SEGMENT_SUFFIX))
+                        .sorted()
+                        .collect(Collectors.toList());
+            }
+
+            index = new LongLongIndex(1024);
+            for (Path path : paths) {
+                Segment segment = openSegment(path);
+                segments.add(segment);
+                indexSegment(segments.size() - 1, segment);
+            }
+            if (segments.isEmpty()) {
+                segments.add(createSegment(1));
+            }
+        } catch (IOException e) {
+            throw new PageStoreException("Unable to open page store " + directory, e);
+        }
+        LOG.info("Loaded page store {}: {} urls from {} segments in {} ms", directory, index.size(), segments.size(),
+                (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void indexSegment(int segmentIndex, Segment segment) {
+        ByteBuffer buffer = segment.buffer.duplicate();
+        CRC32 crc = new CRC32();
+        int offset = SEGMENT_HEADER_SIZE;
+        while (offset + RECORD_HEADER_SIZE <= buffer.capacity()) {
+            int length = buffer.getInt(offset);
+            if (length <= 0 || offset + RECORD_HEADER_SIZE + length > buffer.capacity()) {
+                break;
+            }
+            ByteBuffer payload = buffer.duplicate();
+            payload.position(offset + RECORD_HEADER_SIZE).limit(offset + RECORD_HEADER_SIZE + length);
+            crc.reset();
+            crc.update(payload);
+            if ((int) crc.getValue() != buffer.getInt(offset + Integer.BYTES)) {
+                LOG.warn("Dropping torn record in {} at offset {}", segment.path, offset);
+                break;
+            }
+            index.put(buffer.getLong(offset + 2 * Integer.BYTES), locationOf(segmentIndex, offset));
+            records++;
+            offset += RECORD_HEADER_SIZE + length;
+        }
+        segment.writePosition = offset;
+        if (offset + Integer.BYTES <= buffer.capacity()) {
+            buffer.putInt(offset, 0);
+        }
+    }
+
+    private void append(long hash, byte[] payload) throws IOException {
+        append(segments, index, hash, payload);
+        records++;
+    }
+
+    private void append(List<Segment> segments, LongLongIndex index, long hash, byte[] payload) throws IOException {
+        Segment segment = segments.get(segments.size() - 1);
+        int required = RECORD_HEADER_SIZE + payload.length + Integer.BYTES;
+        if (segment.writePosition + required > segment.buffer.capacity()) {
+            segment.buffer.force();
+            segment = createSegment(segment.id + 1);
+            segments.add(segment);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        ByteBuffer buffer = segment.buffer.duplicate();
+        int offset = segment.writePosition;
+        buffer.position(offset + RECORD_HEADER_SIZE);
+        buffer.put(payload);
+        buffer.putInt(0);
+        buffer.putLong(offset + 2 * Integer.BYTES, hash);
+        buffer.putInt(offset + Integer.BYTES, (int) crc.getValue());
+        buffer.putInt(offset, payload.length);
+
+        segment.writePosition = offset + RECORD_HEADER_SIZE + payload.length;
+        index.put(hash, locationOf(segments.size() - 1, offset));
+    }
+
+    private Segment createSegment(int id) throws IOException {
+        Path path = directory.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+            buffer.putInt(0, SEGMENT_MAGIC);
+            buffer.putInt(4, segmentSize);
+            Segment segment = new Segment(id, path, buffer);
+            segment.writePosition = SEGMENT_HEADER_SIZE;
+            return segment;
+        }
+    }
+
+    private static void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            LOG.warn("Unable to delete {}", path, e);
+        }
+    }
+
+    private Segment openSegment(Path path) throws IOException {
+        String name = path.getFileName().toString();
+        int id = Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            if (buffer.capacity() < SEGMENT_HEADER_SIZE || buffer.getInt(0) != SEGMENT_MAGIC) {
+                throw new PageStoreException("Not a page store segment: " + path);
+            }
+            return new Segment(id, path, buffer);
+        }
+    }
+
+    private static StoredPage read(Segment segment, int offset) {
+        ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(offset + RECORD_HEADER_SIZE);
+        long fetchedAt = buffer.getLong();
+        String url = readString(buffer);
+        String eTag = readString(buffer);
+        String lastModified = readString(buffer);
+        int scriptCount = buffer.getInt();
+        List<String> scripts = new ArrayList<>(scriptCount);
+        for (int i = 0; i < scriptCount; i++) {
+            scripts.add(readString(buffer));
+        }
+        return new StoredPage(url, new HtmlPageScripts(scripts), fetchedAt, new PageValidators(eTag, lastModified));
+    }
+
+    private static byte[] encode(StoredPage page) {
+        byte[] url = bytesOf(page.getUrl());
+        byte[] eTag = bytesOf(page.getValidators().getETag());
+        byte[] lastModified = bytesOf(page.getValidators().getLastModified());
+        List<byte[]> scripts = page.getScripts().getScriptUrls().stream()
+                .map(PageScriptsStore::bytesOf)
+                .collect(Collectors.toList());
+
+        int length = Long.BYTES + sizeOf(url) + sizeOf(eTag) + sizeOf(lastModified) + Integer.BYTES;
+        for (byte[] script : scripts) {
+            length += sizeOf(script);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        buffer.putLong(page.getFetchedAt());
+        writeString(buffer, url);
+        writeString(buffer, eTag);
+        writeString(buffer, lastModified);
+        buffer.putInt(scripts.size());
+        scripts.forEach(script -> writeString(buffer, script));
+        return buffer.array();
+    }
+
+    private static int sizeOf(byte[] value) {
+        return Integer.BYTES + (value == null ? 0 : value.length);
+    }
+
+    private static byte[] bytesOf(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(ByteBuffer buffer, byte[] value) {
+        if (value == null) {
+            buffer.putInt(NULL_STRING);
+        } else {
+            buffer.putInt(value.length);
+            buffer.put(value);
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length == NULL_STRING) {
+            return null;
+        }
+        byte[] value = new byte[length];
+        buffer.get(value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * The URL's {@link SeenUrls#fingerprint(String)}, but never {@code 0}, which the index reserves for empty slots.
+     */
+    static long hash(String url) {
+        long h = SeenUrls.fingerprint(url);
+        return h == 0 ? 1 : h;
+    }
+
+    private static long locationOf(int segmentIndex, int offset) {
+        return ((long) segmentIndex << 32) | (offset & 0xFFFFFFFFL);
+    }
+
+    private static int segmentOf(long location) {
+        return (int) (location >>> 32);
+    }
+
+    private static int offsetOf(long location) {
+        return (int) location;
+    }
+
+    private static class Segment {
+
+        private final int id;
+        private final Path path;
+        private final MappedByteBuffer buffer;
+        private int writePosition;
+
+        Segment(int id, Path path, MappedByteBuffer buffer) {
+            this.id = id;
+            this.path = path;
+            this.buffer = buffer;
+        }
+    }
+}
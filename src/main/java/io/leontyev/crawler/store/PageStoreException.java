@@ -0,0 +1,15 @@
+package io.leontyev.crawler.store;
+
+public class PageStoreException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public PageStoreException(String message) {
+        super(message);
+    }
+
+    public PageStoreException(String message, Exception e) {
+        super(message, e);
+    }
+
+}
@@ -0,0 +1,68 @@
+package io.leontyev.crawler.store;
+
+import io.leontyev.crawler.cache.RevalidatingPageScriptsExtractor;
+import io.leontyev.crawler.downloader.PageDownloadService;
+import io.leontyev.crawler.downloader.PageStream;
+import io.leontyev.crawler.downloader.PageValidators;
+import io.leontyev.crawler.parser.HtmlPageParser;
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+
+import java.time.Clock;
+
+/**
+ * Answers from the {@link PageScriptsStore} when it holds a result younger than {@code maxAgeMillis},
+ * so restarts don't begin with a cold crawl. Older results are revalidated with the {@code ETag} and
+ * {@code Last-Modified} stored alongside them: a {@code 304 Not Modified} re-stores the same scripts as
+ * fresh without parsing the page, anything else is parsed and stored with the new validators.
+ */
+public class PersistentPageScriptsExtractor extends RevalidatingPageScriptsExtractor<StoredPage> {
+
+    private final PageScriptsStore store;
+    private final long maxAgeMillis;
+    private final Clock clock;
+
+    public PersistentPageScriptsExtractor(PageScriptsStore store, PageDownloadService downloadService,
+                                          HtmlPageParser<HtmlPageScripts, PageStream> jsLibraryParser,
+                                          long maxAgeMillis) {
+        this(store, downloadService, jsLibraryParser, maxAgeMillis, Clock.systemUTC());
+    }
+
+    public PersistentPageScriptsExtractor(PageScriptsStore store, PageDownloadService downloadService,
+                                          HtmlPageParser<HtmlPageScripts, PageStream> jsLibraryParser,
+                                          long maxAgeMillis, Clock clock) {
+        super(downloadService, jsLibraryParser);
+        this.store = store;
+        this.maxAgeMillis = maxAgeMillis;
+        this.clock = clock;
+    }
+
+    @Override
+    protected StoredPage lookup(String url) {
+        return store.get(url);
+    }
+
+    @Override
+    protected boolean isFresh(StoredPage stored) {
+        return clock.millis() - stored.getFetchedAt() < maxAgeMillis;
+    }
+
+    @Override
+    protected void notModified(String url, StoredPage stored, PageValidators validators) {
+        store.put(new StoredPage(url, stored.getScripts(), clock.millis(), validators));
+    }
+
+    @Override
+    protected void parsed(String url, HtmlPageScripts scripts, PageValidators validators) {
+        store.put(new StoredPage(url, scripts, clock.millis(), validators));
+    }
+
+    /**
+     * Drops superseded records and those fetched more than {@code retainMillis} ago, validators included,
+     * so pages that old are downloaded in full again.
+     *
+     * @return number of records dropped
+     */
+    public int compact(long retainMillis) {
+        return store.compact(clock.millis() - Math.max(retainMillis, maxAgeMillis));
+    }
+}
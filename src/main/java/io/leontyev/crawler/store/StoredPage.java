@@ -0,0 +1,39 @@
+package io.leontyev.crawler.store;
+
+import io.leontyev.crawler.cache.RevalidatingPageScriptsExtractor;
+import io.leontyev.crawler.downloader.PageValidators;
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+
+public class StoredPage implements RevalidatingPageScriptsExtractor.Entry {
+
+    private final String url;
+    private final HtmlPageScripts scripts;
+    private final long fetchedAt;
+    private final PageValidators validators;
+
+    public StoredPage(String url, HtmlPageScripts scripts, long fetchedAt, PageValidators validators) {
+        this.url = url;
+        this.scripts = scripts;
+        this.fetchedAt = fetchedAt;
+        this.validators = validators;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    @Override
+    public HtmlPageScripts getScripts() {
+        return scripts;
+    }
+
+    public long getFetchedAt() {
+        return fetchedAt;
+    }
+
+    @Override
+    public PageValidators getValidators() {
+        return validators;
+    }
+
+}
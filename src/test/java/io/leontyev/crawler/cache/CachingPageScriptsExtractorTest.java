@@ -0,0 +1,136 @@
+package io.leontyev.crawler.cache;
+
+import io.leontyev.crawler.downloader.ValidatingStubDownloadService;
+import io.leontyev.crawler.parser.StreamingJavaScriptLibrariesHtmlPageParser;
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class CachingPageScriptsExtractorTest {
+
+    private static final String PAGE = "<html><head><script src=\"/jquery.js\"></script></head></html>";
+
+    private final FakeClock clock = new FakeClock();
+    private final ValidatingStubDownloadService downloadService = new ValidatingStubDownloadService(PAGE, null);
+
+    @Test
+    public void testFreshEntryIsServedFromCache() {
+        // given
+        CachingPageScriptsExtractor cache = newCache(10_000);
+
+        // when
+        HtmlPageScripts first = extract(cache, "http://site1.com/");
+        HtmlPageScripts second = extract(cache, "http://site1.com/");
+
+        // then
+        Assert.assertEquals(Collections.singletonList("http://site1.com/jquery.js"), second.getScriptUrls());
+        Assert.assertSame(first, second);
+        Assert.assertEquals(1, downloadService.getRequests().size());
+        Assert.assertEquals(1, cache.getStats().getHits());
+        Assert.assertEquals(1, cache.getStats().getMisses());
+    }
+
+    @Test
+    public void testExpiredEntryIsRevalidated() {
+        // given
+        CachingPageScriptsExtractor cache = newCache(10_000);
+        HtmlPageScripts first = extract(cache, "http://site1.com/");
+
+        // when
+        clock.advance(1001);
+        HtmlPageScripts revalidated = extract(cache, "http://site1.com/");
+        HtmlPageScripts cached = extract(cache, "http://site1.com/");
+
+        // then
+        Assert.assertSame(first, revalidated);
+        Assert.assertSame(first, cached);
+        Assert.assertEquals(2, downloadService.getRequests().size());
+        Assert.assertEquals(ValidatingStubDownloadService.ETAG, downloadService.getRequests().get(1).getETag());
+        Assert.assertEquals(1, cache.getStats().getRevalidations());
+        Assert.assertEquals(1, cache.getStats().getHits());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() {
+        // given
+        CachingPageScriptsExtractor cache = newCache(600);
+        extract(cache, "http://site1.com/");
+        extract(cache, "http://site2.com/");
+        extract(cache, "http://site1.com/");
+
+        // when
+        extract(cache, "http://site3.com/");
+
+        // then
+        PageCacheStats stats = cache.getStats();
+        Assert.assertEquals(1, stats.getEvictions());
+        Assert.assertEquals(2, stats.getEntries());
+        Assert.assertTrue(stats.getWeightBytes() <= 600);
+
+        extract(cache, "http://site1.com/");
+        Assert.assertEquals(2, cache.getStats().getHits());
+    }
+
+    @Test
+    public void testConcurrentMissesShareOneDownload() {
+        // given
+        CachingPageScriptsExtractor cache = newCache(10_000);
+        downloadService.hold();
+        ExecutorService ioExecutor = Executors.newFixedThreadPool(2);
+
+        // when
+        CompletableFuture<HtmlPageScripts> first = cache.extract("http://site1.com/", ioExecutor, Runnable::run);
+        CompletableFuture<HtmlPageScripts> second = cache.extract("http://site1.com/", ioExecutor, Runnable::run);
+        downloadService.release();
+
+        // then
+        Assert.assertSame(first.join(), second.join());
+        Assert.assertEquals(1, downloadService.getRequests().size());
+        Assert.assertEquals(1, cache.getStats().getMisses());
+        Assert.assertSame(first.join(), extract(cache, "http://site1.com/"));
+        ioExecutor.shutdown();
+    }
+
+    private CachingPageScriptsExtractor newCache(long maxWeightBytes) {
+        return new CachingPageScriptsExtractor(downloadService, new StreamingJavaScriptLibrariesHtmlPageParser(),
+                maxWeightBytes, 1000, clock);
+    }
+
+    private static HtmlPageScripts extract(CachingPageScriptsExtractor cache, String url) {
+        return cache.extract(url, Runnable::run, Runnable::run).join();
+    }
+
+    private static class FakeClock extends Clock {
+
+        private long millis = 1_000_000;
+
+        void advance(long delta) {
+            millis += delta;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+
+}
@@ -0,0 +1,300 @@
+package io.leontyev.crawler.cluster;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.leontyev.crawler.downloader.HttpClientPageDownloadService;
+import io.leontyev.crawler.downloader.JsoupPageDownloadService;
+import io.leontyev.crawler.engine.CrawlerEngine;
+import io.leontyev.crawler.engine.IoExecutionMode;
+import io.leontyev.crawler.engine.KeyValue;
+import io.leontyev.crawler.engine.StreamingPageScriptsExtractor;
+import io.leontyev.crawler.parser.GoogleHtmlPageParser;
+import io.leontyev.crawler.parser.StreamingJavaScriptLibrariesHtmlPageParser;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+public class ClusterTest {
+
+    private final List<AutoCloseable> resources = new ArrayList<>();
+    private final List<HttpServer> siteServers = new ArrayList<>();
+
+    private HttpServer searchServer;
+    private final ExecutorService searchExecutor = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() throws Exception {
+        for (int i = resources.size() - 1; i >= 0; i--) {
+            resources.get(i).close();
+        }
+        if (searchServer != null) {
+            searchServer.stop(0);
+        }
+        for (HttpServer site : siteServers) {
+            site.stop(0);
+        }
+        searchExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testAddingNodeMovesItsShareOfKeys() {
+        // given
+        ConsistentHashRing<String> four = new ConsistentHashRing<>(Arrays.asList("a", "b", "c", "d"), 128);
+        ConsistentHashRing<String> five = new ConsistentHashRing<>(Arrays.asList("a", "b", "c", "d", "e"), 128);
+
+        // when
+        int moved = 0;
+        for (int key = 0; key < 10_000; key++) {
+            String before = four.nodeFor("host-" + key + ".com");
+            String after = five.nodeFor("host-" + key + ".com");
+            if (!before.equals(after)) {
+                Assert.assertEquals("e", after);
+                moved++;
+            }
+        }
+
+        // then
+        Assert.assertTrue("Moved " + moved, moved > 1_000 && moved < 3_000);
+    }
+
+    @Test
+    public void testPartitionsByHost() {
+        // given
+        ClusterCoordinator coordinator = new ClusterCoordinator(
+                Arrays.asList(URI.create("http://w1:1"), URI.create("http://w2:1"), URI.create("http://w3:1")),
+                new JsoupPageDownloadService(2000), new GoogleHtmlPageParser(), 2000);
+        List<String> links = new ArrayList<>();
+        for (int host = 0; host < 30; host++) {
+            links.add("http://site" + host + ".com/a");
+            links.add("http://SITE" + host + ".com/b?q=1");
+        }
+
+        // when
+        Map<URI, List<String>> partitions = coordinator.partition(links);
+
+        // then
+        Map<String, URI> workerOfHost = new HashMap<>();
+        int partitioned = 0;
+        for (Map.Entry<URI, List<String>> partition : partitions.entrySet()) {
+            for (String link : partition.getValue()) {
+                String host = URI.create(link).getHost().toLowerCase();
+                URI previous = workerOfHost.putIfAbsent(host, partition.getKey());
+                Assert.assertTrue(link, previous == null || previous.equals(partition.getKey()));
+                partitioned++;
+            }
+        }
+        Assert.assertEquals(links.size(), partitioned);
+        Assert.assertEquals(3, partitions.size());
+    }
+
+    @Test
+    public void testMergesCountsOfWorkers() {
+        // given
+        CrawlWorker first = startWorker();
+        CrawlWorker second = startWorker();
+        List<URI> workers = Arrays.asList(workerUri(first.getPort()), workerUri(second.getPort()));
+        ClusterCoordinator coordinator = new ClusterCoordinator(workers,
+                new JsoupPageDownloadService(2000), new GoogleHtmlPageParser(), 5000);
+        startSearchServer(pages(startSitesRoutedTo(coordinator, workers, 4), 2));
+
+        // when
+        List<KeyValue> results = new ArrayList<>();
+        ClusterCrawlReport report = coordinator.crawl(searchUrl(), 2,
+                stream -> stream.forEach(results::add));
+
+        // then
+        Assert.assertEquals(16, report.getLinks());
+        Assert.assertEquals(16, report.getPages());
+        Assert.assertEquals(0, report.getFailedWorkers());
+        Assert.assertEquals(8, first.getExtractedPages());
+        Assert.assertEquals(8, second.getExtractedPages());
+        Assert.assertEquals(Arrays.asList(
+                "KeyValue{library='http://cdn.com/jquery.js', occurrences=16}",
+                "KeyValue{library='http://cdn.com/lodash.js', occurrences=8}"), strings(results));
+    }
+
+    @Test
+    public void testCountsPagesOfFailedWorker() {
+        // given
+        CrawlWorker worker = startWorker();
+        List<URI> workers = Arrays.asList(workerUri(worker.getPort()), workerUri(freePort()));
+        ClusterCoordinator coordinator = new ClusterCoordinator(workers,
+                new JsoupPageDownloadService(2000), new GoogleHtmlPageParser(), 5000);
+        List<String> sites = startSitesRoutedTo(coordinator, workers, 2);
+        List<String> links = pages(sites, 2);
+        links.add(sites.get(0) + "/missing");
+        startSearchServer(links);
+
+        // when
+        ClusterCrawlReport report = coordinator.crawl(searchUrl(), 2, stream -> {
+        });
+
+        // then
+        Assert.assertEquals(1, report.getFailedWorkers());
+        Assert.assertEquals(9, report.getLinks());
+        Assert.assertEquals(4, report.getPages());
+        Assert.assertEquals(4, worker.getExtractedPages());
+    }
+
+    @Test
+    public void testRejectsMalformedRequests() throws Exception {
+        // given
+        CrawlWorker worker = startWorker();
+        URI extract = workerUri(worker.getPort()).resolve(WorkerProtocol.EXTRACT_PATH);
+        HttpClient client = HttpClient.newHttpClient();
+        List<byte[]> bodies = Arrays.asList(
+                ints(-1),
+                ints(Integer.MAX_VALUE),
+                ints(1, Integer.MAX_VALUE),
+                ints(1, -5),
+                ints(2, 0),
+                new byte[WorkerProtocol.MAX_REQUEST_BYTES + 1]);
+
+        for (byte[] body : bodies) {
+            // when
+            HttpRequest request = HttpRequest.newBuilder(extract)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(body))
+                    .build();
+            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+
+            // then
+            Assert.assertEquals(400, response.statusCode());
+        }
+        Assert.assertEquals(0, worker.getExtractedPages());
+    }
+
+    private CrawlWorker startWorker() {
+        HttpClientPageDownloadService downloadService = new HttpClientPageDownloadService(2000, 64);
+        CrawlerEngine engine = CrawlerEngine.builder(downloadService, new GoogleHtmlPageParser())
+                .scriptsExtractor(new StreamingPageScriptsExtractor(downloadService,
+                        new StreamingJavaScriptLibrariesHtmlPageParser()))
+                .ioExecutionMode(IoExecutionMode.threadPool(4))
+                .build();
+        resources.add(engine);
+        CrawlWorker worker = new CrawlWorker(engine, 0);
+        resources.add(worker);
+        return worker;
+    }
+
+    private static byte[] ints(int... values) {
+        ByteBuffer buffer = ByteBuffer.allocate(values.length * Integer.BYTES);
+        for (int value : values) {
+            buffer.putInt(value);
+        }
+        return buffer.array();
+    }
+
+    private static int freePort() {
+        try (ServerSocket socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static URI workerUri(int port) {
+        return URI.create("http://127.0.0.1:" + port);
+    }
+
+    /**
+     * Starts sites, all on {@code 127.0.0.1} with a port of their own, until {@code coordinator} routes
+     * {@code sitesPerWorker} of them to each of {@code workers}, and returns their base URLs worker by worker.
+     * Every page has jQuery, every second site of a worker also has lodash.
+     */
+    private List<String> startSitesRoutedTo(ClusterCoordinator coordinator, List<URI> workers, int sitesPerWorker) {
+        Map<URI, List<String>> sites = new LinkedHashMap<>();
+        workers.forEach(worker -> sites.put(worker, new ArrayList<>()));
+        int started = 0;
+        while (sites.values().stream().anyMatch(routed -> routed.size() < sitesPerWorker)) {
+            if (started++ == 1000) {
+                throw new IllegalStateException("Sites are not spread over the workers: " + sites);
+            }
+            HttpServer site = startServer();
+            siteServers.add(site);
+            String baseUrl = "http://127.0.0.1:" + site.getAddress().getPort();
+            List<String> routed = sites.get(coordinator.partition(Collections.singletonList(baseUrl))
+                    .keySet().iterator().next());
+            if (routed.size() < sitesPerWorker) {
+                boolean lodash = routed.size() % 2 == 1;
+                site.createContext("/page", exchange -> respond(exchange,
+                        "<html><head><script src=\"http://cdn.com/jquery.js\"></script>"
+                                + (lodash ? "<script src=\"http://cdn.com/lodash.js\"></script>" : "")
+                                + "</head></html>"));
+                routed.add(baseUrl);
+            }
+        }
+        List<String> baseUrls = new ArrayList<>();
+        sites.values().forEach(baseUrls::addAll);
+        return baseUrls;
+    }
+
+    private static List<String> pages(List<String> sites, int pagesPerSite) {
+        List<String> links = new ArrayList<>();
+        for (String baseUrl : sites) {
+            for (int page = 0; page < pagesPerSite; page++) {
+                links.add(baseUrl + "/page/" + page);
+            }
+        }
+        return links;
+    }
+
+    private void startSearchServer(List<String> links) {
+        StringBuilder search = new StringBuilder("<html><body>");
+        for (String link : links) {
+            search.append("<div class=\"kCrYT\"><a href=\"").append(link).append("\">result</a></div>");
+        }
+        String body = search.append("</body></html>").toString();
+        searchServer = startServer();
+        searchServer.createContext("/search", exchange -> respond(exchange, body));
+    }
+
+    private HttpServer startServer() {
+        HttpServer server;
+        try {
+            server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        server.setExecutor(searchExecutor);
+        server.start();
+        return server;
+    }
+
+    private String searchUrl() {
+        return "http://127.0.0.1:" + searchServer.getAddress().getPort() + "/search";
+    }
+
+    private static List<String> strings(List<KeyValue> results) {
+        return results.stream().map(KeyValue::toString).collect(Collectors.toList());
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package io.leontyev.crawler.downloader;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.leontyev.crawler.parser.JavaScriptLibrariesHtmlPageParser;
+import io.leontyev.crawler.parser.StreamingJavaScriptLibrariesHtmlPageParser;
+import org.jsoup.nodes.Document;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPOutputStream;
+
+public class HttpClientPageDownloadServiceTest {
+
+    private static final String PAGE = "<html><head><script src=\"/js/jquery.js\"></script></head><body></body></html>";
+    private static final String LARGE_PAGE = "<html><head><script src=\"/js/jquery.js\"></script></HEAD><body><p>"
+            + "lorem ipsum ".repeat(50_000) + "</p><script src=\"/js/footer.js\"></script></body></html>";
+    private static final String LATIN1_PAGE = "<html><head><meta http-equiv=\"Content-Type\" "
+            + "content=\"text/html; charset=ISO-8859-1\"><script src=\"/js/caf\u00e9.js\"></script></head></html>";
+    private static final String HEADER_PAGE = "<html><body><header>menu</header><p>" + "lorem ipsum ".repeat(50_000)
+            + "</p><script src=\"/js/footer.js\"></script></body></html>";
+    private static final String TEXT_AFTER_META_PAGE = "<html><head><meta name=\"keywords\" content=\"js\">"
+            + "charset=ISO-8859-1 is not declared here<script src=\"/js/caf\u00e9.js\"></script></head></html>";
+
+    private HttpServer server;
+    private String baseUrl;
+    private final Set<Integer> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger activeRequests = new AtomicInteger();
+    private final AtomicInteger peakActiveRequests = new AtomicInteger();
+    private final Set<String> userAgents = ConcurrentHashMap.newKeySet();
+
+    @Before
+    public void startServer() throws IOException {
+        byte[] gzippedPage = gzip(PAGE.getBytes(StandardCharsets.UTF_8));
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            connections.add(exchange.getRemoteAddress().getPort());
+            peakActiveRequests.accumulateAndGet(activeRequests.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(20);
+                exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+                exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+                exchange.sendResponseHeaders(200, gzippedPage.length);
+                try (OutputStream body = exchange.getResponseBody()) {
+                    body.write(gzippedPage);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                activeRequests.decrementAndGet();
+            }
+        });
+        server.createContext("/plain", exchange -> {
+            userAgents.add(exchange.getRequestHeaders().getFirst("User-Agent"));
+            respond(exchange, "text/html; charset=UTF-8", PAGE.getBytes(StandardCharsets.UTF_8));
+        });
+        server.createContext("/large", exchange -> respond(exchange, "text/html; charset=UTF-8",
+                LARGE_PAGE.getBytes(StandardCharsets.UTF_8)));
+        server.createContext("/latin1", exchange -> respond(exchange, "text/html",
+                LATIN1_PAGE.getBytes(StandardCharsets.ISO_8859_1)));
+        server.createContext("/header", exchange -> respond(exchange, "text/html; charset=UTF-8",
+                HEADER_PAGE.getBytes(StandardCharsets.UTF_8)));
+        server.createContext("/text-after-meta", exchange -> respond(exchange, "text/html",
+                TEXT_AFTER_META_PAGE.getBytes(StandardCharsets.UTF_8)));
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+    }
+
+    @Test
+    public void testGzipBodyIsParsed() {
+        // given
+        HttpClientPageDownloadService downloadService = new HttpClientPageDownloadService(2000, 2);
+
+        // when
+        Document document = downloadService.download(baseUrl + "/page");
+        List<String> streamed;
+        try (PageStream page = downloadService.open(baseUrl + "/page")) {
+            streamed = new StreamingJavaScriptLibrariesHtmlPageParser().parse(page).getScriptUrls();
+        }
+
+        // then
+        List<String> expected = Collections.singletonList(baseUrl + "/js/jquery.js");
+        Assert.assertEquals(expected, new JavaScriptLibrariesHtmlPageParser().parse(document).getScriptUrls());
+        Assert.assertEquals(expected, streamed);
+    }
+
+    /**
+     * An identity-encoded body reaches jsoup undecorated, so it is closed by jsoup and then again by the
+     * downloader.
+     */
+    @Test
+    public void testPlainBodyIsDownloaded() {
+        // given
+        HttpClientPageDownloadService downloadService = new HttpClientPageDownloadService(2000, 1);
+
+        // when
+        Document first = downloadService.download(baseUrl + "/plain");
+        Document second = downloadService.download(baseUrl + "/plain");
+
+        // then
+        List<String> expected = Collections.singletonList(baseUrl + "/js/jquery.js");
+        Assert.assertEquals(expected, new JavaScriptLibrariesHtmlPageParser().parse(first).getScriptUrls());
+        Assert.assertEquals(expected, new JavaScriptLibrariesHtmlPageParser().parse(second).getScriptUrls());
+    }
+
+    @Test
+    public void testConnectionsAreReused() {
+        // given
+        HttpClientPageDownloadService downloadService = new HttpClientPageDownloadService(2000, 2);
+
+        // when
+        IntStream.range(0, 20).forEach(i -> downloadService.download(baseUrl + "/page-" + i));
+
+        // then
+        Assert.assertEquals(1, connections.size());
+    }
+
+    @Test
+    public void testConnectionsPerHostAreCapped() throws Exception {
+        // given
+        HttpClientPageDownloadService downloadService = new HttpClientPageDownloadService(2000, 2);
+        ExecutorService executor = Executors.newFixedThreadPool(10);
+
+        // when
+        List<Future<Document>> documents = IntStream.range(0, 40)
+                .mapToObj(i -> executor.submit(() -> downloadService.download(baseUrl + "/page-" + i)))
+                .collect(Collectors.toList());
+        for (Future<Document> document : documents) {
+            Assert.assertNotNull(document.get(5, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+
+        // then
+        Assert.assertEquals(2, peakActiveRequests.get());
+        Assert.assertTrue("Connections " + connections.size(), connections.size() <= 2);
+    }
+
+    @Test
+    public void testStreamStopsAfterHead() {
+        // given
+        HttpClientPageDownloadService downloadService =
+                new HttpClientPageDownloadService(2000, 2, new BodyLimits(2 * 1024 * 1024, 1024));
+
+        // when
+        List<String> streamed;
+        try (PageStream page = downloadService.open(baseUrl + "/large")) {
+            streamed = new StreamingJavaScriptLibrariesHtmlPageParser().parse(page).getScriptUrls();
+        }
+        Document document = downloadService.download(baseUrl + "/large");
+
+        // then
+        Assert.assertEquals(Collections.singletonList(baseUrl + "/js/jquery.js"), streamed);
+        Assert.assertEquals(Arrays.asList(baseUrl + "/js/jquery.js", baseUrl + "/js/footer.js"),
+                new JavaScriptLibrariesHtmlPageParser().parse(document).getScriptUrls());
+        BodyStats stats = downloadService.getBodyStats();
+        Assert.assertEquals(1, stats.getHeadOnlyPages());
+        Assert.assertEquals(0, stats.getTruncatedPages());
+        Assert.assertTrue(stats.toString(), stats.getBytesSkipped() > 500_000);
+        Assert.assertTrue(stats.toString(), stats.getBytesRead() < LARGE_PAGE.length() + 64 * 1024);
+        Assert.assertTrue(stats.toString(), stats.getAllocationSavedBytes() > 0);
+    }
+
+    @Test
+    public void testHeaderTagDoesNotEndHead() {
+        // given
+        HttpClientPageDownloadService downloadService =
+                new HttpClientPageDownloadService(2000, 2, new BodyLimits(2 * 1024 * 1024, 64));
+
+        // when
+        List<String> streamed;
+        try (PageStream page = downloadService.open(baseUrl + "/header")) {
+            streamed = new StreamingJavaScriptLibrariesHtmlPageParser().parse(page).getScriptUrls();
+        }
+
+        // then
+        Assert.assertEquals(Collections.singletonList(baseUrl + "/js/footer.js"), streamed);
+        BodyStats stats = downloadService.getBodyStats();
+        Assert.assertEquals(0, stats.getHeadOnlyPages());
+        Assert.assertEquals(HEADER_PAGE.length(), stats.getBytesRead());
+    }
+
+    @Test
+    public void testBodyIsCutAtMaxBytes() {
+        // given
+        HttpClientPageDownloadService downloadService =
+                new HttpClientPageDownloadService(2000, 2, new BodyLimits(64 * 1024, -1));
+
+        // when
+        Document document = downloadService.download(baseUrl + "/large");
+
+        // then
+        Assert.assertEquals(Collections.singletonList(baseUrl + "/js/jquery.js"),
+                new JavaScriptLibrariesHtmlPageParser().parse(document).getScriptUrls());
+        BodyStats stats = downloadService.getBodyStats();
+        Assert.assertEquals(1, stats.getTruncatedPages());
+        Assert.assertEquals(64 * 1024, stats.getBytesRead());
+        Assert.assertEquals(LARGE_PAGE.length() - 64 * 1024, stats.getBytesSkipped());
+    }
+
+    @Test
+    public void testZeroMaxBytesReadsTheWholeBody() {
+        // given
+        HttpClientPageDownloadService downloadService =
+                new HttpClientPageDownloadService(2000, 2, new BodyLimits(0, -1));
+
+        // when
+        downloadService.download(baseUrl + "/large");
+
+        // then
+        BodyStats stats = downloadService.getBodyStats();
+        Assert.assertEquals(0, stats.getTruncatedPages());
+        Assert.assertEquals(LARGE_PAGE.length(), stats.getBytesRead());
+    }
+
+    @Test
+    public void testCharsetIsTakenFromMetaTag() {
+        // given
+        HttpClientPageDownloadService downloadService = new HttpClientPageDownloadService(2000, 2);
+
+        // when
+        Document document = downloadService.download(baseUrl + "/latin1");
+
+        // then
+        Assert.assertEquals("/js/caf\u00e9.js", document.select("script").attr("src"));
+    }
+
+    @Test
+    public void testCharsetOutsideMetaTagIsIgnored() {
+        // given
+        HttpClientPageDownloadService downloadService = new HttpClientPageDownloadService(2000, 2);
+
+        // when
+        Document document = downloadService.download(baseUrl + "/text-after-meta");
+
+        // then
+        Assert.assertEquals("/js/caf\u00e9.js", document.select("script").attr("src"));
+    }
+
+    @Test
+    public void testUserAgentIsSent() {
+        // given
+        PageDownloadService httpClient = new HttpClientPageDownloadService(2000, 2, BodyLimits.DEFAULT, "web-crawler");
+        PageDownloadService jsoup = new JsoupPageDownloadService(2000, 0, "web-crawler");
+
+        // when
+        httpClient.download(baseUrl + "/plain");
+        jsoup.open(baseUrl + "/plain").close();
+
+        // then
+        Assert.assertEquals(Collections.singleton("web-crawler"), userAgents);
+    }
+
+    @Test(expected = DownloadPageException.class)
+    public void testMalformedUrl() {
+        new HttpClientPageDownloadService(2000, 2).download("not a url");
+    }
+
+    private static void respond(HttpExchange exchange, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().add("Content-Type", contentType);
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        } catch (IOException e) {
+            // the client stopped reading
+        }
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        }
+        return out.toByteArray();
+    }
+
+}
@@ -0,0 +1,64 @@
+package io.leontyev.crawler.downloader;
+
+import org.jsoup.nodes.Document;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves one page at version {@code "v1"} for every URL and answers {@code 304 Not Modified} to requests
+ * that already hold it, remembering the validators of every request.
+ */
+public class ValidatingStubDownloadService implements PageDownloadService {
+
+    public static final String ETAG = "\"v1\"";
+
+    private final String page;
+    private final String lastModified;
+    private final List<PageValidators> requests = Collections.synchronizedList(new ArrayList<>());
+    private volatile CountDownLatch release = new CountDownLatch(0);
+
+    public ValidatingStubDownloadService(String page, String lastModified) {
+        this.page = page;
+        this.lastModified = lastModified;
+    }
+
+    @Override
+    public Document download(String url) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public PageStream open(String url, PageValidators validators) {
+        requests.add(validators);
+        try {
+            release.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        PageValidators current = new PageValidators(ETAG, lastModified);
+        if (ETAG.equals(validators.getETag())) {
+            return PageStream.notModified(url, current);
+        }
+        return new PageStream(url, new StringReader(page), current);
+    }
+
+    /**
+     * Holds every response until {@link #release()}.
+     */
+    public void hold() {
+        release = new CountDownLatch(1);
+    }
+
+    public void release() {
+        release.countDown();
+    }
+
+    public List<PageValidators> getRequests() {
+        return requests;
+    }
+}
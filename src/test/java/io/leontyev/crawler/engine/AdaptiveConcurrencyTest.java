@@ -0,0 +1,192 @@
+package io.leontyev.crawler.engine;
+
+import io.leontyev.crawler.downloader.DownloadPageException;
+import io.leontyev.crawler.downloader.PageDownloadService;
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+import org.jsoup.HttpStatusException;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.net.SocketTimeoutException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class AdaptiveConcurrencyTest {
+
+    private static final int CAPACITY = 8;
+    private static final long LATENCY_MILLIS = 10;
+
+    @Test
+    public void testDownloadLimitClimbsToServerCapacity() {
+        // given
+        AdaptiveConcurrency concurrency = adaptive(2);
+        List<Integer> limits = crawl(concurrency, new QueueingSite(), 1200);
+
+        // then
+        double settled = limits.subList(limits.size() / 2, limits.size()).stream()
+                .mapToInt(Integer::intValue).average().orElse(0);
+        Assert.assertTrue("Settled at " + settled, settled >= CAPACITY * 0.75 && settled <= CAPACITY * 2);
+        Assert.assertTrue("Peaked at " + Collections.max(limits), Collections.max(limits) <= CAPACITY * 3);
+    }
+
+    @Test
+    public void testDownloadLimitBacksOffOnOverloadErrors() {
+        // given
+        AdaptiveConcurrency concurrency = adaptive(48);
+        List<Integer> limits = crawl(concurrency, new RejectingSite(), 1200);
+
+        // then
+        double settled = limits.subList(limits.size() / 2, limits.size()).stream()
+                .mapToInt(Integer::intValue).average().orElse(0);
+        Assert.assertTrue("Settled at " + settled, settled >= CAPACITY / 2.0 && settled <= CAPACITY * 2);
+    }
+
+    @Test
+    public void testCalcPoolGrowsOnlyWithSpareCpu() throws InterruptedException {
+        // given
+        AtomicReference<Double> cpuLoad = new AtomicReference<>(0.95);
+        AdaptiveConcurrency concurrency = new AdaptiveConcurrency(2, 1, 64, 1, 4, cpuLoad::get,
+                Executors.newSingleThreadScheduledExecutor(), TimeUnit.HOURS.toMillis(1));
+        int initial = concurrency.getCalcLimit();
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(8);
+        for (int i = 0; i < 8; i++) {
+            concurrency.getCalcExecutorService().execute(() -> {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+
+        // when
+        concurrency.tune();
+        int saturated = concurrency.getCalcLimit();
+        cpuLoad.set(0.2);
+        concurrency.tune();
+        concurrency.tune();
+        int spare = concurrency.getCalcLimit();
+        release.countDown();
+        done.await();
+        TimeUnit.MILLISECONDS.sleep(50);
+        for (int i = 0; i < 8; i++) {
+            concurrency.tune();
+        }
+        int idle = concurrency.getCalcLimit();
+        concurrency.close();
+        concurrency.getCalcExecutorService().shutdown();
+        concurrency.getIoExecutorService().shutdown();
+
+        // then
+        Assert.assertEquals(initial, saturated);
+        Assert.assertEquals(Math.min(4, initial + 2), spare);
+        Assert.assertEquals(1, idle);
+    }
+
+    @Test
+    public void testOnlyLoadRelatedFailuresAreOverload() {
+        Assert.assertTrue(AdaptiveConcurrency.isOverload(
+                new DownloadPageException("Unable to GET", new SocketTimeoutException())));
+        Assert.assertTrue(AdaptiveConcurrency.isOverload(new DownloadPageException(503)));
+        Assert.assertTrue(AdaptiveConcurrency.isOverload(new DownloadPageException(429,
+                new HttpStatusException("Too Many Requests", 429, "http://site1.com/"))));
+        Assert.assertFalse(AdaptiveConcurrency.isOverload(new DownloadPageException(404)));
+        Assert.assertFalse(AdaptiveConcurrency.isOverload(new DownloadPageException("Wrong status: 503")));
+        Assert.assertFalse(AdaptiveConcurrency.isOverload(new IllegalStateException("parser")));
+    }
+
+    private static AdaptiveConcurrency adaptive(int initialDownloads) {
+        return new AdaptiveConcurrency(initialDownloads, 1, 64, 1, 2, () -> -1,
+                Executors.newSingleThreadScheduledExecutor(), TimeUnit.HOURS.toMillis(1));
+    }
+
+    /**
+     * Crawls {@code pages} links of {@code site} and returns the download limit seen after each page.
+     */
+    private static List<Integer> crawl(AdaptiveConcurrency concurrency, PageDownloadService site, int pages) {
+        List<Integer> limits = Collections.synchronizedList(new ArrayList<>());
+        PageDownloadService measured = concurrency.measure(site);
+        PageScriptsExtractor extractor = (url, ioExecutor, calcExecutor) -> CompletableFuture
+                .supplyAsync(() -> measured.download(url), ioExecutor)
+                .thenApply(document -> {
+                    limits.add(concurrency.getIoLimit());
+                    return new HtmlPageScripts(Collections.emptyList());
+                });
+        List<String> links = IntStream.range(0, pages)
+                .mapToObj(i -> "http://site" + i + ".com/")
+                .collect(Collectors.toList());
+
+        // when
+        try (CrawlerEngine engine = CrawlerEngine.builder(site, document -> null)
+                .scriptsExtractor(extractor)
+                .executors(concurrency.getIoExecutorService(), concurrency.getCalcExecutorService())
+                .build()) {
+            engine.crawlLinks(links).join();
+        }
+        concurrency.close();
+        return limits;
+    }
+
+    /**
+     * Serves {@link #CAPACITY} downloads at a time within {@link #LATENCY_MILLIS}; more make every one slower.
+     */
+    private static class QueueingSite implements PageDownloadService {
+
+        private final AtomicInteger concurrent = new AtomicInteger();
+
+        @Override
+        public Document download(String url) {
+            int load = concurrent.incrementAndGet();
+            try {
+                sleep(LATENCY_MILLIS * Math.max(CAPACITY, load) / CAPACITY);
+                return Jsoup.parse("<html></html>", url);
+            } finally {
+                concurrent.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Serves {@link #CAPACITY} downloads at a time and answers 503 to the others.
+     */
+    private static class RejectingSite implements PageDownloadService {
+
+        private final AtomicInteger concurrent = new AtomicInteger();
+
+        @Override
+        public Document download(String url) {
+            int load = concurrent.incrementAndGet();
+            try {
+                sleep(LATENCY_MILLIS);
+                if (load > CAPACITY) {
+                    throw new DownloadPageException(503);
+                }
+                return Jsoup.parse("<html></html>", url);
+            } finally {
+                concurrent.decrementAndGet();
+            }
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
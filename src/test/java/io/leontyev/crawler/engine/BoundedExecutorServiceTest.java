@@ -0,0 +1,71 @@
+package io.leontyev.crawler.engine;
+
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+public class BoundedExecutorServiceTest {
+
+    @Test
+    public void testConcurrencyIsCapped() throws Exception {
+        // given
+        ExecutorService executor = new BoundedExecutorService(Executors.newCachedThreadPool(), 4);
+
+        // when
+        int peak = runConcurrently(executor, 32);
+
+        // then
+        Assert.assertEquals(4, peak);
+    }
+
+    @Test
+    public void testVirtualThreadsMode() throws Exception {
+        Assume.assumeTrue(IoExecutionMode.isVirtualThreadsSupported());
+
+        // given
+        ExecutorService executor = IoExecutionMode.virtualThreads(64).createExecutorService();
+
+        // when
+        int peak = runConcurrently(executor, 256);
+
+        // then
+        Assert.assertEquals(64, peak);
+    }
+
+    private static int runConcurrently(ExecutorService executor, int tasks) throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        CountDownLatch submitted = new CountDownLatch(1);
+
+        CompletableFuture<?>[] futures = IntStream.range(0, tasks)
+                .mapToObj(i -> CompletableFuture.runAsync(() -> {
+                    peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                    try {
+                        submitted.await();
+                        Thread.sleep(10);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        running.decrementAndGet();
+                    }
+                }, executor))
+                .toArray(CompletableFuture[]::new);
+
+        Thread.sleep(100);
+        submitted.countDown();
+        CompletableFuture.allOf(futures).get(10, TimeUnit.SECONDS);
+
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(1, TimeUnit.SECONDS));
+        return peak.get();
+    }
+
+}
@@ -2,6 +2,7 @@ package io.leontyev.crawler.engine;
 
 import io.leontyev.crawler.downloader.DownloadPageException;
 import io.leontyev.crawler.downloader.PageDownloadService;
+import io.leontyev.crawler.journal.CrawlJournal;
 import io.leontyev.crawler.parser.GoogleHtmlPageParser;
 import io.leontyev.crawler.parser.HtmlPageParser;
 import io.leontyev.crawler.parser.JavaScriptLibrariesHtmlPageParser;
@@ -11,22 +12,45 @@ import org.jsoup.nodes.Document;
 import org.jsoup.nodes.Element;
 import org.jsoup.select.Elements;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.mockito.Mock;
 import org.mockito.junit.MockitoJUnitRunner;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Flow;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(MockitoJUnitRunner.class)
 public class CrawlerEngineTest {
 
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
     private @Mock Document googlePage;
     private @Mock Document page1;
     private @Mock Document page2;
@@ -55,6 +79,30 @@ public class CrawlerEngineTest {
         Assert.assertEquals(5, results.size());
     }
 
+    @Test
+    public void testBatchSharesDownloads() {
+        // given
+        givenOk();
+        when(downloadService.download("http://localhost:1080/search?q=other")).thenReturn(googlePage);
+        CrawlerEngine engine = new CrawlerEngine(downloadService, googlePageParser, scriptPageParser);
+
+        Map<String, List<KeyValue>> results = new HashMap<>();
+        BiConsumer<String, Stream<KeyValue>> resultStreamConsumer =
+                (url, keyValueStream) -> results.put(url, keyValueStream.collect(Collectors.toList()));
+
+        // when
+        BatchCrawlReport report = engine.crawlBatch(
+                Arrays.asList("http://localhost:1080/search", "http://localhost:1080/search?q=other"), 5, resultStreamConsumer);
+
+        // then
+        Assert.assertEquals(5, results.get("http://localhost:1080/search").size());
+        Assert.assertEquals(5, results.get("http://localhost:1080/search?q=other").size());
+        Assert.assertEquals(10, report.getPageRequests());
+        Assert.assertEquals(5, report.getUniquePages());
+        Assert.assertEquals(0.5, report.getDedupHitRate(), 0.0001);
+        verify(downloadService, times(1)).download("http://site1.com/some-uri-1");
+    }
+
     @Test
     public void testGoogleDoesNotRespond() {
         // given
@@ -68,6 +116,371 @@ public class CrawlerEngineTest {
         engine.crawl("http://localhost:1080/search", 5, resultStreamConsumer);
     }
 
+    @Test
+    public void testPipelinedFlowParsesWhileDownloading() {
+        // given
+        List<String> links = Arrays.asList("http://site1.com/some-uri-1", "http://site2.com/some-uri-2",
+                "http://site3.com/some-uri-3", "http://site4.com/some-uri-4", "http://site5.com/some-uri-5");
+        CountDownLatch firstParsed = new CountDownLatch(1);
+        AtomicInteger downloadsBeforeFirstParse = new AtomicInteger();
+
+        AtomicInteger retainedDocuments = new AtomicInteger();
+        AtomicInteger peakRetainedDocuments = new AtomicInteger();
+
+        PageDownloadService skewedDownloadService = url -> {
+            if (url.endsWith("/search")) {
+                Document document = Document.createShell(url);
+                links.forEach(link -> document.body().appendElement("div").addClass("kCrYT")
+                        .appendElement("a").attr("href", link));
+                return document;
+            }
+            if (!url.equals(links.get(0)) && !await(firstParsed)) {
+                downloadsBeforeFirstParse.incrementAndGet();
+            }
+            peakRetainedDocuments.accumulateAndGet(retainedDocuments.incrementAndGet(), Math::max);
+            return new Document(url);
+        };
+        HtmlPageParser<HtmlPageScripts, Document> signallingScriptPageParser = document -> {
+            retainedDocuments.decrementAndGet();
+            firstParsed.countDown();
+            return new HtmlPageScripts(Collections.singletonList(document.location() + "/jquery.js"));
+        };
+
+        CrawlerEngine engine = new CrawlerEngine(skewedDownloadService, googlePageParser, signallingScriptPageParser,
+                Executors.newFixedThreadPool(links.size()), Executors.newSingleThreadExecutor());
+
+        List<KeyValue> results = new ArrayList<>();
+        Consumer<Stream<KeyValue>> resultStreamConsumer = keyValueStream -> keyValueStream.forEach(results::add);
+
+        // when
+        engine.crawl("http://localhost:1080/search", 5, resultStreamConsumer);
+        engine.close();
+
+        // then
+        Assert.assertEquals(5, results.size());
+        Assert.assertEquals("Slow downloads held up the first parse", 0, downloadsBeforeFirstParse.get());
+        Assert.assertTrue("Peak retained " + peakRetainedDocuments.get(), peakRetainedDocuments.get() < links.size());
+    }
+
+    @Test
+    public void testPublisherEmitsRunningTopResults() {
+        // given
+        CrawlerEngine engine = CrawlerEngine.builder(stubGoogle(), googlePageParser)
+                .scriptsExtractor(stubPages())
+                .build();
+        List<CrawlUpdate> updates = new ArrayList<>();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+
+        // when
+        engine.publish("http://localhost:1080/search", 5).subscribe(new Flow.Subscriber<CrawlUpdate>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(Long.MAX_VALUE);
+            }
+
+            @Override
+            public void onNext(CrawlUpdate update) {
+                updates.add(update);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                done.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                done.complete(null);
+            }
+        });
+        done.join();
+        engine.close();
+
+        // then
+        Assert.assertEquals(5, updates.size());
+        for (int i = 0; i < updates.size(); i++) {
+            CrawlUpdate update = updates.get(i);
+            Assert.assertEquals(i + 1, update.getPages());
+            if (update.isRanked()) {
+                Assert.assertEquals(i + 1, update.getTopResults().get(0).getOccurrences());
+            }
+        }
+        Assert.assertTrue(updates.get(4).isRanked());
+    }
+
+    @Test
+    public void testSlowSubscriberThrottlesDownloads() throws InterruptedException {
+        // given
+        AtomicInteger extractions = new AtomicInteger();
+        PageScriptsExtractor countingPages = (url, ioExecutor, calcExecutor) -> {
+            extractions.incrementAndGet();
+            return stubPages().extract(url, ioExecutor, calcExecutor);
+        };
+        CrawlerEngine engine = CrawlerEngine.builder(stubGoogle(), googlePageParser)
+                .scriptsExtractor(countingPages)
+                .build();
+        BlockingQueue<CrawlUpdate> updates = new LinkedBlockingQueue<>();
+        CompletableFuture<Flow.Subscription> subscribed = new CompletableFuture<>();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+
+        engine.publish("http://localhost:1080/search", 5).subscribe(new Flow.Subscriber<CrawlUpdate>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscribed.complete(subscription);
+            }
+
+            @Override
+            public void onNext(CrawlUpdate update) {
+                updates.add(update);
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+                done.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete() {
+                done.complete(null);
+            }
+        });
+        Flow.Subscription subscription = subscribed.join();
+
+        // when
+        subscription.request(1);
+        CrawlUpdate first = updates.poll(5, TimeUnit.SECONDS);
+        Thread.sleep(200);
+        int extractedForOne = extractions.get();
+
+        subscription.request(2);
+        updates.poll(5, TimeUnit.SECONDS);
+        updates.poll(5, TimeUnit.SECONDS);
+        Thread.sleep(200);
+        int extractedForThree = extractions.get();
+
+        subscription.request(10);
+        done.join();
+        engine.close();
+
+        // then
+        Assert.assertNotNull(first);
+        Assert.assertEquals(1, extractedForOne);
+        Assert.assertEquals(3, extractedForThree);
+        Assert.assertEquals(5, extractions.get());
+        Assert.assertEquals(2, updates.size());
+    }
+
+    @Test
+    public void testPagesDeliveredTogetherAreRankedOnce() throws InterruptedException {
+        // given
+        Map<String, CompletableFuture<HtmlPageScripts>> pages = new ConcurrentHashMap<>();
+        PageScriptsExtractor heldPages = (url, ioExecutor, calcExecutor) ->
+                pages.computeIfAbsent(url, key -> new CompletableFuture<>());
+        CrawlerEngine engine = CrawlerEngine.builder(stubGoogle(), googlePageParser)
+                .scriptsExtractor(heldPages)
+                .build();
+        HtmlPageScripts jquery = new HtmlPageScripts(Collections.singletonList("http://cdn.com/jquery.js"));
+        BlockingQueue<CrawlUpdate> updates = new LinkedBlockingQueue<>();
+        CountDownLatch firstDelivered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+
+        engine.publish("http://localhost:1080/search", 5).subscribe(new Flow.Subscriber<CrawlUpdate>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.request(3);
+            }
+
+            @Override
+            public void onNext(CrawlUpdate update) {
+                updates.add(update);
+                firstDelivered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+        });
+        while (pages.size() < 3) {
+            sleep(10);
+        }
+
+        // when the subscriber is busy with the first page while two more finish
+        CompletableFuture.runAsync(() -> pages.get("http://site1.com/some-uri-1").complete(jquery));
+        Assert.assertTrue(firstDelivered.await(5, TimeUnit.SECONDS));
+        pages.get("http://site2.com/some-uri-2").complete(jquery);
+        pages.get("http://site3.com/some-uri-3").complete(jquery);
+        release.countDown();
+
+        // then only the last of them carries the ranking
+        List<CrawlUpdate> delivered = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            delivered.add(updates.poll(5, TimeUnit.SECONDS));
+        }
+        engine.close();
+        Assert.assertTrue(delivered.get(0).isRanked());
+        Assert.assertFalse(delivered.get(1).isRanked());
+        Assert.assertTrue(delivered.get(1).getTopResults().isEmpty());
+        Assert.assertTrue(delivered.get(2).isRanked());
+        Assert.assertEquals(3, delivered.get(2).getTopResults().get(0).getOccurrences());
+    }
+
+    @Test
+    public void testCrawlWithinBudgetReturnsPartialResults() {
+        // given
+        CountDownLatch stalled = new CountDownLatch(1);
+        PageScriptsExtractor stalledSite = (url, ioExecutor, calcExecutor) -> CompletableFuture.supplyAsync(() -> {
+            if (url.contains("site5")) {
+                await(stalled);
+            }
+            return new HtmlPageScripts(Collections.singletonList("http://cdn.com/jquery.js"));
+        }, ioExecutor);
+        List<ScriptsAggregator> aggregators = new ArrayList<>();
+        CrawlerEngine engine = CrawlerEngine.builder(stubGoogle(), googlePageParser)
+                .scriptsExtractor(stalledSite)
+                .executors(Executors.newFixedThreadPool(5), Executors.newSingleThreadExecutor())
+                .aggregatorFactory(() -> {
+                    ScriptsAggregator aggregator = new ScriptUrlAggregator();
+                    aggregators.add(aggregator);
+                    return aggregator;
+                })
+                .build();
+
+        List<KeyValue> results = new ArrayList<>();
+        Consumer<Stream<KeyValue>> resultStreamConsumer = keyValueStream -> keyValueStream.forEach(results::add);
+
+        // when
+        CrawlReport report = engine.crawl("http://localhost:1080/search", 5, 500, resultStreamConsumer);
+        stalled.countDown();
+        engine.close();
+
+        // then the stalled page finished after the deadline and is left out
+        Assert.assertTrue(report.isPartial());
+        Assert.assertTrue("Elapsed " + report.getWallTimeMillis() + " ms", report.getWallTimeMillis() < 1000);
+        Assert.assertEquals(5, report.getPages());
+        Assert.assertEquals(4, report.getCompletedPages());
+        Assert.assertEquals(Collections.singletonList("KeyValue{library='http://cdn.com/jquery.js', occurrences=4}"),
+                strings(results));
+        Assert.assertEquals(4, aggregators.get(0).topResults(5).findFirst().orElseThrow().getOccurrences());
+    }
+
+    @Test
+    public void testCrawlWithinBudgetIsCompleteWhenInTime() {
+        // given
+        CrawlerEngine engine = CrawlerEngine.builder(stubGoogle(), googlePageParser)
+                .scriptsExtractor(stubPages())
+                .build();
+
+        List<KeyValue> results = new ArrayList<>();
+        Consumer<Stream<KeyValue>> resultStreamConsumer = keyValueStream -> keyValueStream.forEach(results::add);
+
+        // when
+        CrawlReport report = engine.crawl("http://localhost:1080/search", 5, 5000, resultStreamConsumer);
+        engine.close();
+
+        // then
+        Assert.assertFalse(report.isPartial());
+        Assert.assertEquals(5, report.getCompletedPages());
+        Assert.assertEquals(Collections.singletonList("KeyValue{library='http://cdn.com/jquery.js', occurrences=5}"),
+                strings(results));
+    }
+
+    @Test
+    public void testJournaledCrawlResumesWhereItStopped() {
+        // given
+        Path file = folder.getRoot().toPath().resolve("crawl.journal");
+        AtomicInteger searches = new AtomicInteger();
+        Map<String, AtomicInteger> extractions = new ConcurrentHashMap<>();
+        PageScriptsExtractor failingSite4 = (url, ioExecutor, calcExecutor) -> CompletableFuture.supplyAsync(() -> {
+            extractions.computeIfAbsent(url, key -> new AtomicInteger()).incrementAndGet();
+            if (url.contains("site4")) {
+                throw new DownloadPageException("Site 4 is down");
+            }
+            return new HtmlPageScripts(Collections.singletonList("http://cdn.com/jquery.js"));
+        }, ioExecutor);
+        PageDownloadService google = url -> {
+            searches.incrementAndGet();
+            return stubGoogle().download(url);
+        };
+        CrawlerEngine engine = CrawlerEngine.builder(google, googlePageParser)
+                .scriptsExtractor(failingSite4)
+                .build();
+        try (CrawlJournal journal = new CrawlJournal(file)) {
+            engine.crawl("http://localhost:1080/search", 5, journal, keyValueStream -> { });
+        }
+
+        List<KeyValue> results = new ArrayList<>();
+        Consumer<Stream<KeyValue>> resultStreamConsumer = keyValueStream -> keyValueStream.forEach(results::add);
+
+        // when
+        JournaledCrawlReport report;
+        try (CrawlJournal journal = new CrawlJournal(file)) {
+            report = engine.crawl("http://localhost:1080/search", 5, journal, resultStreamConsumer);
+        }
+        engine.close();
+
+        // then
+        Assert.assertEquals(1, searches.get());
+        Assert.assertEquals(5, report.getPages());
+        Assert.assertEquals(4, report.getResumedPages());
+        Assert.assertEquals(0, report.getFetchedPages());
+        Assert.assertEquals(1, report.getFailedPages());
+        Assert.assertEquals(2, extractions.get("http://site4.com/some-uri-4").get());
+        Assert.assertEquals(1, extractions.get("http://site1.com/some-uri-1").get());
+        Assert.assertEquals(Collections.singletonList("KeyValue{library='http://cdn.com/jquery.js', occurrences=4}"),
+                strings(results));
+    }
+
+    @Test
+    public void testRecursiveCrawlFollowsLinksOnce() {
+        // given
+        Map<String, AtomicInteger> extractions = new ConcurrentHashMap<>();
+        CrawlerEngine engine = new CrawlerEngine(stubGoogle(), googlePageParser, scriptPageParser);
+
+        List<KeyValue> results = new ArrayList<>();
+        Consumer<Stream<KeyValue>> resultStreamConsumer = keyValueStream -> keyValueStream.forEach(results::add);
+
+        // when
+        RecursiveCrawlReport report = engine.crawlRecursive("http://localhost:1080/search", 1, new CrawlLimits(3, 1000),
+                stubLinkedPages(extractions), resultStreamConsumer);
+        engine.close();
+
+        // then
+        Assert.assertEquals(5 + 10 + 20, report.getPages());
+        Assert.assertEquals(3, report.getMaxDepthReached());
+        Assert.assertEquals(5, report.getHosts());
+        Assert.assertEquals(35, extractions.size());
+        extractions.forEach((url, count) -> Assert.assertEquals(url, 1, count.get()));
+        Assert.assertEquals(Collections.singletonList(new KeyValue("http://cdn.com/jquery.js", 35)), results);
+        Assert.assertEquals(35, results.get(0).getOccurrences());
+    }
+
+    @Test
+    public void testRecursiveCrawlStopsAtPageBudget() {
+        // given
+        Map<String, AtomicInteger> extractions = new ConcurrentHashMap<>();
+        CrawlerEngine engine = new CrawlerEngine(stubGoogle(), googlePageParser, scriptPageParser);
+
+        // when
+        RecursiveCrawlReport report = engine.crawlRecursive("http://localhost:1080/search", 5,
+                new CrawlLimits(10, 12, 4, 0.01), stubLinkedPages(extractions), keyValueStream -> {
+                });
+        engine.close();
+
+        // then
+        Assert.assertEquals(12, report.getPages());
+        Assert.assertEquals(12, extractions.size());
+        Assert.assertEquals(0, report.getFailedPages());
+    }
+
     @Test
     public void testOneOfThePagesDoesNotRespond() {
         // TODO: Work here
@@ -108,11 +521,63 @@ public class CrawlerEngineTest {
         when(downloadService.download("http://site5.com/some-uri-5")).thenReturn(page5);
     }
 
+    /**
+     * Every page links to two children, back to the first result and to itself.
+     */
+    private static LinkedPageExtractor stubLinkedPages(Map<String, AtomicInteger> extractions) {
+        return (url, ioExecutor, calcExecutor) -> CompletableFuture.supplyAsync(() -> {
+            extractions.computeIfAbsent(url, key -> new AtomicInteger()).incrementAndGet();
+            HtmlPageScripts scripts = new HtmlPageScripts(Arrays.asList("http://cdn.com/jquery.js", url + "/own.js"));
+            HtmlPageLinks links = new HtmlPageLinks(Arrays.asList(url + "/a", url + "/b", "http://site1.com/some-uri-1", url));
+            return new LinkedPage(scripts, links);
+        }, ioExecutor);
+    }
+
+    private static PageScriptsExtractor stubPages() {
+        return (url, ioExecutor, calcExecutor) -> CompletableFuture.supplyAsync(
+                () -> new HtmlPageScripts(Collections.singletonList("http://cdn.com/jquery.js")), ioExecutor);
+    }
+
+    private static PageDownloadService stubGoogle() {
+        return url -> {
+            Document document = Document.createShell(url);
+            for (int site = 1; site <= 5; site++) {
+                document.body().appendElement("div").addClass("kCrYT")
+                        .appendElement("a").attr("href", "http://site" + site + ".com/some-uri-" + site);
+            }
+            return document;
+        };
+    }
+
     private void givenGoogle404() {
-        when(googlePage.location()).thenReturn("http://localhost:1080/search");
         when(downloadService.download("http://localhost:1080/search")).thenThrow(new DownloadPageException("Google doesn't respond"));
     }
 
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * {@link KeyValue} equality ignores the occurrences, so results are compared by their string form.
+     */
+    private static List<String> strings(List<KeyValue> results) {
+        return results.stream().map(KeyValue::toString).collect(Collectors.toList());
+    }
+
+    private static boolean await(CountDownLatch latch) {
+        try {
+            return latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
     private Elements mockGooglePageElements() {
         Elements googlePageResults = new Elements();
         googlePageResults.add(new Element("a").attr("href", "http://site1.com/some-uri-1"));
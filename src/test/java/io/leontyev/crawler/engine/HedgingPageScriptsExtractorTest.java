@@ -0,0 +1,128 @@
+package io.leontyev.crawler.engine;
+
+import io.leontyev.crawler.downloader.DownloadPageException;
+import io.leontyev.crawler.downloader.PageDownloadService;
+import io.leontyev.crawler.parser.HtmlPageParser;
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+import org.jsoup.nodes.Document;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HedgingPageScriptsExtractorTest {
+
+    private static final long SLOW_MILLIS = 200;
+    private static final int PAGES_PER_CRAWL = 10;
+
+    private final ExecutorService ioExecutor = Executors.newCachedThreadPool();
+    private final ExecutorService calcExecutor = Executors.newSingleThreadExecutor();
+
+    private final HtmlPageParser<HtmlPageScripts, Document> scriptPageParser =
+            document -> new HtmlPageScripts(Collections.singletonList(document.location() + "/jquery.js"));
+
+    @After
+    public void tearDown() {
+        ioExecutor.shutdownNow();
+        calcExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testHedgingCutsTheTail() {
+        // given
+        PageScriptsExtractor plain = new DocumentPageScriptsExtractor(longTailDownloadService(), scriptPageParser);
+        HedgingPageScriptsExtractor hedging = new HedgingPageScriptsExtractor(
+                new DocumentPageScriptsExtractor(longTailDownloadService(), scriptPageParser), 0.95, 5, 0.2);
+
+        // when
+        long[] plainLatencies = crawlLatencies(plain, 40);
+        crawlLatencies(hedging, 3);
+        long[] hedgedLatencies = crawlLatencies(hedging, 40);
+        hedging.close();
+
+        // then
+        long plainP99 = LatencyRecorder.percentile(plainLatencies, 0.99);
+        long hedgedP50 = LatencyRecorder.percentile(hedgedLatencies, 0.5);
+        long hedgedP99 = LatencyRecorder.percentile(hedgedLatencies, 0.99);
+        Assert.assertTrue("Plain p99 " + plainP99 + " ms", plainP99 >= SLOW_MILLIS);
+        Assert.assertTrue("Hedged p99 " + hedgedP99 + " ms", hedgedP99 < SLOW_MILLIS);
+        Assert.assertTrue("Hedged p50 " + hedgedP50 + " ms", hedgedP50 < SLOW_MILLIS / 2);
+        Assert.assertTrue(hedging.getHedges() > 0);
+        Assert.assertTrue(hedging.getHedges() <= 0.2 * hedging.getRequests());
+        Assert.assertTrue(hedging.getHedgeWins() > 0);
+    }
+
+    @Test
+    public void testFailsOnlyWhenEveryRequestFailed() throws InterruptedException {
+        // given
+        AtomicInteger calls = new AtomicInteger();
+        PageScriptsExtractor failing = (url, io, calc) -> {
+            calls.incrementAndGet();
+            return CompletableFuture.failedFuture(new DownloadPageException("Connection refused"));
+        };
+        HedgingPageScriptsExtractor hedging = new HedgingPageScriptsExtractor(failing, 0.95, 5, 0.2);
+
+        // when
+        CompletableFuture<HtmlPageScripts> result = hedging.extract("http://site1.com/", ioExecutor, calcExecutor);
+        hedging.close();
+
+        // then
+        try {
+            result.get();
+            Assert.fail();
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof DownloadPageException);
+        }
+        Assert.assertEquals(1, calls.get());
+    }
+
+    /**
+     * Crawls of {@link #PAGES_PER_CRAWL} pages, one after another; a crawl takes as long as its slowest page.
+     */
+    private long[] crawlLatencies(PageScriptsExtractor extractor, int crawls) {
+        long[] latencies = new long[crawls];
+        for (int crawl = 0; crawl < crawls; crawl++) {
+            long start = System.nanoTime();
+            CompletableFuture<?>[] pages = new CompletableFuture<?>[PAGES_PER_CRAWL];
+            for (int page = 0; page < PAGES_PER_CRAWL; page++) {
+                pages[page] = extractor.extract("http://site" + page + ".com/crawl-" + crawl, ioExecutor, calcExecutor);
+            }
+            CompletableFuture.allOf(pages).join();
+            latencies[crawl] = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        }
+        return latencies;
+    }
+
+    /**
+     * Most downloads take 10 to 20 ms, one in about thirty stalls for {@link #SLOW_MILLIS}. Whether a download
+     * stalls depends on the URL and how often it was requested, so that both runs see the same stragglers and
+     * a repeated request is a fresh draw.
+     */
+    private static PageDownloadService longTailDownloadService() {
+        Map<String, AtomicInteger> attempts = new ConcurrentHashMap<>();
+        return url -> {
+            int attempt = attempts.computeIfAbsent(url, key -> new AtomicInteger()).getAndIncrement();
+            int draw = Math.floorMod((url + '#' + attempt).hashCode() * 0x9E3779B9, 1000);
+            sleep(draw < 33 ? SLOW_MILLIS : 10 + draw % 11);
+            return new Document(url);
+        };
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package io.leontyev.crawler.engine;
+
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+public class ScriptUrlAggregatorTest {
+
+    @Test
+    public void testTopResultsAreTheMostFrequentUrls() {
+        // given
+        ScriptUrlAggregator aggregator = new ScriptUrlAggregator();
+        Random random = new Random(3);
+        for (int page = 0; page < 1000; page++) {
+            List<String> scripts = new ArrayList<>();
+            for (int script = 0; script < 20; script++) {
+                scripts.add("http://cdn.com/lib-" + (int) Math.floor(Math.pow(5000, random.nextDouble())) + ".js");
+            }
+            aggregator.add(new HtmlPageScripts(scripts));
+        }
+
+        // when
+        List<KeyValue> top = aggregator.topResults(10).collect(Collectors.toList());
+        List<KeyValue> all = aggregator.topResults(Integer.MAX_VALUE / 2).collect(Collectors.toList());
+
+        // then
+        Assert.assertEquals(10, top.size());
+        List<Long> expected = all.stream().map(KeyValue::getOccurrences).sorted(Collections.reverseOrder())
+                .limit(10).collect(Collectors.toList());
+        Assert.assertEquals(expected, top.stream().map(KeyValue::getOccurrences).collect(Collectors.toList()));
+        Assert.assertEquals("http://cdn.com/lib-1.js", top.get(0).getLibrary());
+        Assert.assertEquals(0, aggregator.topResults(0).count());
+    }
+}
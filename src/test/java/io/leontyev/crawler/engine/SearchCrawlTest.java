@@ -0,0 +1,226 @@
+package io.leontyev.crawler.engine;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.leontyev.crawler.downloader.JsoupPageDownloadService;
+import io.leontyev.crawler.downloader.PageDownloadService;
+import io.leontyev.crawler.parser.GoogleHtmlPageParser;
+import io.leontyev.crawler.parser.JavaScriptLibrariesHtmlPageParser;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class SearchCrawlTest {
+
+    private static final int LINKS_PER_SEARCH_PAGE = 12;
+
+    private final ExecutorService serverExecutor = Executors.newCachedThreadPool();
+    private final AtomicInteger activeSearches = new AtomicInteger();
+    private final AtomicInteger peakActiveSearches = new AtomicInteger();
+    private final Set<String> requestedPages = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger pageRequests = new AtomicInteger();
+    private HttpServer server;
+    private volatile long searchLatencyMillis;
+    private volatile long laterSearchLatencyMillis;
+    private volatile long slowPageLatencyMillis;
+    private volatile int firstFailingSite = Integer.MAX_VALUE;
+
+    @Before
+    public void startServer() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        server.createContext("/search", this::search);
+        server.createContext("/site", this::page);
+        server.setExecutor(serverExecutor);
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.stop(0);
+        serverExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testSearchPagesAreFetchedAtOnce() {
+        // given
+        searchLatencyMillis = 500;
+
+        // when
+        List<KeyValue> results = new ArrayList<>();
+        SearchCrawlReport report = crawl(new SearchLimits(5), results);
+
+        // then
+        Assert.assertEquals(SearchCrawlReport.Stop.EXHAUSTED, report.getStop());
+        Assert.assertEquals(5, report.getSearchPages());
+        Assert.assertEquals(52, report.getLinks());
+        Assert.assertEquals(52, report.getPages());
+        Assert.assertEquals(52, pageRequests.get());
+        Assert.assertEquals(52, requestedPages.size());
+        Assert.assertTrue("Peak searches " + peakActiveSearches.get(), peakActiveSearches.get() >= 3);
+        Assert.assertTrue("Took " + report.getWallTimeMillis(), report.getWallTimeMillis() < 5 * 500);
+        Assert.assertEquals(new KeyValue("http://cdn.com/jquery.js", 52), results.get(0));
+    }
+
+    @Test
+    public void testStopsAtTargetLinks() {
+        // when
+        SearchCrawlReport report = crawl(new SearchLimits(5, 15, 0), new ArrayList<>());
+
+        // then
+        Assert.assertEquals(SearchCrawlReport.Stop.TARGET_LINKS, report.getStop());
+        Assert.assertEquals(15, report.getLinks());
+        Assert.assertEquals(15, report.getPages());
+        Assert.assertEquals(15, pageRequests.get());
+    }
+
+    @Test
+    public void testTargetLinksDoNotWaitForLaterSearchPages() {
+        // given
+        laterSearchLatencyMillis = 3000;
+
+        // when
+        SearchCrawlReport report = crawl(new SearchLimits(5, 10, 0), new ArrayList<>());
+
+        // then
+        Assert.assertEquals(SearchCrawlReport.Stop.TARGET_LINKS, report.getStop());
+        Assert.assertEquals(10, report.getLinks());
+        Assert.assertEquals(10, report.getPages());
+        Assert.assertTrue("Took " + report.getWallTimeMillis(), report.getWallTimeMillis() < 1000);
+    }
+
+    @Test
+    public void testStopsOnStableRanking() {
+        // given
+        slowPageLatencyMillis = 3000;
+
+        // when
+        List<KeyValue> results = new ArrayList<>();
+        SearchCrawlReport report = crawl(new SearchLimits(5, Integer.MAX_VALUE, 5), results);
+
+        // then
+        Assert.assertEquals(SearchCrawlReport.Stop.STABLE_RANKING, report.getStop());
+        Assert.assertTrue("Took " + report.getWallTimeMillis(), report.getWallTimeMillis() < 2000);
+        Assert.assertTrue(report.getPages() < 52);
+        Assert.assertEquals(new KeyValue("http://cdn.com/jquery.js", report.getPages()), results.get(0));
+    }
+
+    @Test
+    public void testFailedPagesDoNotCountTowardsStableRanking() {
+        // given
+        firstFailingSite = 1;
+
+        // when
+        List<KeyValue> results = new ArrayList<>();
+        SearchCrawlReport report = crawl(new SearchLimits(1, Integer.MAX_VALUE, 3), results);
+
+        // then
+        Assert.assertEquals(SearchCrawlReport.Stop.EXHAUSTED, report.getStop());
+        Assert.assertEquals(12, report.getPages());
+        Assert.assertEquals("KeyValue{library='http://cdn.com/jquery.js', occurrences=1}", results.get(0).toString());
+    }
+
+    @Test
+    public void testPageUrls() {
+        Assert.assertEquals("http://host/search?q=js", SearchPages.GOOGLE.url("http://host/search?q=js", 0));
+        Assert.assertEquals("http://host/search?q=js&start=20", SearchPages.GOOGLE.url("http://host/search?q=js", 2));
+        Assert.assertEquals("http://host/search?page=3", new SearchPages("page", 1).url("http://host/search", 3));
+    }
+
+    @Test
+    public void testPagingOfSearchUrls() {
+        Assert.assertSame(SearchPages.GOOGLE, SearchPages.forUrl("http://www.google.com/search?&q="));
+        Assert.assertSame(SearchPages.GOOGLE, SearchPages.forUrl("https://www.google.co.uk/search?q="));
+        try {
+            SearchPages.forUrl("https://www.bing.com/search?q=");
+            Assert.fail("Bing paged as Google");
+        } catch (IllegalArgumentException e) {
+            Assert.assertEquals("Unknown search paging: https://www.bing.com/search?q=", e.getMessage());
+        }
+    }
+
+    private SearchCrawlReport crawl(SearchLimits limits, List<KeyValue> results) {
+        PageDownloadService downloadService = new JsoupPageDownloadService(5000);
+        try (CrawlerEngine engine = new CrawlerEngine(downloadService, new GoogleHtmlPageParser(),
+                new JavaScriptLibrariesHtmlPageParser(), Executors.newFixedThreadPool(64),
+                Executors.newFixedThreadPool(2))) {
+            return engine.crawlSearchPages(baseUrl() + "/search?q=js", 5, SearchPages.GOOGLE, limits,
+                    keyValueStream -> keyValueStream.forEach(results::add));
+        }
+    }
+
+    /**
+     * Search page {@code n} links to sites {@code 10n} to {@code 10n + 11}, so consecutive pages share two;
+     * pages after the first take {@code laterSearchLatencyMillis} more.
+     */
+    private void search(HttpExchange exchange) throws IOException {
+        String query = exchange.getRequestURI().getRawQuery();
+        int start = query.contains("start=") ? Integer.parseInt(query.substring(query.indexOf("start=") + 6)) : 0;
+        peakActiveSearches.accumulateAndGet(activeSearches.incrementAndGet(), Math::max);
+        try {
+            sleep(searchLatencyMillis + (start > 0 ? laterSearchLatencyMillis : 0));
+        } finally {
+            activeSearches.decrementAndGet();
+        }
+        StringBuilder search = new StringBuilder("<html><body>");
+        for (int site = start; site < start + LINKS_PER_SEARCH_PAGE; site++) {
+            search.append("<div class=\"kCrYT\"><a href=\"").append(baseUrl()).append("/site/").append(site)
+                    .append("\">result</a></div>");
+        }
+        respond(exchange, search.append("</body></html>").toString());
+    }
+
+    /**
+     * Every site has jQuery and every fourth one React as well; odd sites take {@code slowPageLatencyMillis}.
+     * Sites from {@code firstFailingSite} on answer {@code 500} after 100 ms.
+     */
+    private void page(HttpExchange exchange) throws IOException {
+        pageRequests.incrementAndGet();
+        String path = exchange.getRequestURI().getPath();
+        requestedPages.add(path);
+        int site = Integer.parseInt(path.substring(path.lastIndexOf('/') + 1));
+        if (site >= firstFailingSite) {
+            sleep(100);
+            exchange.sendResponseHeaders(500, -1);
+            exchange.close();
+            return;
+        }
+        sleep(site % 2 == 1 ? slowPageLatencyMillis : 10);
+        respond(exchange, "<html><head><script src=\"http://cdn.com/jquery.js\"></script>"
+                + (site % 4 == 0 ? "<script src=\"http://cdn.com/react.js\"></script>" : "") + "</head></html>");
+    }
+
+    private String baseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            TimeUnit.MILLISECONDS.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
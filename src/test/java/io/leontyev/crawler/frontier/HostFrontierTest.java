@@ -0,0 +1,116 @@
+package io.leontyev.crawler.frontier;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class HostFrontierTest {
+
+    @Test
+    public void testHostsTakeTurns() {
+        // given
+        HostFrontier frontier = new HostFrontier();
+        for (int i = 0; i < 3; i++) {
+            frontier.offer(new FrontierLink("http://big.com/" + i, 1));
+        }
+        frontier.offer(new FrontierLink("http://small.com/0", 1));
+        frontier.offer(new FrontierLink("https://other.com:8080?q=0", 2));
+
+        // when
+        List<String> polled = new ArrayList<>();
+        for (FrontierLink link = frontier.poll(); link != null; link = frontier.poll()) {
+            polled.add(link.getUrl());
+        }
+
+        // then
+        Assert.assertEquals(Arrays.asList("http://big.com/0", "http://small.com/0", "https://other.com:8080?q=0",
+                "http://big.com/1", "http://big.com/2"), polled);
+        Assert.assertTrue(frontier.isEmpty());
+        Assert.assertEquals(3, frontier.hosts());
+    }
+
+    @Test
+    public void testConcurrentOffersAndPollsLoseNothing() throws InterruptedException {
+        // given
+        HostFrontier frontier = new HostFrontier();
+        int producers = 4;
+        int linksPerProducer = 20_000;
+        ExecutorService executor = Executors.newFixedThreadPool(producers * 2);
+        CountDownLatch producersDone = new CountDownLatch(producers);
+        Set<String> polled = ConcurrentHashMap.newKeySet();
+        AtomicInteger duplicates = new AtomicInteger();
+
+        // when
+        for (int producer = 0; producer < producers; producer++) {
+            int id = producer;
+            executor.execute(() -> {
+                for (int i = 0; i < linksPerProducer; i++) {
+                    frontier.offer(new FrontierLink("http://host" + (i % 37) + ".com/" + id + "/" + i, 1));
+                }
+                producersDone.countDown();
+            });
+        }
+        for (int consumer = 0; consumer < producers; consumer++) {
+            executor.execute(() -> {
+                while (producersDone.getCount() > 0 || !frontier.isEmpty()) {
+                    FrontierLink link = frontier.poll();
+                    if (link != null && !polled.add(link.getUrl())) {
+                        duplicates.incrementAndGet();
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+
+        // then
+        Assert.assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        Assert.assertEquals(0, duplicates.get());
+        Assert.assertEquals(producers * linksPerProducer, polled.size());
+        Assert.assertNull(frontier.poll());
+    }
+
+    @Test
+    public void testSeenUrls() throws InterruptedException {
+        // given
+        HashedUrlSet hashed = new HashedUrlSet(100_000);
+        BloomUrlFilter bloom = new BloomUrlFilter(100_000, 0.01);
+        AtomicInteger hashedAdded = new AtomicInteger();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+
+        // when
+        for (int thread = 0; thread < 4; thread++) {
+            executor.execute(() -> {
+                for (int i = 0; i < 100_000; i++) {
+                    if (hashed.add("http://site.com/page/" + i)) {
+                        hashedAdded.incrementAndGet();
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+        int falsePositives = 0;
+        for (int i = 0; i < 100_000; i++) {
+            if (!bloom.add("http://site.com/page/" + i)) {
+                falsePositives++;
+            }
+        }
+
+        // then
+        Assert.assertEquals(100_000, hashedAdded.get());
+        Assert.assertEquals(100_000, hashed.size());
+        Assert.assertFalse(hashed.add("http://site.com/page/7"));
+        Assert.assertFalse(bloom.add("http://site.com/page/7"));
+        Assert.assertTrue("False positives " + falsePositives, falsePositives < 100_000 * 0.01);
+    }
+}
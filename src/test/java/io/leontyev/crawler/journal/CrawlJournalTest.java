@@ -0,0 +1,137 @@
+package io.leontyev.crawler.journal;
+
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+public class CrawlJournalTest {
+
+    private static final long NEVER = TimeUnit.HOURS.toMillis(1);
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReplaysFrontierAndCompletedPages() {
+        // given
+        Path file = folder.getRoot().toPath().resolve("crawl.journal");
+        try (CrawlJournal journal = new CrawlJournal(file)) {
+            journal.frontier(Arrays.asList("http://site1.com/", "http://site2.com/", "http://site3.com/"));
+            journal.completed("http://site1.com/", scripts("http://cdn.com/jquery.js", "http://site1.com/app.js"));
+            journal.completed("http://site3.com/", scripts());
+        }
+
+        // when
+        try (CrawlJournal journal = new CrawlJournal(file)) {
+
+            // then
+            Assert.assertEquals(Arrays.asList("http://site1.com/", "http://site2.com/", "http://site3.com/"),
+                    journal.getFrontier());
+            Assert.assertEquals(2, journal.getReplayedPages());
+            Assert.assertEquals(Arrays.asList("http://cdn.com/jquery.js", "http://site1.com/app.js"),
+                    journal.getCompleted("http://site1.com/").getScriptUrls());
+            Assert.assertEquals(Collections.emptyList(), journal.getCompleted("http://site3.com/").getScriptUrls());
+            Assert.assertNull(journal.getCompleted("http://site2.com/"));
+        }
+    }
+
+    @Test
+    public void testKilledRunKeepsWhatWasSynced() {
+        // given
+        Path file = folder.getRoot().toPath().resolve("crawl.journal");
+        CrawlJournal killed = new CrawlJournal(file, NEVER, 1024 * 1024);
+        killed.frontier(Arrays.asList("http://site1.com/", "http://site2.com/"));
+        killed.completed("http://site1.com/", scripts("http://cdn.com/jquery.js"));
+        killed.sync();
+        killed.completed("http://site2.com/", scripts("http://cdn.com/jquery.js"));
+
+        // when
+        try (CrawlJournal journal = new CrawlJournal(file, NEVER, 1024 * 1024)) {
+
+            // then
+            Assert.assertEquals(2, journal.getFrontier().size());
+            Assert.assertNotNull(journal.getCompleted("http://site1.com/"));
+            Assert.assertNull(journal.getCompleted("http://site2.com/"));
+        } finally {
+            killed.close();
+        }
+    }
+
+    @Test
+    public void testTornRecordIsDropped() throws IOException {
+        // given
+        Path file = folder.getRoot().toPath().resolve("crawl.journal");
+        try (CrawlJournal journal = new CrawlJournal(file)) {
+            journal.completed("http://site1.com/", scripts("http://cdn.com/jquery.js"));
+            journal.completed("http://site2.com/", scripts("http://cdn.com/react.js"));
+        }
+        long intact = Files.size(file);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.allocate(12).putInt(0, 200).putInt(4, 42));
+        }
+
+        // when
+        try (CrawlJournal journal = new CrawlJournal(file)) {
+            journal.completed("http://site3.com/", scripts("http://cdn.com/vue.js"));
+        }
+
+        // then
+        try (CrawlJournal journal = new CrawlJournal(file)) {
+            Assert.assertEquals(3, journal.getReplayedPages());
+            Assert.assertEquals(Collections.singletonList("http://cdn.com/vue.js"),
+                    journal.getCompleted("http://site3.com/").getScriptUrls());
+        }
+        Assert.assertTrue(Files.size(file) > intact);
+    }
+
+    @Test
+    public void testOneSyncCoversABatchOfPages() throws InterruptedException {
+        // given
+        Path file = folder.getRoot().toPath().resolve("crawl.journal");
+        try (CrawlJournal journal = new CrawlJournal(file, 20, 1024 * 1024)) {
+
+            // when
+            for (int page = 0; page < 1000; page++) {
+                journal.completed("http://site" + page + ".com/", scripts("http://cdn.com/jquery.js"));
+                if (page % 100 == 0) {
+                    TimeUnit.MILLISECONDS.sleep(30);
+                }
+            }
+            journal.sync();
+
+            // then
+            Assert.assertTrue("Syncs " + journal.getSyncs(), journal.getSyncs() >= 2 && journal.getSyncs() < 100);
+            Assert.assertEquals(1000, journal.getCompletedPages());
+        }
+    }
+
+    @Test
+    public void testDeleteRemovesJournal() {
+        // given
+        Path file = folder.getRoot().toPath().resolve("crawl.journal");
+        CrawlJournal journal = new CrawlJournal(file);
+        journal.frontier(Collections.singletonList("http://site1.com/"));
+
+        // when
+        journal.delete();
+
+        // then
+        Assert.assertFalse(Files.exists(file));
+    }
+
+    private static HtmlPageScripts scripts(String... scriptUrls) {
+        return new HtmlPageScripts(Arrays.asList(scriptUrls));
+    }
+}
@@ -0,0 +1,101 @@
+package io.leontyev.crawler.library;
+
+import io.leontyev.crawler.engine.KeyValue;
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class LibraryNormalizerTest {
+
+    private final LibraryNormalizer normalizer = new LibraryNormalizer();
+
+    @Test
+    public void testCopiesOfTheSameLibraryShareTheName() {
+        // given
+        List<String> scriptUrls = Arrays.asList(
+                "https://code.jquery.com/jquery-3.5.1.min.js",
+                "https://cdnjs.cloudflare.com/ajax/libs/jquery/3.5.1/jquery.min.js",
+                "https://ajax.googleapis.com/ajax/libs/jquery/3.5.1/jquery.min.js",
+                "https://cdn.jsdelivr.net/npm/jquery@3.5.1/dist/jquery.slim.min.js",
+                "https://unpkg.com/jquery@3.5.1/dist/jquery.js",
+                "https://site.com/js/jquery.min.js?v=3",
+                "https://www.blog.com/wp-includes/js/jquery/jquery.js?ver=1.12.4-wp",
+                "https://site.com/static/jquery.5f3a9c21.js",
+                "https://site.com/JS/jQuery.js#main");
+
+        // when
+        List<String> names = scriptUrls.stream()
+                .map(url -> normalizer.normalize(url).getName())
+                .collect(Collectors.toList());
+
+        // then
+        names.forEach(name -> Assert.assertEquals("jquery", name));
+    }
+
+    @Test
+    public void testVersions() {
+        Assert.assertEquals(new LibraryIdentity("jquery", "3.5.1"), normalizer.normalize("https://code.jquery.com/jquery-3.5.1.min.js"));
+        Assert.assertEquals(new LibraryIdentity("jquery", "3.5.1"), normalizer.normalize("https://cdnjs.cloudflare.com/ajax/libs/jquery/3.5.1/jquery.min.js"));
+        Assert.assertEquals(new LibraryIdentity("jquery", "3"), normalizer.normalize("https://site.com/js/jquery.min.js?v=3"));
+        Assert.assertEquals(new LibraryIdentity("jquery", "1.12.4-wp"), normalizer.normalize("https://blog.com/wp-includes/js/jquery/jquery.js?ver=1.12.4-wp"));
+        Assert.assertEquals(new LibraryIdentity("bootstrap", "4.5.2"), normalizer.normalize("https://stackpath.bootstrapcdn.com/bootstrap/4.5.2/js/bootstrap.bundle.min.js"));
+        Assert.assertEquals(new LibraryIdentity("jquery-ui", "1.12.1"), normalizer.normalize("https://code.jquery.com/ui/1.12.1/jquery-ui.min.js"));
+        Assert.assertEquals(new LibraryIdentity("@popperjs/core", "2.4.4"), normalizer.normalize("https://unpkg.com/@popperjs/core@2.4.4/dist/umd/popper.min.js"));
+        Assert.assertEquals(new LibraryIdentity("chart", "2.9.3"), normalizer.normalize("https://cdn.jsdelivr.net/npm/chart.js@2.9.3/dist/Chart.min.js"));
+        Assert.assertEquals(new LibraryIdentity("d3", "5"), normalizer.normalize("https://d3js.org/d3.v5.min.js"));
+        Assert.assertEquals(new LibraryIdentity("react", null), normalizer.normalize("https://site.com/react.production.min.js"));
+    }
+
+    @Test
+    public void testSiteBundlesKeepTheirHost() {
+        Assert.assertEquals("site.com/static/js/main", normalizer.normalize("https://site.com/static/js/main.8e0c1a4d.js").getName());
+        Assert.assertEquals("site.com/static/js/chunk-vendors", normalizer.normalize("https://www.site.com/static/js/chunk-vendors.8e0c1a4d.js").getName());
+        Assert.assertEquals("googletagmanager.com/gtag/js", normalizer.normalize("https://www.googletagmanager.com/gtag/js?id=UA-1").getName());
+        Assert.assertEquals("connect.facebook.net/en_us/sdk", normalizer.normalize("https://connect.facebook.net/en_US/sdk.js").getName());
+    }
+
+    @Test
+    public void testNamesWithDigitsAreNotContentHashes() {
+        Assert.assertEquals(new LibraryIdentity("html5shiv", "3.7.3"), normalizer.normalize("https://cdnjs.cloudflare.com/ajax/libs/html5shiv/3.7.3/html5shiv.min.js"));
+        Assert.assertEquals("html5shiv", normalizer.normalize("https://site.com/js/html5shiv.js").getName());
+        Assert.assertEquals("site.com/static/js/main", normalizer.normalize("https://site.com/static/js/main.3kd9x2pq.js").getName());
+    }
+
+    @Test
+    public void testAggregatorCountsLibraries() {
+        // given
+        LibraryInterner interner = new LibraryInterner(normalizer);
+        LibraryAggregator aggregator = new LibraryAggregator(interner);
+
+        // when
+        aggregator.add(new HtmlPageScripts(Arrays.asList("https://code.jquery.com/jquery-3.5.1.min.js", "https://site1.com/react.js")));
+        aggregator.add(new HtmlPageScripts(Arrays.asList("https://site2.com/js/jquery.min.js?v=3", "https://site2.com/app.js")));
+        aggregator.add(new HtmlPageScripts(Arrays.asList("https://cdnjs.cloudflare.com/ajax/libs/jquery/3.5.1/jquery.min.js", "https://unpkg.com/react@16.13.1/umd/react.production.min.js")));
+        aggregator.add(new HtmlPageScripts(Arrays.asList("https://site2.com/js/jquery.min.js?v=3", "https://cdn.com/vue.js")));
+
+        // then
+        Assert.assertEquals(Arrays.asList(new KeyValue("jquery", 4), new KeyValue("react", 2)),
+                aggregator.topResults(2).collect(Collectors.toList()));
+        Assert.assertEquals(4L, aggregator.topResults(5).count());
+        Assert.assertEquals(4, interner.size());
+    }
+
+    @Test
+    public void testVersionedKeys() {
+        // given
+        LibraryAggregator aggregator = new LibraryAggregator(new LibraryInterner(normalizer, true));
+
+        // when
+        aggregator.add(new HtmlPageScripts(Arrays.asList("https://code.jquery.com/jquery-3.5.1.min.js", "https://site.com/jquery.min.js?v=3")));
+        aggregator.add(new HtmlPageScripts(Arrays.asList("https://cdnjs.cloudflare.com/ajax/libs/jquery/3.5.1/jquery.min.js")));
+
+        // then
+        List<KeyValue> results = aggregator.topResults(5).collect(Collectors.toList());
+        Assert.assertEquals(Arrays.asList(new KeyValue("jquery@3.5.1", 2), new KeyValue("jquery@3", 1)), results);
+        Assert.assertEquals(2, results.get(0).getOccurrences());
+    }
+}
@@ -0,0 +1,182 @@
+package io.leontyev.crawler.library;
+
+import io.leontyev.crawler.engine.KeyValue;
+import io.leontyev.crawler.engine.ScriptsAggregator;
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class PopularityTrackerTest {
+
+    private static final String JQUERY = "https://code.jquery.com/jquery-3.5.1.min.js";
+    private static final String REACT = "https://unpkg.com/react@16.13.1/umd/react.production.min.js";
+    private static final String LODASH = "https://cdn.jsdelivr.net/npm/lodash@4.17.15/lodash.min.js";
+
+    private final LibraryInterner interner = new LibraryInterner(new LibraryNormalizer());
+    private final FakeClock clock = new FakeClock(Instant.parse("2020-06-01T10:59:30Z").toEpochMilli());
+    private final PopularityTracker tracker = new PopularityTracker(interner, 1024, 4, clock);
+
+    @Test
+    public void testSlidingWindowsForgetOldBuckets() {
+        // given
+        record(JQUERY);
+        clock.advance(TimeUnit.SECONDS.toMillis(30));
+        record(REACT, LODASH);
+        record(REACT);
+
+        // when
+        clock.advance(TimeUnit.SECONDS.toMillis(40));
+
+        // then
+        Assert.assertEquals(Arrays.asList(result(REACT, 2), result(LODASH, 1)),
+                list(tracker.topSliding(PopularityWindow.MINUTE, 5)));
+        Assert.assertEquals(Arrays.asList(result(REACT, 2), result(JQUERY, 1), result(LODASH, 1)),
+                list(tracker.topSliding(PopularityWindow.HOUR, 5)));
+        clock.advance(TimeUnit.HOURS.toMillis(1));
+        Assert.assertEquals(Collections.emptyList(), list(tracker.topSliding(PopularityWindow.HOUR, 5)));
+        Assert.assertEquals(3, list(tracker.topSliding(PopularityWindow.DAY, 5)).size());
+    }
+
+    @Test
+    public void testTumblingWindowsStartWithTheirPeriod() {
+        // given
+        record(JQUERY);
+        record(JQUERY);
+
+        // when
+        clock.advance(TimeUnit.SECONDS.toMillis(40));
+        record(REACT);
+
+        // then
+        Assert.assertEquals(Collections.singletonList(result(REACT, 1)),
+                list(tracker.topTumbling(PopularityWindow.HOUR, 5)));
+        Assert.assertEquals(Arrays.asList(result(JQUERY, 2), result(REACT, 1)),
+                list(tracker.topSliding(PopularityWindow.HOUR, 5)));
+        Assert.assertEquals(Arrays.asList(result(JQUERY, 2), result(REACT, 1)),
+                list(tracker.topTumbling(PopularityWindow.DAY, 5)));
+    }
+
+    @Test
+    public void testConcurrentRecordsAreAllCounted() throws InterruptedException {
+        // given
+        int[] ids = {interner.intern(JQUERY), interner.intern(REACT), interner.intern(JQUERY)};
+        int threads = 8;
+        int pagesPerThread = 20_000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+
+        // when
+        for (int thread = 0; thread < threads; thread++) {
+            executor.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                for (int page = 0; page < pagesPerThread; page++) {
+                    tracker.record(ids);
+                }
+            });
+        }
+        start.countDown();
+        executor.shutdown();
+        Assert.assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        // then
+        List<String> expected = Arrays.asList(result(JQUERY, 2L * threads * pagesPerThread),
+                result(REACT, (long) threads * pagesPerThread));
+        Assert.assertEquals(expected, list(tracker.topSliding(PopularityWindow.MINUTE, 5)));
+        clock.advance(TimeUnit.MINUTES.toMillis(3));
+        record(LODASH);
+        Assert.assertEquals(expected, list(tracker.topSliding(PopularityWindow.HOUR, 2)));
+    }
+
+    @Test
+    public void testLibrariesPastTheBudgetAreUntracked() {
+        // given
+        PopularityTracker small = new PopularityTracker(interner, 2, 1, clock);
+
+        // when
+        small.record(new int[]{interner.intern(JQUERY), interner.intern(REACT), interner.intern(LODASH)});
+
+        // then
+        Assert.assertEquals(Arrays.asList(result(JQUERY, 1), result(REACT, 1)),
+                list(small.topSliding(PopularityWindow.DAY, 5)));
+        Assert.assertEquals(1, small.getUntracked());
+    }
+
+    @Test
+    public void testAggregatorsFeedTheTracker() {
+        // given
+        Supplier<ScriptsAggregator> factory = LibraryAggregator.tracking(tracker);
+
+        // when
+        ScriptsAggregator firstCrawl = factory.get();
+        firstCrawl.add(new HtmlPageScripts(Arrays.asList(JQUERY, REACT)));
+        ScriptsAggregator secondCrawl = factory.get();
+        secondCrawl.add(new HtmlPageScripts(Collections.singletonList(JQUERY)));
+
+        // then
+        Assert.assertEquals(Collections.singletonList(result(JQUERY, 1)), list(secondCrawl.topResults(5)));
+        Assert.assertEquals(Arrays.asList(result(JQUERY, 2), result(REACT, 1)),
+                list(tracker.topSliding(PopularityWindow.MINUTE, 5)));
+    }
+
+    private void record(String... scriptUrls) {
+        tracker.record(Arrays.stream(scriptUrls).mapToInt(interner::intern).toArray());
+    }
+
+    /**
+     * {@link KeyValue} equality ignores the occurrences, so results are compared by their string form.
+     */
+    private String result(String scriptUrl, long occurrences) {
+        return new KeyValue(interner.key(interner.intern(scriptUrl)), occurrences).toString();
+    }
+
+    private static List<String> list(Stream<KeyValue> results) {
+        return results.map(KeyValue::toString).collect(Collectors.toList());
+    }
+
+    private static class FakeClock extends Clock {
+
+        private volatile long millis;
+
+        FakeClock(long millis) {
+            this.millis = millis;
+        }
+
+        void advance(long delta) {
+            millis += delta;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+}
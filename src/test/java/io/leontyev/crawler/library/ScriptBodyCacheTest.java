@@ -0,0 +1,250 @@
+package io.leontyev.crawler.library;
+
+import io.leontyev.crawler.downloader.DownloadPageException;
+import io.leontyev.crawler.engine.CrawlerEngine;
+import io.leontyev.crawler.engine.KeyValue;
+import io.leontyev.crawler.engine.PageScriptsExtractor;
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class ScriptBodyCacheTest {
+
+    private static final String JQUERY = "/*! jQuery v3.5.1 | (c) JS Foundation and other contributors */\n!function(e,t){}";
+    private static final String LODASH = ";(function(){var undefined;var VERSION='4.17.20';}.call(this));";
+
+    private final StubScriptSource source = new StubScriptSource();
+
+    @Test
+    public void testBanners() {
+        Assert.assertEquals(new LibraryIdentity("jquery", "3.5.1"), ScriptBodyCache.banner(JQUERY));
+        Assert.assertEquals(new LibraryIdentity("react", "16.13.1"),
+                ScriptBodyCache.banner("/** @license React v16.13.1\n * react.production.min.js"));
+        Assert.assertEquals(new LibraryIdentity("bootstrap", "4.5.0"),
+                ScriptBodyCache.banner("/*!\n  * Bootstrap v4.5.0 (https://getbootstrap.com/)"));
+        Assert.assertEquals(new LibraryIdentity("vue", "2.6.12"),
+                ScriptBodyCache.banner("/*!\n * Vue.js v2.6.12\n * (c) 2014-2020 Evan You"));
+        Assert.assertEquals(new LibraryIdentity("jquery-ui", "1.12.1"),
+                ScriptBodyCache.banner("/*! jQuery UI - v1.12.1 - 2016-09-14"));
+        Assert.assertEquals(new LibraryIdentity("underscore", "1.13.1"),
+                ScriptBodyCache.banner("//     Underscore.js 1.13.1\n//     https://underscorejs.org"));
+        Assert.assertNull(ScriptBodyCache.banner("/*! For license information please see app.js.LICENSE.txt */"));
+        Assert.assertNull(ScriptBodyCache.banner("var jQuery = 'v3.5.1';"));
+    }
+
+    @Test
+    public void testRenamedCopyIsIdentifiedByItsHash() {
+        // given
+        ScriptBodyCache cache = newCache(100);
+        source.put("https://cdnjs.cloudflare.com/ajax/libs/lodash.js/4.17.20/lodash.min.js", LODASH);
+        source.put("https://shop.com/static/js/vendor.3f2a9c81.js", LODASH);
+        source.put("https://blog.com/assets/app.js", "console.log('blog');");
+        cache.fingerprint("https://cdnjs.cloudflare.com/ajax/libs/lodash.js/4.17.20/lodash.min.js", Runnable::run).join();
+        cache.fingerprint("https://blog.com/assets/app.js", Runnable::run).join();
+
+        // when
+        ScriptFingerprint renamed = cache.fingerprint("https://shop.com/static/js/vendor.3f2a9c81.js", Runnable::run).join();
+
+        // then
+        Assert.assertEquals(new LibraryIdentity("lodash", "4.17.20"), renamed.getIdentity());
+        Assert.assertEquals(ScriptFingerprint.Source.HASH, renamed.getSource());
+        Assert.assertEquals(64, renamed.getSha256().length());
+        Assert.assertEquals("blog.com/assets/app", cache.getIdentity("https://blog.com/assets/app.js").getName());
+        Assert.assertEquals(1, cache.getStats().getHashes());
+        Assert.assertEquals(1, cache.getStats().getIdentifiedByHash());
+    }
+
+    @Test
+    public void testSelfHostedCopyIsIdentifiedByItsBanner() {
+        // given
+        ScriptBodyCache cache = newCache(100);
+        source.put("https://site.com/static/js/lib.js", JQUERY);
+
+        // when
+        ScriptFingerprint fingerprint = cache.fingerprint("https://site.com/static/js/lib.js", Runnable::run).join();
+
+        // then
+        Assert.assertEquals(new LibraryIdentity("jquery", "3.5.1"), fingerprint.getIdentity());
+        Assert.assertEquals(ScriptFingerprint.Source.BANNER, fingerprint.getSource());
+        Assert.assertEquals(JQUERY.length(), fingerprint.getBytes());
+    }
+
+    @Test
+    public void testEveryScriptIsFetchedOnce() throws InterruptedException {
+        // given
+        ScriptBodyCache cache = newCache(100);
+        source.put("https://site.com/static/js/lib.js", JQUERY);
+        source.block();
+        ExecutorService ioExecutor = Executors.newFixedThreadPool(4);
+
+        // when
+        List<CompletableFuture<ScriptFingerprint>> fingerprints = IntStream.range(0, 8)
+                .mapToObj(i -> cache.fingerprint("https://site.com/static/js/lib.js", ioExecutor))
+                .collect(Collectors.toList());
+        source.release();
+        fingerprints.forEach(CompletableFuture::join);
+        cache.fingerprint("https://site.com/static/js/lib.js", ioExecutor).join();
+        ioExecutor.shutdown();
+
+        // then
+        ScriptCacheStats stats = cache.getStats();
+        Assert.assertEquals(1, source.opened.get());
+        Assert.assertEquals(9, stats.getLookups());
+        Assert.assertEquals(1, stats.getFetches());
+        Assert.assertEquals(8, stats.getSavedFetches());
+        Assert.assertEquals(8L * JQUERY.length(), stats.getSavedBytes());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedUrlIsEvicted() {
+        // given
+        ScriptBodyCache cache = newCache(2);
+        source.put("https://site1.com/a.js", "a");
+        source.put("https://site2.com/b.js", "b");
+        source.put("https://site3.com/c.js", "c");
+        cache.fingerprint("https://site1.com/a.js", Runnable::run).join();
+        cache.fingerprint("https://site2.com/b.js", Runnable::run).join();
+        cache.fingerprint("https://site1.com/a.js", Runnable::run).join();
+
+        // when
+        cache.fingerprint("https://site3.com/c.js", Runnable::run).join();
+
+        // then
+        Assert.assertEquals(2, cache.getStats().getUrls());
+        Assert.assertNotNull(cache.getIdentity("https://site1.com/a.js"));
+        Assert.assertNull(cache.getIdentity("https://site2.com/b.js"));
+    }
+
+    @Test
+    public void testFailedFetchIsRetried() {
+        // given
+        ScriptBodyCache cache = newCache(100);
+
+        // when
+        ScriptFingerprint missing = cache.fingerprint("https://site.com/missing.js", Runnable::run).join();
+        source.put("https://site.com/missing.js", JQUERY);
+        ScriptFingerprint found = cache.fingerprint("https://site.com/missing.js", Runnable::run).join();
+
+        // then
+        Assert.assertNull(missing);
+        Assert.assertEquals("jquery", found.getIdentity().getName());
+        Assert.assertEquals(1, cache.getStats().getFailures());
+        Assert.assertEquals(2, cache.getStats().getFetches());
+    }
+
+    @Test
+    public void testInternerRemembersOnlyFingerprintedNames() {
+        // given
+        ScriptBodyCache cache = newCache(100);
+        LibraryInterner interner = new LibraryInterner(new ContentLibraryNormalizer(cache));
+        cache.fingerprint("https://site.com/static/js/lib.js", Runnable::run).join();
+        int unfingerprinted = interner.intern("https://site.com/static/js/lib.js");
+        source.put("https://site.com/static/js/lib.js", JQUERY);
+
+        // when
+        cache.fingerprint("https://site.com/static/js/lib.js", Runnable::run).join();
+        int fingerprinted = interner.intern("https://site.com/static/js/lib.js");
+
+        // then
+        Assert.assertEquals("lib", interner.key(unfingerprinted));
+        Assert.assertEquals("jquery", interner.key(fingerprinted));
+        Assert.assertEquals(fingerprinted, interner.intern("https://site.com/static/js/lib.js"));
+        Assert.assertEquals(1, cache.getStats().getFailures());
+    }
+
+    @Test
+    public void testRepeatedQueryFetchesNothing() {
+        // given
+        ScriptBodyCache cache = newCache(100);
+        source.put("https://code.jquery.com/jquery-3.5.1.min.js", JQUERY);
+        source.put("https://site2.com/js/lib.js", JQUERY);
+        source.put("https://site3.com/static/vendor.8e0c1a4d.js", JQUERY);
+        source.put("https://cdn.jsdelivr.net/npm/lodash@4.17.20/lodash.min.js", LODASH);
+        Map<String, List<String>> pages = new ConcurrentHashMap<>();
+        pages.put("http://site1.com/", Arrays.asList("https://code.jquery.com/jquery-3.5.1.min.js",
+                "https://cdn.jsdelivr.net/npm/lodash@4.17.20/lodash.min.js"));
+        pages.put("http://site2.com/", Collections.singletonList("https://site2.com/js/lib.js"));
+        pages.put("http://site3.com/", Collections.singletonList("https://site3.com/static/vendor.8e0c1a4d.js"));
+        PageScriptsExtractor extractor = new FingerprintingPageScriptsExtractor((url, ioExecutor, calcExecutor) ->
+                CompletableFuture.completedFuture(new HtmlPageScripts(pages.get(url))), cache);
+        LibraryInterner interner = new LibraryInterner(new ContentLibraryNormalizer(cache));
+        List<String> links = Arrays.asList("http://site1.com/", "http://site2.com/", "http://site3.com/");
+
+        // when
+        List<KeyValue> first;
+        List<KeyValue> second;
+        ScriptCacheStats afterFirst;
+        try (CrawlerEngine engine = CrawlerEngine.builder(url -> null, document -> null)
+                .scriptsExtractor(extractor)
+                .executors(Executors.newFixedThreadPool(2), Executors.newSingleThreadExecutor())
+                .aggregatorFactory(LibraryAggregator.factory(interner))
+                .build()) {
+            first = engine.crawlLinks(links).join().topResults(5).collect(Collectors.toList());
+            afterFirst = cache.getStats();
+            second = engine.crawlLinks(links).join().topResults(5).collect(Collectors.toList());
+        }
+
+        // then
+        List<KeyValue> expected = Arrays.asList(new KeyValue("jquery", 3), new KeyValue("lodash", 1));
+        Assert.assertEquals(expected, first);
+        Assert.assertEquals(expected, second);
+        Assert.assertEquals(4, afterFirst.getFetches());
+        Assert.assertEquals(4, cache.getStats().getFetches());
+        Assert.assertEquals(4, cache.getStats().getSavedFetches());
+        Assert.assertEquals(4, source.opened.get());
+    }
+
+    private ScriptBodyCache newCache(int maxUrls) {
+        return new ScriptBodyCache(source, new LibraryNormalizer(), maxUrls, 100);
+    }
+
+    private static class StubScriptSource implements ScriptSource {
+
+        private final Map<String, String> bodies = new ConcurrentHashMap<>();
+        private final AtomicInteger opened = new AtomicInteger();
+        private volatile CountDownLatch gate = new CountDownLatch(0);
+
+        void put(String scriptUrl, String body) {
+            bodies.put(scriptUrl, body);
+        }
+
+        void block() {
+            gate = new CountDownLatch(1);
+        }
+
+        void release() {
+            gate.countDown();
+        }
+
+        @Override
+        public InputStream open(String scriptUrl) {
+            opened.incrementAndGet();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            String body = bodies.get(scriptUrl);
+            if (body == null) {
+                throw new DownloadPageException(404);
+            }
+            return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package io.leontyev.crawler.library;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+public class SpaceSavingCounterTest {
+
+    @Test
+    public void testHeapSelectsTheExactTop() {
+        // given
+        IntLongCounter counter = new IntLongCounter(16);
+        long[] expected = new long[10_000];
+        Random random = new Random(7);
+        for (int i = 0; i < 200_000; i++) {
+            int id = random.nextInt(expected.length);
+            counter.increment(id);
+            expected[id]++;
+        }
+
+        // when
+        long[] top = counter.top(50);
+
+        // then
+        long[] sorted = expected.clone();
+        Arrays.sort(sorted);
+        Assert.assertEquals(50, top.length);
+        for (int i = 0; i < top.length; i++) {
+            Assert.assertEquals(sorted[sorted.length - 1 - i], TopRanks.count(top[i]));
+            Assert.assertEquals(expected[TopRanks.id(top[i])], TopRanks.count(top[i]));
+        }
+    }
+
+    @Test
+    public void testHeavyHittersWithinBudget() {
+        // given
+        SpaceSavingCounter counter = new SpaceSavingCounter(100);
+        long[] expected = new long[50_000];
+        Random random = new Random(11);
+        for (int i = 0; i < 500_000; i++) {
+            int id = (int) Math.floor(Math.pow(expected.length, random.nextDouble())) - 1;
+            counter.increment(id);
+            expected[id]++;
+        }
+
+        // when
+        long[] top = counter.top(5);
+
+        // then
+        Assert.assertEquals(100, counter.size());
+        for (int i = 0; i < top.length; i++) {
+            Assert.assertEquals(i, TopRanks.id(top[i]));
+            Assert.assertTrue(TopRanks.count(top[i]) >= expected[i]);
+            Assert.assertTrue(TopRanks.count(top[i]) - expected[i] <= 500_000 / 100);
+        }
+    }
+
+    @Test
+    public void testFewLibrariesAreCountedExactly() {
+        // given
+        SpaceSavingCounter counter = new SpaceSavingCounter(8);
+
+        // when
+        for (int id = 0; id < 5; id++) {
+            for (int i = 0; i <= id; i++) {
+                counter.increment(id * 1000);
+            }
+        }
+
+        // then
+        long[] top = counter.top(10);
+        Assert.assertEquals(5, top.length);
+        for (int i = 0; i < top.length; i++) {
+            Assert.assertEquals((4 - i) * 1000, TopRanks.id(top[i]));
+            Assert.assertEquals(5 - i, TopRanks.count(top[i]));
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package io.leontyev.crawler.metrics;
+
+import io.leontyev.crawler.downloader.DownloadPageException;
+import io.leontyev.crawler.downloader.PageDownloadService;
+import io.leontyev.crawler.engine.CrawlerEngine;
+import io.leontyev.crawler.engine.StreamingPageScriptsExtractor;
+import io.leontyev.crawler.parser.GoogleHtmlPageParser;
+import io.leontyev.crawler.parser.StreamingJavaScriptLibrariesHtmlPageParser;
+import org.jsoup.HttpStatusException;
+import org.jsoup.nodes.Document;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+
+public class CrawlerMetricsTest {
+
+    @Test
+    public void testPrometheusText() {
+        // given
+        SimpleMetricsRegistry registry = new SimpleMetricsRegistry();
+        registry.counter("crawler.failures", "cause", "timeout").increment();
+        registry.counter("crawler.failures", "cause", "timeout").increment();
+        registry.counter("crawler.failures", "cause", "status_4xx").increment();
+        registry.histogram("crawler.page.scripts").record(3);
+        registry.histogram("crawler.page.scripts").record(5);
+        registry.timer("crawler.parse").record(1_500_000);
+        registry.gauge("crawler.executor.queued", () -> 7, "executor", "io");
+
+        // when
+        String text = PrometheusTextFormat.scrape(registry);
+
+        // then
+        Assert.assertTrue(text, text.contains("# TYPE crawler_failures_total counter\n"
+                + "crawler_failures_total{cause=\"status_4xx\"} 1\n"
+                + "crawler_failures_total{cause=\"timeout\"} 2\n"));
+        Assert.assertTrue(text, text.contains("crawler_executor_queued{executor=\"io\"} 7\n"));
+        Assert.assertTrue(text, text.contains("crawler_page_scripts_bucket{le=\"3\"} 1\n"
+                + "crawler_page_scripts_bucket{le=\"7\"} 2\n"
+                + "crawler_page_scripts_bucket{le=\"+Inf\"} 2\n"
+                + "crawler_page_scripts_count 2\n"
+                + "crawler_page_scripts_sum 8\n"
+                + "# TYPE crawler_page_scripts_max gauge\n"
+                + "crawler_page_scripts_max 5\n"));
+        Assert.assertTrue(text, text.contains("# TYPE crawler_parse_seconds histogram\n"));
+        Assert.assertTrue(text, text.contains("crawler_parse_seconds_sum 0.0015\n"
+                + "# TYPE crawler_parse_seconds_max gauge\n"
+                + "crawler_parse_seconds_max 0.0015\n"));
+    }
+
+    @Test
+    public void testGaugeRegisteredAgainReplacesValue() {
+        // given
+        SimpleMetricsRegistry registry = new SimpleMetricsRegistry();
+        registry.gauge("crawler.executor.queued", () -> 7, "executor", "io");
+
+        // when
+        registry.gauge("crawler.executor.queued", () -> 8, "executor", "io");
+
+        // then
+        String text = PrometheusTextFormat.scrape(registry);
+        Assert.assertTrue(text, text.contains("crawler_executor_queued{executor=\"io\"} 8\n"));
+        Assert.assertFalse(text, text.contains(" 7\n"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNameCannotChangeType() {
+        SimpleMetricsRegistry registry = new SimpleMetricsRegistry();
+        registry.counter("crawler.parse");
+        registry.timer("crawler.parse");
+    }
+
+    @Test
+    public void testFailureCauses() {
+        Assert.assertEquals("timeout", CrawlerMetrics.cause(new CompletionException(
+                new DownloadPageException("Unable to GET http://site1.com", new SocketTimeoutException()))));
+        Assert.assertEquals("status_4xx", CrawlerMetrics.cause(new DownloadPageException(404,
+                new HttpStatusException("Not found", 404, "http://site1.com"))));
+        Assert.assertEquals("status_5xx", CrawlerMetrics.cause(new DownloadPageException(503)));
+        Assert.assertEquals("io", CrawlerMetrics.cause(new DownloadPageException("Unable to GET", new IOException())));
+        Assert.assertEquals("robots", CrawlerMetrics.cause(new DownloadPageException("Disallowed by robots.txt: x")));
+        Assert.assertEquals("IllegalStateException", CrawlerMetrics.cause(new IllegalStateException()));
+    }
+
+    @Test
+    public void testEngineRecordsEveryStage() throws Exception {
+        // given
+        SimpleMetricsRegistry registry = new SimpleMetricsRegistry();
+        CrawlerMetrics metrics = new CrawlerMetrics(registry);
+        PageDownloadService downloadService = new MeteredPageDownloadService(stubSite(), metrics);
+        CrawlerEngine engine = CrawlerEngine.builder(downloadService, new GoogleHtmlPageParser())
+                .scriptsExtractor(new StreamingPageScriptsExtractor(downloadService, new MeteredHtmlPageParser<>(
+                        new StreamingJavaScriptLibrariesHtmlPageParser(), metrics.getParse())))
+                .executors(Executors.newFixedThreadPool(2), Executors.newSingleThreadExecutor())
+                .metrics(metrics)
+                .build();
+
+        // when
+        engine.crawl("http://localhost:1080/search", 5, keyValueStream -> {
+        });
+        engine.close();
+        String text;
+        try (MetricsHttpServer server = new MetricsHttpServer(registry, 0)) {
+            HttpResponse<String> response = HttpClient.newHttpClient().send(
+                    HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + "/metrics")).build(),
+                    HttpResponse.BodyHandlers.ofString());
+            Assert.assertEquals(200, response.statusCode());
+            text = response.body();
+        }
+
+        // then
+        Assert.assertTrue(text, text.contains("crawler_download_seconds_count 6\n"));
+        Assert.assertTrue(text, text.contains("crawler_parse_seconds_count 4\n"));
+        Assert.assertTrue(text, text.contains("crawler_aggregate_seconds_count 4\n"));
+        Assert.assertTrue(text, text.contains("crawler_page_scripts_sum 8\n"));
+        Assert.assertTrue(text, text.contains("crawler_page_chars_count 4\n"));
+        Assert.assertTrue(text, text.contains("crawler_failures_total{cause=\"status_5xx\"} 1\n"));
+        Assert.assertTrue(text, text.contains("crawler_executor_active{executor=\"io\"} 0\n"));
+        Assert.assertTrue(text, text.contains("crawler_executor_queued{executor=\"calc\"} 0\n"));
+    }
+
+    /**
+     * A search page with five results; every result page has two scripts, except the fifth which fails.
+     */
+    private static PageDownloadService stubSite() {
+        return url -> {
+            if (url.endsWith("/search")) {
+                Document document = Document.createShell(url);
+                for (int site = 1; site <= 5; site++) {
+                    document.body().appendElement("div").addClass("kCrYT")
+                            .appendElement("a").attr("href", "http://site" + site + ".com/some-uri-" + site);
+                }
+                return document;
+            }
+            if (url.contains("site5")) {
+                throw new DownloadPageException(503);
+            }
+            Document document = Document.createShell(url);
+            document.head().appendElement("script").attr("src", "http://cdn.com/jquery.js");
+            document.head().appendElement("script").attr("src", url + "/app.js");
+            return document;
+        };
+    }
+}
@@ -0,0 +1,80 @@
+package io.leontyev.crawler.parser;
+
+import io.leontyev.crawler.downloader.PageStream;
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+import org.jsoup.Jsoup;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.Collections;
+
+public class StreamingJavaScriptLibrariesHtmlPageParserTest {
+
+    private static final String LOCATION = "http://site1.com/some-uri-1/index.html";
+
+    private final StreamingJavaScriptLibrariesHtmlPageParser streamingParser = new StreamingJavaScriptLibrariesHtmlPageParser();
+    private final JavaScriptLibrariesHtmlPageParser documentParser = new JavaScriptLibrariesHtmlPageParser();
+
+    @Test
+    public void testSameLinksAsDocumentParser() {
+        // given
+        String html = "<!DOCTYPE html><html><head>"
+                + "<title>a <script src=\"title.js\"></script></title>"
+                + "<script src=\"/js/jquery.min.js?v=3&amp;x=1\"></script>"
+                + "<SCRIPT SRC='lib/react.js' type=text/javascript></SCRIPT>"
+                + "<script src=https://cdn.example.com/vue.js async></script>"
+                + "<!-- <script src=\"commented.js\"></script> -->"
+                + "<style>body:after { content: '<script src=\"style.js\">'; }</style>"
+                + "<script>document.write('<script src=\"inline.js\"><\\/script>');</script>"
+                + "</head><body>"
+                + "<textarea><script src=\"textarea.js\"></script></textarea>"
+                + "<script type=\"module\" src=\"\"></script>"
+                + "<script data-src=\"lazy.js\"></script>"
+                + "<script src=\"../body.js\"/>"
+                + "</body></html>";
+
+        // when
+        HtmlPageScripts streamed = streamingParser.parse(new PageStream(LOCATION, new StringReader(html)));
+        HtmlPageScripts parsed = documentParser.parse(Jsoup.parse(html, LOCATION));
+
+        // then
+        Assert.assertEquals(parsed.getScriptUrls(), streamed.getScriptUrls());
+        Assert.assertEquals(Arrays.asList(
+                "http://site1.com/js/jquery.min.js?v=3&x=1",
+                "http://site1.com/some-uri-1/lib/react.js",
+                "https://cdn.example.com/vue.js",
+                "http://site1.com/some-uri-1/index.html",
+                "http://site1.com/body.js"), streamed.getScriptUrls());
+    }
+
+    @Test
+    public void testBaseHref() {
+        // given
+        String html = "<html><head><base href=\"http://static.site1.com/assets/\">"
+                + "<base href=\"http://ignored.com/\">"
+                + "<script src=\"app.js\"></script></head></html>";
+
+        // when
+        HtmlPageScripts streamed = streamingParser.parse(new PageStream(LOCATION, new StringReader(html)));
+        HtmlPageScripts parsed = documentParser.parse(Jsoup.parse(html, LOCATION));
+
+        // then
+        Assert.assertEquals(parsed.getScriptUrls(), streamed.getScriptUrls());
+        Assert.assertEquals(Collections.singletonList("http://static.site1.com/assets/app.js"), streamed.getScriptUrls());
+    }
+
+    @Test
+    public void testTruncatedPage() {
+        // given
+        String html = "<html><head><script src=\"a.js\"></script><script src=\"b.js";
+
+        // when
+        HtmlPageScripts streamed = streamingParser.parse(new PageStream(LOCATION, new StringReader(html)));
+
+        // then
+        Assert.assertEquals(Collections.singletonList("http://site1.com/some-uri-1/a.js"), streamed.getScriptUrls());
+    }
+
+}
@@ -0,0 +1,281 @@
+package io.leontyev.crawler.politeness;
+
+import com.sun.net.httpserver.HttpServer;
+import io.leontyev.crawler.downloader.DownloadPageException;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class PolitenessSchedulerTest {
+
+    private static final String SLOW_ROBOTS = "User-agent: *\n" +
+            "Disallow: /private\n" +
+            "Crawl-delay: 2\n";
+
+    private HttpServer slowHost;
+    private HttpServer fastHost;
+    private final AtomicInteger robotsRequests = new AtomicInteger();
+    private volatile String slowRobots = SLOW_ROBOTS;
+    private volatile int slowRobotsStatus = 200;
+
+    private final FakeClock clock = new FakeClock();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+    private final List<String> started = Collections.synchronizedList(new ArrayList<>());
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+
+    @Before
+    public void startServers() throws IOException {
+        slowHost = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        slowHost.createContext("/robots.txt", exchange -> {
+            robotsRequests.incrementAndGet();
+            byte[] body = slowRobots.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(slowRobotsStatus, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        slowHost.start();
+
+        fastHost = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        fastHost.createContext("/", exchange -> {
+            robotsRequests.incrementAndGet();
+            exchange.sendResponseHeaders(404, -1);
+            exchange.close();
+        });
+        fastHost.start();
+    }
+
+    @After
+    public void stopServers() {
+        slowHost.stop(0);
+        fastHost.stop(0);
+        timer.shutdownNow();
+    }
+
+    @Test
+    public void testThrottledHostDoesNotHoldBackOthers() {
+        // given
+        PolitenessScheduler scheduler = scheduler(new PolitenessPolicy("web-crawler", 10, 3, 2, 60_000));
+        String slow = "http://127.0.0.1:" + slowHost.getAddress().getPort();
+        String fast = "http://localhost:" + fastHost.getAddress().getPort();
+
+        // when
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (String url : Arrays.asList(slow + "/1", slow + "/2", fast + "/1", fast + "/2", fast + "/3", slow + "/3")) {
+            results.add(scheduler.schedule(url, () -> request(url)));
+        }
+
+        // then
+        Assert.assertEquals(Arrays.asList(slow + "/1", fast + "/1", fast + "/2"), started);
+        Assert.assertEquals(3, scheduler.getWaiting());
+        Assert.assertEquals(2, robotsRequests.get());
+
+        // when the fast host frees a slot
+        inFlight.get(fast + "/1").complete("done");
+
+        // then its next request starts at once, within its burst
+        Assert.assertEquals(fast + "/3", started.get(3));
+        Assert.assertEquals("done", results.get(2).join());
+
+        // when less than the crawl delay has passed
+        clock.advance(1500);
+        scheduler.pump();
+
+        // then
+        Assert.assertEquals(4, started.size());
+
+        // when the crawl delay has passed
+        clock.advance(500);
+        scheduler.pump();
+
+        // then
+        Assert.assertEquals(slow + "/2", started.get(4));
+
+        // when the next token is due but both slots of the slow host are taken
+        clock.advance(2000);
+        scheduler.pump();
+
+        // then
+        Assert.assertEquals(5, started.size());
+        inFlight.get(slow + "/1").complete("done");
+        Assert.assertEquals(slow + "/3", started.get(5));
+        Assert.assertEquals(0, scheduler.getWaiting());
+        Assert.assertEquals(2, robotsRequests.get());
+    }
+
+    @Test
+    public void testRefreshedCrawlDelayReachesTheBucket() {
+        // given
+        PolitenessScheduler scheduler = scheduler(new PolitenessPolicy("web-crawler", 10, 3, 2, 1000));
+        String slow = "http://127.0.0.1:" + slowHost.getAddress().getPort();
+        scheduler.schedule(slow + "/1", () -> request(slow + "/1"));
+        inFlight.get(slow + "/1").complete("done");
+
+        // when robots.txt expires with a longer crawl delay
+        slowRobots = SLOW_ROBOTS.replace("Crawl-delay: 2", "Crawl-delay: 10");
+        clock.advance(2000);
+        scheduler.schedule(slow + "/2", () -> request(slow + "/2"));
+        scheduler.schedule(slow + "/3", () -> request(slow + "/3"));
+
+        // then the token saved under the old delay is spent, and the next one takes the new delay
+        Assert.assertEquals(Arrays.asList(slow + "/1", slow + "/2"), started);
+        clock.advance(2000);
+        scheduler.pump();
+        Assert.assertEquals(2, started.size());
+        clock.advance(8000);
+        scheduler.pump();
+        Assert.assertEquals(slow + "/3", started.get(2));
+        Assert.assertEquals(2, robotsRequests.get());
+    }
+
+    @Test
+    public void testIdleHostsAreEvicted() {
+        // given
+        PolitenessScheduler scheduler = scheduler(new PolitenessPolicy("web-crawler", 10, 3, 2, 600_000));
+        String slow = "http://127.0.0.1:" + slowHost.getAddress().getPort();
+        String fast = "http://localhost:" + fastHost.getAddress().getPort();
+        scheduler.schedule(fast + "/1", () -> request(fast + "/1"));
+        inFlight.get(fast + "/1").complete("done");
+        scheduler.schedule(slow + "/1", () -> request(slow + "/1"));
+        Assert.assertEquals(2, scheduler.getHosts());
+
+        // when
+        clock.advance(60_000);
+        scheduler.schedule(slow + "/2", () -> request(slow + "/2"));
+
+        // then the idle host is gone, the busy one stays
+        Assert.assertEquals(1, scheduler.getHosts());
+        scheduler.schedule(fast + "/2", () -> request(fast + "/2"));
+        Assert.assertEquals(fast + "/2", started.get(3));
+        Assert.assertEquals(2, scheduler.getHosts());
+    }
+
+    @Test
+    public void testDisallowedPathFails() throws InterruptedException {
+        // given
+        PolitenessScheduler scheduler = scheduler(new PolitenessPolicy("web-crawler", 10, 2, 2, 60_000));
+        String url = "http://127.0.0.1:" + slowHost.getAddress().getPort() + "/private/page?id=1";
+
+        // when
+        CompletableFuture<String> result = scheduler.schedule(url, () -> request(url));
+
+        // then
+        try {
+            result.get();
+            Assert.fail("Disallowed request completed");
+        } catch (ExecutionException e) {
+            Assert.assertTrue(e.getCause() instanceof DownloadPageException);
+        }
+        Assert.assertTrue(started.isEmpty());
+    }
+
+    @Test
+    public void testServerErrorOnRobotsTxtDisallowsTheSiteUntilRefetched() {
+        // given
+        slowRobotsStatus = 503;
+        PolitenessScheduler scheduler = scheduler(new PolitenessPolicy("web-crawler", 10, 2, 2, 60_000));
+        String slow = "http://127.0.0.1:" + slowHost.getAddress().getPort();
+
+        // when
+        CompletableFuture<String> refused = scheduler.schedule(slow + "/1", () -> request(slow + "/1"));
+        slowRobotsStatus = 200;
+        clock.advance(60_000);
+        scheduler.schedule(slow + "/2", () -> request(slow + "/2"));
+
+        // then
+        Assert.assertTrue(refused.isCompletedExceptionally());
+        Assert.assertEquals(Collections.singletonList(slow + "/2"), started);
+        Assert.assertEquals(2, robotsRequests.get());
+    }
+
+    @Test
+    public void testRobotsTxtRules() {
+        // given
+        String content = "# comment\n" +
+                "User-agent: OtherBot\n" +
+                "Disallow: /\n" +
+                "\n" +
+                "User-agent: web-crawler\n" +
+                "User-agent: another\n" +
+                "Disallow: /search\n" +
+                "Allow: /search/about\n" +
+                "Disallow: /*.pdf$\n" +
+                "Crawl-delay: 0.5\n" +
+                "\n" +
+                "User-agent: *\n" +
+                "Disallow: /tmp\n";
+
+        // when
+        RobotsTxt own = RobotsTxt.parse(content, "web-crawler/1.0");
+        RobotsTxt any = RobotsTxt.parse(content, "curl");
+
+        // then
+        Assert.assertFalse(own.isAllowed("/search?q=java"));
+        Assert.assertTrue(own.isAllowed("/search/about"));
+        Assert.assertFalse(own.isAllowed("/files/report.pdf"));
+        Assert.assertTrue(own.isAllowed("/files/report.pdf?download"));
+        Assert.assertTrue(own.isAllowed("/tmp"));
+        Assert.assertEquals(500, own.getCrawlDelayMillis());
+        Assert.assertFalse(any.isAllowed("/tmp/x"));
+        Assert.assertTrue(any.isAllowed("/search"));
+        Assert.assertEquals(0, any.getCrawlDelayMillis());
+    }
+
+    private PolitenessScheduler scheduler(PolitenessPolicy policy) {
+        RobotsTxtCache robotsTxtCache = new RobotsTxtCache(new HttpRobotsTxtFetcher(policy.getUserAgent(), 2000),
+                Runnable::run, policy.getRobotsTtlMillis(), clock);
+        return new PolitenessScheduler(policy, robotsTxtCache, timer, clock);
+    }
+
+    private CompletableFuture<String> request(String url) {
+        started.add(url);
+        CompletableFuture<String> response = new CompletableFuture<>();
+        inFlight.put(url, response);
+        return response;
+    }
+
+    private static class FakeClock extends Clock {
+
+        private volatile long millis = 1_000_000;
+
+        void advance(long delta) {
+            millis += delta;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package io.leontyev.crawler.server;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.leontyev.crawler.downloader.HttpClientPageDownloadService;
+import io.leontyev.crawler.engine.CrawlerEngine;
+import io.leontyev.crawler.engine.IoExecutionMode;
+import io.leontyev.crawler.engine.ScriptUrlAggregator;
+import io.leontyev.crawler.engine.ScriptsAggregator;
+import io.leontyev.crawler.engine.StreamingPageScriptsExtractor;
+import io.leontyev.crawler.library.LibraryAggregator;
+import io.leontyev.crawler.library.LibraryInterner;
+import io.leontyev.crawler.library.LibraryNormalizer;
+import io.leontyev.crawler.library.PopularityTracker;
+import io.leontyev.crawler.parser.GoogleHtmlPageParser;
+import io.leontyev.crawler.parser.StreamingJavaScriptLibrariesHtmlPageParser;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+public class CrawlerServerTest {
+
+    private static final int RESULT_PAGES = 5;
+
+    private final HttpClient client = HttpClient.newHttpClient();
+    private final List<AutoCloseable> resources = new ArrayList<>();
+
+    private HttpServer searchServer;
+    private final ExecutorService searchExecutor = Executors.newCachedThreadPool();
+    private final AtomicInteger activePages = new AtomicInteger();
+    private final AtomicInteger peakActivePages = new AtomicInteger();
+
+    @After
+    public void tearDown() throws Exception {
+        for (int i = resources.size() - 1; i >= 0; i--) {
+            resources.get(i).close();
+        }
+        if (searchServer != null) {
+            searchServer.stop(0);
+        }
+        searchExecutor.shutdownNow();
+    }
+
+    @Test
+    public void testLoadOverSharedEngine() {
+        // given
+        startSearchServer(20);
+        CrawlerServer server = startServer(new ServerLimits(4, 64, 3, 5000));
+
+        // when
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int query = 0; query < 40; query++) {
+            responses.add(query(server, "library+" + query));
+        }
+
+        // then
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            HttpResponse<String> answer = response.join();
+            Assert.assertEquals(answer.body(), 200, answer.statusCode());
+            Assert.assertTrue(answer.body(), answer.body().contains(
+                    "\"pages\":" + RESULT_PAGES + ","));
+            Assert.assertTrue(answer.body(), answer.body().contains(
+                    "{\"library\":\"http://cdn.com/jquery.js\",\"occurrences\":" + RESULT_PAGES + "}"));
+        }
+        Assert.assertEquals(40, server.getCompletedQueries());
+        Assert.assertEquals(0, server.getRejectedQueries());
+        Assert.assertTrue("Peak pages " + peakActivePages.get(), peakActivePages.get() <= 4 * 3);
+    }
+
+    @Test
+    public void testTurnsAwayQueriesBeyondTheQueue() {
+        // given
+        startSearchServer(300);
+        CrawlerServer server = startServer(new ServerLimits(1, 1, RESULT_PAGES, 5000));
+
+        // when
+        List<CompletableFuture<HttpResponse<String>>> responses = new ArrayList<>();
+        for (int query = 0; query < 6; query++) {
+            responses.add(query(server, "library+" + query));
+        }
+
+        // then
+        int ok = 0;
+        int rejected = 0;
+        for (CompletableFuture<HttpResponse<String>> response : responses) {
+            HttpResponse<String> answer = response.join();
+            if (answer.statusCode() == 200) {
+                ok++;
+            } else {
+                Assert.assertEquals(503, answer.statusCode());
+                Assert.assertEquals("1", answer.headers().firstValue("Retry-After").orElse(null));
+                rejected++;
+            }
+        }
+        Assert.assertTrue("Answered " + ok, ok >= 2);
+        Assert.assertTrue("Rejected " + rejected, rejected >= 1);
+        Assert.assertEquals(rejected, server.getRejectedQueries());
+    }
+
+    @Test
+    public void testCloseDrainsAdmittedQueries() throws InterruptedException {
+        // given
+        startSearchServer(200);
+        CrawlerServer server = startServer(new ServerLimits(1, 4, RESULT_PAGES, 5000));
+        CompletableFuture<HttpResponse<String>> first = query(server, "first");
+        CompletableFuture<HttpResponse<String>> second = query(server, "second");
+        while (server.getActiveQueries() == 0 || server.getQueuedQueries() == 0) {
+            TimeUnit.MILLISECONDS.sleep(10);
+        }
+
+        // when
+        server.close();
+
+        // then
+        Assert.assertEquals(200, first.join().statusCode());
+        Assert.assertEquals(200, second.join().statusCode());
+        Assert.assertEquals(2, server.getCompletedQueries());
+    }
+
+    @Test
+    public void testRejectsMissingQuery() {
+        // given
+        startSearchServer(0);
+        CrawlerServer server = startServer(new ServerLimits(1, 1, 1, 5000));
+
+        // when
+        HttpResponse<String> response = client.sendAsync(
+                HttpRequest.newBuilder(URI.create("http://127.0.0.1:" + server.getPort() + "/crawl")).build(),
+                HttpResponse.BodyHandlers.ofString()).join();
+
+        // then
+        Assert.assertEquals(400, response.statusCode());
+        Assert.assertEquals("{\"error\":\"Missing query parameter q\"}", response.body());
+    }
+
+    @Test
+    public void testPopularOverAllQueries() {
+        // given
+        startSearchServer(0);
+        PopularityTracker tracker = new PopularityTracker(new LibraryInterner(new LibraryNormalizer()));
+        CrawlerServer server = startServer(new ServerLimits(2, 8, 3, 5000), LibraryAggregator.tracking(tracker),
+                tracker);
+        Assert.assertEquals(200, query(server, "angular").join().statusCode());
+        Assert.assertEquals(200, query(server, "react").join().statusCode());
+
+        // when
+        HttpResponse<String> response = client.sendAsync(HttpRequest.newBuilder(URI.create(
+                "http://127.0.0.1:" + server.getPort() + "/popular?window=minute&n=1")).build(),
+                HttpResponse.BodyHandlers.ofString()).join();
+
+        // then
+        Assert.assertEquals(200, response.statusCode());
+        Assert.assertEquals("{\"window\":\"minute\",\"tumbling\":false,\"results\":"
+                + "[{\"library\":\"jquery\",\"occurrences\":" + 2 * RESULT_PAGES + "}]}", response.body());
+    }
+
+    private CompletableFuture<HttpResponse<String>> query(CrawlerServer server, String query) {
+        URI uri = URI.create("http://127.0.0.1:" + server.getPort() + "/crawl?q=" + query + "&n=1");
+        return client.sendAsync(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private CrawlerServer startServer(ServerLimits limits) {
+        return startServer(limits, ScriptUrlAggregator::new, null);
+    }
+
+    private CrawlerServer startServer(ServerLimits limits, Supplier<ScriptsAggregator> aggregatorFactory,
+                                      PopularityTracker tracker) {
+        HttpClientPageDownloadService downloadService = new HttpClientPageDownloadService(2000, 64);
+        CrawlerEngine engine = CrawlerEngine.builder(downloadService, new GoogleHtmlPageParser())
+                .scriptsExtractor(new StreamingPageScriptsExtractor(downloadService,
+                        new StreamingJavaScriptLibrariesHtmlPageParser()))
+                .ioExecutionMode(IoExecutionMode.threadPool(16))
+                .aggregatorFactory(aggregatorFactory)
+                .build();
+        resources.add(engine);
+        CrawlerServer server = new CrawlerServer(engine, baseUrl() + "/search?q=", 0, limits, tracker);
+        resources.add(server);
+        return server;
+    }
+
+    /**
+     * Every search lists {@link #RESULT_PAGES} result pages, each served after {@code latencyMillis} with
+     * jQuery and a script of its own. A page stops counting as active before its response is sent, so that
+     * the crawler's next request cannot overlap it.
+     */
+    private void startSearchServer(long latencyMillis) {
+        try {
+            searchServer = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 1024);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        searchServer.createContext("/search", exchange -> {
+            String query = exchange.getRequestURI().getRawQuery();
+            StringBuilder search = new StringBuilder("<html><body>");
+            for (int page = 0; page < RESULT_PAGES; page++) {
+                search.append("<div class=\"kCrYT\"><a href=\"").append(baseUrl()).append("/page/")
+                        .append(page).append('?').append(query).append("\">result</a></div>");
+            }
+            respond(exchange, search.append("</body></html>").toString());
+        });
+        searchServer.createContext("/page", exchange -> {
+            peakActivePages.accumulateAndGet(activePages.incrementAndGet(), Math::max);
+            try {
+                TimeUnit.MILLISECONDS.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                activePages.decrementAndGet();
+            }
+            respond(exchange, "<html><head><script src=\"http://cdn.com/jquery.js\"></script>"
+                    + "<script src=\"" + exchange.getRequestURI() + "/app.js\"></script></head></html>");
+        });
+        searchServer.setExecutor(searchExecutor);
+        searchServer.start();
+    }
+
+    private String baseUrl() {
+        return "http://127.0.0.1:" + searchServer.getAddress().getPort();
+    }
+
+    private static void respond(HttpExchange exchange, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "text/html; charset=UTF-8");
+        exchange.sendResponseHeaders(200, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
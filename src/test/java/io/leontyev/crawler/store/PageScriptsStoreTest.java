@@ -0,0 +1,177 @@
+package io.leontyev.crawler.store;
+
+import io.leontyev.crawler.downloader.PageValidators;
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class PageScriptsStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testPagesSurviveReopen() throws IOException {
+        // given
+        Path directory = folder.getRoot().toPath();
+        try (PageScriptsStore store = new PageScriptsStore(directory, 4096)) {
+            store.put(page("http://site1.com/", 100, "http://site1.com/jquery.js", "http://cdn.com/react.js"));
+            store.put(new StoredPage("http://site2.com/", new HtmlPageScripts(Collections.emptyList()), 200,
+                    new PageValidators("\"v1\"", "Mon, 01 Jan 2024 00:00:00 GMT")));
+        }
+
+        // when
+        try (PageScriptsStore store = new PageScriptsStore(directory, 4096)) {
+            StoredPage site1 = store.get("http://site1.com/");
+            StoredPage site2 = store.get("http://site2.com/");
+
+            // then
+            Assert.assertEquals(2, store.size());
+            Assert.assertEquals(Arrays.asList("http://site1.com/jquery.js", "http://cdn.com/react.js"), site1.getScripts().getScriptUrls());
+            Assert.assertEquals(100, site1.getFetchedAt());
+            Assert.assertNull(site1.getValidators().getETag());
+            Assert.assertEquals("\"v1\"", site2.getValidators().getETag());
+            Assert.assertEquals("Mon, 01 Jan 2024 00:00:00 GMT", site2.getValidators().getLastModified());
+            Assert.assertNull(store.get("http://site3.com/"));
+        }
+    }
+
+    @Test
+    public void testLatestRecordWinsAcrossSegments() {
+        // given
+        Path directory = folder.getRoot().toPath();
+        try (PageScriptsStore store = new PageScriptsStore(directory, 256)) {
+            for (int i = 0; i < 20; i++) {
+                store.put(page("http://site" + (i % 3) + ".com/", i, "http://cdn.com/lib-" + i + ".js"));
+            }
+        }
+
+        // when
+        try (PageScriptsStore store = new PageScriptsStore(directory, 256)) {
+
+            // then
+            Assert.assertTrue(segments(directory).size() > 1);
+            Assert.assertEquals(3, store.size());
+            Assert.assertEquals(Collections.singletonList("http://cdn.com/lib-18.js"), store.get("http://site0.com/").getScripts().getScriptUrls());
+            Assert.assertEquals(Collections.singletonList("http://cdn.com/lib-19.js"), store.get("http://site1.com/").getScripts().getScriptUrls());
+        }
+    }
+
+    @Test
+    public void testCompactionDropsStaleRecords() {
+        // given
+        Path directory = folder.getRoot().toPath();
+        try (PageScriptsStore store = new PageScriptsStore(directory, 256)) {
+            for (int i = 0; i < 20; i++) {
+                store.put(page("http://site" + (i % 4) + ".com/", i, "http://cdn.com/lib-" + i + ".js"));
+            }
+
+            // when
+            int dropped = store.compact(17);
+
+            // then
+            Assert.assertEquals(17, dropped);
+            Assert.assertEquals(3, store.size());
+            Assert.assertNull(store.get("http://site0.com/"));
+            Assert.assertEquals(17, store.get("http://site1.com/").getFetchedAt());
+        }
+
+        try (PageScriptsStore store = new PageScriptsStore(directory, 256)) {
+            Assert.assertEquals(3, store.size());
+            Assert.assertEquals(19, store.get("http://site3.com/").getFetchedAt());
+        }
+    }
+
+    @Test
+    public void testFailedCompactionLeavesStoreIntact() throws IOException {
+        // given
+        Path directory = folder.getRoot().toPath();
+        try (PageScriptsStore store = new PageScriptsStore(directory, 256)) {
+            for (int i = 0; i < 20; i++) {
+                store.put(page("http://site" + (i % 4) + ".com/", i, "http://cdn.com/lib-" + i + ".js"));
+            }
+            List<Path> segments = segments(directory);
+            Path blocked = directory.resolve(String.format("segment-%08d.dat", segments.size() + 2));
+            Files.createFile(blocked);
+
+            // when
+            try {
+                store.compact(0);
+                Assert.fail("Compaction should not be able to roll over to a second segment");
+            } catch (PageStoreException e) {
+                // expected
+            }
+
+            // then
+            Files.delete(blocked);
+            Assert.assertEquals(segments, segments(directory));
+            Assert.assertEquals(4, store.size());
+            Assert.assertEquals(16, store.get("http://site0.com/").getFetchedAt());
+            store.put(page("http://site4.com/", 20, "http://cdn.com/lib-20.js"));
+            Assert.assertEquals(20, store.get("http://site4.com/").getFetchedAt());
+        }
+
+        try (PageScriptsStore store = new PageScriptsStore(directory, 256)) {
+            Assert.assertEquals(5, store.size());
+            Assert.assertEquals(19, store.get("http://site3.com/").getFetchedAt());
+        }
+    }
+
+    @Test
+    public void testTornRecordIsDropped() throws IOException {
+        // given
+        Path directory = folder.getRoot().toPath();
+        try (PageScriptsStore store = new PageScriptsStore(directory, 4096)) {
+            store.put(page("http://site1.com/", 1, "http://cdn.com/a.js"));
+            store.put(page("http://site2.com/", 2, "http://cdn.com/b.js"));
+        }
+        Path segment = segments(directory).get(0);
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{'X'}), indexOf(segment, "site2"));
+        }
+
+        // when
+        try (PageScriptsStore store = new PageScriptsStore(directory, 4096)) {
+
+            // then
+            Assert.assertNotNull(store.get("http://site1.com/"));
+            Assert.assertNull(store.get("http://site2.com/"));
+
+            store.put(page("http://site3.com/", 3, "http://cdn.com/c.js"));
+            Assert.assertNotNull(store.get("http://site3.com/"));
+        }
+    }
+
+    private static StoredPage page(String url, long fetchedAt, String... scripts) {
+        return new StoredPage(url, new HtmlPageScripts(Arrays.asList(scripts)), fetchedAt, PageValidators.NONE);
+    }
+
+    private static List<Path> segments(Path directory) {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.sorted().collect(Collectors.toList());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int indexOf(Path segment, String text) throws IOException {
+        String content = new String(Files.readAllBytes(segment), StandardCharsets.ISO_8859_1);
+        return content.indexOf(text);
+    }
+
+}
@@ -0,0 +1,129 @@
+package io.leontyev.crawler.store;
+
+import io.leontyev.crawler.downloader.ValidatingStubDownloadService;
+import io.leontyev.crawler.parser.StreamingJavaScriptLibrariesHtmlPageParser;
+import io.leontyev.crawler.parser.page.HtmlPageScripts;
+import org.junit.Assert;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Collections;
+
+public class PersistentPageScriptsExtractorTest {
+
+    private static final String PAGE = "<html><head><script src=\"/jquery.js\"></script></head></html>";
+    private static final String LAST_MODIFIED = "Mon, 01 Jun 2020 00:00:00 GMT";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private final FakeClock clock = new FakeClock();
+    private final ValidatingStubDownloadService downloadService =
+            new ValidatingStubDownloadService(PAGE, LAST_MODIFIED);
+
+    @Test
+    public void testValidatorsAreStoredAndSentOnRevalidation() {
+        // given
+        try (PageScriptsStore store = new PageScriptsStore(folder.getRoot().toPath(), 4096)) {
+            PersistentPageScriptsExtractor extractor = newExtractor(store);
+            HtmlPageScripts fetched = extract(extractor, "http://site1.com/");
+
+            // when
+            StoredPage stored = store.get("http://site1.com/");
+            clock.advance(1001);
+            HtmlPageScripts revalidated = extract(extractor, "http://site1.com/");
+            HtmlPageScripts fresh = extract(extractor, "http://site1.com/");
+
+            // then
+            Assert.assertEquals(Collections.singletonList("http://site1.com/jquery.js"), fetched.getScriptUrls());
+            Assert.assertEquals(ValidatingStubDownloadService.ETAG, stored.getValidators().getETag());
+            Assert.assertEquals(LAST_MODIFIED, stored.getValidators().getLastModified());
+            Assert.assertEquals(2, downloadService.getRequests().size());
+            Assert.assertTrue(downloadService.getRequests().get(0).isEmpty());
+            Assert.assertEquals(ValidatingStubDownloadService.ETAG, downloadService.getRequests().get(1).getETag());
+            Assert.assertEquals(LAST_MODIFIED, downloadService.getRequests().get(1).getLastModified());
+            Assert.assertEquals(fetched.getScriptUrls(), revalidated.getScriptUrls());
+            Assert.assertEquals(fetched.getScriptUrls(), fresh.getScriptUrls());
+            Assert.assertEquals(clock.millis(), store.get("http://site1.com/").getFetchedAt());
+        }
+    }
+
+    @Test
+    public void testStoredPageIsServedAfterReopen() {
+        // given
+        try (PageScriptsStore store = new PageScriptsStore(folder.getRoot().toPath(), 4096)) {
+            extract(newExtractor(store), "http://site1.com/");
+        }
+
+        // when
+        HtmlPageScripts scripts;
+        try (PageScriptsStore store = new PageScriptsStore(folder.getRoot().toPath(), 4096)) {
+            scripts = extract(newExtractor(store), "http://site1.com/");
+        }
+
+        // then
+        Assert.assertEquals(Collections.singletonList("http://site1.com/jquery.js"), scripts.getScriptUrls());
+        Assert.assertEquals(1, downloadService.getRequests().size());
+    }
+
+    @Test
+    public void testCompactionKeepsRecordsWithinRetention() {
+        // given
+        try (PageScriptsStore store = new PageScriptsStore(folder.getRoot().toPath(), 4096)) {
+            PersistentPageScriptsExtractor extractor = newExtractor(store);
+            extract(extractor, "http://site1.com/");
+
+            // when
+            clock.advance(1001);
+            int droppedWithinRetention = extractor.compact(5000);
+            StoredPage retained = store.get("http://site1.com/");
+            clock.advance(5000);
+            int droppedPastRetention = extractor.compact(5000);
+
+            // then
+            Assert.assertEquals(0, droppedWithinRetention);
+            Assert.assertEquals(ValidatingStubDownloadService.ETAG, retained.getValidators().getETag());
+            Assert.assertEquals(1, droppedPastRetention);
+            Assert.assertNull(store.get("http://site1.com/"));
+        }
+    }
+
+    private PersistentPageScriptsExtractor newExtractor(PageScriptsStore store) {
+        return new PersistentPageScriptsExtractor(store, downloadService,
+                new StreamingJavaScriptLibrariesHtmlPageParser(), 1000, clock);
+    }
+
+    private static HtmlPageScripts extract(PersistentPageScriptsExtractor extractor, String url) {
+        return extractor.extract(url, Runnable::run, Runnable::run).join();
+    }
+
+    private static class FakeClock extends Clock {
+
+        private long millis = 1_000_000;
+
+        void advance(long delta) {
+            millis += delta;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return Instant.ofEpochMilli(millis);
+        }
+    }
+
+}